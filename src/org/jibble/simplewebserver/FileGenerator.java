@@ -0,0 +1,20 @@
+package org.jibble.simplewebserver;
+
+import java.io.*;
+
+/**
+ * Generates the content of files that don't exist on disk, eg by
+ * converting them from another file on request.
+ */
+public interface FileGenerator {
+
+    /**
+     * Return true if the content of the file can be generated.
+     */
+    public boolean canGenerate(File file);
+
+    /**
+     * Write the content of the file to the response.
+     */
+    public void generate(File file, OutputStream out) throws IOException;
+}
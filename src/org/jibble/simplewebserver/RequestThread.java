@@ -28,8 +28,13 @@ import java.util.*;
 public class RequestThread extends Thread {
     
     public RequestThread(Socket socket, File rootDir) {
+        this(socket, rootDir, null);
+    }
+    
+    public RequestThread(Socket socket, File rootDir, FileGenerator generator) {
         _socket = socket;
         _rootDir = rootDir;
+        _generator = generator;
     }
     
     private static void sendHeader(BufferedOutputStream out, int code, String contentType, long contentLength, long lastModified) throws IOException {
@@ -80,6 +85,15 @@ public class RequestThread extends Thread {
                 // outside of our web root directory.
                 sendError(out, 403, "Permission Denied.");
             }
+            else if (!file.exists() && _generator != null && _generator.canGenerate(file)) {
+                // Not on disk, but it can be generated from something that is.
+                String contentType = (String)SimpleWebServer.MIME_TYPES.get(SimpleWebServer.getExtension(file));
+                if (contentType == null) {
+                    contentType = "application/octet-stream";
+                }
+                sendHeader(out, 200, contentType, -1, System.currentTimeMillis());
+                _generator.generate(file, out);
+            }
             else if (!file.exists()) {
                 // The file was not found.
                 sendError(out, 404, "File Not Found.");
@@ -142,6 +156,7 @@ public class RequestThread extends Thread {
     }
     
     private File _rootDir;
+    private FileGenerator _generator;
     private Socket _socket;
     
 }
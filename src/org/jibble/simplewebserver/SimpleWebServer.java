@@ -45,6 +45,12 @@ public class SimpleWebServer extends Thread {
     }
     
     public SimpleWebServer(File rootDir, int port) throws IOException {
+        this(rootDir, port, null);
+    }
+    
+    // The generator is asked for any files that don't exist on disk.
+    public SimpleWebServer(File rootDir, int port, FileGenerator generator) throws IOException {
+        _generator = generator;
         _rootDir = rootDir.getCanonicalFile();
         if (!_rootDir.isDirectory()) {
             throw new IOException("Not a directory.");
@@ -60,7 +66,7 @@ public class SimpleWebServer extends Thread {
         while (_running) {
             try {
                 Socket socket = _serverSocket.accept();
-                RequestThread requestThread = new RequestThread(socket, _rootDir);
+                RequestThread requestThread = new RequestThread(socket, _rootDir, _generator);
                 requestThread.start();
             }
             catch (IOException e) {
@@ -92,6 +98,7 @@ public class SimpleWebServer extends Thread {
     }
     
     private File _rootDir;
+    private FileGenerator _generator;
     private ServerSocket _serverSocket;
     private boolean _running = true;
 
@@ -0,0 +1,267 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import org.strongback.annotation.ThreadSafe;
+import org.strongback.components.Stoppable;
+
+/**
+ * A {@link DataWriter} that keeps all disk I/O off the executor thread. Each {@link #write(long) write} only reads the
+ * channels' current values into one of two preallocated buffers of primitive values, and a background thread writes the
+ * records in each full buffer with another {@link DataWriter} (e.g., a {@link FileDataWriter}), which is created for
+ * channels that replay the buffered values. So any opening of new files, writing of headers and forcing of buffers to disk
+ * happens on the background thread.
+ * <p>
+ * The executor thread fills one buffer while the background thread writes the other. When a buffer is full and the
+ * background thread has not yet finished writing the other buffer, the buffers have overflowed and each record is dropped
+ * until the other buffer is available again. Dropped records are counted in the {@link DataBufferMetrics metrics}, together
+ * with the occupancy of the buffers. Sampling never allocates and never blocks.
+ * <p>
+ * The channels are those registered when this writer is created. The supplier of a channel whose {@link RecordingPolicy}
+ * {@link RecordingPolicy#pollingEvery(long, TimeUnit) limits polling} is only read as often as the policy allows, and the
+ * last value is repeated in the records in between.
+ *
+ * @see Strongback.Configurator#bufferRecordedData(int)
+ */
+@ThreadSafe
+final class AsyncDataWriter implements DataWriter, Stoppable {
+
+    private static final long PARK_TIME_IN_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * The default time that {@link #stop()} waits for the background thread to finish writing.
+     */
+    static final long DEFAULT_STOP_TIMEOUT_IN_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private static final class Buffer {
+        private final long[] values;
+        private int count = 0;
+        private boolean closeAfter = false;
+
+        private Buffer(int capacity, int width) {
+            this.values = new long[capacity * width];
+        }
+    }
+
+    private final DataRecorderChannel[] channels;
+    private final long[] lastPolled;
+    private final long[] lastBits;
+    private final int width;
+    private final int capacity;
+    private final DataWriter writer;
+    private final DataBufferMetrics metrics;
+    private final Logger logger;
+    private final long stopTimeoutInMillis;
+    private final AtomicReference<Buffer> spare = new AtomicReference<>();
+    private final AtomicReference<Buffer> pending = new AtomicReference<>();
+    private final Thread background;
+    private volatile boolean flushRequested = false;
+    private volatile boolean stopping = false;
+    private Buffer filling;
+    private long[] replayValues;
+    private int replayOffset;
+
+    /**
+     * Create a buffered writer and start its background thread.
+     *
+     * @param channels the channels to be recorded; may not be null
+     * @param writerFactory the factory for the writer used by the background thread; may not be null
+     * @param capacity the maximum number of records in each of the two buffers; must be positive
+     * @param metrics the metrics for the buffers; may not be null
+     * @param logger the logger for problems writing the buffers; may not be null
+     */
+    AsyncDataWriter(Iterable<DataRecorderChannel> channels, Function<Iterable<DataRecorderChannel>, DataWriter> writerFactory,
+            int capacity, DataBufferMetrics metrics, Logger logger) {
+        this(channels, writerFactory, capacity, metrics, logger, DEFAULT_STOP_TIMEOUT_IN_MILLIS);
+    }
+
+    /**
+     * Create a buffered writer and start its background thread.
+     *
+     * @param channels the channels to be recorded; may not be null
+     * @param writerFactory the factory for the writer used by the background thread; may not be null
+     * @param capacity the maximum number of records in each of the two buffers; must be positive
+     * @param metrics the metrics for the buffers; may not be null
+     * @param logger the logger for problems writing the buffers; may not be null
+     * @param stopTimeoutInMillis the time that {@link #stop()} waits for the background thread to finish; must be positive
+     */
+    AsyncDataWriter(Iterable<DataRecorderChannel> channels, Function<Iterable<DataRecorderChannel>, DataWriter> writerFactory,
+            int capacity, DataBufferMetrics metrics, Logger logger, long stopTimeoutInMillis) {
+        List<DataRecorderChannel> list = new ArrayList<>();
+        channels.forEach(list::add);
+        this.channels = list.toArray(new DataRecorderChannel[list.size()]);
+        this.lastPolled = new long[this.channels.length];
+        this.lastBits = new long[this.channels.length];
+        this.width = this.channels.length + 1;
+        this.capacity = capacity;
+        this.metrics = metrics;
+        this.logger = logger;
+        this.stopTimeoutInMillis = stopTimeoutInMillis;
+        this.filling = new Buffer(capacity, width);
+        this.spare.set(new Buffer(capacity, width));
+        this.metrics.reset(capacity);
+
+        // The background thread writes channels that replay the values in the buffer being written ...
+        List<DataRecorderChannel> replaying = new ArrayList<>();
+        for (int i = 0; i != this.channels.length; ++i) {
+            int column = i + 1;
+            replaying.add(this.channels[i].replaying(() -> replayValues[replayOffset + column]));
+            lastPolled[i] = Long.MIN_VALUE;
+        }
+        this.writer = writerFactory.apply(replaying);
+
+        this.background = new Thread(this::runInBackground);
+        this.background.setName("Strongback Data Buffer Writer");
+        this.background.setDaemon(true);
+        this.background.start();
+    }
+
+    @Override
+    public void write(long time) {
+        if (stopping) return;
+        Buffer buffer = filling;
+        if (buffer.count == capacity && !handOff()) {
+            // Both buffers are full ...
+            metrics.dropped();
+            return;
+        }
+        buffer = filling;
+        long[] values = buffer.values;
+        int offset = buffer.count * width;
+        values[offset] = time;
+        for (int i = 0; i != channels.length; ++i) {
+            DataRecorderChannel channel = channels[i];
+            RecordingPolicy policy = channel.getPolicy();
+            if (policy.isDense()) {
+                values[offset + i + 1] = channel.readBits();
+            } else {
+                if (policy.shouldPoll(time, lastPolled[i])) {
+                    lastPolled[i] = time;
+                    lastBits[i] = channel.readBits();
+                }
+                values[offset + i + 1] = lastBits[i];
+            }
+        }
+        metrics.sampled(++buffer.count);
+        if (buffer.count == capacity || flushRequested) handOff();
+    }
+
+    /**
+     * Hand the buffer being filled to the background thread, if the other buffer is available to be filled.
+     *
+     * @return {@code true} if the buffer was handed off, or {@code false} if the other buffer is still being written
+     */
+    private boolean handOff() {
+        Buffer next = spare.getAndSet(null);
+        if (next == null) return false;
+        Buffer full = filling;
+        if (flushRequested) {
+            flushRequested = false;
+            full.closeAfter = true;
+        }
+        filling = next;
+        metrics.swapped();
+        pending.set(full);
+        LockSupport.unpark(background);
+        return true;
+    }
+
+    /**
+     * Request that the records sampled so far are written and the files are closed. The buffer being filled is handed to the
+     * background thread with the next {@link #write(long) write}, after which the background thread closes its writer. The
+     * next write after that (if any) continues in a new file.
+     */
+    @Override
+    public void close() {
+        flushRequested = true;
+    }
+
+    /**
+     * Write all of the records sampled so far, close the files, and stop the background thread. This should only be called
+     * once the executor no longer calls {@link #write(long)}. If the background thread is stuck (e.g., on a full disk) and does
+     * not finish in time, it is logged and abandoned; it is a daemon thread, so it does not keep the JVM running.
+     */
+    @Override
+    public void stop() {
+        stopping = true;
+        LockSupport.unpark(background);
+        try {
+            background.join(stopTimeoutInMillis);
+        } catch (InterruptedException e) {
+            Thread.interrupted();
+        }
+        if (background.isAlive()) {
+            logger.error("The data writer " + writer + " did not finish writing within " + stopTimeoutInMillis
+                    + " ms, and was abandoned");
+        }
+    }
+
+    private void runInBackground() {
+        while (true) {
+            Buffer buffer = pending.getAndSet(null);
+            if (buffer != null) {
+                drain(buffer);
+                spare.set(buffer);
+            } else if (stopping) {
+                // Write the partially-filled buffer, and then finish ...
+                drain(filling);
+                try {
+                    if (writer instanceof Stoppable) {
+                        ((Stoppable) writer).stop();
+                    } else {
+                        writer.close();
+                    }
+                } catch (RuntimeException e) {
+                    logger.error(e, "Unable to close the data writer " + writer);
+                }
+                return;
+            } else {
+                LockSupport.parkNanos(this, PARK_TIME_IN_NANOS);
+            }
+        }
+    }
+
+    private void drain(Buffer buffer) {
+        int count = buffer.count;
+        try {
+            replayValues = buffer.values;
+            for (int r = 0; r != count; ++r) {
+                replayOffset = r * width;
+                writer.write(replayValues[replayOffset]);
+            }
+            if (buffer.closeAfter) writer.close();
+        } catch (RuntimeException e) {
+            logger.error(e, "Unable to write " + count + " buffered data records");
+        } finally {
+            buffer.count = 0;
+            buffer.closeAfter = false;
+            metrics.written(count);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return writer + " (buffered in 2 buffers of " + capacity + " records)";
+    }
+}
@@ -16,20 +16,27 @@
 
 package org.strongback;
 
-import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.strongback.annotation.ThreadSafe;
 import org.strongback.components.Clock;
 
 /**
- * A thread-safe and lock-free {@link EventRecorder} implementation that records all events to a thread-safe queue and then when
- * {@link #execute(long) executed} writes all enqueued events in the same order as received. The {@link AsyncEventRecorder} is
- * {@link Executable}, and is designed to be {@link Executor#register(Executable) registered} with an {@link Executor} to
- * automatically and periodically write the enqueued events to the given {@link EventWriter}.
+ * A thread-safe and lock-free {@link EventRecorder} implementation that records all events to a fixed-size ring of
+ * preallocated event slots and then when {@link #execute(long) executed} writes all enqueued events in the same order as
+ * received. The {@link AsyncEventRecorder} is {@link Executable}, and is designed to be
+ * {@link Executor#register(Executable) registered} with an {@link Executor} to automatically and periodically write the
+ * enqueued events to the given {@link EventWriter}.
+ * <p>
+ * Recording an event only claims the next slot in the ring and copies the time, type and value into it, so it never allocates
+ * (other than the first time each type of event is recorded). When the ring is full because events are recorded faster than
+ * they are written, new events are dropped and {@link #droppedCount() counted}, and the total number of dropped events is
+ * written as a "{@value #DROPPED_EVENT_TYPE}" event after the events that were already in the ring. The type of an event is written just
+ * before the first of its events, so dropped events never leave a type unwritten.
  *
  * @author Randall Hauch
  */
@@ -39,12 +46,29 @@ final class AsyncEventRecorder implements EventRecorder {
     private static final AtomicInteger TYPE_NUMBER_GENERATOR = new AtomicInteger(0);
     private static final EventType NEW_EVENT_TYPE = new EventType("NewEventType");
 
+    /**
+     * The default number of events that can be waiting to be written.
+     */
+    static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The type of the events that record the total number of dropped events.
+     */
+    static final String DROPPED_EVENT_TYPE = "Strongback dropped events";
+
     protected static final class EventType {
         private final int typeNumber;
         private final String typeName;
+        private final long timeInMillis;
+        private boolean written = false; // only used by the thread writing the events
 
         protected EventType(String typeName) {
+            this(typeName, 0L);
+        }
+
+        protected EventType(String typeName, long timeInMillis) {
             this.typeName = typeName;
+            this.timeInMillis = timeInMillis;
             this.typeNumber = TYPE_NUMBER_GENERATOR.incrementAndGet();
         }
 
@@ -55,6 +79,10 @@ final class AsyncEventRecorder implements EventRecorder {
         public int typeNumber() {
             return typeNumber;
         }
+
+        public long timeInMillis() {
+            return timeInMillis;
+        }
     }
 
     protected static interface EventWriter extends AutoCloseable {
@@ -91,82 +119,170 @@ final class AsyncEventRecorder implements EventRecorder {
     }
 
     private final ConcurrentMap<String, EventType> eventTypes = new ConcurrentHashMap<>();
-    private final QueuedWriter queuedWriter;
+    private final EventRing ring;
     private final Clock clock;
 
     protected AsyncEventRecorder(EventWriter writer, Clock clock) {
+        this(writer, clock, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a recorder that can hold the given number of events before they are written.
+     *
+     * @param writer the writer; may not be null
+     * @param clock the clock used to time the events; may not be null
+     * @param capacity the number of events that can be waiting to be written, which is rounded up to a power of 2
+     */
+    protected AsyncEventRecorder(EventWriter writer, Clock clock, int capacity) {
         this.eventTypes.put(NEW_EVENT_TYPE.typeName(), NEW_EVENT_TYPE);
         this.clock = clock;
-        this.queuedWriter = new QueuedWriter(writer);
+        this.ring = new EventRing(writer, capacity, eventType(DROPPED_EVENT_TYPE));
     }
 
-    protected int typeNumber(String eventType) {
+    protected EventType eventType(String eventType) {
         EventType info = eventTypes.get(eventType);
         if (info == null) {
-            info = new EventType(eventType);
+            // The type is written just before the first of its events ...
+            info = new EventType(eventType, clock.currentTimeInMillis());
             EventType prev = eventTypes.putIfAbsent(eventType, info);
-            if (prev == null) {
-                // We added a new type, so record it ...
-                queuedWriter.recordEventType(clock.currentTimeInMillis(), info);
+            if (prev != null) {
+                // Somebody already beat us to it ...
+                info = prev;
             }
-            // Otherwise, somebody already beat us to it so we don't have to
         }
-        return info.typeNumber();
+        return info;
+    }
+
+    protected int typeNumber(String eventType) {
+        return eventType(eventType).typeNumber();
     }
 
     @Override
     public void record(String eventType, String value) {
-        queuedWriter.recordEvent(clock.currentTimeInMillis(), typeNumber(eventType), value);
+        ring.add(clock.currentTimeInMillis(), eventType(eventType), 0, value, true);
     }
 
     @Override
     public void record(String eventType, int value) {
-        queuedWriter.recordEvent(clock.currentTimeInMillis(), typeNumber(eventType), value);
+        ring.add(clock.currentTimeInMillis(), eventType(eventType), value, null, false);
     }
 
     @Override
-    public void execute(long timeInMillis) {
-        queuedWriter.execute(timeInMillis);
+    public long droppedCount() {
+        return ring.droppedCount();
     }
 
-    @FunctionalInterface
-    protected static interface Event {
-        public void write(EventWriter writer);
+    @Override
+    public void execute(long timeInMillis) {
+        ring.execute(timeInMillis);
     }
 
-    protected static final class QueuedWriter implements EventWriter, Executable {
+    /**
+     * A bounded ring of preallocated event slots, with any number of threads adding events and a single thread writing them.
+     * Each slot has a sequence number: a slot can be filled by the producer that claims position {@code p} when its sequence
+     * is {@code p}, and can be written by the consumer when its sequence is {@code p + 1}, after which the consumer sets the
+     * sequence to {@code p + capacity} so the slot can be reused on the next lap around the ring.
+     */
+    protected static final class EventRing implements Executable {
         private final EventWriter writer;
-        private final Queue<Event> queue = new ConcurrentLinkedQueue<>();
-        private Event event = null;
+        private final EventType droppedType;
+        private final int mask;
+        private final AtomicLongArray sequences;
+        private final long[] times;
+        private final EventType[] types;
+        private final int[] intValues;
+        private final String[] stringValues;
+        private final boolean[] isString;
+        private final AtomicLong tail = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private long head = 0L;
+        private long droppedWritten = 0L;
 
-        public QueuedWriter(EventWriter writer) {
+        public EventRing(EventWriter writer, int capacity, EventType droppedType) {
             this.writer = writer;
+            this.droppedType = droppedType;
+            int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+            this.mask = size - 1;
+            this.sequences = new AtomicLongArray(size);
+            this.times = new long[size];
+            this.types = new EventType[size];
+            this.intValues = new int[size];
+            this.stringValues = new String[size];
+            this.isString = new boolean[size];
+            for (int i = 0; i != size; ++i) {
+                sequences.set(i, i);
+            }
         }
 
-        @Override
-        public void recordEvent(long timeInMillis, int eventType, int value) {
-            queue.offer(writer -> writer.recordEvent(timeInMillis, eventType, value));
-        }
-
-        @Override
-        public void recordEvent(long timeInMillis, int eventType, String value) {
-            queue.offer(writer -> writer.recordEvent(timeInMillis, eventType, value));
+        /**
+         * Add an event to the ring, or count it as dropped if the ring is full. This can be called by any thread.
+         *
+         * @param timeInMillis the time of the event
+         * @param type the type of the event; may not be null
+         * @param intValue the integer value, if the event does not have a string value
+         * @param stringValue the string value; may be null
+         * @param isString {@code true} if the event has a string value, or {@code false} if it has an integer value
+         * @return {@code true} if the event was added, or {@code false} if it was dropped
+         */
+        public boolean add(long timeInMillis, EventType type, int intValue, String stringValue, boolean isString) {
+            long position = tail.get();
+            int index;
+            while (true) {
+                index = (int) position & mask;
+                long available = sequences.get(index) - position;
+                if (available == 0L) {
+                    if (tail.compareAndSet(position, position + 1)) break;
+                    position = tail.get();
+                } else if (available < 0L) {
+                    // The consumer has not yet written the event added a full lap ago ...
+                    dropped.incrementAndGet();
+                    return false;
+                } else {
+                    // Another producer claimed this position ...
+                    position = tail.get();
+                }
+            }
+            times[index] = timeInMillis;
+            types[index] = type;
+            intValues[index] = intValue;
+            stringValues[index] = stringValue;
+            this.isString[index] = isString;
+            sequences.set(index, position + 1);
+            return true;
         }
 
-        @Override
-        public void recordEventType(long timeInMillis, EventType newType) {
-            queue.offer(writer -> writer.recordEventType(timeInMillis, newType));
+        public long droppedCount() {
+            return dropped.get();
         }
 
         @Override
-        public void close() {
-            queue.offer(writer -> writer.close());
+        public void execute(long timeInMillis) {
+            while (true) {
+                int index = (int) head & mask;
+                if (sequences.get(index) != head + 1) break; // empty, or the next event is still being added
+                write(times[index], types[index], intValues[index], stringValues[index], isString[index]);
+                types[index] = null;
+                stringValues[index] = null;
+                sequences.set(index, head + mask + 1);
+                ++head;
+            }
+            // Events are only dropped when the ring is full, so they were all recorded after the events written above ...
+            long droppedCount = dropped.get();
+            if (droppedCount != droppedWritten) {
+                droppedWritten = droppedCount;
+                write(timeInMillis, droppedType, (int) Math.min(Integer.MAX_VALUE, droppedCount), null, false);
+            }
         }
 
-        @Override
-        public void execute(long timeInMillis) {
-            while ((event = queue.poll()) != null) {
-                event.write(writer);
+        private void write(long timeInMillis, EventType type, int intValue, String stringValue, boolean isString) {
+            if (!type.written) {
+                writer.recordEventType(type.timeInMillis, type);
+                type.written = true;
+            }
+            if (isString) {
+                writer.recordEvent(timeInMillis, type.typeNumber(), stringValue);
+            } else {
+                writer.recordEvent(timeInMillis, type.typeNumber(), intValue);
             }
         }
     }
@@ -0,0 +1,90 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import java.util.Arrays;
+
+import org.strongback.annotation.NotThreadSafe;
+
+/**
+ * Applies the {@link RecordingPolicy recording policy} of each of a fixed set of channels, keeping the last value read and the
+ * last value recorded for each channel. Sampling never allocates, and this class should only be used by the thread running the
+ * data recorder.
+ */
+@NotThreadSafe
+final class ChannelSampler {
+
+    private final DataRecorderChannel[] channels;
+    private final RecordingPolicy[] policies;
+    private final long[] lastPolled;
+    private final long[] lastRecorded;
+    private final long[] bits;
+
+    ChannelSampler(DataRecorderChannel[] channels) {
+        this.channels = channels;
+        this.policies = new RecordingPolicy[channels.length];
+        for (int i = 0; i != channels.length; ++i) {
+            policies[i] = channels[i].getPolicy();
+        }
+        this.lastPolled = new long[channels.length];
+        this.lastRecorded = new long[channels.length];
+        this.bits = new long[channels.length];
+        Arrays.fill(lastPolled, Long.MIN_VALUE);
+        Arrays.fill(lastRecorded, Long.MIN_VALUE);
+    }
+
+    /**
+     * Read the given channel if its policy allows, and determine whether its value should be recorded.
+     *
+     * @param index the index of the channel
+     * @param timeInMillis the current time
+     * @return {@code true} if the value should be recorded, in which case it is available from {@link #bits(int)}
+     */
+    boolean sample(int index, long timeInMillis) {
+        RecordingPolicy policy = policies[index];
+        if (!policy.shouldPoll(timeInMillis, lastPolled[index])) return false;
+        lastPolled[index] = timeInMillis;
+        DataRecorderChannel channel = channels[index];
+        long value = channel.readBits();
+        DataRecorderChannel.Type type = channel.getType();
+        if (!policy.shouldRecord(timeInMillis, value, type.toDouble(value), bits[index], type.toDouble(bits[index]),
+                lastRecorded[index])) {
+            return false;
+        }
+        lastRecorded[index] = timeInMillis;
+        bits[index] = value;
+        return true;
+    }
+
+    /**
+     * Get the raw bits of the last recorded value of the given channel.
+     *
+     * @param index the index of the channel
+     * @return the bits of the last recorded value, or 0 if no value has been recorded
+     */
+    long bits(int index) {
+        return bits[index];
+    }
+
+    /**
+     * Forget the last recorded values, so that the next sample of every channel is recorded.
+     */
+    void reset() {
+        Arrays.fill(lastPolled, Long.MIN_VALUE);
+        Arrays.fill(lastRecorded, Long.MIN_VALUE);
+    }
+}
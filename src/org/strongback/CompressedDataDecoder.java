@@ -0,0 +1,277 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.strongback.annotation.NotThreadSafe;
+
+/**
+ * A reader of the files written by the {@link Strongback.Configurator#recordCompressedDataToFile(String, long) compressed data
+ * recorder}. The decoder steps through the records one at a time with {@link #next()}, and the values of the current record
+ * can then be read by channel index, where the time is always channel 0.
+ * <p>
+ * Only one block of records is decoded at a time, so a decoder uses the same small amount of memory regardless of the size of
+ * the file, and it does not allocate while stepping through the records.
+ *
+ * <pre>
+ * CompressedDataDecoder decoder = CompressedDataDecoder.open(Paths.get("robot-data-1.dat"));
+ * while (decoder.next()) {
+ *     long time = decoder.getLong(0);
+ *     double heading = decoder.getDouble(3);
+ *     ...
+ * }
+ * </pre>
+ */
+@NotThreadSafe
+public final class CompressedDataDecoder {
+
+    /**
+     * Open and memory-map the given compressed data file.
+     *
+     * @param file the path to the file; may not be null
+     * @return the decoder positioned before the first record; never null
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a compressed data file
+     */
+    public static CompressedDataDecoder open(Path file) throws IOException {
+        if (file == null) throw new IllegalArgumentException("The file may not be null");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new CompressedDataDecoder(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final int dataStart;
+    private final String[] names;
+    private final DataRecorderChannel.Type[] types;
+    private final long[][] values;
+    private final int[] lengths;
+    private int recordsInBlock = 0;
+    private int record = 0;
+    private int blockPosition = -1;
+    private boolean done = false;
+
+    /**
+     * Create a decoder that reads the given compressed data.
+     *
+     * @param buffer the buffer containing the entire content of a compressed data file; may not be null
+     * @throws IllegalArgumentException if the buffer does not contain compressed data
+     */
+    public CompressedDataDecoder(ByteBuffer buffer) {
+        if (buffer == null) throw new IllegalArgumentException("The buffer may not be null");
+        this.buffer = buffer.duplicate();
+        if (!CompressedFileDataWriter.HEADER.equals(readString())) {
+            throw new IllegalArgumentException("The data is not a compressed data record");
+        }
+        int count = this.buffer.getInt();
+        this.names = new String[count];
+        this.types = new DataRecorderChannel.Type[count];
+        for (int c = 0; c != count; ++c) {
+            this.buffer.getInt(); // width
+            types[c] = DataRecorderChannel.Type.forCode((char) this.buffer.getInt());
+        }
+        for (int c = 0; c != count; ++c) {
+            names[c] = readString();
+        }
+        int blockSize = this.buffer.getInt();
+        this.values = new long[count][blockSize];
+        this.lengths = new int[count];
+        this.dataStart = this.buffer.position();
+    }
+
+    private String readString() {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Get the number of channels, including the time channel.
+     *
+     * @return the number of channels; always positive
+     */
+    public int channelCount() {
+        return names.length;
+    }
+
+    /**
+     * Get the name of the given channel.
+     *
+     * @param channel the index of the channel, where 0 is the time channel
+     * @return the name; never null
+     */
+    public String channelName(int channel) {
+        return names[channel];
+    }
+
+    /**
+     * Get the type of the values in the given channel.
+     *
+     * @param channel the index of the channel, where 0 is the time channel
+     * @return the type; never null
+     */
+    public DataRecorderChannel.Type channelType(int channel) {
+        return types[channel];
+    }
+
+    /**
+     * Advance to the next record.
+     *
+     * @return {@code true} if there is another record, or {@code false} if all records have been read
+     */
+    public boolean next() {
+        if (++record < recordsInBlock) return true;
+        if (done || buffer.remaining() < Integer.BYTES) {
+            done = true;
+            return false;
+        }
+        int position = buffer.position();
+        recordsInBlock = buffer.getInt();
+        if (recordsInBlock <= 0) {
+            // The terminator or the unused remainder of the file ...
+            done = true;
+            recordsInBlock = 0;
+            return false;
+        }
+        for (int c = 0; c != lengths.length; ++c) {
+            lengths[c] = buffer.getInt();
+        }
+        for (int c = 0; c != lengths.length; ++c) {
+            decodeColumn(values[c], recordsInBlock);
+        }
+        record = 0;
+        blockPosition = position;
+        return true;
+    }
+
+    /**
+     * Get the position in the buffer of the block that contains the current record.
+     *
+     * @return the position of the current block, or -1 if {@link #next()} has not yet been called
+     */
+    int blockPosition() {
+        return blockPosition;
+    }
+
+    /**
+     * Get whether the current record is the first in its block.
+     *
+     * @return {@code true} if the current record is the first in its block
+     */
+    boolean isFirstInBlock() {
+        return record == 0;
+    }
+
+    /**
+     * Position this decoder before the first record of the block at the given position, or before the first record in the
+     * file if the position is negative.
+     *
+     * @param position a position previously returned by {@link #blockPosition()}, or -1
+     */
+    void seekBlock(int position) {
+        buffer.position(position < 0 ? dataStart : position);
+        recordsInBlock = 0;
+        record = 0;
+        blockPosition = -1;
+        done = false;
+    }
+
+    private void decodeColumn(long[] column, int count) {
+        long previous = 0L;
+        int i = 0;
+        while (i < count) {
+            long zigzag = readVarint();
+            if (zigzag == 0L) {
+                // A run of unchanged values ...
+                long run = 1L + readVarint();
+                for (long r = 0; r != run && i < count; ++r) {
+                    column[i++] = previous;
+                }
+            } else {
+                previous += (zigzag >>> 1) ^ -(zigzag & 1L);
+                column[i++] = previous;
+            }
+        }
+    }
+
+    private long readVarint() {
+        long value = 0L;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Get the value of the given channel in the current record as a long. Float and double values are truncated, and boolean
+     * values are 1 or 0.
+     *
+     * @param channel the index of the channel, where 0 is the time channel
+     * @return the value
+     */
+    public long getLong(int channel) {
+        long bits = values[channel][record];
+        switch (types[channel]) {
+            case FLOAT:
+                return (long) Float.intBitsToFloat((int) bits);
+            case DOUBLE:
+                return (long) Double.longBitsToDouble(bits);
+            default:
+                return bits;
+        }
+    }
+
+    /**
+     * Get the value of the given channel in the current record as a double. Boolean values are 1.0 or 0.0.
+     *
+     * @param channel the index of the channel, where 0 is the time channel
+     * @return the value
+     */
+    public double getDouble(int channel) {
+        long bits = values[channel][record];
+        switch (types[channel]) {
+            case FLOAT:
+                return Float.intBitsToFloat((int) bits);
+            case DOUBLE:
+                return Double.longBitsToDouble(bits);
+            default:
+                return bits;
+        }
+    }
+
+    /**
+     * Get the value of the given channel in the current record as a boolean, which is {@code true} for any non-zero value.
+     *
+     * @param channel the index of the channel, where 0 is the time channel
+     * @return the value
+     */
+    public boolean getBoolean(int channel) {
+        return getDouble(channel) != 0.0;
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.strongback.annotation.NotThreadSafe;
+
+/**
+ * A {@link DataWriter} that compresses the recorded values by storing each channel as a column of differences between
+ * consecutive samples. Most channels change slowly, so most differences are small and take only one byte.
+ * <p>
+ * Records are buffered in memory in blocks of up to {@value #BLOCK_SIZE} records. Each value is encoded as soon as it is
+ * sampled: the {@link DataRecorderChannel#readBits() bits} of the value are subtracted from the bits of the channel's previous
+ * value in the block, the difference is zig-zag encoded so that small negative differences are also small positive numbers,
+ * and the result is written as a variable-length integer (7 bits per byte, with the high bit set on all but the last byte).
+ * A run of unchanged values is written as a single zero followed by the number of additional unchanged values, also as a
+ * variable-length integer, so channels that rarely change take almost no space. The first value in each block is encoded
+ * against zero, so each block can be decoded on its own. When a block is full it is copied to the memory-mapped file as a
+ * whole, and a new file is only started when the block's actual encoded length does not fit in the rest of the current file.
+ * A block is finished early, with fewer records, if another record might make it too long to fit even in an empty file.
+ * <p>
+ * A file starts with the same header as {@link FileDataWriter} files (but with "{@value #HEADER}" as the first string),
+ * followed by the maximum number of records in a block. Each block is the number of records in the block, the number of bytes
+ * in each column (starting with the time column), and then the bytes of each column. The file ends with a block size of -1.
+ * Use {@link CompressedDataDecoder} to read these files.
+ * <p>
+ * Channels that are not {@link RecordingPolicy#isDense() recorded every time} repeat their last recorded value until their
+ * {@link RecordingPolicy policy} records a new one, so they are only read as often as the policy allows and each unchanged
+ * value adds nothing to a run of unchanged values.
+ * <p>
+ * Encoding never allocates, and this writer should only be used by the executor's thread.
+ *
+ * @see Strongback.Configurator#recordCompressedDataToFile(String, long)
+ * @see CompressedDataDecoder
+ */
+@NotThreadSafe
+final class CompressedFileDataWriter implements DataWriter {
+
+    /**
+     * The string at the start of every compressed data file.
+     */
+    static final String HEADER = "compressed-data-record";
+
+    /**
+     * The maximum number of records in each block.
+     */
+    static final int BLOCK_SIZE = 256;
+
+    private static final int MAX_VARINT_BYTES = 10;
+
+    private final Supplier<String> filenameGenerator;
+    private final Iterable<DataRecorderChannel> channels;
+    private final long fileSize;
+    private DataRecorderChannel[] recorded = new DataRecorderChannel[0];
+    private boolean[] dense = new boolean[0];
+    private ChannelSampler sampler;
+    private byte[][] columns = new byte[0][];
+    private int[] lengths = new int[0];
+    private long[] previous = new long[0];
+    private int[] unchanged = new int[0];
+    private int records = 0;
+    private int blockCapacity = 0;
+    private MappedFileDataWriter writer;
+
+    CompressedFileDataWriter(Iterable<DataRecorderChannel> channels, Supplier<String> filenameGenerator, long fileSize) {
+        this.filenameGenerator = filenameGenerator;
+        this.channels = channels;
+        this.fileSize = fileSize;
+    }
+
+    @Override
+    public void write(long time) {
+        if (writer == null) open();
+        if (records != 0 && !recordFits()) flushBlock();
+        encode(0, time);
+        for (int i = 0; i != recorded.length; ++i) {
+            if (dense[i]) {
+                encode(i + 1, recorded[i].readBits());
+            } else {
+                // Repeat the last recorded value when the policy says not to record, which costs almost nothing ...
+                sampler.sample(i, time);
+                encode(i + 1, sampler.bits(i));
+            }
+        }
+        if (++records == BLOCK_SIZE) flushBlock();
+    }
+
+    private void encode(int column, long bits) {
+        long delta = bits - previous[column];
+        if (delta == 0L) {
+            ++unchanged[column];
+            return;
+        }
+        previous[column] = bits;
+        endRun(column);
+        writeVarint(column, (delta << 1) ^ (delta >> 63));
+    }
+
+    private void endRun(int column) {
+        int run = unchanged[column];
+        if (run != 0) {
+            writeVarint(column, 0L);
+            writeVarint(column, run - 1);
+            unchanged[column] = 0;
+        }
+    }
+
+    private void writeVarint(int column, long value) {
+        byte[] bytes = columns[column];
+        int length = lengths[column];
+        while ((value & ~0x7FL) != 0L) {
+            bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[length++] = (byte) value;
+        lengths[column] = length;
+    }
+
+    private void flushBlock() {
+        if (records == 0) return;
+        for (int c = 0; c != columns.length; ++c) {
+            endRun(c);
+        }
+        int blockLength = Integer.BYTES * (1 + columns.length);
+        for (int c = 0; c != columns.length; ++c) {
+            blockLength += lengths[c];
+        }
+        if (writer.remaining() < blockLength + Integer.BYTES) {
+            // The block doesn't fit in what is left of the file, so finish the file and start another ...
+            writer.close();
+            open();
+        }
+        writer.write(records);
+        for (int c = 0; c != columns.length; ++c) {
+            writer.write(lengths[c]);
+        }
+        for (int c = 0; c != columns.length; ++c) {
+            writer.write(columns[c], 0, lengths[c]);
+            lengths[c] = 0;
+            previous[c] = 0L;
+        }
+        records = 0;
+    }
+
+    /**
+     * Determine whether one more record is certain to fit in the current block without making the block too long for an empty
+     * file. Encoding a record adds at most {@value #MAX_VARINT_BYTES} bytes to each column, including the bytes of any run of
+     * unchanged values it ends.
+     *
+     * @return {@code true} if another record fits, or {@code false} if the block should be finished first
+     */
+    private boolean recordFits() {
+        int maxRecordLength = columns.length * MAX_VARINT_BYTES;
+        int blockLength = Integer.BYTES * (1 + columns.length);
+        if (blockLength + (records + 1) * maxRecordLength <= blockCapacity) return true;
+        // Only add up the actual length when the worst case might not fit ...
+        for (int c = 0; c != columns.length; ++c) {
+            blockLength += lengths[c] + runLength(unchanged[c]);
+        }
+        return blockLength + maxRecordLength <= blockCapacity;
+    }
+
+    private static int runLength(int run) {
+        if (run == 0) return 0;
+        // A zero followed by the number of additional unchanged values, which is always less than a block ...
+        return run - 1 < 0x80 ? 2 : 3;
+    }
+
+    private void open() {
+        try {
+            writer = new MappedFileDataWriter(filenameGenerator.get(), fileSize);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (records == 0) {
+            // Only pick up newly-registered channels between blocks ...
+            List<DataRecorderChannel> list = new ArrayList<>();
+            channels.forEach(list::add);
+            recorded = list.toArray(new DataRecorderChannel[list.size()]);
+            dense = new boolean[recorded.length];
+            for (int i = 0; i != recorded.length; ++i) {
+                dense[i] = recorded[i].getPolicy().isDense();
+            }
+            sampler = new ChannelSampler(recorded);
+            columns = new byte[recorded.length + 1][BLOCK_SIZE * MAX_VARINT_BYTES];
+            lengths = new int[recorded.length + 1];
+            previous = new long[recorded.length + 1];
+            unchanged = new int[recorded.length + 1];
+        }
+        try {
+            writer.writeHeader(HEADER, recorded);
+            writer.write(BLOCK_SIZE);
+        } catch (BufferOverflowException e) {
+            // Handled below ...
+        }
+        // Every block must fit in an empty file, followed by the terminator ...
+        blockCapacity = writer.remaining() - Integer.BYTES;
+        if (blockCapacity < Integer.BYTES * (2 + recorded.length) + (recorded.length + 1) * MAX_VARINT_BYTES) {
+            writer.release();
+            writer = null;
+            throw new IllegalStateException("The compressed data files of " + fileSize + " bytes are too small for "
+                    + recorded.length + " channels");
+        }
+    }
+
+    @Override
+    public void close() {
+        if (writer != null) {
+            try {
+                flushBlock();
+                writer.close();
+            } finally {
+                writer = null;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return filenameGenerator + " (compressed, sized at " + fileSize + " bytes)";
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import org.strongback.annotation.ThreadSafe;
+
+/**
+ * The metrics of the buffers used by the {@link Strongback#dataRecorder() data recorder} when it
+ * {@link Strongback.Configurator#bufferRecordedData(int) samples into memory} and writes to disk on a background thread. The
+ * executor thread fills one buffer while the background thread writes the other, so the buffers overflow only when the
+ * background thread takes longer to write a full buffer than the executor takes to fill one. Records sampled while both
+ * buffers are full are dropped and {@link #droppedCount() counted}.
+ * <p>
+ * Updating the metrics never allocates and never blocks, and any thread can read them at any time. The metrics are also a
+ * {@link DataRecordable}, so they can be {@link DataRecorder#register(String, DataRecordable) registered} with the data
+ * recorder to record the occupancy of the buffers and the number of dropped records.
+ *
+ * @see Strongback#dataBufferMetrics()
+ */
+@ThreadSafe
+public final class DataBufferMetrics implements DataRecordable {
+
+    private volatile int capacity;
+    private volatile int occupancy;
+    private volatile int peakOccupancy;
+    private volatile long sampled;
+    private volatile long dropped;
+    private volatile long written;
+    private volatile long buffersWritten;
+
+    DataBufferMetrics() {
+    }
+
+    /**
+     * Set the capacity of each buffer and reset the other metrics. This should only be called before the buffers are used.
+     *
+     * @param capacity the maximum number of records in each buffer
+     */
+    void reset(int capacity) {
+        this.capacity = capacity;
+        this.occupancy = 0;
+        this.peakOccupancy = 0;
+        this.sampled = 0L;
+        this.dropped = 0L;
+        this.written = 0L;
+        this.buffersWritten = 0L;
+    }
+
+    /**
+     * Record that a record was sampled into the buffer being filled. This should only be called by the executor thread.
+     *
+     * @param occupancy the number of records now in the buffer being filled
+     */
+    void sampled(int occupancy) {
+        this.occupancy = occupancy;
+        if (occupancy > peakOccupancy) peakOccupancy = occupancy;
+        ++sampled;
+    }
+
+    /**
+     * Record that a record was dropped because both buffers were full. This should only be called by the executor thread.
+     */
+    void dropped() {
+        ++dropped;
+    }
+
+    /**
+     * Record that a buffer was handed to the background thread, and that a new buffer is being filled. This should only be
+     * called by the executor thread.
+     */
+    void swapped() {
+        this.occupancy = 0;
+    }
+
+    /**
+     * Record that a buffer was written. This should only be called by the background thread.
+     *
+     * @param records the number of records in the buffer
+     */
+    void written(int records) {
+        written += records;
+        ++buffersWritten;
+    }
+
+    /**
+     * Get the maximum number of records in each of the two buffers.
+     *
+     * @return the capacity of each buffer, or 0 if the data recorder is not buffered
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of records in the buffer currently being filled by the executor thread.
+     *
+     * @return the number of records
+     */
+    public int occupancy() {
+        return occupancy;
+    }
+
+    /**
+     * Get the largest number of records that have been in the buffer being filled, which reaches the {@link #capacity()
+     * capacity} every time a buffer fills.
+     *
+     * @return the number of records
+     */
+    public int peakOccupancy() {
+        return peakOccupancy;
+    }
+
+    /**
+     * Get the number of records that have been sampled into the buffers.
+     *
+     * @return the number of records
+     */
+    public long sampledCount() {
+        return sampled;
+    }
+
+    /**
+     * Get the number of records that were dropped because both buffers were full.
+     *
+     * @return the number of dropped records
+     */
+    public long droppedCount() {
+        return dropped;
+    }
+
+    /**
+     * Get the number of records that have been written by the background thread.
+     *
+     * @return the number of records
+     */
+    public long writtenCount() {
+        return written;
+    }
+
+    /**
+     * Get the number of buffers that have been written by the background thread.
+     *
+     * @return the number of buffers
+     */
+    public long buffersWritten() {
+        return buffersWritten;
+    }
+
+    /**
+     * Get the number of records that have been sampled but not yet written, including those in the buffer being filled.
+     *
+     * @return the number of records waiting to be written
+     */
+    public long backlog() {
+        return Math.max(0L, sampled - written);
+    }
+
+    @Override
+    public void registerWith(DataRecorder recorder, String name) {
+        recorder.register(name + " occupancy", this::occupancy);
+        recorder.register(name + " backlog", () -> (int) backlog());
+        recorder.register(name + " dropped", () -> (int) droppedCount());
+    }
+
+    @Override
+    public String toString() {
+        return "capacity=" + capacity + ", occupancy=" + occupancy + ", peak=" + peakOccupancy + ", sampled=" + sampled
+                + ", written=" + written + ", dropped=" + dropped;
+    }
+}
@@ -0,0 +1,612 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.strongback.annotation.NotThreadSafe;
+
+/**
+ * A reader of the files written by the {@link Strongback#dataRecorder() data recorder}, with either
+ * {@link Strongback.Configurator#recordDataToFile(String) fixed-width} or
+ * {@link Strongback.Configurator#recordCompressedDataToFile(String, long) compressed} records. Files where some channels
+ * have a {@link RecordingPolicy} that does not record every value hold only the changes of those channels, and a cursor
+ * repeats the last recorded value of such a channel until it changes. The file is memory-mapped, and
+ * {@link Cursor cursors} read the values directly from the mapped file without copying the records.
+ * <p>
+ * Opening a file only reads its header. The records of a fixed-width file all have the same length and are in time order, so
+ * a cursor can {@link #cursorAt(long) start at any time} by binary searching the mapped records in place. Compressed and
+ * sparse records have different lengths, so the first time a cursor or the {@link #recordCount() record count} of such a file
+ * is needed the reader reads the file once and builds a sparse index of the time of each block in a compressed file, or of
+ * every {@value #INDEX_INTERVAL}th record together with the values of the changed-only channels in a sparse file. Later
+ * cursors only read the records between the nearest earlier index entry and their start time. Apart from this small index,
+ * the memory used by a reader and its cursors does not depend on the size of the file, so even large recordings can be
+ * {@link #exportCsv(long, long, Writer) exported} as a stream.
+ *
+ * <pre>
+ * DataRecordReader reader = DataRecordReader.open(Paths.get("robot-data-1.dat"));
+ * DataRecordReader.Cursor cursor = reader.cursorAt(30000);
+ * while (cursor.next() &amp;&amp; cursor.time() &lt; 45000) {
+ *     double heading = cursor.getDouble(3);
+ *     ...
+ * }
+ * </pre>
+ */
+@NotThreadSafe
+public final class DataRecordReader {
+
+    /**
+     * The number of sparse records between the entries in the time index.
+     */
+    static final int INDEX_INTERVAL = 256;
+
+    /**
+     * A position within a recording. A new cursor is positioned before its first record, so {@link #next()} must be called
+     * before the values are read. Channel 0 is always the time.
+     */
+    public static interface Cursor {
+        /**
+         * Advance to the next record.
+         *
+         * @return {@code true} if there is another record, or {@code false} if all records have been read
+         */
+        boolean next();
+
+        /**
+         * Get the time of the current record.
+         *
+         * @return the time in milliseconds
+         */
+        default long time() {
+            return getLong(0);
+        }
+
+        /**
+         * Get the value of the given channel in the current record as a long. Float and double values are truncated, and
+         * boolean values are 1 or 0.
+         *
+         * @param channel the index of the channel, where 0 is the time channel
+         * @return the value
+         */
+        long getLong(int channel);
+
+        /**
+         * Get the value of the given channel in the current record as a double. Boolean values are 1.0 or 0.0.
+         *
+         * @param channel the index of the channel, where 0 is the time channel
+         * @return the value
+         */
+        double getDouble(int channel);
+
+        /**
+         * Get the value of the given channel in the current record as a boolean, which is {@code true} for any non-zero value.
+         *
+         * @param channel the index of the channel, where 0 is the time channel
+         * @return the value
+         */
+        default boolean getBoolean(int channel) {
+            return getDouble(channel) != 0.0;
+        }
+    }
+
+    /**
+     * Open and memory-map the given data file.
+     *
+     * @param file the path to the file; may not be null
+     * @return the reader; never null
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a data file
+     */
+    public static DataRecordReader open(Path file) throws IOException {
+        if (file == null) throw new IllegalArgumentException("The file may not be null");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new DataRecordReader(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final boolean compressed;
+    private final boolean sparse;
+    private final String[] names;
+    private final DataRecorderChannel.Type[] types;
+    private final boolean[] dense;
+    private final int[] offsets;
+    private final int recordLength;
+    private final int dataStart;
+    private int dataEnd;
+    private long recordCount;
+    private long[] indexTimes = new long[16];
+    private int[] indexPositions = new int[16];
+    private long[][] indexValues = new long[16][];
+    private int indexSize = 0;
+    private boolean indexed = false;
+
+    /**
+     * Create a reader of the given data.
+     *
+     * @param buffer the buffer containing the entire content of a data file; may not be null
+     * @throws IllegalArgumentException if the buffer does not contain a data file
+     */
+    public DataRecordReader(ByteBuffer buffer) {
+        if (buffer == null) throw new IllegalArgumentException("The buffer may not be null");
+        this.buffer = buffer.slice();
+        String header = readString();
+        if (CompressedFileDataWriter.HEADER.equals(header)) {
+            compressed = true;
+            sparse = false;
+        } else if (MappedFileDataWriter.HEADER.equals(header)) {
+            compressed = false;
+            sparse = false;
+        } else if (MappedFileDataWriter.SPARSE_HEADER.equals(header)) {
+            compressed = false;
+            sparse = true;
+        } else {
+            throw new IllegalArgumentException("The data is not a data record");
+        }
+        int count = this.buffer.getInt();
+        this.names = new String[count];
+        this.types = new DataRecorderChannel.Type[count];
+        this.dense = new boolean[count];
+        this.offsets = new int[count];
+        int[] widths = new int[count];
+        for (int c = 0; c != count; ++c) {
+            widths[c] = this.buffer.getInt();
+            types[c] = DataRecorderChannel.Type.forCode((char) this.buffer.getInt());
+        }
+        for (int c = 0; c != count; ++c) {
+            names[c] = readString();
+        }
+        Arrays.fill(dense, true);
+        if (sparse) {
+            // The time is always dense, and is followed by a flag for each of the other channels ...
+            for (int c = 1; c != count; ++c) {
+                dense[c] = this.buffer.get() != 0;
+            }
+        }
+        // Only the dense channels have a fixed offset within each record ...
+        int length = 0;
+        for (int c = 0; c != count; ++c) {
+            offsets[c] = length;
+            if (dense[c]) length += widths[c];
+        }
+        this.recordLength = length;
+        this.dataStart = this.buffer.position();
+        if (!compressed && !sparse) findFixedWidthEnd();
+    }
+
+    private String readString() {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    private void findFixedWidthEnd() {
+        // The records end at the terminator or at the unused (zeroed) remainder of the file, and their times never decrease,
+        // so binary search for the first record that isn't in use ...
+        long low = 0L;
+        long high = (buffer.limit() - dataStart) / recordLength;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (isRecord(middle)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        recordCount = low;
+        dataEnd = dataStart + (int) low * recordLength;
+    }
+
+    private boolean isRecord(long n) {
+        int position = dataStart + (int) n * recordLength;
+        int time = buffer.getInt(position);
+        int firstTime = buffer.getInt(dataStart);
+        if (time == 0xFFFFFFFF || firstTime == 0xFFFFFFFF || time < firstTime) return false;
+        if (n == 0 || time != 0) return true;
+        // A record of zeros after the first one is part of the unused remainder of the file ...
+        for (int i = Integer.BYTES; i < recordLength; ++i) {
+            if (buffer.get(position + i) != 0) return true;
+        }
+        return false;
+    }
+
+    private int timeOfRecord(long n) {
+        return buffer.getInt(dataStart + (int) n * recordLength);
+    }
+
+    private void index() {
+        if (indexed) return;
+        indexed = true;
+        if (compressed) {
+            indexCompressed();
+        } else {
+            indexSparse();
+        }
+    }
+
+    private void indexSparse() {
+        // Each index entry also holds the values of the sparse channels before its record, so a cursor can start there ...
+        long[] values = new long[names.length];
+        long previous = Long.MIN_VALUE;
+        int position = dataStart;
+        long n = 0;
+        while (position + recordLength + Short.BYTES <= buffer.limit()) {
+            int time = buffer.getInt(position);
+            if (time == 0xFFFFFFFF || time < previous) break;
+            if (n % INDEX_INTERVAL == 0) addToIndex(time, position, values.clone());
+            int next = readSparseEntries(position, values);
+            if (next < 0) break;
+            previous = time;
+            position = next;
+            ++n;
+        }
+        recordCount = n;
+        dataEnd = position;
+    }
+
+    /**
+     * Read the sparse entries of the record at the given position into the given values.
+     *
+     * @param position the position of the record
+     * @param values the raw bits of the current value of each channel; updated with the entries in the record
+     * @return the position of the following record, or -1 if the record is incomplete or invalid
+     */
+    private int readSparseEntries(int position, long[] values) {
+        int p = position + recordLength;
+        int count = buffer.getShort(p);
+        p += Short.BYTES;
+        for (int e = 0; e < count; ++e) {
+            if (p + Short.BYTES > buffer.limit()) return -1;
+            int c = buffer.getShort(p);
+            p += Short.BYTES;
+            if (c <= 0 || c >= names.length || dense[c] || p + types[c].width() > buffer.limit()) return -1;
+            switch (types[c]) {
+                case INT:
+                case FLOAT:
+                    values[c] = buffer.getInt(p);
+                    break;
+                case LONG:
+                case DOUBLE:
+                    values[c] = buffer.getLong(p);
+                    break;
+                case BOOLEAN:
+                    values[c] = buffer.get(p);
+                    break;
+            }
+            p += types[c].width();
+        }
+        return p;
+    }
+
+    private void indexCompressed() {
+        CompressedDataDecoder decoder = new CompressedDataDecoder(whole());
+        long n = 0;
+        while (decoder.next()) {
+            if (decoder.isFirstInBlock()) addToIndex(decoder.getLong(0), decoder.blockPosition(), null);
+            ++n;
+        }
+        recordCount = n;
+    }
+
+    private ByteBuffer whole() {
+        ByteBuffer whole = buffer.duplicate();
+        whole.position(0);
+        return whole;
+    }
+
+    private void addToIndex(long time, int position, long[] values) {
+        if (indexSize == indexTimes.length) {
+            indexTimes = Arrays.copyOf(indexTimes, indexSize * 2);
+            indexPositions = Arrays.copyOf(indexPositions, indexSize * 2);
+            indexValues = Arrays.copyOf(indexValues, indexSize * 2);
+        }
+        indexTimes[indexSize] = time;
+        indexPositions[indexSize] = position;
+        indexValues[indexSize] = values;
+        ++indexSize;
+    }
+
+    /**
+     * Get the number of channels, including the time channel.
+     *
+     * @return the number of channels; always positive
+     */
+    public int channelCount() {
+        return names.length;
+    }
+
+    /**
+     * Get the name of the given channel.
+     *
+     * @param channel the index of the channel, where 0 is the time channel
+     * @return the name; never null
+     */
+    public String channelName(int channel) {
+        return names[channel];
+    }
+
+    /**
+     * Get the type of the values in the given channel.
+     *
+     * @param channel the index of the channel, where 0 is the time channel
+     * @return the type; never null
+     */
+    public DataRecorderChannel.Type channelType(int channel) {
+        return types[channel];
+    }
+
+    /**
+     * Get whether the file contains compressed records.
+     *
+     * @return {@code true} if the records are compressed, or {@code false} if they are fixed-width
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Get the number of records in the file.
+     *
+     * @return the number of records
+     */
+    public long recordCount() {
+        if (compressed || sparse) index();
+        return recordCount;
+    }
+
+    /**
+     * Create a cursor positioned before the first record.
+     *
+     * @return the new cursor; never null
+     */
+    public Cursor cursor() {
+        return cursorAt(Long.MIN_VALUE);
+    }
+
+    /**
+     * Create a cursor positioned so that the first call to {@link Cursor#next()} moves to the first record at or after the
+     * given time. In a fixed-width file the record is found by binary search, and otherwise only the records between the
+     * nearest earlier {@link DataRecordReader index} entry and the given time are read.
+     *
+     * @param timeInMillis the time in milliseconds
+     * @return the new cursor; never null
+     */
+    public Cursor cursorAt(long timeInMillis) {
+        if (!compressed && !sparse) {
+            // Find the first record at or after the time ...
+            long low = 0L;
+            long high = recordCount;
+            while (low < high) {
+                long middle = (low + high) >>> 1;
+                if (timeOfRecord(middle) < timeInMillis) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return new RecordCursor(dataStart + (int) low * recordLength, null);
+        }
+        index();
+        // Find the last index entry strictly before the time, since the records just before an entry with the same time as
+        // the one wanted may have that time too ...
+        int low = 0;
+        int high = indexSize;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (indexTimes[middle] < timeInMillis) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int entry = low - 1;
+        int position = entry < 0 ? -1 : indexPositions[entry];
+        if (compressed) {
+            CompressedCursor cursor = new CompressedCursor(position);
+            cursor.skipBefore(timeInMillis);
+            return cursor;
+        }
+        long[] values = entry < 0 ? new long[names.length] : indexValues[entry].clone();
+        RecordCursor cursor = new RecordCursor(position < 0 ? dataStart : position, values);
+        cursor.skipBefore(timeInMillis);
+        return cursor;
+    }
+
+    private final class RecordCursor implements Cursor {
+        private final long[] values;
+        private int position = -1;
+        private int nextPosition;
+
+        private RecordCursor(int start, long[] values) {
+            this.nextPosition = start;
+            this.values = values;
+        }
+
+        void skipBefore(long timeInMillis) {
+            while (nextPosition < dataEnd && buffer.getInt(nextPosition) < timeInMillis) {
+                next();
+            }
+        }
+
+        @Override
+        public boolean next() {
+            if (nextPosition >= dataEnd) return false;
+            position = nextPosition;
+            nextPosition = sparse ? readSparseEntries(position, values) : position + recordLength;
+            return true;
+        }
+
+        @Override
+        public long getLong(int channel) {
+            if (!dense[channel]) return types[channel].toLong(values[channel]);
+            int offset = position + offsets[channel];
+            switch (types[channel]) {
+                case INT:
+                    return buffer.getInt(offset);
+                case LONG:
+                    return buffer.getLong(offset);
+                case FLOAT:
+                    return (long) buffer.getFloat(offset);
+                case DOUBLE:
+                    return (long) buffer.getDouble(offset);
+                case BOOLEAN:
+                    return buffer.get(offset) != 0 ? 1L : 0L;
+            }
+            throw new IllegalStateException("Unknown channel type " + types[channel]);
+        }
+
+        @Override
+        public double getDouble(int channel) {
+            if (!dense[channel]) return types[channel].toDouble(values[channel]);
+            int offset = position + offsets[channel];
+            switch (types[channel]) {
+                case FLOAT:
+                    return buffer.getFloat(offset);
+                case DOUBLE:
+                    return buffer.getDouble(offset);
+                default:
+                    return getLong(channel);
+            }
+        }
+    }
+
+    private final class CompressedCursor implements Cursor {
+        private final CompressedDataDecoder decoder = new CompressedDataDecoder(whole());
+        private boolean pending = false;
+
+        private CompressedCursor(int blockPosition) {
+            decoder.seekBlock(blockPosition);
+        }
+
+        void skipBefore(long timeInMillis) {
+            while (decoder.next()) {
+                if (decoder.getLong(0) >= timeInMillis) {
+                    // Leave this record to be returned by the first call to next() ...
+                    pending = true;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean next() {
+            if (pending) {
+                pending = false;
+                return true;
+            }
+            return decoder.next();
+        }
+
+        @Override
+        public long getLong(int channel) {
+            return decoder.getLong(channel);
+        }
+
+        @Override
+        public double getDouble(int channel) {
+            return decoder.getDouble(channel);
+        }
+    }
+
+    /**
+     * Write the records in the given time window as CSV, with a header row of the channel names. Times are in milliseconds,
+     * and boolean values are written as 1 or 0.
+     *
+     * @param startTimeInMillis the time of the first record to be written
+     * @param endTimeInMillis the time after the last record to be written
+     * @param out the writer; may not be null
+     * @throws IOException if there is a problem writing the CSV
+     */
+    public void exportCsv(long startTimeInMillis, long endTimeInMillis, Writer out) throws IOException {
+        export(startTimeInMillis, endTimeInMillis, out, false);
+    }
+
+    /**
+     * Write the records in the given time window in the CSV format that is graphed by dygraph (the same format written by the
+     * robot's graph log), where the first column is named "date" and holds the time in seconds.
+     *
+     * @param startTimeInMillis the time of the first record to be written
+     * @param endTimeInMillis the time after the last record to be written
+     * @param out the writer; may not be null
+     * @throws IOException if there is a problem writing the CSV
+     */
+    public void exportDygraph(long startTimeInMillis, long endTimeInMillis, Writer out) throws IOException {
+        export(startTimeInMillis, endTimeInMillis, out, true);
+    }
+
+    private void export(long startTimeInMillis, long endTimeInMillis, Writer out, boolean dygraph) throws IOException {
+        if (out == null) throw new IllegalArgumentException("The writer may not be null");
+        StringBuilder row = new StringBuilder();
+        row.append(dygraph ? "date" : names[0]);
+        for (int c = 1; c != names.length; ++c) {
+            row.append(',').append(names[c]);
+        }
+        out.write(row.append('\n').toString());
+        Cursor cursor = cursorAt(startTimeInMillis);
+        while (cursor.next()) {
+            long time = cursor.time();
+            if (time >= endTimeInMillis) break;
+            row.setLength(0);
+            if (dygraph) {
+                // Write the sign separately, since the whole seconds of -999 to -1 ms are zero ...
+                if (time < 0) row.append('-');
+                long magnitude = Math.abs(time);
+                row.append(magnitude / 1000).append('.');
+                long millis = magnitude % 1000;
+                if (millis < 100) row.append('0');
+                if (millis < 10) row.append('0');
+                row.append(millis);
+            } else {
+                row.append(time);
+            }
+            for (int c = 1; c != names.length; ++c) {
+                appendValue(row.append(','), cursor, c);
+            }
+            row.append('\n');
+            out.append(row);
+        }
+        out.flush();
+    }
+
+    /**
+     * Append the value of the given channel in the cursor's current record, as a double for float and double channels or as
+     * an integer for the others (where boolean values are 1 or 0).
+     *
+     * @param sb the builder to which the value is appended; may not be null
+     * @param cursor a cursor of this reader; may not be null
+     * @param channel the index of the channel, where 0 is the time channel
+     * @return the builder; never null
+     */
+    StringBuilder appendValue(StringBuilder sb, Cursor cursor, int channel) {
+        switch (types[channel]) {
+            case FLOAT:
+            case DOUBLE:
+                return sb.append(cursor.getDouble(channel));
+            default:
+                return sb.append(cursor.getLong(channel));
+        }
+    }
+}
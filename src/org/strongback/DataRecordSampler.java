@@ -0,0 +1,123 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import java.nio.ByteBuffer;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+import org.strongback.annotation.NotThreadSafe;
+import org.strongback.function.FloatSupplier;
+
+/**
+ * Samples the time and the current values of the {@link RecordingPolicy#isDense() dense} channels into a reused record, so
+ * that each record can be copied into a {@link MappedFileDataWriter} with a single bulk put. The channels are flattened once,
+ * when the sampler is created, into arrays of their types, offsets within the record and suppliers, so sampling only reads
+ * the suppliers and writes primitive values into the record. Sampling never allocates, and a sampler should only be used by
+ * one thread.
+ */
+@NotThreadSafe
+final class DataRecordSampler {
+
+    private final DataRecorderChannel.Type[] types;
+    private final int[] offsets;
+    private final IntSupplier[] intSuppliers;
+    private final LongSupplier[] longSuppliers;
+    private final FloatSupplier[] floatSuppliers;
+    private final DoubleSupplier[] doubleSuppliers;
+    private final BooleanSupplier[] booleanSuppliers;
+    private final byte[] record;
+    private final ByteBuffer buffer;
+
+    /**
+     * Create a sampler of the given channels. Channels that are not {@link RecordingPolicy#isDense() dense} are skipped.
+     *
+     * @param channels the channels other than time, in the same order as the file header; may not be null
+     */
+    DataRecordSampler(DataRecorderChannel[] channels) {
+        int count = 0;
+        for (DataRecorderChannel channel : channels) {
+            if (channel.getPolicy().isDense()) ++count;
+        }
+        this.types = new DataRecorderChannel.Type[count];
+        this.offsets = new int[count];
+        this.intSuppliers = new IntSupplier[count];
+        this.longSuppliers = new LongSupplier[count];
+        this.floatSuppliers = new FloatSupplier[count];
+        this.doubleSuppliers = new DoubleSupplier[count];
+        this.booleanSuppliers = new BooleanSupplier[count];
+        int length = DataRecorderChannel.Type.INT.width(); // time
+        int i = 0;
+        for (DataRecorderChannel channel : channels) {
+            if (!channel.getPolicy().isDense()) continue;
+            types[i] = channel.getType();
+            offsets[i] = length;
+            intSuppliers[i] = channel.getSupplier();
+            longSuppliers[i] = channel.getLongSupplier();
+            floatSuppliers[i] = channel.getFloatSupplier();
+            doubleSuppliers[i] = channel.getDoubleSupplier();
+            booleanSuppliers[i] = channel.getBooleanSupplier();
+            length += types[i].width();
+            ++i;
+        }
+        this.record = new byte[length];
+        this.buffer = ByteBuffer.wrap(record);
+    }
+
+    /**
+     * Get the number of bytes in each sampled record.
+     *
+     * @return the length of the record in bytes
+     */
+    int recordLength() {
+        return record.length;
+    }
+
+    /**
+     * Sample the time and the current values of the channels into the record.
+     *
+     * @param time the time in milliseconds
+     * @return the record, which is reused by the next call; never null
+     */
+    byte[] sample(long time) {
+        ByteBuffer buffer = this.buffer;
+        buffer.putInt(0, (int) time);
+        for (int i = 0; i != types.length; ++i) {
+            int offset = offsets[i];
+            switch (types[i]) {
+                case INT:
+                    buffer.putInt(offset, intSuppliers[i].getAsInt());
+                    break;
+                case LONG:
+                    buffer.putLong(offset, longSuppliers[i].getAsLong());
+                    break;
+                case FLOAT:
+                    buffer.putFloat(offset, floatSuppliers[i].getAsFloat());
+                    break;
+                case DOUBLE:
+                    buffer.putDouble(offset, doubleSuppliers[i].getAsDouble());
+                    break;
+                case BOOLEAN:
+                    buffer.put(offset, booleanSuppliers[i].getAsBoolean() ? (byte) 1 : (byte) 0);
+                    break;
+            }
+        }
+        return record;
+    }
+}
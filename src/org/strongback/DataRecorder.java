@@ -16,27 +16,149 @@
 
 package org.strongback;
 
+import java.util.function.BooleanSupplier;
 import java.util.function.DoubleSupplier;
 import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
 
 import org.strongback.components.SpeedSensor;
 import org.strongback.components.Switch;
+import org.strongback.function.FloatSupplier;
 
 /**
  * @author Randall Hauch
  *
  */
 public interface DataRecorder {
+    /**
+     * Registers by name a function that will be periodically polled to obtain and record an integer value. This method will
+     * remove any previously-registered supplier, switch, or motor with the same name. The value is
+     * recorded {@link RecordingPolicy#always() every time}.
+     *
+     * @param name the name of this data supplier
+     * @param supplier the {@link IntSupplier} of the value to be logged
+     * @return this instance so methods can be chained together; never null
+     * @throws IllegalArgumentException if the {@code supplier} parameter is null
+     */
+    public default DataRecorder register(String name, IntSupplier supplier) {
+        return register(name, supplier, RecordingPolicy.always());
+    }
+
     /**
      * Registers by name a function that will be periodically polled to obtain and record an integer value. This method will
      * remove any previously-registered supplier, switch, or motor with the same name.
      *
      * @param name the name of this data supplier
      * @param supplier the {@link IntSupplier} of the value to be logged
+     * @param policy the {@link RecordingPolicy policy} that determines when the value is read and recorded; may not be null
+     * @return this instance so methods can be chained together; never null
+     * @throws IllegalArgumentException if the {@code supplier} or {@code policy} parameter is null
+     */
+    public DataRecorder register(String name, IntSupplier supplier, RecordingPolicy policy);
+
+    /**
+     * Registers by name a function that will be periodically polled to obtain and record a long value. This method will
+     * remove any previously-registered supplier, switch, or motor with the same name. The value is
+     * recorded {@link RecordingPolicy#always() every time}.
+     *
+     * @param name the name of this data supplier
+     * @param supplier the {@link LongSupplier} of the value to be logged
+     * @return this instance so methods can be chained together; never null
+     * @throws IllegalArgumentException if the {@code supplier} parameter is null
+     */
+    public default DataRecorder registerLong(String name, LongSupplier supplier) {
+        return registerLong(name, supplier, RecordingPolicy.always());
+    }
+
+    /**
+     * Registers by name a function that will be periodically polled to obtain and record a long value. This method will
+     * remove any previously-registered supplier, switch, or motor with the same name.
+     *
+     * @param name the name of this data supplier
+     * @param supplier the {@link LongSupplier} of the value to be logged
+     * @param policy the {@link RecordingPolicy policy} that determines when the value is read and recorded; may not be null
+     * @return this instance so methods can be chained together; never null
+     * @throws IllegalArgumentException if the {@code supplier} or {@code policy} parameter is null
+     */
+    public DataRecorder registerLong(String name, LongSupplier supplier, RecordingPolicy policy);
+
+    /**
+     * Registers by name a function that will be periodically polled to obtain and record a float value with full (single)
+     * precision. This method will remove any previously-registered supplier, switch, or motor with the same name. The value is
+     * recorded {@link RecordingPolicy#always() every time}.
+     *
+     * @param name the name of this data supplier
+     * @param supplier the {@link FloatSupplier} of the value to be logged
+     * @return this instance so methods can be chained together; never null
+     * @throws IllegalArgumentException if the {@code supplier} parameter is null
+     */
+    public default DataRecorder registerFloat(String name, FloatSupplier supplier) {
+        return registerFloat(name, supplier, RecordingPolicy.always());
+    }
+
+    /**
+     * Registers by name a function that will be periodically polled to obtain and record a float value with full (single)
+     * precision. This method will remove any previously-registered supplier, switch, or motor with the same name.
+     *
+     * @param name the name of this data supplier
+     * @param supplier the {@link FloatSupplier} of the value to be logged
+     * @param policy the {@link RecordingPolicy policy} that determines when the value is read and recorded; may not be null
+     * @return this instance so methods can be chained together; never null
+     * @throws IllegalArgumentException if the {@code supplier} or {@code policy} parameter is null
+     */
+    public DataRecorder registerFloat(String name, FloatSupplier supplier, RecordingPolicy policy);
+
+    /**
+     * Registers by name a function that will be periodically polled to obtain and record a double value with full precision.
+     * This method will remove any previously-registered supplier, switch, or motor with the same name. The value is
+     * recorded {@link RecordingPolicy#always() every time}.
+     *
+     * @param name the name of this data supplier
+     * @param supplier the {@link DoubleSupplier} of the value to be logged
      * @return this instance so methods can be chained together; never null
      * @throws IllegalArgumentException if the {@code supplier} parameter is null
      */
-    public DataRecorder register(String name, IntSupplier supplier);
+    public default DataRecorder registerDouble(String name, DoubleSupplier supplier) {
+        return registerDouble(name, supplier, RecordingPolicy.always());
+    }
+
+    /**
+     * Registers by name a function that will be periodically polled to obtain and record a double value with full precision.
+     * This method will remove any previously-registered supplier, switch, or motor with the same name.
+     *
+     * @param name the name of this data supplier
+     * @param supplier the {@link DoubleSupplier} of the value to be logged
+     * @param policy the {@link RecordingPolicy policy} that determines when the value is read and recorded; may not be null
+     * @return this instance so methods can be chained together; never null
+     * @throws IllegalArgumentException if the {@code supplier} or {@code policy} parameter is null
+     */
+    public DataRecorder registerDouble(String name, DoubleSupplier supplier, RecordingPolicy policy);
+
+    /**
+     * Registers by name a function that will be periodically polled to obtain and record a boolean value. This method will
+     * remove any previously-registered supplier, switch, or motor with the same name. The value is
+     * recorded {@link RecordingPolicy#always() every time}.
+     *
+     * @param name the name of this data supplier
+     * @param supplier the {@link BooleanSupplier} of the value to be logged
+     * @return this instance so methods can be chained together; never null
+     * @throws IllegalArgumentException if the {@code supplier} parameter is null
+     */
+    public default DataRecorder registerBoolean(String name, BooleanSupplier supplier) {
+        return registerBoolean(name, supplier, RecordingPolicy.always());
+    }
+
+    /**
+     * Registers by name a function that will be periodically polled to obtain and record a boolean value. This method will
+     * remove any previously-registered supplier, switch, or motor with the same name.
+     *
+     * @param name the name of this data supplier
+     * @param supplier the {@link BooleanSupplier} of the value to be logged
+     * @param policy the {@link RecordingPolicy policy} that determines when the value is read and recorded; may not be null
+     * @return this instance so methods can be chained together; never null
+     * @throws IllegalArgumentException if the {@code supplier} or {@code policy} parameter is null
+     */
+    public DataRecorder registerBoolean(String name, BooleanSupplier supplier, RecordingPolicy policy);
 
     /**
      * Registers by name a function that will be periodically polled to obtain a double value and scale it to an integer value
@@ -54,14 +176,29 @@ public interface DataRecorder {
 
     /**
      * Registers by name a switch that will be periodically polled to obtain and record the switch state. This method will
-     * remove any previously-registered supplier, switch, or motor with the same name.
+     * remove any previously-registered supplier, switch, or motor with the same name. The value is
+     * recorded {@link RecordingPolicy#always() every time}.
      *
      * @param name the name of the {@link Switch}
      * @param swtch the {@link Switch} to be logged
      * @return this instance so methods can be chained together; never null
      * @throws IllegalArgumentException if the {@code swtch} parameter is null
      */
-    public DataRecorder register(String name, Switch swtch);
+    public default DataRecorder register(String name, Switch swtch) {
+        return register(name, swtch, RecordingPolicy.always());
+    }
+
+    /**
+     * Registers by name a switch that will be periodically polled to obtain and record the switch state. This method will
+     * remove any previously-registered supplier, switch, or motor with the same name.
+     *
+     * @param name the name of the {@link Switch}
+     * @param swtch the {@link Switch} to be logged
+     * @param policy the {@link RecordingPolicy policy} that determines when the value is read and recorded; may not be null
+     * @return this instance so methods can be chained together; never null
+     * @throws IllegalArgumentException if the {@code swtch} or {@code policy} parameter is null
+     */
+    public DataRecorder register(String name, Switch swtch, RecordingPolicy policy);
 
     /**
      * Registers by name a speed sensor that will be periodically polled to obtain and record the current speed. This method
@@ -16,28 +16,290 @@
 
 package org.strongback;
 
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
 import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
 
 import org.strongback.annotation.Immutable;
+import org.strongback.function.FloatSupplier;
 
+/**
+ * A named channel of the {@link DataRecorder}, with the function that supplies its values and the {@link Type type} of those
+ * values. Each value is recorded in its type's native binary form, so nothing is lost by narrowing it to a smaller type.
+ */
 @Immutable
 public final class DataRecorderChannel {
+
+    /**
+     * The type of the values in a channel. Each type is identified in the file header by a {@link #code() code} (the same
+     * character the JVM uses to describe the primitive type) and its {@link #width() width} in bytes.
+     */
+    public static enum Type {
+        INT('I', Integer.BYTES),
+        LONG('J', Long.BYTES),
+        FLOAT('F', Float.BYTES),
+        DOUBLE('D', Double.BYTES),
+        BOOLEAN('Z', 1);
+
+        private final char code;
+        private final int width;
+
+        private Type(char code, int width) {
+            this.code = code;
+            this.width = width;
+        }
+
+        /**
+         * Get the character that identifies this type in the file header.
+         *
+         * @return the code
+         */
+        public char code() {
+            return code;
+        }
+
+        /**
+         * Get the number of bytes used to record each value of this type.
+         *
+         * @return the width in bytes; always positive
+         */
+        public int width() {
+            return width;
+        }
+
+        /**
+         * Convert the {@link DataRecorderChannel#readBits() raw bits} of a value of this type to a double. Boolean values are
+         * 1.0 or 0.0.
+         *
+         * @param bits the raw bits of the value
+         * @return the value as a double
+         */
+        public double toDouble(long bits) {
+            switch (this) {
+                case FLOAT:
+                    return Float.intBitsToFloat((int) bits);
+                case DOUBLE:
+                    return Double.longBitsToDouble(bits);
+                default:
+                    return bits;
+            }
+        }
+
+        /**
+         * Convert the {@link DataRecorderChannel#readBits() raw bits} of a value of this type to a long. Float and double
+         * values are truncated, and boolean values are 1 or 0.
+         *
+         * @param bits the raw bits of the value
+         * @return the value as a long
+         */
+        public long toLong(long bits) {
+            switch (this) {
+                case FLOAT:
+                case DOUBLE:
+                    return (long) toDouble(bits);
+                default:
+                    return bits;
+            }
+        }
+
+        /**
+         * Get the type with the given code.
+         *
+         * @param code the code written in the file header
+         * @return the type; never null
+         * @throws IllegalArgumentException if there is no type with the given code
+         */
+        static Type forCode(char code) {
+            for (Type type : values()) {
+                if (type.code == code) return type;
+            }
+            throw new IllegalArgumentException("Unknown channel type code '" + code + "'");
+        }
+    }
+
     private final String name;
-    private final IntSupplier supplier;
+    private final Type type;
+    private final RecordingPolicy policy;
+    private final IntSupplier intSupplier;
+    private final LongSupplier longSupplier;
+    private final FloatSupplier floatSupplier;
+    private final DoubleSupplier doubleSupplier;
+    private final BooleanSupplier booleanSupplier;
 
     public DataRecorderChannel(String name, IntSupplier supplier) {
-        assert name != null;
+        this(name, Type.INT, RecordingPolicy.always(), supplier, null, null, null, null);
         assert supplier != null;
+    }
+
+    private DataRecorderChannel(String name, Type type, RecordingPolicy policy, IntSupplier intSupplier,
+            LongSupplier longSupplier, FloatSupplier floatSupplier, DoubleSupplier doubleSupplier,
+            BooleanSupplier booleanSupplier) {
+        assert name != null;
+        assert policy != null;
         this.name = name;
-        this.supplier = supplier;
+        this.type = type;
+        this.policy = policy;
+        this.intSupplier = intSupplier;
+        this.longSupplier = longSupplier;
+        this.floatSupplier = floatSupplier;
+        this.doubleSupplier = doubleSupplier;
+        this.booleanSupplier = booleanSupplier;
+    }
+
+    /**
+     * Create a channel that records {@code long} values.
+     *
+     * @param name the name of the channel; may not be null
+     * @param supplier the supplier of the values; may not be null
+     * @return the channel; never null
+     */
+    public static DataRecorderChannel ofLong(String name, LongSupplier supplier) {
+        assert supplier != null;
+        return new DataRecorderChannel(name, Type.LONG, RecordingPolicy.always(), null, supplier, null, null, null);
+    }
+
+    /**
+     * Create a channel that records {@code float} values.
+     *
+     * @param name the name of the channel; may not be null
+     * @param supplier the supplier of the values; may not be null
+     * @return the channel; never null
+     */
+    public static DataRecorderChannel ofFloat(String name, FloatSupplier supplier) {
+        assert supplier != null;
+        return new DataRecorderChannel(name, Type.FLOAT, RecordingPolicy.always(), null, null, supplier, null, null);
+    }
+
+    /**
+     * Create a channel that records {@code double} values.
+     *
+     * @param name the name of the channel; may not be null
+     * @param supplier the supplier of the values; may not be null
+     * @return the channel; never null
+     */
+    public static DataRecorderChannel ofDouble(String name, DoubleSupplier supplier) {
+        assert supplier != null;
+        return new DataRecorderChannel(name, Type.DOUBLE, RecordingPolicy.always(), null, null, null, supplier, null);
+    }
+
+    /**
+     * Create a channel that records {@code boolean} values.
+     *
+     * @param name the name of the channel; may not be null
+     * @param supplier the supplier of the values; may not be null
+     * @return the channel; never null
+     */
+    public static DataRecorderChannel ofBoolean(String name, BooleanSupplier supplier) {
+        assert supplier != null;
+        return new DataRecorderChannel(name, Type.BOOLEAN, RecordingPolicy.always(), null, null, null, null, supplier);
+    }
+
+    /**
+     * Create a copy of this channel that is recorded with the given policy.
+     *
+     * @param policy the recording policy; may not be null
+     * @return the new channel; never null
+     */
+    public DataRecorderChannel withPolicy(RecordingPolicy policy) {
+        return new DataRecorderChannel(name, type, policy, intSupplier, longSupplier, floatSupplier, doubleSupplier,
+                booleanSupplier);
+    }
+
+    /**
+     * Create a channel with the same name, type and policy as this channel, but whose values are supplied as
+     * {@link #readBits() raw bits} by the given supplier. This is used to write values that were sampled earlier.
+     *
+     * @param bits the supplier of the raw bits of each value; may not be null
+     * @return the new channel; never null
+     */
+    DataRecorderChannel replaying(LongSupplier bits) {
+        assert bits != null;
+        switch (type) {
+            case INT:
+                return new DataRecorderChannel(name, type, policy, () -> (int) bits.getAsLong(), null, null, null, null);
+            case LONG:
+                return new DataRecorderChannel(name, type, policy, null, bits, null, null, null);
+            case FLOAT:
+                return new DataRecorderChannel(name, type, policy, null, null,
+                        () -> Float.intBitsToFloat((int) bits.getAsLong()), null, null);
+            case DOUBLE:
+                return new DataRecorderChannel(name, type, policy, null, null, null,
+                        () -> Double.longBitsToDouble(bits.getAsLong()), null);
+            case BOOLEAN:
+                return new DataRecorderChannel(name, type, policy, null, null, null, null, () -> bits.getAsLong() != 0L);
+        }
+        throw new IllegalStateException("Unknown channel type " + type);
     }
 
     public String getName() {
         return name;
     }
 
+    /**
+     * Get the policy that determines when this channel is read and recorded.
+     *
+     * @return the policy; never null
+     */
+    public RecordingPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Get the type of the values in this channel.
+     *
+     * @return the type; never null
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Get the supplier of an {@link Type#INT int} channel.
+     *
+     * @return the supplier, or null if this channel is not an {@link Type#INT int} channel
+     */
     public IntSupplier getSupplier() {
-        return supplier;
+        return intSupplier;
+    }
+
+    LongSupplier getLongSupplier() {
+        return longSupplier;
+    }
+
+    FloatSupplier getFloatSupplier() {
+        return floatSupplier;
+    }
+
+    DoubleSupplier getDoubleSupplier() {
+        return doubleSupplier;
+    }
+
+    BooleanSupplier getBooleanSupplier() {
+        return booleanSupplier;
+    }
+
+    /**
+     * Read the current value of this channel as the raw bits of its native form: the value itself for integral types, the
+     * {@link Float#floatToIntBits(float) bits} of a float, the {@link Double#doubleToLongBits(double) bits} of a double, or
+     * 1 or 0 for a boolean. This never allocates.
+     *
+     * @return the bits of the current value
+     */
+    long readBits() {
+        switch (type) {
+            case INT:
+                return intSupplier.getAsInt();
+            case LONG:
+                return longSupplier.getAsLong();
+            case FLOAT:
+                return Float.floatToIntBits(floatSupplier.getAsFloat());
+            case DOUBLE:
+                return Double.doubleToLongBits(doubleSupplier.getAsDouble());
+            case BOOLEAN:
+                return booleanSupplier.getAsBoolean() ? 1L : 0L;
+        }
+        throw new IllegalStateException("Unknown channel type " + type);
     }
 
     @Override
@@ -54,4 +316,4 @@ public final class DataRecorderChannel {
         }
         return false;
     }
-}
\ No newline at end of file
+}
@@ -18,11 +18,15 @@ package org.strongback;
 
 import java.util.Iterator;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
 import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
 
 import org.strongback.annotation.ThreadSafe;
 import org.strongback.components.SpeedSensor;
 import org.strongback.components.Switch;
+import org.strongback.function.FloatSupplier;
 import org.strongback.util.Iterators;
 
 /**
@@ -40,18 +44,56 @@ final class DataRecorderChannels implements DataRecorder, Iterable<DataRecorderC
     }
 
     @Override
-    public DataRecorder register(String name, IntSupplier supplier) {
+    public DataRecorder register(String name, IntSupplier supplier, RecordingPolicy policy) {
         if (name == null) throw new IllegalArgumentException("The name may not be null");
         if (supplier == null) throw new IllegalArgumentException("The supplier may not be null");
-        channels.addIfAbsent(new DataRecorderChannel(name, supplier));
+        if (policy == null) throw new IllegalArgumentException("The policy may not be null");
+        channels.addIfAbsent(new DataRecorderChannel(name, supplier).withPolicy(policy));
         return this;
     }
 
     @Override
-    public DataRecorder register(String name, Switch swtch) {
+    public DataRecorder registerLong(String name, LongSupplier supplier, RecordingPolicy policy) {
+        if (name == null) throw new IllegalArgumentException("The name may not be null");
+        if (supplier == null) throw new IllegalArgumentException("The supplier may not be null");
+        if (policy == null) throw new IllegalArgumentException("The policy may not be null");
+        channels.addIfAbsent(DataRecorderChannel.ofLong(name, supplier).withPolicy(policy));
+        return this;
+    }
+
+    @Override
+    public DataRecorder registerFloat(String name, FloatSupplier supplier, RecordingPolicy policy) {
+        if (name == null) throw new IllegalArgumentException("The name may not be null");
+        if (supplier == null) throw new IllegalArgumentException("The supplier may not be null");
+        if (policy == null) throw new IllegalArgumentException("The policy may not be null");
+        channels.addIfAbsent(DataRecorderChannel.ofFloat(name, supplier).withPolicy(policy));
+        return this;
+    }
+
+    @Override
+    public DataRecorder registerDouble(String name, DoubleSupplier supplier, RecordingPolicy policy) {
+        if (name == null) throw new IllegalArgumentException("The name may not be null");
+        if (supplier == null) throw new IllegalArgumentException("The supplier may not be null");
+        if (policy == null) throw new IllegalArgumentException("The policy may not be null");
+        channels.addIfAbsent(DataRecorderChannel.ofDouble(name, supplier).withPolicy(policy));
+        return this;
+    }
+
+    @Override
+    public DataRecorder registerBoolean(String name, BooleanSupplier supplier, RecordingPolicy policy) {
+        if (name == null) throw new IllegalArgumentException("The name may not be null");
+        if (supplier == null) throw new IllegalArgumentException("The supplier may not be null");
+        if (policy == null) throw new IllegalArgumentException("The policy may not be null");
+        channels.addIfAbsent(DataRecorderChannel.ofBoolean(name, supplier).withPolicy(policy));
+        return this;
+    }
+
+    @Override
+    public DataRecorder register(String name, Switch swtch, RecordingPolicy policy) {
         if (name == null) throw new IllegalArgumentException("The name may not be null");
         if (swtch == null) throw new IllegalArgumentException("The switch may not be null");
-        channels.addIfAbsent(new DataRecorderChannel(name, () -> swtch.isTriggered() ? 1 : 0));
+        if (policy == null) throw new IllegalArgumentException("The policy may not be null");
+        channels.addIfAbsent(DataRecorderChannel.ofBoolean(name, swtch::isTriggered).withPolicy(policy));
         return this;
     }
 
@@ -20,6 +20,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 
 import org.strongback.annotation.ThreadSafe;
+import org.strongback.components.Stoppable;
 
 /**
  * A threadsafe {@link DataRecorder} that allows for switches, motors and other functions to be registered, and then to
@@ -61,8 +62,12 @@ final class DataRecorderDriver implements Executable {
                 return NULL_WRITER;
             });
         } finally {
-            if (unclosed.get() != null) {
-                unclosed.get().close();
+            DataWriter existing = unclosed.get();
+            if (existing instanceof Stoppable) {
+                // Also stop any background work done by the writer ...
+                ((Stoppable) existing).stop();
+            } else if (existing != null) {
+                existing.close();
             }
         }
     }
@@ -0,0 +1,89 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import org.strongback.command.Requirable;
+
+/**
+ * An {@link Executable} that declares the shared resources it reads and writes, such as {@link Requirable} subsystems, sensors,
+ * or the robot's location. When the executor runs in {@link Strongback.Configurator#useParallelExecution(int) parallel mode},
+ * executables that do not write any resource used by another executable may run at the same time on different threads.
+ * <p>
+ * Resources are compared by identity. Two executables conflict (and always run on the same thread, in the order they were
+ * registered) when either one writes a resource that the other reads or writes; executables that only read the same resource do
+ * not conflict. All {@link Executable}s that do not implement this interface are assumed to conflict with each other, and run
+ * together on the executor's own thread just as they do in single-threaded mode. An executable that reads or writes anything
+ * it does not declare may therefore behave differently in parallel mode; use
+ * {@link Strongback.Configurator#useParallelExecutionCheck()} to help find such executables.
+ *
+ * @see Executor
+ */
+public interface DependentExecutable extends Executable {
+
+    /**
+     * Get the resources whose state this executable reads but does not change.
+     *
+     * @return the resources that are read; never null but possibly empty
+     */
+    public Collection<?> reads();
+
+    /**
+     * Get the resources whose state this executable changes.
+     *
+     * @return the resources that are written; never null but possibly empty
+     */
+    public Collection<?> writes();
+
+    /**
+     * Create a {@link DependentExecutable} that runs the given executable and declares the given resources. Note that the
+     * result must be used to unregister the executable.
+     *
+     * @param executable the executable; may not be null
+     * @param reads the resources that the executable reads; may be null if there are none
+     * @param writes the resources that the executable writes; may be null if there are none
+     * @return the dependent executable; never null
+     */
+    public static DependentExecutable of(Executable executable, Collection<?> reads, Collection<?> writes) {
+        if (executable == null) throw new IllegalArgumentException("The executable may not be null");
+        Collection<?> readResources = reads != null ? Collections.unmodifiableCollection(reads) : Collections.emptySet();
+        Collection<?> writeResources = writes != null ? Collections.unmodifiableCollection(writes) : Collections.emptySet();
+        return new DependentExecutable() {
+            @Override
+            public void execute(long timeInMillis) {
+                executable.execute(timeInMillis);
+            }
+
+            @Override
+            public Collection<?> reads() {
+                return readResources;
+            }
+
+            @Override
+            public Collection<?> writes() {
+                return writeResources;
+            }
+
+            @Override
+            public String toString() {
+                return executable.toString();
+            }
+        };
+    }
+}
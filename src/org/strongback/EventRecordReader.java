@@ -0,0 +1,422 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.strongback.annotation.NotThreadSafe;
+
+/**
+ * A reader of the files written by the {@link Strongback#eventRecorder() event recorder} when it records
+ * {@link Strongback.Configurator#recordEventsToFile(String, long) to files}. The file is memory-mapped, and {@link Cursor
+ * cursors} step through the events in the order they were recorded.
+ * <p>
+ * Opening a file only reads its header, and a {@link #cursor() cursor from the start} reads the events as it goes. Events have
+ * different lengths, so the first time a cursor needs to {@link #cursorAt(long) start at a later time} (or the
+ * {@link #eventCount() event count} is needed) the reader reads the file once and builds a sparse index of the time of every
+ * {@value #INDEX_INTERVAL}th event, together with the strings in the file's dictionary at that point. Later cursors only read
+ * the events between the nearest earlier index entry and their start time.
+ *
+ * <pre>
+ * EventRecordReader reader = EventRecordReader.open(Paths.get("robot-event-1.dat"));
+ * EventRecordReader.Cursor cursor = reader.cursorAt(30000);
+ * while (cursor.next() &amp;&amp; cursor.time() &lt; 45000) {
+ *     System.out.println(cursor.type() + " = " + cursor.value());
+ * }
+ * </pre>
+ *
+ * @see Timeline
+ */
+@NotThreadSafe
+public final class EventRecordReader {
+
+    /**
+     * The number of events between the entries in the time index.
+     */
+    static final int INDEX_INTERVAL = 256;
+
+    /**
+     * The largest event type number that is believed, since type numbers are allocated from 1 as types are created.
+     */
+    private static final int MAX_TYPE_NUMBER = 1 << 16;
+
+    /**
+     * A position within the events of a file. A new cursor is positioned before its first event, so {@link #next()} must be
+     * called before the event is read.
+     */
+    public static interface Cursor {
+        /**
+         * Advance to the next event.
+         *
+         * @return {@code true} if there is another event, or {@code false} if all events have been read
+         */
+        boolean next();
+
+        /**
+         * Get the time of the current event.
+         *
+         * @return the time in milliseconds
+         */
+        long time();
+
+        /**
+         * Get the name of the type of the current event.
+         *
+         * @return the name of the event type; never null
+         */
+        String type();
+
+        /**
+         * Determine whether the current event has a string value or an integer value.
+         *
+         * @return {@code true} if the value is a string, or {@code false} if it is an integer
+         */
+        boolean isString();
+
+        /**
+         * Get the string value of the current event.
+         *
+         * @return the string value, or null if the value is null or an integer
+         */
+        String stringValue();
+
+        /**
+         * Get the integer value of the current event.
+         *
+         * @return the integer value, or 0 if the value is a string
+         */
+        int intValue();
+
+        /**
+         * Get the value of the current event as a string.
+         *
+         * @return the string value, or the integer value converted to a string; may be null
+         */
+        default String value() {
+            return isString() ? stringValue() : Integer.toString(intValue());
+        }
+    }
+
+    /**
+     * Open and memory-map the given event file.
+     *
+     * @param file the path to the file; may not be null
+     * @return the reader; never null
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not an event file
+     */
+    public static EventRecordReader open(Path file) throws IOException {
+        if (file == null) throw new IllegalArgumentException("The file may not be null");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new EventRecordReader(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final int dataStart;
+    private String[] typeNames = new String[16]; // indexed by type number
+    private int dataEnd;
+    private long eventCount;
+    private long[] indexTimes = new long[16];
+    private int[] indexPositions = new int[16];
+    private String[][] indexDictionaries = new String[16][];
+    private int indexSize = 0;
+    private boolean indexed = false;
+
+    /**
+     * Create a reader of the given events.
+     *
+     * @param buffer the buffer containing the entire content of an event file; may not be null
+     * @throws IllegalArgumentException if the buffer does not contain an event file
+     */
+    public EventRecordReader(ByteBuffer buffer) {
+        if (buffer == null) throw new IllegalArgumentException("The buffer may not be null");
+        this.buffer = buffer.slice();
+        try {
+            if (!FileEventWriter.HEADER.equals(readString(this.buffer))) {
+                throw new IllegalArgumentException("The data is not an event record");
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("The data is not an event record");
+        }
+        this.dataStart = this.buffer.position();
+        this.dataEnd = this.buffer.limit();
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void index() {
+        if (indexed) return;
+        indexed = true;
+        // Read all of the events once, keeping the type names and recording the dictionary at each index entry ...
+        EventCursor cursor = new EventCursor(dataStart, new String[0]);
+        String[] snapshot = null;
+        long n = 0;
+        while (cursor.next()) {
+            if (n % INDEX_INTERVAL == 0) {
+                if (snapshot == null || cursor.dictionaryChanged) {
+                    snapshot = Arrays.copyOf(cursor.dictionary, cursor.dictionary.length);
+                    cursor.dictionaryChanged = false;
+                }
+                addToIndex(cursor.time, cursor.position, snapshot);
+            }
+            ++n;
+        }
+        eventCount = n;
+        dataEnd = cursor.end;
+    }
+
+    private void addToIndex(long time, int position, String[] dictionary) {
+        if (indexSize == indexTimes.length) {
+            indexTimes = Arrays.copyOf(indexTimes, indexSize * 2);
+            indexPositions = Arrays.copyOf(indexPositions, indexSize * 2);
+            indexDictionaries = Arrays.copyOf(indexDictionaries, indexSize * 2);
+        }
+        indexTimes[indexSize] = time;
+        indexPositions[indexSize] = position;
+        indexDictionaries[indexSize] = dictionary;
+        ++indexSize;
+    }
+
+    /**
+     * Get the number of events in the file.
+     *
+     * @return the number of events
+     */
+    public long eventCount() {
+        index();
+        return eventCount;
+    }
+
+    /**
+     * Get the time of the first event in the file.
+     *
+     * @return the time in milliseconds, or {@link Long#MAX_VALUE} if there are no events
+     */
+    public long startTime() {
+        if (indexed) return indexSize != 0 ? indexTimes[0] : Long.MAX_VALUE;
+        EventCursor cursor = new EventCursor(dataStart, new String[0]);
+        return cursor.next() ? cursor.time : Long.MAX_VALUE;
+    }
+
+    /**
+     * Create a cursor positioned before the first event.
+     *
+     * @return the new cursor; never null
+     */
+    public Cursor cursor() {
+        return cursorAt(Long.MIN_VALUE);
+    }
+
+    /**
+     * Create a cursor positioned so that the first call to {@link Cursor#next()} moves to the first event at or after the
+     * given time. Only the events between the nearest earlier index entry and the given time are read, although the index is
+     * built the first time it is needed.
+     *
+     * @param timeInMillis the time in milliseconds
+     * @return the new cursor; never null
+     */
+    public Cursor cursorAt(long timeInMillis) {
+        if (timeInMillis == Long.MIN_VALUE && !indexed) {
+            // All events are wanted, so there's no need for the index ...
+            return new EventCursor(dataStart, new String[0]);
+        }
+        index();
+        // Find the last index entry strictly before the time, since the events just before an entry with the same time as
+        // the one wanted may have that time too ...
+        int low = 0;
+        int high = indexSize;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (indexTimes[middle] < timeInMillis) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int entry = low - 1;
+        EventCursor cursor = entry < 0 ? new EventCursor(dataStart, new String[0])
+                : new EventCursor(indexPositions[entry], indexDictionaries[entry].clone());
+        cursor.end = dataEnd;
+        cursor.skipBefore(timeInMillis);
+        return cursor;
+    }
+
+    private final class EventCursor implements Cursor {
+        private final ByteBuffer in = buffer.duplicate();
+        private String[] dictionary;
+        private boolean dictionaryChanged = false;
+        private int end = buffer.limit();
+        private int position = -1;
+        private long time;
+        private String type;
+        private boolean isString;
+        private String stringValue;
+        private int intValue;
+        private boolean pending = false;
+
+        private EventCursor(int start, String[] dictionary) {
+            this.in.position(start);
+            this.dictionary = dictionary;
+        }
+
+        void skipBefore(long timeInMillis) {
+            while (next()) {
+                if (time >= timeInMillis) {
+                    // Leave this event to be returned by the first call to next() ...
+                    pending = true;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean next() {
+            if (pending) {
+                pending = false;
+                return true;
+            }
+            while (true) {
+                int start = in.position();
+                int kind = readRecord();
+                if (kind < 0) {
+                    // There are no more events, so make sure later calls also return false ...
+                    end = start;
+                    return false;
+                }
+                if (kind != FileEventWriter.TYPE_DEFINITION) {
+                    position = start;
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Read the next record, which is either an event or the definition of an event type.
+         *
+         * @return the kind of record, or -1 if there are no more records
+         */
+        private int readRecord() {
+            if (in.position() + Long.BYTES + Integer.BYTES + Byte.BYTES > end) return -1;
+            try {
+                long time = in.getLong();
+                int typeNumber = in.getInt();
+                // The file ends with a negative time, or with zeros ...
+                if (time < 0L || typeNumber == 0) return -1;
+                byte kind = in.get();
+                switch (kind) {
+                    case FileEventWriter.TYPE_DEFINITION:
+                        if (typeNumber < 0 || typeNumber > MAX_TYPE_NUMBER) return -1; // not a real type
+                        String definition = readString(in);
+                        if (typeNumber >= typeNames.length) {
+                            typeNames = Arrays.copyOf(typeNames, Math.max(typeNumber + 1, 2 * typeNames.length));
+                        }
+                        typeNames[typeNumber] = definition;
+                        return kind;
+                    case FileEventWriter.INT_TYPE:
+                        isString = false;
+                        stringValue = null;
+                        intValue = in.getInt();
+                        break;
+                    case FileEventWriter.STRING_TYPE:
+                        setString(readString(in));
+                        break;
+                    case FileEventWriter.STRING_DEFINITION:
+                        int id = readVarint();
+                        if (id >= dictionary.length) {
+                            dictionary = Arrays.copyOf(dictionary, Math.max(id + 1, 2 * dictionary.length));
+                        }
+                        dictionary[id] = readString(in);
+                        dictionaryChanged = true;
+                        setString(dictionary[id]);
+                        break;
+                    case FileEventWriter.STRING_REFERENCE:
+                        setString(dictionary[readVarint()]);
+                        break;
+                    case FileEventWriter.NULL_STRING:
+                        setString(null);
+                        break;
+                    default:
+                        return -1;
+                }
+                if (in.position() > end) return -1;
+                this.time = time;
+                String name = typeNumber > 0 && typeNumber < typeNames.length ? typeNames[typeNumber] : null;
+                this.type = name != null ? name : Integer.toString(typeNumber);
+                return kind;
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+                // The last record is incomplete ...
+                return -1;
+            }
+        }
+
+        private void setString(String value) {
+            isString = true;
+            stringValue = value;
+            intValue = 0;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = in.get();
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        @Override
+        public long time() {
+            return time;
+        }
+
+        @Override
+        public String type() {
+            return type;
+        }
+
+        @Override
+        public boolean isString() {
+            return isString;
+        }
+
+        @Override
+        public String stringValue() {
+            return stringValue;
+        }
+
+        @Override
+        public int intValue() {
+            return intValue;
+        }
+    }
+}
@@ -66,6 +66,15 @@ public interface EventRecorder extends Executable {
         record(eventType, value ? 1 : 0);
     }
 
+    /**
+     * Get the number of events that were not recorded because the recorder could not keep up with the rate of events.
+     *
+     * @return the number of dropped events
+     */
+    default public long droppedCount() {
+        return 0L;
+    }
+
     /**
      * Return an {@link EventRecorder} implementation that does nothing.
      *
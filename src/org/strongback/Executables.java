@@ -16,89 +16,273 @@
 
 package org.strongback;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.strongback.annotation.Immutable;
 import org.strongback.annotation.ThreadSafe;
 
 /**
- * A simple threadsafe list of {@link Executable} instances.
+ * A simple threadsafe list of {@link Executable} instances, grouped by {@link RateGroup}, along with the
+ * {@link ExecutionHistogram} that tracks the execution times of each registered {@link Executable}.
+ * <p>
+ * Registering and unregistering are synchronized, and each change publishes a new immutable {@link Snapshot}. The executor only
+ * ever reads the latest snapshot, so it never takes a lock, and it picks up changes made while it is running at the start of its
+ * next cycle.
  *
  * @author Randall Hauch
  */
 @ThreadSafe
 final class Executables implements Executor {
 
-    private final CopyOnWriteArrayList<Executable> highPriority = new CopyOnWriteArrayList<>();
-    private final CopyOnWriteArrayList<Executable> mediumPriority = new CopyOnWriteArrayList<>();
-    private final CopyOnWriteArrayList<Executable> lowPriority = new CopyOnWriteArrayList<>();
+    /**
+     * An immutable snapshot of the registered {@link Executable}s. The groups are ordered by increasing period, and the arrays
+     * for each group are in the order that group's executables should be run. A new snapshot is published every time the
+     * registered executables change, so the executor can tell whether they have changed by comparing references.
+     */
+    @Immutable
+    static final class Snapshot {
+        /**
+         * The maximum number of cycles in a {@link #cyclesPerSchedule() schedule}.
+         */
+        static final int MAX_CYCLES_PER_SCHEDULE = 64;
+
+        final RateGroup[] groups;
+        final Executable[][] executables;
+        final ExecutionHistogram[][] times;
+        /**
+         * The position of the first executable of each group when all executables are numbered in order from 0.
+         */
+        final int[] offsets;
+        /**
+         * The total number of executables in all groups.
+         */
+        final int size;
+
+        private Snapshot(RateGroup[] groups, Executable[][] executables, ExecutionHistogram[][] times) {
+            this.groups = groups;
+            this.executables = executables;
+            this.times = times;
+            this.offsets = new int[groups.length];
+            int size = 0;
+            for (int g = 0; g != groups.length; ++g) {
+                offsets[g] = size;
+                size += executables[g].length;
+            }
+            this.size = size;
+        }
+
+        /**
+         * Get the number of cycles after which the pattern of due groups repeats. This is the least common multiple of the
+         * periods of all groups that have executables, or (if that is larger than {@value #MAX_CYCLES_PER_SCHEDULE}) the
+         * largest period no larger than {@value #MAX_CYCLES_PER_SCHEDULE}.
+         *
+         * @return the number of cycles; always positive
+         */
+        int cyclesPerSchedule() {
+            long lcm = 1L;
+            int largest = 1;
+            for (int g = 0; g != groups.length; ++g) {
+                if (executables[g].length == 0) continue;
+                int period = groups[g].periodInCycles();
+                largest = Math.max(largest, Math.min(period, MAX_CYCLES_PER_SCHEDULE));
+                if (lcm <= MAX_CYCLES_PER_SCHEDULE) lcm = lcm / gcd(lcm, period) * period;
+            }
+            return lcm <= MAX_CYCLES_PER_SCHEDULE ? (int) lcm : largest;
+        }
+
+        private static long gcd(long a, long b) {
+            return b == 0L ? a : gcd(b, a % b);
+        }
+    }
+
+    private static final class Group {
+        private final RateGroup rateGroup;
+        private final CopyOnWriteArrayList<Executable> executables = new CopyOnWriteArrayList<>();
+
+        private Group(RateGroup rateGroup) {
+            this.rateGroup = rateGroup;
+        }
+    }
+
+    private final CopyOnWriteArrayList<Group> groups = new CopyOnWriteArrayList<>();
+    private final ConcurrentMap<Executable, ExecutionHistogram> histograms = new ConcurrentHashMap<>();
+    private volatile Snapshot snapshot;
 
     Executables() {
+        for (Priority priority : Priority.values()) {
+            groups.add(new Group(priority.rateGroup()));
+        }
+        publish();
     }
 
     @Override
-    public boolean register(Executable r, Priority priority) {
-        if (priority != null) {
-            unregister(r);
-            switch (priority) {
-                case HIGH:
-                    mediumPriority.remove(r);
-                    lowPriority.remove(r);
-                    return highPriority.addIfAbsent(r);
-                case MEDIUM:
-                    highPriority.remove(r);
-                    lowPriority.remove(r);
-                    return mediumPriority.addIfAbsent(r);
-                case LOW:
-                    highPriority.remove(r);
-                    mediumPriority.remove(r);
-                    return lowPriority.addIfAbsent(r);
-            }
-        }
-        return false;
+    public synchronized boolean register(Executable r, RateGroup rateGroup) {
+        if (r == null || rateGroup == null) return false;
+        Group group = groupFor(rateGroup);
+        if (group.executables.contains(r)) return false;
+        remove(r);
+        histograms.computeIfAbsent(r, Executables::newHistogram);
+        boolean added = group.executables.addIfAbsent(r);
+        publish();
+        return added;
     }
 
     @Override
-    public boolean unregister(Executable r) {
+    public synchronized boolean unregister(Executable r) {
         if (r != null) {
-            // Remove from all
-            boolean removed = highPriority.remove(r);
-            removed = mediumPriority.remove(r) || removed;
-            removed = lowPriority.remove(r) || removed;
+            boolean removed = remove(r);
+            histograms.remove(r);
+            if (removed) publish();
             return removed;
         }
         return false;
     }
 
     @Override
-    public void unregisterAll() {
-        highPriority.clear();
-        mediumPriority.clear();
-        lowPriority.clear();
+    public synchronized void unregisterAll() {
+        for (Group group : groups) {
+            group.executables.clear();
+        }
+        histograms.clear();
+        publish();
+    }
+
+    private boolean remove(Executable r) {
+        // Remove from all
+        boolean removed = false;
+        for (Group group : groups) {
+            removed = group.executables.remove(r) || removed;
+        }
+        return removed;
     }
 
+    /**
+     * Get the executables registered with {@link Priority#LOW low} priority.
+     *
+     * @return the live, unmodifiable list of executables; never null
+     * @deprecated Use {@link #snapshot()} instead
+     */
+    @Deprecated
     public List<Executable> lowPriorityExecutables() {
-        return lowPriority;
+        return executablesIn(Priority.LOW.rateGroup());
     }
 
+    /**
+     * Get the executables registered with {@link Priority#MEDIUM medium} priority.
+     *
+     * @return the live, unmodifiable list of executables; never null
+     * @deprecated Use {@link #snapshot()} instead
+     */
+    @Deprecated
     public List<Executable> mediumPriorityExecutables() {
-        return mediumPriority;
+        return executablesIn(Priority.MEDIUM.rateGroup());
     }
 
+    /**
+     * Get the executables registered with {@link Priority#HIGH high} priority.
+     *
+     * @return the live, unmodifiable list of executables; never null
+     * @deprecated Use {@link #snapshot()} instead
+     */
+    @Deprecated
     public List<Executable> highPriorityExecutables() {
-        return highPriority;
+        return executablesIn(Priority.HIGH.rateGroup());
     }
 
-    protected Executable[] lowPriorityExecutablesAsArrays() {
-        return lowPriority.toArray(new Executable[0]); // will be reallocated with correct size
+    private List<Executable> executablesIn(RateGroup rateGroup) {
+        for (Group group : groups) {
+            if (group.rateGroup.equals(rateGroup)) return Collections.unmodifiableList(group.executables);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Get the execution time histograms for all registered {@link Executable}s.
+     *
+     * @return an immutable snapshot of the histogram for each registered executable; never null
+     */
+    public Map<Executable, ExecutionHistogram> executionTimes() {
+        return Collections.unmodifiableMap(new HashMap<>(histograms));
     }
 
-    protected Executable[] mediumPriorityExecutablesAsArrays() {
-        return mediumPriority.toArray(new Executable[0]); // will be reallocated with correct size
+    /**
+     * Get the most recently published immutable snapshot of all of the registered {@link Executable}s and their histograms.
+     * This never blocks or allocates, so the executor can call it every cycle and compare the result with its previous
+     * snapshot to find out whether the registered executables have changed.
+     *
+     * @return the snapshot; never null
+     */
+    protected Snapshot snapshot() {
+        return snapshot;
     }
 
-    protected Executable[] highPriorityExecutablesAsArrays() {
-        return highPriority.toArray(new Executable[0]); // will be reallocated with correct size
+    /**
+     * Build and publish a new snapshot. This must be called (while holding this object's monitor) after every change.
+     */
+    private void publish() {
+        int numGroups = groups.size();
+        RateGroup[] rateGroups = new RateGroup[numGroups];
+        Executable[][] items = new Executable[numGroups][];
+        ExecutionHistogram[][] times = new ExecutionHistogram[numGroups][];
+        for (int g = 0; g != numGroups; ++g) {
+            Group group = groups.get(g);
+            rateGroups[g] = group.rateGroup;
+            items[g] = group.executables.toArray(new Executable[0]); // will be reallocated with correct size
+            times[g] = executionTimesFor(items[g]);
+        }
+        snapshot = new Snapshot(rateGroups, items, times);
     }
 
+    /**
+     * Get the execution time histograms for the given {@link Executable}s, in the same order. Any executable that is no longer
+     * registered is given a new histogram that is not tracked by this object.
+     *
+     * @param items the executables; may not be null
+     * @return the histograms; never null
+     */
+    private ExecutionHistogram[] executionTimesFor(Executable[] items) {
+        ExecutionHistogram[] result = new ExecutionHistogram[items.length];
+        for (int i = 0; i != items.length; ++i) {
+            ExecutionHistogram histogram = histograms.get(items[i]);
+            result[i] = histogram != null ? histogram : newHistogram(items[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Find the group for the given {@link RateGroup}, adding a new group if required. Groups are kept in order of increasing
+     * period, and groups with the same period are kept in the order they were added.
+     *
+     * @param rateGroup the rate group; may not be null
+     * @return the group; never null
+     * @throws IllegalArgumentException if a different rate group with the same name already exists
+     */
+    private Group groupFor(RateGroup rateGroup) {
+        int insertAt = groups.size();
+        for (int g = groups.size() - 1; g >= 0; --g) {
+            Group group = groups.get(g);
+            if (group.rateGroup.name().equals(rateGroup.name())) {
+                if (!group.rateGroup.equals(rateGroup)) {
+                    throw new IllegalArgumentException("The rate group " + rateGroup + " conflicts with the existing rate group "
+                            + group.rateGroup);
+                }
+                return group;
+            }
+            if (group.rateGroup.periodInCycles() > rateGroup.periodInCycles()) insertAt = g;
+        }
+        Group group = new Group(rateGroup);
+        groups.add(insertAt, group);
+        return group;
+    }
+
+    private static ExecutionHistogram newHistogram(Executable executable) {
+        String name = executable.getClass().getSimpleName();
+        return new ExecutionHistogram(name.isEmpty() ? executable.getClass().getName() : name);
+    }
 }
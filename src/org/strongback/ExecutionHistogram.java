@@ -0,0 +1,239 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.strongback.annotation.ThreadSafe;
+
+/**
+ * A fixed-size histogram of the execution times of a single {@link Executable}, or of all of the work done in one position
+ * of the executor's {@link Strongback#cycleTimes() schedule}. Recording a time never allocates and never blocks, so the
+ * executor thread can record every execution of every {@link Executable}.
+ * <p>
+ * Times are kept in buckets whose width grows with the magnitude of the value: each power of two is split into
+ * {@value #SUB_BUCKETS} equal buckets, so any reported percentile is within about 12% of the actual value. The
+ * {@link #maxInNanos() maximum}, {@link #meanInNanos() mean} and {@link #count() count} are exact. Times up to about 2 minutes
+ * can be distinguished; longer times are counted in the last bucket. The histogram also counts the executions that were
+ * {@link #deferredCount() deferred} or {@link #shedCount() shed} when the executor ran out of time.
+ * <p>
+ * Only one thread at a time (the executor thread running the {@link Executable}) should {@link #record(long) record} times,
+ * but any thread can read the statistics at any time. The statistics read while times are being recorded are approximate.
+ * <p>
+ * A histogram is also a {@link DataRecordable}, so it can be {@link DataRecorder#register(String, DataRecordable) registered}
+ * with the {@link Strongback#dataRecorder() data recorder} to record its 50th and 99th percentiles and its maximum (in
+ * microseconds) as separate channels.
+ *
+ * @see Strongback#executionTimes()
+ */
+@ThreadSafe
+public final class ExecutionHistogram implements DataRecordable {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 37; // 2^37 ns is a little over 2 minutes
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private volatile long count;
+    private volatile long totalInNanos;
+    private volatile long maxInNanos;
+    private volatile long deferred;
+    private volatile long shed;
+
+    ExecutionHistogram(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get the name of the {@link Executable} or cycle whose times are recorded in this histogram.
+     *
+     * @return the name; never null
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Record a single execution time. This should only be called by one thread at a time.
+     *
+     * @param durationInNanos the execution time in nanoseconds
+     */
+    void record(long durationInNanos) {
+        if (durationInNanos < 0) durationInNanos = 0;
+        int index = bucketFor(durationInNanos);
+        buckets.lazySet(index, buckets.get(index) + 1);
+        if (durationInNanos > maxInNanos) maxInNanos = durationInNanos;
+        totalInNanos += durationInNanos;
+        ++count;
+    }
+
+    /**
+     * Record that an execution was deferred because the executor had run out of time in the cycle. This should only be called
+     * by one thread at a time.
+     */
+    void recordDeferred() {
+        ++deferred;
+    }
+
+    /**
+     * Record that a deferred execution was dropped because the executable was due again before it could be run. This should
+     * only be called by one thread at a time.
+     */
+    void recordShed() {
+        ++shed;
+    }
+
+    /**
+     * Remove all recorded times and counts. Times recorded concurrently with this method may or may not be retained.
+     */
+    public void reset() {
+        for (int i = 0; i != BUCKET_COUNT; ++i) {
+            buckets.set(i, 0L);
+        }
+        maxInNanos = 0L;
+        totalInNanos = 0L;
+        count = 0L;
+        deferred = 0L;
+        shed = 0L;
+    }
+
+    /**
+     * Get the number of execution times that have been recorded.
+     *
+     * @return the number of executions
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Get the number of times that a due execution was deferred to a later cycle because the executor was
+     * {@link Strongback.Configurator#useLoadShedding(long, TimeUnit) shedding load}.
+     *
+     * @return the number of deferred executions
+     */
+    public long deferredCount() {
+        return deferred;
+    }
+
+    /**
+     * Get the number of deferred executions that were dropped because the executable was due again before there was time to
+     * run it.
+     *
+     * @return the number of shed executions
+     */
+    public long shedCount() {
+        return shed;
+    }
+
+    /**
+     * Get the average execution time. Unlike the percentiles, this is exact.
+     *
+     * @return the mean time in nanoseconds, or 0 if no times have been recorded
+     */
+    public long meanInNanos() {
+        long n = count;
+        return n == 0L ? 0L : totalInNanos / n;
+    }
+
+    /**
+     * Get the longest execution time that has been recorded.
+     *
+     * @return the maximum time in nanoseconds, or 0 if no times have been recorded
+     */
+    public long maxInNanos() {
+        return maxInNanos;
+    }
+
+    /**
+     * Get the median execution time.
+     *
+     * @return the 50th percentile in nanoseconds, or 0 if no times have been recorded
+     */
+    public long p50InNanos() {
+        return percentileInNanos(50.0);
+    }
+
+    /**
+     * Get the 99th percentile of the execution times.
+     *
+     * @return the 99th percentile in nanoseconds, or 0 if no times have been recorded
+     */
+    public long p99InNanos() {
+        return percentileInNanos(99.0);
+    }
+
+    /**
+     * Get the execution time at the given percentile. The result is the upper bound of the bucket that contains the percentile,
+     * but never more than the {@link #maxInNanos() maximum}.
+     *
+     * @param percentile the percentile; must be between 0 and 100 (inclusive)
+     * @return the time in nanoseconds at the given percentile, or 0 if no times have been recorded
+     */
+    public long percentileInNanos(double percentile) {
+        if (percentile < 0.0 || percentile > 100.0) {
+            throw new IllegalArgumentException("The percentile must be between 0 and 100");
+        }
+        long total = 0L;
+        for (int i = 0; i != BUCKET_COUNT; ++i) {
+            total += buckets.get(i);
+        }
+        if (total == 0L) return 0L;
+        long rank = Math.max(1L, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0L;
+        for (int i = 0; i != BUCKET_COUNT; ++i) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), maxInNanos);
+            }
+        }
+        return maxInNanos;
+    }
+
+    @Override
+    public void registerWith(DataRecorder recorder, String name) {
+        recorder.register(name + " p50 (us)", () -> (int) TimeUnit.NANOSECONDS.toMicros(p50InNanos()));
+        recorder.register(name + " p99 (us)", () -> (int) TimeUnit.NANOSECONDS.toMicros(p99InNanos()));
+        recorder.register(name + " max (us)", () -> (int) TimeUnit.NANOSECONDS.toMicros(maxInNanos()));
+    }
+
+    @Override
+    public String toString() {
+        return name + " (count=" + count() + ", p50=" + TimeUnit.NANOSECONDS.toMicros(p50InNanos()) + " us, p99="
+                + TimeUnit.NANOSECONDS.toMicros(p99InNanos()) + " us, max=" + TimeUnit.NANOSECONDS.toMicros(maxInNanos())
+                + " us" + (deferred != 0L || shed != 0L ? ", deferred=" + deferred + ", shed=" + shed : "") + ")";
+    }
+
+    static int bucketFor(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) return BUCKET_COUNT - 1;
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (subBucket + 1) * width - 1;
+    }
+}
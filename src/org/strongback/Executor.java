@@ -16,6 +16,7 @@
 
 package org.strongback;
 
+import org.strongback.annotation.Immutable;
 import org.strongback.annotation.ThreadSafe;
 
 /**
@@ -24,8 +25,173 @@ import org.strongback.annotation.ThreadSafe;
 @ThreadSafe
 public interface Executor {
 
+    /**
+     * The predefined {@link RateGroup}s. High priority tasks are run every cycle, medium priority tasks are run every other
+     * cycle, and low priority tasks are run every 4 cycles. Only low priority tasks are {@link RateGroup#isSheddable()
+     * sheddable}.
+     */
     public static enum Priority {
-        HIGH, MEDIUM, LOW;
+        HIGH(1, false), MEDIUM(2, false), LOW(4, true);
+
+        private final RateGroup rateGroup;
+
+        private Priority(int periodInCycles, boolean sheddable) {
+            this.rateGroup = new RateGroup(name(), periodInCycles, 0, sheddable);
+        }
+
+        /**
+         * Get the {@link RateGroup} used for this priority.
+         *
+         * @return the rate group; never null
+         */
+        public RateGroup rateGroup() {
+            return rateGroup;
+        }
+    }
+
+    /**
+     * A named group of {@link Executable} tasks that are all run on the same cycles of the executor. Each group is run once
+     * every {@link #periodInCycles() period}, on those cycles whose number (starting at 0) modulo the period equals the group's
+     * {@link #phaseInCycles() phase}. For example, with an executor period of 5 milliseconds:
+     *
+     * <pre>
+     *   RateGroup odometry = RateGroup.every("Odometry", 1);     // 200 Hz
+     *   RateGroup drive = RateGroup.every("Drive", 4);           // 50 Hz
+     *   RateGroup logging = RateGroup.every("Logging", 20, 2);   // 10 Hz, on cycles 2, 22, 42, ...
+     * </pre>
+     *
+     * Giving groups with the same period different phases spreads their work across different cycles.
+     * <p>
+     * Within a cycle, groups with shorter periods are run before groups with longer periods, and groups with the same period
+     * are run in the order they were first used.
+     * <p>
+     * When the executor is {@link Strongback.Configurator#useLoadShedding(long, java.util.concurrent.TimeUnit) shedding load},
+     * the executables in a {@link #isSheddable() sheddable} group are deferred whenever the cycle's time budget has already
+     * been used, and run on a later cycle that has time to spare. An execution that is still deferred when the executable is
+     * next due is shed. Executables in other groups always run.
+     * <p>
+     * Two rate groups are equal if they have the same name, period and phase, whether or not they are sheddable. An executor
+     * keeps the sheddability of the first group it was given with that name, so for example registering with
+     * {@code RateGroup.every("LOW", 4)} adds to the sheddable {@link Priority#LOW LOW} group.
+     */
+    @Immutable
+    public static final class RateGroup {
+
+        /**
+         * Create a rate group that runs on every n-th cycle, starting with the first cycle.
+         *
+         * @param name the name of the group; may not be null
+         * @param periodInCycles the number of executor cycles between runs; must be positive
+         * @return the rate group; never null
+         */
+        public static RateGroup every(String name, int periodInCycles) {
+            return every(name, periodInCycles, 0);
+        }
+
+        /**
+         * Create a rate group that runs on every n-th cycle, offset by the given number of cycles.
+         *
+         * @param name the name of the group; may not be null
+         * @param periodInCycles the number of executor cycles between runs; must be positive
+         * @param phaseInCycles the number of cycles by which the runs are offset; will be reduced modulo the period
+         * @return the rate group; never null
+         */
+        public static RateGroup every(String name, int periodInCycles, int phaseInCycles) {
+            if (name == null) throw new IllegalArgumentException("The rate group name may not be null");
+            if (periodInCycles < 1) throw new IllegalArgumentException("The rate group period must be positive");
+            return new RateGroup(name, periodInCycles, Math.floorMod(phaseInCycles, periodInCycles), false);
+        }
+
+        private final String name;
+        private final int periodInCycles;
+        private final int phaseInCycles;
+        private final boolean sheddable;
+
+        private RateGroup(String name, int periodInCycles, int phaseInCycles, boolean sheddable) {
+            this.name = name;
+            this.periodInCycles = periodInCycles;
+            this.phaseInCycles = phaseInCycles;
+            this.sheddable = sheddable;
+        }
+
+        /**
+         * Create a rate group that is the same as this group except that its executables may be deferred or shed when the
+         * executor runs out of time in a cycle.
+         *
+         * @return the sheddable rate group; never null
+         */
+        public RateGroup sheddable() {
+            return sheddable ? this : new RateGroup(name, periodInCycles, phaseInCycles, true);
+        }
+
+        /**
+         * Get the name of this group.
+         *
+         * @return the name; never null
+         */
+        public String name() {
+            return name;
+        }
+
+        /**
+         * Get the number of executor cycles between runs of this group.
+         *
+         * @return the period; always positive
+         */
+        public int periodInCycles() {
+            return periodInCycles;
+        }
+
+        /**
+         * Get the offset of this group's runs, in cycles.
+         *
+         * @return the phase; always non-negative and less than the {@link #periodInCycles() period}
+         */
+        public int phaseInCycles() {
+            return phaseInCycles;
+        }
+
+        /**
+         * Determine whether this group is to be run on the given cycle.
+         *
+         * @param cycle the number of the cycle, where the first cycle is 0
+         * @return {@code true} if the group should be run, or {@code false} otherwise
+         */
+        public boolean isDue(long cycle) {
+            return cycle % periodInCycles == phaseInCycles;
+        }
+
+        /**
+         * Determine whether the executables in this group may be deferred or shed when the executor runs out of time in a
+         * cycle.
+         *
+         * @return {@code true} if the executables may be deferred or shed, or {@code false} if they always run when due
+         */
+        public boolean isSheddable() {
+            return sheddable;
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) return true;
+            if (obj instanceof RateGroup) {
+                RateGroup that = (RateGroup) obj;
+                return this.name.equals(that.name) && this.periodInCycles == that.periodInCycles
+                        && this.phaseInCycles == that.phaseInCycles;
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (every " + periodInCycles + " cycles" + (phaseInCycles != 0 ? " + " + phaseInCycles : "")
+                    + (sheddable ? ", sheddable" : "") + ")";
+        }
     }
 
     /**
@@ -46,15 +212,32 @@ public interface Executor {
      * thread. If the given task is already registered with a different priority, this method reassigns it to the desired
      * priority; if the given task is already registered with the desired priority, this method does nothing.
      * <p>
-     * This executor runs high priority tasks every cycle, medium priority tasks slightly every other cycles, and low priority
-     * tasks every 4 cycles. All {@link Executable} tasks are called on the first cycle.
+     * This executor runs high priority tasks every cycle, medium priority tasks every other cycle, and low priority tasks every
+     * 4 cycles. All {@link Executable} tasks are called on the first cycle. This is equivalent to registering the task with the
+     * priority's {@link Priority#rateGroup() rate group}.
      *
      * @param task the executable task
      * @param priority the priority of the executable; may not be null
      * @return {@code true} if the executable task was registered for the first time at the given priority, or {@code false} if
      *         {@code task} was null or was already registered with this executor at the given priority
      */
-    public boolean register(Executable task, Priority priority);
+    default boolean register(Executable task, Priority priority) {
+        return priority != null && register(task, priority.rateGroup());
+    }
+
+    /**
+     * Register an {@link Executable} task with the given {@link RateGroup} so that it is called repeatedly on Strongback's
+     * executor thread on the cycles of that group. If the given task is already registered with a different group or priority,
+     * this method reassigns it to the desired group; if the given task is already registered with the desired group, this
+     * method does nothing.
+     *
+     * @param task the executable task
+     * @param group the rate group for the executable; may not be null
+     * @return {@code true} if the executable task was registered for the first time with the given group, or {@code false} if
+     *         {@code task} was null or was already registered with this executor in the given group
+     * @throws IllegalArgumentException if a different rate group with the same name is already in use
+     */
+    public boolean register(Executable task, RateGroup group);
 
     /**
      * Unregister an {@link Executable} task to no longer be called.
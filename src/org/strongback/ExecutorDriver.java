@@ -16,14 +16,20 @@
 
 package org.strongback;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.strongback.Executor.RateGroup;
 import org.strongback.Strongback.ExcessiveExecutionHandler;
+import org.strongback.annotation.NotThreadSafe;
 import org.strongback.annotation.ThreadSafe;
 import org.strongback.components.Clock;
 import org.strongback.components.Stoppable;
+import org.strongback.util.Metronome;
 
 /**
  * An executor that invokes registered {@link Executable}s on a fixed period.
@@ -31,31 +37,81 @@ import org.strongback.components.Stoppable;
 @ThreadSafe
 final class ExecutorDriver implements Stoppable {
 
+    /**
+     * A factory for the {@link Metronome} that paces each cycle of the driver. The signature matches the static factory
+     * methods on {@link Metronome}, so {@code Metronome::busy} or {@code Metronome::parker} can be used directly.
+     */
+    @FunctionalInterface
+    static interface MetronomeFactory {
+        /**
+         * Create a new metronome that starts ticking immediately.
+         *
+         * @param period the period of time that the metronome ticks
+         * @param unit the unit of time; never null
+         * @param timeSystem the time system that will provide the current time; never null
+         * @return the new metronome; never null
+         */
+        Metronome create(long period, TimeUnit unit, Clock timeSystem);
+    }
+
     private final String name;
     private final Clock timeSystem;
     private final Logger logger;
     private final Executables executables;
     private final AtomicReference<Thread> thread = new AtomicReference<>();
     private final ExcessiveExecutionHandler delayInformer;
-    private final long executionPeriodInMillis;
+    private final long executionPeriodInNanos;
+    private final MetronomeFactory metronomeFactory;
+    private final boolean staggered;
+    private final int numWorkers;
+    private final boolean checkParallel;
+    private final long loadSheddingBudgetInNanos;
+    private final FlightRecorder flightRecorder;
+    private final ExecutorPartitions.ItemRunner runner = this::executeIfRunning;
+    private volatile ExecutionHistogram[] cycleTimes = new ExecutionHistogram[0];
     private volatile boolean running = false;
     private volatile CountDownLatch stopped = null;
-    private final int mediumPriorityFrequency = 2;
-    private final int lowPriorityFrequency = 4;
+    private Cycles stepping;
 
-    ExecutorDriver(String name, Executables executables, Clock timeSystem, long executionPeriodInMillis, Logger logger,
+    ExecutorDriver(String name, Executables executables, Clock timeSystem, long executionPeriodInNanos,
+            MetronomeFactory metronomeFactory, boolean staggered, int numWorkers, boolean checkParallel,
+            long loadSheddingBudgetInNanos, FlightRecorder flightRecorder, Logger logger,
             ExcessiveExecutionHandler delayInformer) {
         this.name = name;
         this.timeSystem = timeSystem;
-        this.executionPeriodInMillis = executionPeriodInMillis;
+        this.executionPeriodInNanos = executionPeriodInNanos;
+        this.metronomeFactory = metronomeFactory != null ? metronomeFactory : Metronome::busy;
+        this.staggered = staggered;
+        this.numWorkers = Math.max(1, numWorkers);
+        this.checkParallel = checkParallel;
+        this.loadSheddingBudgetInNanos = loadSheddingBudgetInNanos;
+        this.flightRecorder = flightRecorder;
         this.logger = logger;
         this.executables = executables;
         this.delayInformer = delayInformer != null ? delayInformer : ExecutorDriver::noDelay;
     }
 
     /**
-     * Start the execution of this {@link ExecutorDriver} in a separate thread. During each execution, all registered
-     * {@link Executable}s will be called in the order they were registered.
+     * Start the execution of this {@link ExecutorDriver} in a separate thread. During each execution, the registered
+     * {@link Executable}s in each {@link RateGroup} that is due will be called in the order they were registered.
+     * {@link Executable}s that are registered or unregistered while running are picked up at the start of the next cycle.
+     * <p>
+     * When this driver has more than one worker, the executables are {@link ExecutorPartitions partitioned} by the resources
+     * they declare and independent partitions run at the same time on separate threads, but every cycle still completes
+     * before the next one starts. When checking parallel execution, the partitions all run on this driver's thread in an order
+     * that changes every cycle.
+     * <p>
+     * Each cycle belongs to one tick of a fixed schedule that starts when this driver starts, so tick N begins exactly N
+     * periods after the start and must finish before tick N+1 begins. All timing is done in nanoseconds and every deadline is
+     * computed from the start of the schedule rather than from the start of the previous cycle, so neither rounding nor late
+     * starts accumulate into drift. Cycles are numbered by their ticks, so when an overrun drops ticks the groups that were due
+     * on those ticks miss that run, and every group stays on the same grid of ticks afterwards.
+     * <p>
+     * When this driver has a {@link FlightRecorder flight recorder}, the timing of every cycle and every executable is recorded
+     * in it, and it is asked to dump its contents whenever a cycle overruns.
+     * <p>
+     * When this driver has a load shedding budget, executables in {@link RateGroup#isSheddable() sheddable} groups that are
+     * reached after the budget has been used are deferred to a later cycle, or shed if they are still deferred when next due.
      * <p>
      * Calling this method when already started has no effect.
      *
@@ -85,6 +141,13 @@ final class ExecutorDriver implements Stoppable {
      */
     @Override
     public void stop() {
+        synchronized (this) {
+            // Finish any cycles that were run synchronously ...
+            if (stepping != null) {
+                stepping.close();
+                stepping = null;
+            }
+        }
         // Get the latch we'll use to wait for the thread to complete
         CountDownLatch latch = stopped;
         // Atomically mark the thread as completed and change our reference to it ...
@@ -104,87 +167,261 @@ final class ExecutorDriver implements Stoppable {
         }
     }
 
+    /**
+     * Get the histograms of the total time taken by each cycle, where the first histogram is for cycles 0, N, 2N, etc., the
+     * second for cycles 1, N+1, 2N+1, etc., and N is the number of cycles after which the pattern of due groups repeats. The
+     * histograms are replaced each time this driver is started.
+     *
+     * @return the immutable list of histograms; never null
+     */
+    public List<ExecutionHistogram> cycleTimes() {
+        return Collections.unmodifiableList(Arrays.asList(cycleTimes));
+    }
+
+    /**
+     * Synchronously run the given number of cycles on the calling thread instead of on this driver's own thread, pausing with
+     * this driver's metronome after each cycle. This is intended for simulations and tests that use a virtual clock and a
+     * metronome that {@link Metronome#virtual(long, TimeUnit, org.strongback.mock.MockClock) advances} that clock instead of
+     * waiting, so that the cycles run as fast as possible and always see the same times. Later calls continue the same schedule
+     * until this driver is {@link #stop() stopped}.
+     *
+     * @param count the number of cycles to run; may not be negative
+     * @return the number of cycles that were run
+     * @throws IllegalStateException if this driver has been {@link #start() started} on its own thread
+     */
+    public synchronized long runCycles(long count) {
+        if (count < 0) throw new IllegalArgumentException("The number of cycles may not be negative");
+        if (thread.get() != null) throw new IllegalStateException("The executor is already running on its own thread");
+        if (stepping == null) stepping = new Cycles();
+        running = true;
+        try {
+            long completed = 0L;
+            while (completed != count && stepping.runCycle()) {
+                ++completed;
+                stepping.pause();
+            }
+            return completed;
+        } finally {
+            running = false;
+        }
+    }
+
     private void run() {
+        Cycles cycles = new Cycles();
         try {
-            long startTimeInMillis = 0L;
-            long stopTimeInMillis = 0L;
-            long nextTimeInMillis = 0L;
-            int loopsUntilNextMediumPriority = mediumPriorityFrequency;
-            int loopsUntilNextLowPriority = lowPriorityFrequency;
-
-            // Get read-only arrays with the various executable items ...
-            final Executable[] highPriorityItems = executables.highPriorityExecutablesAsArrays();
-            final Executable[] mediumPriorityItems = executables.mediumPriorityExecutablesAsArrays();
-            final Executable[] lowPriorityItems = executables.lowPriorityExecutablesAsArrays();
-            final int numHighPriorityItems = highPriorityItems.length;
-            final int numMediumPriorityItems = mediumPriorityItems.length;
-            final int numLowPriorityItems = lowPriorityItems.length;
-
-            while (running) {
-                // Start a new cycle ...
-                --loopsUntilNextMediumPriority;
-                --loopsUntilNextLowPriority;
-                startTimeInMillis = timeSystem.currentTimeInMillis();
-
-                // First execute the HIGH priority items ...
-                for (int i=0; i!=numHighPriorityItems; ++i) {
-                    Executable executable = highPriorityItems[i];
-                    if (!running) return;
-                    try {
-                        executable.execute(timeSystem.currentTimeInMillis());
-                    } catch (Throwable e) {
-                        logger.error(e);
-                    }
-                }
+            while (running && cycles.runCycle()) {
+                cycles.pause();
+            }
+        } finally {
+            cycles.close();
+            CountDownLatch latch = stopped;
+            if (latch != null) latch.countDown();
+        }
+    }
 
-                // Execute the MEDIUM priority items every other time ...
-                if (loopsUntilNextMediumPriority <= 0) {
-                    for (int i=0; i!=numMediumPriorityItems; ++i) {
-                        Executable executable = mediumPriorityItems[i];
-                        if (!running) return;
-                        try {
-                            executable.execute(timeSystem.currentTimeInMillis());
-                        } catch (Throwable e) {
-                            logger.error(e);
-                        }
-                    }
-                    // Reset the counter ...
-                    loopsUntilNextMediumPriority = mediumPriorityFrequency;
-                }
+    /**
+     * The state of a sequence of cycles, from when this driver starts until it stops.
+     */
+    @NotThreadSafe
+    private final class Cycles {
+        // Worker threads are only needed when partitions run concurrently, and are created by the thread that runs the cycles
+        // so that they can share its priority ...
+        private final ExecutorWorkers workers = numWorkers > 1 && !checkParallel
+                ? new ExecutorWorkers(name, numWorkers, Thread.currentThread().getPriority()) : null;
+        // The number of the current cycle, which is the number of its tick ...
+        private long cycle = 0L;
+
+        // The rate groups, their executable items, and the histograms that record how long each of the items takes, all of
+        // which are replaced whenever the registered executables change ...
+        private Executables.Snapshot snapshot = null;
+        private RateGroup[] groups = null;
+        private int numGroups = 0;
+        private StaggeredSchedule schedule = null;
+        private ExecutorPartitions partitions = null;
+        private LoadShedding shedding = null;
+        private long cyclesPerRebalance = 1L;
+        private int cyclesPerSchedule = 0;
+        private ExecutionHistogram[] cycleTimes = null;
 
-                // Execute the LOW priority items every `lowPriorityFrequency` times ...
-                if (loopsUntilNextLowPriority <= 0) {
-                    for (int i=0; i!=numLowPriorityItems; ++i) {
-                        Executable executable = lowPriorityItems[i];
-                        if (!running) return;
-                        try {
-                            executable.execute(timeSystem.currentTimeInMillis());
-                        } catch (Throwable e) {
-                            logger.error(e);
-                        }
+        // The metronome ticks at the start of every period, beginning with the first cycle. The deadlines of all cycles are
+        // computed from the same epoch ...
+        private final long epochInNanos = timeSystem.currentTimeInNanos();
+        private final Metronome metronome = metronomeFactory.create(executionPeriodInNanos, TimeUnit.NANOSECONDS, timeSystem);
+
+        /**
+         * Run one cycle.
+         *
+         * @return {@code true} if the cycle was completed, or {@code false} if this driver was stopped during the cycle
+         */
+        boolean runCycle() {
+            // Pick up any changes to the registered executables at the start of the cycle. This is a single volatile read
+            // unless something changed ...
+            Executables.Snapshot latest = executables.snapshot();
+            if (latest != snapshot) {
+                snapshot = latest;
+                groups = snapshot.groups;
+                numGroups = groups.length;
+                // Optionally spread the executables in each group across the cycles between the group's runs ...
+                schedule = staggered ? new StaggeredSchedule(snapshot) : null;
+                // Optionally defer the sheddable executables when a cycle runs out of time ...
+                shedding = loadSheddingBudgetInNanos > 0L ? new LoadShedding(snapshot, timeSystem, loadSheddingBudgetInNanos)
+                        : null;
+                // Optionally divide the executables into partitions that can run concurrently ...
+                if (numWorkers > 1 || checkParallel) {
+                    partitions = new ExecutorPartitions(snapshot, schedule, shedding, checkParallel ? 1 : numWorkers);
+                }
+                cyclesPerRebalance = cyclesPerRebalance(snapshot.cyclesPerSchedule());
+                if (snapshot.cyclesPerSchedule() != cyclesPerSchedule) {
+                    // Record the total time of each cycle, separately for each position in the schedule ...
+                    cyclesPerSchedule = snapshot.cyclesPerSchedule();
+                    cycleTimes = new ExecutionHistogram[cyclesPerSchedule];
+                    for (int i = 0; i != cyclesPerSchedule; ++i) {
+                        cycleTimes[i] = new ExecutionHistogram("cycle " + i);
                     }
-                    // Reset the counter ...
-                    loopsUntilNextLowPriority = lowPriorityFrequency;
+                    ExecutorDriver.this.cycleTimes = cycleTimes;
                 }
+            }
+
+            // Start a new cycle, which belongs to the latest tick of the schedule and must finish before the next tick ...
+            long startTimeInNanos = timeSystem.currentTimeInNanos();
+            long tick = (startTimeInNanos - epochInNanos) / executionPeriodInNanos;
+            long tickTimeInNanos = epochInNanos + tick * executionPeriodInNanos;
+            long deadlineInNanos = tickTimeInNanos + executionPeriodInNanos;
+            if (tick > cycle) {
+                // Ticks were dropped after an overrun, so skip their cycles too and keep every group on the tick grid.
+                // (Rounding can put the start of a cycle in the previous tick, so the cycle number never goes backwards.)
+                cycle = tick;
+            }
+            if (shedding != null) shedding.startCycle(tickTimeInNanos);
+            if (flightRecorder != null) flightRecorder.startCycle(snapshot, cycle, startTimeInNanos);
 
-                // Compute the time it took to run all of these ...
-                stopTimeInMillis = timeSystem.currentTimeInMillis();
-                long durationInMillis = stopTimeInMillis - startTimeInMillis;
-                if (durationInMillis > executionPeriodInMillis) {
-                    // It took too long to run our executables ...
-                    delayInformer.handle(durationInMillis, executionPeriodInMillis);
-                } else {
-                    // Pause until our next period begins ...
-                    nextTimeInMillis = startTimeInMillis + executionPeriodInMillis;
-                    while (timeSystem.currentTimeInMillis() < nextTimeInMillis) {
-                        // busy loop ...
+            if (workers != null) {
+                // Execute the partitions on all of the workers, and wait for them all to finish ...
+                if (!workers.runCycle(partitions, cycle, runner)) return false;
+            } else if (partitions != null) {
+                // Execute the partitions one after the other, in a different order on each cycle ...
+                if (!partitions.runInVaryingOrder(cycle, runner)) return false;
+            } else {
+                // Execute the items in each group that is due on this cycle, starting with the most frequent groups ...
+                for (int g = 0; g != numGroups; ++g) {
+                    if (schedule != null || (shedding != null && shedding.mayHaveDeferred(g))) {
+                        if (!execute(snapshot, g, cycle, schedule, shedding)) return false;
+                    } else if (groups[g].isDue(cycle)) {
+                        if (!execute(snapshot.executables[g], snapshot.times[g], snapshot.offsets[g])) return false;
                     }
                 }
             }
-        } finally {
-            CountDownLatch latch = stopped;
-            if (latch != null) latch.countDown();
+
+            // Compute the time it took to run all of these ...
+            long stopTimeInNanos = timeSystem.currentTimeInNanos();
+            boolean overrun = stopTimeInNanos > deadlineInNanos;
+            cycleTimes[(int) (cycle % cyclesPerSchedule)].record(stopTimeInNanos - startTimeInNanos);
+            if (flightRecorder != null) flightRecorder.endCycle(stopTimeInNanos - startTimeInNanos, overrun);
+            ++cycle;
+            if (cycle % cyclesPerRebalance == 0) {
+                // Periodically use the latest measurements to spread the work more evenly. This always happens between two
+                // whole schedules, and is skipped if that cycle is dropped ...
+                if (schedule != null) schedule.rebalance();
+                if (workers != null) partitions.rebalance();
+            }
+            if (overrun) {
+                // It took too long to run our executables, so report how long after its tick the cycle finished ...
+                delayInformer.handle(toMillisRoundingUp(stopTimeInNanos - tickTimeInNanos),
+                                     toMillisRoundingUp(executionPeriodInNanos));
+            }
+            return true;
+        }
+
+        /**
+         * Pause until the next period begins (returns immediately if it has already been missed).
+         */
+        void pause() {
+            metronome.pause();
+        }
+
+        /**
+         * Release the resources used by these cycles.
+         */
+        void close() {
+            if (workers != null) workers.stop();
+        }
+    }
+
+    /**
+     * Execute each of the supplied items in order, recording the time each takes in the corresponding histogram.
+     *
+     * @param items the items to be executed; may not be null
+     * @param times the histograms for the items, in the same order; may not be null
+     * @param offset the position of the first item when all executables in the snapshot are numbered in order from 0
+     * @return {@code true} if all items were executed, or {@code false} if this driver was stopped before all were executed
+     */
+    private boolean execute(Executable[] items, ExecutionHistogram[] times, int offset) {
+        final int numItems = items.length;
+        for (int i = 0; i != numItems; ++i) {
+            if (!running) return false;
+            execute(items[i], times[i], offset + i);
         }
+        return true;
+    }
+
+    /**
+     * Execute each of the items in a group that is due on the given cycle, according to the staggered schedule (if there is
+     * one) and the load shedding state (if there is one), recording the time each takes in the corresponding histogram.
+     *
+     * @param snapshot the snapshot of the executables; may not be null
+     * @param group the index of the group
+     * @param cycle the number of the current cycle
+     * @param schedule the staggered schedule, or null if the group runs on its own phase
+     * @param shedding the load shedding state, or null if load is not shed
+     * @return {@code true} if all due items were executed, or {@code false} if this driver was stopped before all were executed
+     */
+    private boolean execute(Executables.Snapshot snapshot, int group, long cycle, StaggeredSchedule schedule,
+            LoadShedding shedding) {
+        final Executable[] items = snapshot.executables[group];
+        final ExecutionHistogram[] times = snapshot.times[group];
+        final boolean groupDue = snapshot.groups[group].isDue(cycle);
+        final int offset = snapshot.offsets[group];
+        final int numItems = items.length;
+        for (int i = 0; i != numItems; ++i) {
+            if (!running) return false;
+            boolean due = schedule != null ? schedule.isDue(group, i, cycle) : groupDue;
+            if (shedding != null) due = shedding.admit(group, i, due);
+            if (due) execute(items[i], times[i], offset + i);
+        }
+        return true;
+    }
+
+    private boolean executeIfRunning(Executable executable, ExecutionHistogram times, int index) {
+        if (!running) return false;
+        execute(executable, times, index);
+        return true;
+    }
+
+    private void execute(Executable executable, ExecutionHistogram times, int index) {
+        long startTimeInNanos = timeSystem.currentTimeInNanos();
+        try {
+            executable.execute(TimeUnit.NANOSECONDS.toMillis(startTimeInNanos));
+        } catch (Throwable e) {
+            logger.error(e);
+        }
+        long durationInNanos = timeSystem.currentTimeInNanos() - startTimeInNanos;
+        times.record(durationInNanos);
+        if (flightRecorder != null) flightRecorder.recordItem(index, durationInNanos);
+    }
+
+    /**
+     * Compute how often a staggered schedule is rebalanced: about once a second, but always a whole number of schedules.
+     *
+     * @param cyclesPerSchedule the number of cycles in the schedule
+     * @return the number of cycles between rebalancing; always positive
+     */
+    private long cyclesPerRebalance(int cyclesPerSchedule) {
+        long cyclesPerSecond = Math.max(1L, TimeUnit.SECONDS.toNanos(1) / executionPeriodInNanos);
+        return Math.max(1L, (cyclesPerSecond + cyclesPerSchedule - 1) / cyclesPerSchedule) * cyclesPerSchedule;
+    }
+
+    private static long toMillisRoundingUp(long nanos) {
+        return (nanos + TimeUnit.MILLISECONDS.toNanos(1) - 1) / TimeUnit.MILLISECONDS.toNanos(1);
     }
 
     private static void noDelay(long actual, long desired) {
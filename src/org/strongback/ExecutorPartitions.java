@@ -0,0 +1,344 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.strongback.annotation.NotThreadSafe;
+
+/**
+ * The division of the {@link Executable}s in a {@link Executables.Snapshot snapshot} into partitions that can safely run at
+ * the same time, and the assignment of those partitions to the executor's worker threads.
+ * <p>
+ * Executables are put in the same partition when one {@link DependentExecutable#writes() writes} a resource that the other
+ * reads or writes, and all executables that do not declare their resources share a single partition that always runs on worker
+ * 0 (the executor's own thread). Within a partition the executables run in the same order as they would in single-threaded
+ * mode. Partitions stay on the same worker from one cycle to the next, and are only moved when {@link #rebalance() rebalancing}
+ * reduces the work done by the busiest worker by at least 10%.
+ * <p>
+ * This class never allocates after it is constructed. It is not thread-safe: the executor's thread must only
+ * {@link #rebalance() rebalance} while no worker is running, and each worker only runs its own partitions.
+ */
+@NotThreadSafe
+final class ExecutorPartitions {
+
+    /**
+     * Runs a single executable and records its execution time.
+     */
+    @FunctionalInterface
+    static interface ItemRunner {
+        /**
+         * Run the executable and record how long it takes.
+         *
+         * @param executable the executable; never null
+         * @param times the histogram for the executable; never null
+         * @param index the position of the executable when all executables in the snapshot are numbered in order from 0
+         * @return {@code true} if the executable was run, or {@code false} if the executor has been stopped
+         */
+        boolean run(Executable executable, ExecutionHistogram times, int index);
+    }
+
+    private final Executables.Snapshot snapshot;
+    private final StaggeredSchedule schedule;
+    private final LoadShedding shedding;
+    private final int numWorkers;
+    private final int[][] groupOf;
+    private final int[][] itemOf;
+    private final int[] workerOf;
+    private final int[] candidateWorkerOf;
+    private final int[][] partitionsOf;
+    private final int[] partitionCounts;
+    private final long[] costs;
+    private final long[] load;
+    private final int[] order;
+    private final int undeclared;
+
+    /**
+     * Partition the executables in the snapshot.
+     *
+     * @param snapshot the snapshot; may not be null
+     * @param schedule the staggered schedule for the snapshot, or null if each group runs on its own phase
+     * @param shedding the load shedding state for the snapshot, or null if load is not shed
+     * @param numWorkers the number of workers, including the executor's own thread; must be positive
+     */
+    ExecutorPartitions(Executables.Snapshot snapshot, StaggeredSchedule schedule, LoadShedding shedding, int numWorkers) {
+        this.snapshot = snapshot;
+        this.schedule = schedule;
+        this.shedding = shedding;
+        this.numWorkers = numWorkers;
+        int numItems = 0;
+        for (Executable[] items : snapshot.executables) {
+            numItems += items.length;
+        }
+
+        // Join each item with every other item that uses a resource written by either of them ...
+        int[] parent = new int[numItems];
+        int[] groups = new int[numItems];
+        int[] items = new int[numItems];
+        Map<Object, Boolean> written = new IdentityHashMap<>();
+        for (int g = 0, k = 0; g != snapshot.executables.length; ++g) {
+            for (int i = 0; i != snapshot.executables[g].length; ++i, ++k) {
+                parent[k] = k;
+                groups[k] = g;
+                items[k] = i;
+                if (snapshot.executables[g][i] instanceof DependentExecutable) {
+                    DependentExecutable dependent = (DependentExecutable) snapshot.executables[g][i];
+                    for (Object resource : resources(dependent.writes())) {
+                        written.put(resource, Boolean.TRUE);
+                    }
+                }
+            }
+        }
+        Map<Object, Integer> firstUser = new IdentityHashMap<>();
+        int firstUndeclared = -1;
+        for (int k = 0; k != numItems; ++k) {
+            Executable executable = snapshot.executables[groups[k]][items[k]];
+            if (executable instanceof DependentExecutable) {
+                DependentExecutable dependent = (DependentExecutable) executable;
+                join(parent, k, dependent.reads(), written, firstUser);
+                join(parent, k, dependent.writes(), written, firstUser);
+            } else if (firstUndeclared < 0) {
+                firstUndeclared = k;
+            } else {
+                union(parent, firstUndeclared, k);
+            }
+        }
+
+        // Number the partitions in the order of their first item, and collect each partition's items in order ...
+        int[] partitionOfRoot = new int[numItems];
+        Arrays.fill(partitionOfRoot, -1);
+        int[] sizes = new int[numItems];
+        int numPartitions = 0;
+        for (int k = 0; k != numItems; ++k) {
+            int root = find(parent, k);
+            if (partitionOfRoot[root] < 0) partitionOfRoot[root] = numPartitions++;
+            ++sizes[partitionOfRoot[root]];
+        }
+        this.groupOf = new int[numPartitions][];
+        this.itemOf = new int[numPartitions][];
+        for (int p = 0; p != numPartitions; ++p) {
+            groupOf[p] = new int[sizes[p]];
+            itemOf[p] = new int[sizes[p]];
+            sizes[p] = 0;
+        }
+        for (int k = 0; k != numItems; ++k) {
+            int p = partitionOfRoot[find(parent, k)];
+            groupOf[p][sizes[p]] = groups[k];
+            itemOf[p][sizes[p]] = items[k];
+            ++sizes[p];
+        }
+        this.undeclared = firstUndeclared >= 0 ? partitionOfRoot[find(parent, firstUndeclared)] : -1;
+
+        this.workerOf = new int[numPartitions];
+        this.candidateWorkerOf = new int[numPartitions];
+        this.partitionsOf = new int[numWorkers][numPartitions];
+        this.partitionCounts = new int[numWorkers];
+        this.costs = new long[numPartitions];
+        this.load = new long[numWorkers];
+        this.order = new int[numPartitions];
+        rebalance(true);
+    }
+
+    /**
+     * Get the number of partitions.
+     *
+     * @return the number of partitions; never negative
+     */
+    int partitionCount() {
+        return groupOf.length;
+    }
+
+    /**
+     * Get the number of workers that the partitions are assigned to.
+     *
+     * @return the number of workers; always positive
+     */
+    int workerCount() {
+        return numWorkers;
+    }
+
+    /**
+     * Get the worker that runs the given partition.
+     *
+     * @param partition the index of the partition
+     * @return the index of the worker, where 0 is the executor's own thread
+     */
+    int workerOf(int partition) {
+        return workerOf[partition];
+    }
+
+    /**
+     * Run the executables in all of the partitions assigned to the given worker that are due on the given cycle.
+     *
+     * @param worker the index of the worker
+     * @param cycle the number of the cycle
+     * @param runner the function that runs each executable; may not be null
+     * @return {@code true} if all due executables were run, or {@code false} if the executor was stopped
+     */
+    boolean run(int worker, long cycle, ItemRunner runner) {
+        final int[] partitions = partitionsOf[worker];
+        final int count = partitionCounts[worker];
+        for (int j = 0; j != count; ++j) {
+            if (!runPartition(partitions[j], cycle, runner)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Run the executables in all partitions that are due on the given cycle, one partition after another on the calling
+     * thread. The partitions are run in a different order on each cycle: the first partition is rotated every cycle, and the
+     * order is reversed on every other cycle. If the resources are declared correctly, the order of the partitions makes no
+     * difference.
+     *
+     * @param cycle the number of the cycle
+     * @param runner the function that runs each executable; may not be null
+     * @return {@code true} if all due executables were run, or {@code false} if the executor was stopped
+     */
+    boolean runInVaryingOrder(long cycle, ItemRunner runner) {
+        final int numPartitions = groupOf.length;
+        if (numPartitions == 0) return true;
+        final int first = (int) (cycle % numPartitions);
+        final boolean reversed = (cycle & 1L) == 1L;
+        for (int j = 0; j != numPartitions; ++j) {
+            int offset = reversed ? numPartitions - 1 - j : j;
+            if (!runPartition((first + offset) % numPartitions, cycle, runner)) return false;
+        }
+        return true;
+    }
+
+    private boolean runPartition(int partition, long cycle, ItemRunner runner) {
+        final int[] groups = groupOf[partition];
+        final int[] items = itemOf[partition];
+        final int numItems = groups.length;
+        for (int k = 0; k != numItems; ++k) {
+            int g = groups[k];
+            int i = items[k];
+            boolean due = schedule != null ? schedule.isDue(g, i, cycle) : snapshot.groups[g].isDue(cycle);
+            if (shedding != null) due = shedding.admit(g, i, due);
+            if (due && !runner.run(snapshot.executables[g][i], snapshot.times[g][i], snapshot.offsets[g] + i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reassign the partitions to the workers using the latest measured execution times, so that each worker does about the
+     * same amount of work per cycle.
+     *
+     * @return {@code true} if any partition was moved, or {@code false} if the current assignment was kept
+     */
+    boolean rebalance() {
+        return rebalance(false);
+    }
+
+    private boolean rebalance(boolean force) {
+        final int numPartitions = groupOf.length;
+        for (int p = 0; p != numPartitions; ++p) {
+            // The average work per cycle, using a minimum cost so that unmeasured executables are still spread out ...
+            long cost = 0L;
+            for (int k = 0; k != groupOf[p].length; ++k) {
+                int g = groupOf[p][k];
+                cost += Math.max(1L, snapshot.times[g][itemOf[p][k]].meanInNanos()) / snapshot.groups[g].periodInCycles();
+            }
+            costs[p] = Math.max(1L, cost);
+            order[p] = p;
+        }
+        // Sort by decreasing cost using an (allocation-free and stable) insertion sort ...
+        for (int j = 1; j < numPartitions; ++j) {
+            int partition = order[j];
+            int k = j - 1;
+            while (k >= 0 && costs[order[k]] < costs[partition]) {
+                order[k + 1] = order[k];
+                --k;
+            }
+            order[k + 1] = partition;
+        }
+        // The undeclared executables always run on the executor's thread, then the rest go to the least loaded worker ...
+        Arrays.fill(load, 0L);
+        if (undeclared >= 0) {
+            candidateWorkerOf[undeclared] = 0;
+            load[0] += costs[undeclared];
+        }
+        for (int j = 0; j != numPartitions; ++j) {
+            int partition = order[j];
+            if (partition == undeclared) continue;
+            int best = 0;
+            for (int w = 1; w != numWorkers; ++w) {
+                if (load[w] < load[best]) best = w;
+            }
+            candidateWorkerOf[partition] = best;
+            load[best] += costs[partition];
+        }
+        if (!force) {
+            long candidateHeaviest = heaviest();
+            Arrays.fill(load, 0L);
+            for (int p = 0; p != numPartitions; ++p) {
+                load[workerOf[p]] += costs[p];
+            }
+            if (candidateHeaviest * 10 > heaviest() * 9) return false;
+        }
+        System.arraycopy(candidateWorkerOf, 0, workerOf, 0, numPartitions);
+        Arrays.fill(partitionCounts, 0);
+        for (int p = 0; p != numPartitions; ++p) {
+            int w = workerOf[p];
+            partitionsOf[w][partitionCounts[w]++] = p;
+        }
+        return true;
+    }
+
+    private long heaviest() {
+        long heaviest = 0L;
+        for (long work : load) {
+            heaviest = Math.max(heaviest, work);
+        }
+        return heaviest;
+    }
+
+    private static Collection<?> resources(Collection<?> resources) {
+        return resources != null ? resources : Collections.emptySet();
+    }
+
+    private static void join(int[] parent, int item, Collection<?> resources, Map<Object, Boolean> written,
+            Map<Object, Integer> firstUser) {
+        for (Object resource : resources(resources)) {
+            if (!written.containsKey(resource)) continue; // only read, so it never conflicts
+            Integer first = firstUser.putIfAbsent(resource, item);
+            if (first != null) union(parent, first, item);
+        }
+    }
+
+    private static int find(int[] parent, int k) {
+        while (parent[k] != k) {
+            parent[k] = parent[parent[k]];
+            k = parent[k];
+        }
+        return k;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA < rootB) {
+            parent[rootB] = rootA;
+        } else if (rootB < rootA) {
+            parent[rootA] = rootB;
+        }
+    }
+}
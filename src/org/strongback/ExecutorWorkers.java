@@ -0,0 +1,150 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.strongback.annotation.ThreadSafe;
+import org.strongback.components.Stoppable;
+
+/**
+ * A small pool of threads that help the executor's thread run the {@link ExecutorPartitions partitions} of each cycle. The
+ * executor's thread is worker 0, and each additional worker has its own dedicated thread so that a partition keeps running on
+ * the same thread from one cycle to the next.
+ * <p>
+ * Each call to {@link #runCycle(ExecutorPartitions, long, ExecutorPartitions.ItemRunner)} releases the workers, runs worker
+ * 0's partitions on the calling thread, and then waits until every worker has finished the cycle. This barrier means the
+ * executor never starts a cycle until the previous one is complete, and it also ensures that everything done by the workers
+ * during one cycle is visible to all threads in the next cycle. Starting and waiting for a cycle never allocates.
+ * <p>
+ * A worker that fails still counts as finished, and its failure is rethrown on the executor's thread once every worker has
+ * finished the cycle, so a failure neither blocks the barrier nor ends the worker's thread.
+ */
+@ThreadSafe
+final class ExecutorWorkers implements Stoppable {
+
+    private final Thread[] threads;
+    private final AtomicInteger remaining = new AtomicInteger();
+    private volatile Thread coordinator;
+    private volatile ExecutorPartitions partitions;
+    private volatile ExecutorPartitions.ItemRunner runner;
+    private volatile long cycle = -1L;
+    private volatile Throwable failure;
+    private volatile boolean running = true;
+
+    /**
+     * Create and start the worker threads.
+     *
+     * @param name the name of the executor, used as a prefix for the names of the threads; may not be null
+     * @param numWorkers the number of workers, including the executor's own thread; must be positive
+     * @param priority the priority of the worker threads, which should be the same as that of the executor's thread
+     */
+    ExecutorWorkers(String name, int numWorkers, int priority) {
+        this.threads = new Thread[numWorkers - 1];
+        for (int w = 1; w < numWorkers; ++w) {
+            final int worker = w;
+            Thread thread = new Thread(() -> work(worker));
+            thread.setName(name + "-" + worker);
+            thread.setPriority(priority);
+            thread.setDaemon(true);
+            threads[w - 1] = thread;
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+    }
+
+    /**
+     * Run one cycle on all of the workers, and block until they have all finished. This must only be called by the executor's
+     * thread.
+     *
+     * @param partitions the partitions to be run; may not be null and must have the same number of workers as this pool
+     * @param cycle the number of the cycle
+     * @param runner the function that runs each executable; may not be null
+     * @return {@code true} if all due executables were run, or {@code false} if the executor was stopped
+     * @throws IllegalStateException if any of the other workers failed while running the cycle
+     */
+    boolean runCycle(ExecutorPartitions partitions, long cycle, ExecutorPartitions.ItemRunner runner) {
+        this.coordinator = Thread.currentThread();
+        this.partitions = partitions;
+        this.runner = runner;
+        remaining.set(threads.length);
+        // Writing the cycle publishes the fields above to the workers ...
+        this.cycle = cycle;
+        for (Thread thread : threads) {
+            LockSupport.unpark(thread);
+        }
+        boolean completed;
+        Throwable failure;
+        try {
+            completed = partitions.run(0, cycle, runner);
+        } finally {
+            // Wait for the other workers, which unpark this thread when the last one is done, even if this thread failed ...
+            while (remaining.get() != 0) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+            }
+            failure = this.failure;
+            this.failure = null;
+        }
+        if (failure != null) {
+            throw new IllegalStateException("A worker failed while running cycle " + cycle, failure);
+        }
+        return completed;
+    }
+
+    private void work(int worker) {
+        long lastCycle = -1L;
+        while (running) {
+            long cycle = this.cycle;
+            if (cycle == lastCycle) {
+                LockSupport.park(this);
+                continue;
+            }
+            lastCycle = cycle;
+            try {
+                partitions.run(worker, cycle, runner);
+            } catch (Throwable e) {
+                // Hand the failure to the coordinator, which would otherwise never learn of it ...
+                failure = e;
+            } finally {
+                if (remaining.decrementAndGet() == 0) {
+                    LockSupport.unpark(coordinator);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop all of the worker threads and wait for them to finish. This must not be called while a cycle is running.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        for (Thread thread : threads) {
+            LockSupport.unpark(thread);
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.interrupted();
+            }
+        }
+    }
+}
@@ -19,8 +19,6 @@ package org.strongback;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.IntSupplier;
 import java.util.function.Supplier;
 
 /**
@@ -30,11 +28,12 @@ final class FileDataWriter implements DataWriter {
 
     private final Supplier<String> filenameGenerator;
     private final Iterable<DataRecorderChannel> channels;
-    private final List<IntSupplier> suppliers = new ArrayList<>();
+    private DataRecorderChannel[] recorded = new DataRecorderChannel[0];
+    private DataRecordSampler recordSampler;
+    private ChannelSampler sampler;
     private MappedFileDataWriter writer;
     private long recordLength;
     private final long fileSize;
-    private final int channelCount;
 
     public FileDataWriter(Iterable<DataRecorderChannel> channels, Supplier<String> filenameGenerator, int writesPerSecond,
             int runningTimeInSeconds) {
@@ -42,20 +41,21 @@ final class FileDataWriter implements DataWriter {
         this.channels = channels;
 
         // Estimate minimum file size needed to write records at the specified rate and duration ...
-        int numWrites = writesPerSecond * runningTimeInSeconds;
+        long numWrites = (long) writesPerSecond * runningTimeInSeconds;
 
         // Infrastructure for variable element length
-        recordLength = Integer.BYTES;
-        recordLength += (Short.BYTES * suppliers.size());
+        recordLength = MappedFileDataWriter.recordLength(channelArray());
         fileSize = numWrites * recordLength + 1024; // add extra room for header and miscellaneous
 
-        AtomicInteger count = new AtomicInteger();
-        channels.forEach(ch -> count.incrementAndGet());
-        channelCount = count.get() + 1; // adding the time sequence
-
         openIfNeeded();
     }
 
+    private DataRecorderChannel[] channelArray() {
+        List<DataRecorderChannel> list = new ArrayList<>();
+        channels.forEach(list::add);
+        return list.toArray(new DataRecorderChannel[list.size()]);
+    }
+
     protected void openIfNeeded() {
         if (writer == null) {
             try {
@@ -63,31 +63,20 @@ final class FileDataWriter implements DataWriter {
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
-            suppliers.clear();
-
-            // Write the header
-            writer.write("data-record");
-
-            // Write the number of elements
-            writer.write(channelCount);
-
-            // Write the size of each channel as an integer
-            writer.write(Integer.BYTES); // size of the time channel
-            channels.forEach(channel -> {
-                IntSupplier supplier = channel.getSupplier();
-                assert supplier != null;
-                writer.write(Short.BYTES);
-                suppliers.add(supplier);
-            });
-
-            // Write the channel names (for each the length and then the name) ...
-            writer.write("Time");
-            channels.forEach(channel -> {
-                String name = channel.getName();
-                assert name != null;
-                writer.write(name);
-            });
-        } else if (writer.remaining() < recordLength) {
+            // Write the header with the types, widths and names of the channels ...
+            recorded = channelArray();
+            recordSampler = new DataRecordSampler(recorded);
+            if (MappedFileDataWriter.allDense(recorded)) {
+                sampler = null;
+                recordLength = MappedFileDataWriter.recordLength(recorded);
+                writer.writeHeader(recorded);
+            } else {
+                // Each file starts with the values of all sparse channels ...
+                sampler = new ChannelSampler(recorded);
+                recordLength = MappedFileDataWriter.maxSparseRecordLength(recorded);
+                writer.writeSparseHeader(recorded);
+            }
+        } else if (writer.remaining() < recordLength + Integer.BYTES) {
             System.err.println("Insuffient space to write next all of next record, closing file");
             close();
             openIfNeeded();
@@ -97,8 +86,11 @@ final class FileDataWriter implements DataWriter {
     @Override
     public void write(long time) {
         openIfNeeded();
-        writer.write((int) time);
-        suppliers.forEach((supplier) -> writer.write((short) supplier.getAsInt()));
+        if (sampler == null) {
+            writer.writeRecord(time, recordSampler);
+        } else {
+            writer.writeSparseRecord(time, recordSampler, recorded, sampler);
+        }
     }
 
     @Override
@@ -108,7 +100,6 @@ final class FileDataWriter implements DataWriter {
                 writer.close();
             } finally {
                 writer = null;
-                suppliers.clear();
             }
         }
     }
@@ -17,6 +17,10 @@
 package org.strongback;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.function.Supplier;
 
 import org.strongback.AsyncEventRecorder.EventType;
@@ -24,71 +28,189 @@ import org.strongback.AsyncEventRecorder.EventWriter;
 import org.strongback.annotation.ThreadSafe;
 
 /**
- * @author Randall Hauch
+ * An {@link EventWriter} that writes events to memory-mapped files. Each file starts with the string "{@value #HEADER}" and the
+ * definitions of all event types recorded so far, so each file can be read on its own. Every record is the time as a long, the
+ * event type number as an int, and a byte for the kind of record followed by the value:
+ * <ul>
+ * <li>{@value #TYPE_DEFINITION}: the definition of the event type, followed by the type's name as a string;</li>
+ * <li>{@value #INT_TYPE}: an integer value;</li>
+ * <li>{@value #STRING_DEFINITION}: a string value seen for the first time in the file, followed by the string's dictionary id
+ * as a variable-length integer and then the string;</li>
+ * <li>{@value #STRING_REFERENCE}: a string value that was defined earlier in the file, followed only by its dictionary id as a
+ * variable-length integer; and</li>
+ * <li>{@value #NULL_STRING}: a null string value.</li>
+ * </ul>
+ * Most string events repeat (command names, state transitions, etc.), so the dictionary means that each distinct string is
+ * written to a file once and usually takes only a byte or two after that. The dictionary holds at most a fixed number of
+ * strings, and when it is full the least recently used string is evicted and its id is reused by the next new string (whose
+ * definition then replaces the old one). The dictionary is cleared whenever a new file is started. The file ends with a time
+ * of -1 as an int, or with zeros.
  *
+ * @author Randall Hauch
  */
 @ThreadSafe
 final class FileEventWriter implements EventWriter {
 
-    private static final byte STRING_TYPE = 0x1;
-    private static final byte INT_TYPE = 0x2;
+    /**
+     * The string at the start of every event file.
+     */
+    static final String HEADER = "dictionary-event-record";
+
+    static final byte TYPE_DEFINITION = 0x0;
+    static final byte STRING_TYPE = 0x1;
+    static final byte INT_TYPE = 0x2;
+    static final byte STRING_DEFINITION = 0x3;
+    static final byte STRING_REFERENCE = 0x4;
+    static final byte NULL_STRING = 0x5;
+
+    /**
+     * The default maximum number of strings in the dictionary of each file.
+     */
+    static final int DEFAULT_DICTIONARY_SIZE = 1024;
+
+    // The time, event type and kind of each record, plus a variable-length id and a string length ...
+    private static final int RECORD_OVERHEAD = Long.BYTES + Integer.BYTES + Byte.BYTES + 5 + Integer.BYTES;
 
     private final Supplier<String> filenameGenerator;
-    private MappedFileDataWriter writer;
     private final long fileSize;
+    private final int dictionarySize;
+    private final Map<Integer, EventType> types = new LinkedHashMap<>();
+    private final Map<String, Integer> dictionary;
+    private MappedFileDataWriter writer;
+    // The length of the header and of the definitions of all event types, which start every file ...
+    private int definitionsLength = stringLength(HEADER);
 
     public FileEventWriter(Supplier<String> filenameGenerator, long fileSize) {
+        this(filenameGenerator, fileSize, DEFAULT_DICTIONARY_SIZE);
+    }
+
+    FileEventWriter(Supplier<String> filenameGenerator, long fileSize, int dictionarySize) {
         this.filenameGenerator = filenameGenerator;
         this.fileSize = fileSize;
+        this.dictionarySize = dictionarySize;
+        // Access order, so that the first entry is the least recently used ...
+        this.dictionary = new LinkedHashMap<>(dictionarySize * 2, 0.75f, true);
     }
 
-    protected void openIfNeeded() {
-        if (writer == null) {
-            try {
-                writer = new MappedFileDataWriter(filenameGenerator.get(), fileSize);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        } else if (writer.remaining() < 100) {
-            System.err.println("Insuffient space to write next all of next record, closing file");
+    /**
+     * Make sure there is room in the current file for a record of the given length, starting a new file if needed.
+     *
+     * @param length the maximum length of the record in bytes
+     * @return {@code true} if a new file was started, or {@code false} if the record fits in the current file
+     * @throws IllegalStateException if a new file is too small for the header, the event types and the record
+     */
+    protected boolean openIfNeeded(int length) {
+        if (writer != null) {
+            if (writer.remaining() >= length + Integer.BYTES) return false;
             close();
-            openIfNeeded();
         }
+        if (definitionsLength + length + Integer.BYTES > fileSize) {
+            throw new IllegalStateException("Event files of " + fileSize + " bytes are too small for the definitions of "
+                    + types.size() + " event types (" + definitionsLength + " bytes) and a record of " + length + " bytes");
+        }
+        try {
+            writer = new MappedFileDataWriter(filenameGenerator.get(), fileSize);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        // Start the file with all of the event types, and an empty dictionary ...
+        writer.write(HEADER);
+        dictionary.clear();
+        for (EventType type : types.values()) {
+            writeType(type.timeInMillis(), type);
+        }
+        return true;
     }
 
     @Override
     public void recordEventType(long time, EventType newType) {
-        openIfNeeded();
+        int length = typeLength(newType);
+        openIfNeeded(length);
+        EventType previous = types.put(newType.typeNumber(), newType);
+        if (previous != null) definitionsLength -= typeLength(previous);
+        definitionsLength += length;
+        writeType(time, newType);
+    }
+
+    private static int typeLength(EventType type) {
+        return Long.BYTES + Integer.BYTES + Byte.BYTES + stringLength(type.typeName());
+    }
+
+    private static int stringLength(String value) {
+        return Integer.BYTES + value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private void writeType(long time, EventType type) {
         writer.write(time);
-        writer.write(newType.typeName());
-        writer.write(newType.typeNumber());
+        writer.write(type.typeNumber());
+        writer.write(TYPE_DEFINITION);
+        writer.write(type.typeName());
     }
 
     @Override
     public void recordEvent(long time, int eventType, String value) {
-        openIfNeeded();
-        writer.write(time);
-        writer.write(eventType);
-        writer.write(STRING_TYPE);
-        writer.write(value);
+        if (value == null) {
+            openIfNeeded(RECORD_OVERHEAD);
+            writeStart(time, eventType, NULL_STRING);
+            return;
+        }
+        Integer id = dictionary.get(value);
+        if (id != null && !openIfNeeded(RECORD_OVERHEAD)) {
+            // The string was already defined in this file ...
+            writeStart(time, eventType, STRING_REFERENCE);
+            writer.writeVarint(id);
+            return;
+        }
+        // Define the string in this file ...
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        openIfNeeded(RECORD_OVERHEAD + bytes.length);
+        id = define(value);
+        writeStart(time, eventType, STRING_DEFINITION);
+        writer.writeVarint(id);
+        writer.write(bytes.length);
+        writer.write(bytes, 0, bytes.length);
+    }
+
+    private int define(String value) {
+        int id;
+        if (dictionary.size() < dictionarySize) {
+            id = dictionary.size();
+        } else {
+            // Evict the least recently used string, and reuse its id ...
+            Iterator<Map.Entry<String, Integer>> eldest = dictionary.entrySet().iterator();
+            id = eldest.next().getValue();
+            eldest.remove();
+        }
+        dictionary.put(value, id);
+        return id;
     }
 
     @Override
     public void recordEvent(long time, int eventType, int value) {
-        openIfNeeded();
+        openIfNeeded(RECORD_OVERHEAD);
+        writeStart(time, eventType, INT_TYPE);
+        writer.write(value);
+    }
+
+    private void writeStart(long time, int eventType, byte kind) {
         writer.write(time);
         writer.write(eventType);
-        writer.write(INT_TYPE);
-        writer.write(value);
+        writer.write(kind);
     }
 
     @Override
     public void close() {
-        try {
-            writer.close();
-        } finally {
-            writer = null;
+        if (writer != null) {
+            try {
+                writer.close();
+            } finally {
+                writer = null;
+            }
         }
     }
 
+    @Override
+    public String toString() {
+        return filenameGenerator + " (sized at " + fileSize + " bytes)";
+    }
 }
@@ -0,0 +1,285 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+import org.strongback.annotation.ThreadSafe;
+import org.strongback.components.Stoppable;
+
+/**
+ * An in-memory recorder of the timings of the executor's most recent cycles, including how long each {@link Executable} took in
+ * each cycle, that can be {@link #dump(String) dumped} to a CSV file when something goes wrong. The executor automatically
+ * requests a dump whenever a cycle overruns its period, but no more than once per buffer's worth of cycles.
+ * <p>
+ * All of the memory for the cycles is allocated up front (and only grows if more {@link Executable}s are registered), and
+ * recording never blocks or allocates. Dumps are written by a separate background thread, which copies the buffer without
+ * blocking the executor: each slot has a {@link StampedLock} that the executor holds for writing while it records the slot, and
+ * the background thread only uses {@link StampedLock#tryOptimisticRead() optimistic reads}, discarding the copy of a slot if
+ * the stamp is no longer {@link StampedLock#validate(long) valid} after it was copied or the slot has since been reused for a
+ * later cycle. (The lock provides the memory fences that make this correct.) The executor therefore never waits for a dump,
+ * although a dump may omit the few slots that were overwritten while it was being taken.
+ * <p>
+ * Each row of a dump is one cycle, with the cycle number, the time the cycle started (in milliseconds, relative to the first
+ * cycle in the dump), the total duration of the cycle and whether it overran (both in microseconds), followed by one column
+ * per {@link Executable} with the time it took in microseconds, or an empty value if it did not run in that cycle.
+ *
+ * @see Strongback.Configurator#recordFlightDataToFile(String, long, TimeUnit)
+ * @see Strongback#dumpFlightRecorder(String)
+ */
+@ThreadSafe
+public final class FlightRecorder implements Stoppable {
+
+    private static final long NOT_RUN = -1L;
+
+    private static final class Slot {
+        private final StampedLock lock = new StampedLock();
+        private long stamp; // only used by the executor's thread
+        private long sequence = -1L; // the number of cycles recorded before this one
+        private Executables.Snapshot snapshot;
+        private long cycle;
+        private long startTimeInNanos;
+        private long durationInNanos;
+        private boolean overrun;
+        private long[] itemTimesInNanos = new long[0];
+    }
+
+    private final Slot[] slots;
+    private final Supplier<String> filenameGenerator;
+    private final Logger logger;
+    private final Thread dumper;
+    private volatile long recorded = 0L;
+    private long lastAutomaticDump;
+    private Slot current;
+    private volatile String requestedDump;
+    private volatile boolean running = true;
+
+    /**
+     * Create a flight recorder and start its background thread.
+     *
+     * @param capacityInCycles the number of cycles kept in memory; must be positive
+     * @param filenameGenerator the supplier of the names of the files that dumps are written to; may not be null
+     * @param logger the logger for problems writing dumps; may not be null
+     */
+    FlightRecorder(int capacityInCycles, Supplier<String> filenameGenerator, Logger logger) {
+        if (capacityInCycles < 1) throw new IllegalArgumentException("The flight recorder capacity must be positive");
+        this.slots = new Slot[capacityInCycles];
+        this.lastAutomaticDump = -capacityInCycles; // so the first overrun is always dumped
+        for (int i = 0; i != capacityInCycles; ++i) {
+            slots[i] = new Slot();
+        }
+        this.filenameGenerator = filenameGenerator;
+        this.logger = logger;
+        this.dumper = new Thread(this::dumpWhenRequested);
+        this.dumper.setName("Strongback Flight Recorder");
+        this.dumper.setDaemon(true);
+        this.dumper.start();
+    }
+
+    /**
+     * Get the number of cycles that this recorder keeps in memory.
+     *
+     * @return the capacity; always positive
+     */
+    public int capacityInCycles() {
+        return slots.length;
+    }
+
+    /**
+     * Asynchronously write the recorded cycles to a new file. This method never blocks, and if a dump is already pending the
+     * new request is merged with it.
+     *
+     * @param reason the reason for the dump, which is written at the top of the file; may be null
+     */
+    public void dump(String reason) {
+        requestedDump = reason != null ? reason : "requested";
+        LockSupport.unpark(dumper);
+    }
+
+    /**
+     * Start recording a new cycle. This must only be called by the executor's thread.
+     *
+     * @param snapshot the snapshot of the executables run in this cycle; may not be null
+     * @param cycle the number of the cycle
+     * @param startTimeInNanos the time the cycle started
+     */
+    void startCycle(Executables.Snapshot snapshot, long cycle, long startTimeInNanos) {
+        Slot slot = slots[(int) (recorded % slots.length)];
+        if (!slot.lock.isWriteLocked()) {
+            // Readers now ignore this slot. It is still locked if the previous cycle was abandoned (nothing else writes) ...
+            slot.stamp = slot.lock.writeLock();
+        }
+        if (slot.itemTimesInNanos.length < snapshot.size) {
+            // More executables were registered ...
+            slot.itemTimesInNanos = new long[snapshot.size];
+        }
+        Arrays.fill(slot.itemTimesInNanos, 0, snapshot.size, NOT_RUN);
+        slot.sequence = recorded;
+        slot.snapshot = snapshot;
+        slot.cycle = cycle;
+        slot.startTimeInNanos = startTimeInNanos;
+        current = slot;
+    }
+
+    /**
+     * Record the time taken by one executable in the current cycle. This may be called by any executor thread, but only for the
+     * executables that thread is running.
+     *
+     * @param index the position of the executable in the snapshot
+     * @param durationInNanos the time the executable took
+     */
+    void recordItem(int index, long durationInNanos) {
+        current.itemTimesInNanos[index] = durationInNanos;
+    }
+
+    /**
+     * Finish recording the current cycle, and request a dump if the cycle overran and there has not been an automatic dump of
+     * any of the recorded cycles. This must only be called by the executor's thread after all work in the cycle is done.
+     *
+     * @param durationInNanos the total time taken by the cycle
+     * @param overrun {@code true} if the cycle did not finish before its deadline
+     */
+    void endCycle(long durationInNanos, boolean overrun) {
+        Slot slot = current;
+        slot.durationInNanos = durationInNanos;
+        slot.overrun = overrun;
+        slot.lock.unlockWrite(slot.stamp); // readers can use this slot again
+        recorded = recorded + 1;
+        if (overrun && recorded - lastAutomaticDump > slots.length) {
+            lastAutomaticDump = recorded;
+            dump("cycle " + slot.cycle + " overran");
+        }
+    }
+
+    private void dumpWhenRequested() {
+        while (running) {
+            String reason = requestedDump;
+            if (reason == null) {
+                LockSupport.park(this);
+                continue;
+            }
+            requestedDump = null;
+            try {
+                write(reason, copy());
+            } catch (IOException | RuntimeException e) {
+                logger.error(e, "Unable to write flight recorder dump");
+            }
+        }
+    }
+
+    /**
+     * Copy the completed cycles without blocking the executor, skipping any slot that is modified while it is being copied.
+     *
+     * @return the copies of the slots, oldest first; never null
+     */
+    private List<Slot> copy() {
+        long end = recorded;
+        long start = Math.max(0L, end - slots.length);
+        List<Slot> copies = new ArrayList<>((int) (end - start));
+        for (long n = start; n != end; ++n) {
+            Slot slot = slots[(int) (n % slots.length)];
+            long stamp = slot.lock.tryOptimisticRead();
+            if (stamp == 0L) continue; // being written
+            Slot copy = new Slot();
+            copy.sequence = slot.sequence;
+            copy.snapshot = slot.snapshot;
+            copy.cycle = slot.cycle;
+            copy.startTimeInNanos = slot.startTimeInNanos;
+            copy.durationInNanos = slot.durationInNanos;
+            copy.overrun = slot.overrun;
+            long[] times = slot.itemTimesInNanos;
+            // The fields may be inconsistent if the slot is being overwritten, so don't trust any of them yet ...
+            int size = copy.snapshot != null ? Math.min(times.length, copy.snapshot.size) : 0;
+            copy.itemTimesInNanos = Arrays.copyOf(times, size);
+            // The slot may have been reused for a later cycle since 'recorded' was read ...
+            if (slot.lock.validate(stamp) && copy.sequence == n) copies.add(copy);
+        }
+        return copies;
+    }
+
+    private void write(String reason, List<Slot> cycles) throws IOException {
+        // Each executable has its own column, even when the cycles use different snapshots ...
+        Map<ExecutionHistogram, Integer> columns = new IdentityHashMap<>();
+        List<String> names = new ArrayList<>();
+        for (Slot cycle : cycles) {
+            for (ExecutionHistogram[] times : cycle.snapshot.times) {
+                for (ExecutionHistogram histogram : times) {
+                    if (columns.putIfAbsent(histogram, columns.size()) == null) names.add(histogram.getName());
+                }
+            }
+        }
+        Path path = Paths.get(filenameGenerator.get());
+        while (Files.exists(path)) {
+            path = Paths.get(filenameGenerator.get());
+        }
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write("# " + reason + "\n");
+            writer.write("Cycle,Start (ms),Duration (us),Overrun");
+            for (String name : names) {
+                writer.write("," + name.replace(',', ' '));
+            }
+            writer.write("\n");
+            long firstStart = cycles.isEmpty() ? 0L : cycles.get(0).startTimeInNanos;
+            String[] row = new String[names.size()];
+            for (Slot cycle : cycles) {
+                Arrays.fill(row, "");
+                ExecutionHistogram[][] times = cycle.snapshot.times;
+                for (int g = 0; g != times.length; ++g) {
+                    for (int i = 0; i != times[g].length; ++i) {
+                        long time = cycle.itemTimesInNanos[cycle.snapshot.offsets[g] + i];
+                        if (time != NOT_RUN) row[columns.get(times[g][i])] = Long.toString(TimeUnit.NANOSECONDS.toMicros(time));
+                    }
+                }
+                writer.write(cycle.cycle + "," + TimeUnit.NANOSECONDS.toMillis(cycle.startTimeInNanos - firstStart) + ","
+                        + TimeUnit.NANOSECONDS.toMicros(cycle.durationInNanos) + "," + (cycle.overrun ? 1 : 0));
+                for (String value : row) {
+                    writer.write("," + value);
+                }
+                writer.write("\n");
+            }
+        }
+        logger.info("Wrote " + cycles.size() + " cycles of flight recorder data to " + path);
+    }
+
+    /**
+     * Stop the background thread after it finishes any dump that it is writing. Dumps requested after this are ignored.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        LockSupport.unpark(dumper);
+    }
+
+    @Override
+    public String toString() {
+        return "last " + slots.length + " cycles to " + filenameGenerator;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import org.strongback.annotation.NotThreadSafe;
+import org.strongback.components.Clock;
+
+/**
+ * Tracks the time used in each cycle of the executor, and decides whether each {@link Executor.RateGroup#isSheddable()
+ * sheddable} {@link Executable} can run or must be deferred because the cycle's time budget has been used. A deferred execution
+ * runs on the first later cycle that still has time left when the executable is reached; if the executable comes due again
+ * first, the deferred execution is shed. Executables in other groups are never deferred. The number of deferred and shed
+ * executions are counted in each executable's {@link ExecutionHistogram}.
+ * <p>
+ * This class never allocates after it is constructed. The executor's thread must {@link #startCycle(long) start} each cycle
+ * before any executables are run, and each executable must only be {@link #admit(int, int, boolean) admitted} by one thread at
+ * a time.
+ */
+@NotThreadSafe
+final class LoadShedding {
+
+    private final Executables.Snapshot snapshot;
+    private final Clock timeSystem;
+    private final long budgetInNanos;
+    private final boolean[][] pending;
+    private volatile long cycleStartInNanos;
+
+    /**
+     * Create the load shedding state for the executables in a snapshot.
+     *
+     * @param snapshot the snapshot; may not be null
+     * @param timeSystem the clock used to measure the time used in each cycle; may not be null
+     * @param budgetInNanos the time in each cycle after which sheddable executables are deferred; must be positive
+     */
+    LoadShedding(Executables.Snapshot snapshot, Clock timeSystem, long budgetInNanos) {
+        this.snapshot = snapshot;
+        this.timeSystem = timeSystem;
+        this.budgetInNanos = budgetInNanos;
+        this.pending = new boolean[snapshot.groups.length][];
+        for (int g = 0; g != pending.length; ++g) {
+            pending[g] = new boolean[snapshot.executables[g].length];
+        }
+    }
+
+    /**
+     * Determine whether the given group has to be visited on a cycle when it is not due, because it is sheddable and may have
+     * deferred executions.
+     *
+     * @param group the index of the group in the snapshot
+     * @return {@code true} if the group's executables may have deferred executions, or {@code false} otherwise
+     */
+    boolean mayHaveDeferred(int group) {
+        return snapshot.groups[group].isSheddable();
+    }
+
+    /**
+     * Mark the start of a new cycle.
+     *
+     * @param startTimeInNanos the time that the cycle started, from the same clock given to the constructor
+     */
+    void startCycle(long startTimeInNanos) {
+        this.cycleStartInNanos = startTimeInNanos;
+    }
+
+    /**
+     * Determine whether the given executable should run now.
+     *
+     * @param group the index of the executable's group in the snapshot
+     * @param item the index of the executable within its group
+     * @param due {@code true} if the executable is due on this cycle
+     * @return {@code true} if the executable should run now, or {@code false} if it should not run on this cycle
+     */
+    boolean admit(int group, int item, boolean due) {
+        if (!snapshot.groups[group].isSheddable()) return due;
+        boolean deferred = pending[group][item];
+        if (!due && !deferred) return false;
+        if (timeSystem.currentTimeInNanos() - cycleStartInNanos < budgetInNanos) {
+            // There is still time in this cycle, so run the due or deferred execution ...
+            pending[group][item] = false;
+            return true;
+        }
+        if (due) {
+            ExecutionHistogram times = snapshot.times[group][item];
+            // The previous execution never had a chance to run ...
+            if (deferred) times.recordShed();
+            times.recordDeferred();
+            pending[group][item] = true;
+        }
+        return false;
+    }
+}
@@ -34,6 +34,16 @@ import org.strongback.annotation.ThreadSafe;
 @ThreadSafe
 final class MappedFileDataWriter implements DataWriter {
 
+    /**
+     * The string at the start of every data file.
+     */
+    static final String HEADER = "typed-data-record";
+
+    /**
+     * The string at the start of every data file with channels that are not recorded every time.
+     */
+    static final String SPARSE_HEADER = "sparse-data-record";
+
     private final Charset UTF8 = StandardCharsets.UTF_8;
 
     private final File outFile;
@@ -48,8 +58,9 @@ final class MappedFileDataWriter implements DataWriter {
     }
 
     public void write( String str ) {
-        buffer.putInt(str.length());
-        buffer.put(str.getBytes(UTF8));
+        byte[] bytes = str.getBytes(UTF8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
     }
 
     public void write( int number ) {
@@ -61,6 +72,24 @@ final class MappedFileDataWriter implements DataWriter {
         buffer.putLong(number);
     }
 
+    public void write( byte number ) {
+        buffer.put(number);
+    }
+
+    /**
+     * Write the given non-negative number as a variable-length integer, with 7 bits per byte and the high bit set on all but
+     * the last byte.
+     *
+     * @param number the number; may not be negative
+     */
+    public void writeVarint( int number ) {
+        while ((number & ~0x7F) != 0) {
+            buffer.put((byte) ((number & 0x7F) | 0x80));
+            number >>>= 7;
+        }
+        buffer.put((byte) number);
+    }
+
     public void write( short number ) {
         buffer.putShort(number);
     }
@@ -73,6 +102,157 @@ final class MappedFileDataWriter implements DataWriter {
         buffer.putDouble(number);
     }
 
+    public void write( byte[] bytes, int offset, int length ) {
+        buffer.put(bytes, offset, length);
+    }
+
+    public void write( boolean value ) {
+        buffer.put(value ? (byte) 1 : (byte) 0);
+    }
+
+    /**
+     * Write the header of a data file with the given channels. The header is the string "{@value #HEADER}", the number of
+     * channels (including the time channel), the width in bytes and the {@link DataRecorderChannel.Type#code() type code} of
+     * each channel, and finally the name of each channel. The time channel is always first and is an
+     * {@link DataRecorderChannel.Type#INT int} channel named "Time".
+     *
+     * @param channels the channels other than time; may not be null
+     */
+    void writeHeader( DataRecorderChannel[] channels ) {
+        writeHeader(HEADER, channels);
+    }
+
+    /**
+     * Write the header of a data file with the given channels, starting with the given string instead of "{@value #HEADER}".
+     *
+     * @param header the string that identifies the format of the file; may not be null
+     * @param channels the channels other than time; may not be null
+     * @see #writeHeader(DataRecorderChannel[])
+     */
+    void writeHeader( String header, DataRecorderChannel[] channels ) {
+        write(header);
+        write(channels.length + 1);
+        write(DataRecorderChannel.Type.INT.width());
+        write((int) DataRecorderChannel.Type.INT.code());
+        for (DataRecorderChannel channel : channels) {
+            write(channel.getType().width());
+            write((int) channel.getType().code());
+        }
+        write("Time");
+        for (DataRecorderChannel channel : channels) {
+            write(channel.getName());
+        }
+    }
+
+    /**
+     * Write a record with the given time and the current value of each channel, copying the record sampled by the given
+     * sampler with a single bulk put. This never allocates.
+     *
+     * @param time the time in milliseconds
+     * @param sampler the sampler of the channels other than time, in the same order as the header; may not be null
+     */
+    void writeRecord( long time, DataRecordSampler sampler ) {
+        buffer.put(sampler.sample(time), 0, sampler.recordLength());
+    }
+
+    /**
+     * Compute the number of bytes in each record with the given channels.
+     *
+     * @param channels the channels other than time; may not be null
+     * @return the length of each record in bytes
+     */
+    static int recordLength( DataRecorderChannel[] channels ) {
+        int length = DataRecorderChannel.Type.INT.width(); // time
+        for (DataRecorderChannel channel : channels) {
+            length += channel.getType().width();
+        }
+        return length;
+    }
+
+    /**
+     * Determine whether all of the given channels are recorded every time, so that they can be written as fixed-width records.
+     *
+     * @param channels the channels other than time; may not be null
+     * @return {@code true} if all channels are {@link RecordingPolicy#isDense() dense}
+     */
+    static boolean allDense( DataRecorderChannel[] channels ) {
+        for (DataRecorderChannel channel : channels) {
+            if (!channel.getPolicy().isDense()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Write the header of a data file with some channels that are not recorded every time. The header is the same as
+     * {@link #writeHeader(DataRecorderChannel[])} but starts with "{@value #SPARSE_HEADER}", and is followed by a byte for each
+     * channel other than time that is 1 if the channel is {@link RecordingPolicy#isDense() dense} or 0 if it is sparse.
+     *
+     * @param channels the channels other than time; may not be null
+     */
+    void writeSparseHeader( DataRecorderChannel[] channels ) {
+        writeHeader(SPARSE_HEADER, channels);
+        for (DataRecorderChannel channel : channels) {
+            write(channel.getPolicy().isDense());
+        }
+    }
+
+    /**
+     * Write a record of a file with some sparse channels. The record is the time, the current value of each dense channel,
+     * the number of sparse entries as a short, and then for each sparse channel whose value is to be recorded the index of the
+     * channel in the header (as a short, where the time channel is 0) followed by the value. This never allocates.
+     *
+     * @param time the time in milliseconds
+     * @param denseSampler the sampler of the time and the dense channels; may not be null
+     * @param channels the channels other than time, in the same order as the header; may not be null
+     * @param sampler the sampler that applies the channels' policies; may not be null
+     */
+    void writeSparseRecord( long time, DataRecordSampler denseSampler, DataRecorderChannel[] channels,
+                            ChannelSampler sampler ) {
+        buffer.put(denseSampler.sample(time), 0, denseSampler.recordLength());
+        int countPosition = buffer.position();
+        buffer.putShort((short) 0);
+        short count = 0;
+        for (int i = 0; i != channels.length; ++i) {
+            if (!channels[i].getPolicy().isDense() && sampler.sample(i, time)) {
+                buffer.putShort((short) (i + 1));
+                writeBits(channels[i].getType(), sampler.bits(i));
+                ++count;
+            }
+        }
+        buffer.putShort(countPosition, count);
+    }
+
+    private void writeBits( DataRecorderChannel.Type type, long bits ) {
+        switch (type) {
+            case INT:
+            case FLOAT:
+                buffer.putInt((int) bits);
+                break;
+            case LONG:
+            case DOUBLE:
+                buffer.putLong(bits);
+                break;
+            case BOOLEAN:
+                buffer.put((byte) bits);
+                break;
+        }
+    }
+
+    /**
+     * Compute the largest number of bytes in each record of a file with some sparse channels.
+     *
+     * @param channels the channels other than time; may not be null
+     * @return the maximum length of each record in bytes
+     */
+    static int maxSparseRecordLength( DataRecorderChannel[] channels ) {
+        int length = DataRecorderChannel.Type.INT.width() + Short.BYTES;
+        for (DataRecorderChannel channel : channels) {
+            length += channel.getType().width();
+            if (!channel.getPolicy().isDense()) length += Short.BYTES;
+        }
+        return length;
+    }
+
     public int remaining() {
         return buffer.remaining();
     }
@@ -80,21 +260,45 @@ final class MappedFileDataWriter implements DataWriter {
     @Override
     public void close() {
         try {
-            // Write terminator
-            buffer.putInt(0xFFFFFFFF);
+            terminate();
         } finally {
-            try {
-                // And always force the buffer ...
-                buffer.force();
-            } finally {
-                try{
-                    // And always close the channel ...
-                    channel.close();
-                } catch (IOException e) {
-                    throw new RuntimeException("Failed to close channel",e);
-                }
+            release();
+        }
+    }
+
+    /**
+     * Write the terminator after the last record. No more values can be written once this is called.
+     */
+    void terminate() {
+        // Write terminator
+        buffer.putInt(0xFFFFFFFF);
+    }
+
+    /**
+     * Force the written content to the file and close the file. This may block for some time, so it is best called on a
+     * thread other than the executor's.
+     */
+    void release() {
+        try {
+            // Always force the buffer ...
+            buffer.force();
+        } finally {
+            try{
+                // And always close the channel ...
+                channel.close();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to close channel",e);
             }
         }
     }
 
+    /**
+     * Get the file that this writer writes to.
+     *
+     * @return the file; never null
+     */
+    File file() {
+        return outFile;
+    }
+
 }
@@ -0,0 +1,154 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import java.util.concurrent.TimeUnit;
+
+import org.strongback.annotation.Immutable;
+
+/**
+ * A policy that determines when the {@link DataRecorder data recorder} reads and records the value of a channel. By default
+ * every channel is recorded {@link #always() every time} the data recorder runs, but values that rarely change can instead be
+ * recorded only {@link #onChange() when they change}, or {@link #onChange(double, long, TimeUnit) when they change by more
+ * than a deadband}. Channels that are not recorded every time are stored as sparse (time, channel, value) entries alongside
+ * the other channels, so they take no space while they do not change.
+ * <p>
+ * Any policy can also limit how often the channel's supplier is {@link #pollingEvery(long, TimeUnit) polled}, which is useful
+ * when reading the value is expensive (e.g., requires a CAN message).
+ *
+ * <pre>
+ * Strongback.dataRecorder()
+ *           .register("Lift max", lift::getMaxHeight, RecordingPolicy.onChange())
+ *           .registerDouble("Heading", gyro::getAngle, RecordingPolicy.onChange(0.5, 1, TimeUnit.SECONDS))
+ *           .registerDouble("Pressure", pressure::read, RecordingPolicy.always().pollingEvery(500, TimeUnit.MILLISECONDS));
+ * </pre>
+ *
+ * @see DataRecorder#register(String, java.util.function.IntSupplier, RecordingPolicy)
+ */
+@Immutable
+public final class RecordingPolicy {
+
+    private static final RecordingPolicy ALWAYS = new RecordingPolicy(false, 0.0, 0L, 0L);
+    private static final RecordingPolicy ON_CHANGE = new RecordingPolicy(true, 0.0, 0L, 0L);
+
+    /**
+     * Get the policy that reads and records the channel every time the data recorder runs.
+     *
+     * @return the policy; never null
+     */
+    public static RecordingPolicy always() {
+        return ALWAYS;
+    }
+
+    /**
+     * Get the policy that records the channel only when its value is different from the last recorded value.
+     *
+     * @return the policy; never null
+     */
+    public static RecordingPolicy onChange() {
+        return ON_CHANGE;
+    }
+
+    /**
+     * Create a policy that records the channel only when its value differs from the last recorded value by more than the
+     * given deadband, or when the value has not been recorded for the given interval.
+     *
+     * @param deadband the largest change in value that is not recorded; may not be negative
+     * @param maxInterval the longest time between recorded values, or 0 if there is no limit; may not be negative
+     * @param unit the unit of the interval; may not be null
+     * @return the policy; never null
+     */
+    public static RecordingPolicy onChange(double deadband, long maxInterval, TimeUnit unit) {
+        if (deadband < 0.0) throw new IllegalArgumentException("The deadband may not be negative");
+        if (maxInterval < 0L) throw new IllegalArgumentException("The maximum interval may not be negative");
+        if (unit == null) throw new IllegalArgumentException("The time unit may not be null");
+        return new RecordingPolicy(true, deadband, unit.toMillis(maxInterval), 0L);
+    }
+
+    private final boolean onChange;
+    private final double deadband;
+    private final long maxIntervalInMillis;
+    private final long pollIntervalInMillis;
+
+    private RecordingPolicy(boolean onChange, double deadband, long maxIntervalInMillis, long pollIntervalInMillis) {
+        this.onChange = onChange;
+        this.deadband = deadband;
+        this.maxIntervalInMillis = maxIntervalInMillis;
+        this.pollIntervalInMillis = pollIntervalInMillis;
+    }
+
+    /**
+     * Create a policy that is the same as this policy except that the channel's supplier is read at most once per interval.
+     *
+     * @param interval the shortest time between reads of the channel's value, or 0 to read every time; may not be negative
+     * @param unit the unit of the interval; may not be null
+     * @return the new policy; never null
+     */
+    public RecordingPolicy pollingEvery(long interval, TimeUnit unit) {
+        if (interval < 0L) throw new IllegalArgumentException("The polling interval may not be negative");
+        if (unit == null) throw new IllegalArgumentException("The time unit may not be null");
+        return new RecordingPolicy(onChange, deadband, maxIntervalInMillis, unit.toMillis(interval));
+    }
+
+    /**
+     * Determine whether channels with this policy are read and recorded every time the data recorder runs.
+     *
+     * @return {@code true} if the channel is recorded every time, or {@code false} if it is recorded sparsely
+     */
+    public boolean isDense() {
+        return !onChange && pollIntervalInMillis == 0L;
+    }
+
+    /**
+     * Determine whether the channel's value should be read.
+     *
+     * @param timeInMillis the current time
+     * @param lastPolledInMillis the time the value was last read, or {@link Long#MIN_VALUE} if it has never been read
+     * @return {@code true} if the value should be read
+     */
+    boolean shouldPoll(long timeInMillis, long lastPolledInMillis) {
+        return lastPolledInMillis == Long.MIN_VALUE || timeInMillis - lastPolledInMillis >= pollIntervalInMillis;
+    }
+
+    /**
+     * Determine whether a value that was just read should be recorded.
+     *
+     * @param timeInMillis the current time
+     * @param bits the raw bits of the value that was read
+     * @param value the value that was read
+     * @param lastBits the raw bits of the last recorded value
+     * @param lastValue the last recorded value
+     * @param lastRecordedInMillis the time the last value was recorded, or {@link Long#MIN_VALUE} if none has been recorded
+     * @return {@code true} if the value should be recorded
+     */
+    boolean shouldRecord(long timeInMillis, long bits, double value, long lastBits, double lastValue,
+            long lastRecordedInMillis) {
+        if (!onChange || lastRecordedInMillis == Long.MIN_VALUE) return true;
+        if (maxIntervalInMillis != 0L && timeInMillis - lastRecordedInMillis >= maxIntervalInMillis) return true;
+        if (deadband == 0.0) return bits != lastBits;
+        return Math.abs(value - lastValue) > deadband;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(onChange ? "on change" : "always");
+        if (deadband != 0.0) sb.append(" beyond ").append(deadband);
+        if (maxIntervalInMillis != 0L) sb.append(" or every ").append(maxIntervalInMillis).append(" ms");
+        if (pollIntervalInMillis != 0L) sb.append(", polling every ").append(pollIntervalInMillis).append(" ms");
+        return sb.toString();
+    }
+}
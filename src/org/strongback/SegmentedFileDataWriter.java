@@ -0,0 +1,261 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.strongback.annotation.ThreadSafe;
+import org.strongback.components.Stoppable;
+
+/**
+ * A {@link DataWriter} that records into a rolling series of fixed-size, memory-mapped segment files. Each segment is a
+ * complete data file in the same format written by {@link FileDataWriter}, so each can be read on its own.
+ * <p>
+ * The executor thread only ever copies values into the current mapped segment. When the segment is full, the writer switches
+ * to the next segment, which a background thread has already created and mapped, and hands the full segment to that thread to
+ * be {@link MappedFileDataWriter#release() forced to disk and closed}. The background thread also deletes the oldest segment
+ * files so that no more than a fixed number of segments, and no more than the disk budget, are kept. The segment being written
+ * and the next segment, which is created in advance, count towards both limits.
+ *
+ * @see Strongback.Configurator#recordDataToFile(String, long, int, long)
+ */
+@ThreadSafe
+final class SegmentedFileDataWriter implements DataWriter, Stoppable {
+
+    private static final Object PREPARE_NEXT = new Object();
+    private static final Object STOP = new Object();
+
+    private static final class Segment {
+        private final MappedFileDataWriter writer;
+        private final DataRecorderChannel[] channels;
+        private final DataRecordSampler recordSampler;
+        private final ChannelSampler sampler;
+        private final int recordLength;
+
+        private Segment(MappedFileDataWriter writer, DataRecorderChannel[] channels) {
+            this.writer = writer;
+            this.channels = channels;
+            this.recordSampler = new DataRecordSampler(channels);
+            if (MappedFileDataWriter.allDense(channels)) {
+                this.sampler = null;
+                this.recordLength = MappedFileDataWriter.recordLength(channels);
+            } else {
+                // Each segment starts with the values of all sparse channels ...
+                this.sampler = new ChannelSampler(channels);
+                this.recordLength = MappedFileDataWriter.maxSparseRecordLength(channels);
+            }
+        }
+    }
+
+    private final Iterable<DataRecorderChannel> channels;
+    private final Supplier<String> filenameGenerator;
+    private final long segmentSizeInBytes;
+    private final int retainedSegments;
+    private final Logger logger;
+    private final BlockingQueue<Object> toBackground = new LinkedBlockingQueue<>();
+    private final Deque<File> closedFiles = new ArrayDeque<>();
+    private final Thread background;
+    private final AtomicReference<Segment> next = new AtomicReference<>();
+    private Segment current;
+    private boolean closed = false;
+
+    /**
+     * Create a segmented writer and start its background thread.
+     *
+     * @param channels the channels to be recorded; may not be null
+     * @param filenameGenerator the supplier of the names of the segment files; may not be null
+     * @param segmentSizeInBytes the size of each segment file in bytes
+     * @param segmentCount the maximum number of segment files to keep on disk; must be at least 3
+     * @param diskBudgetInBytes the maximum total size of the segment files kept on disk; must allow at least 3 segments
+     * @param logger the logger for problems writing the segments; may not be null
+     */
+    SegmentedFileDataWriter(Iterable<DataRecorderChannel> channels, Supplier<String> filenameGenerator, long segmentSizeInBytes,
+            int segmentCount, long diskBudgetInBytes, Logger logger) {
+        this.channels = channels;
+        this.filenameGenerator = filenameGenerator;
+        this.segmentSizeInBytes = segmentSizeInBytes;
+        this.retainedSegments = (int) Math.max(3L, Math.min(segmentCount, diskBudgetInBytes / segmentSizeInBytes));
+        this.logger = logger;
+        this.current = openSegment();
+        this.background = new Thread(this::runInBackground);
+        this.background.setName("Strongback Data Writer");
+        this.background.setDaemon(true);
+        this.background.start();
+        prepareNext();
+    }
+
+    /**
+     * Get the number of segment files that are kept on disk, including the one being written and the one prepared in advance.
+     *
+     * @return the number of segments; always at least 3
+     */
+    int retainedSegments() {
+        return retainedSegments;
+    }
+
+    @Override
+    public synchronized void write(long time) {
+        if (closed) return;
+        if (current == null || current.writer.remaining() < current.recordLength + Integer.BYTES) {
+            roll();
+        }
+        if (current.sampler == null) {
+            current.writer.writeRecord(time, current.recordSampler);
+        } else {
+            current.writer.writeSparseRecord(time, current.recordSampler, current.channels, current.sampler);
+        }
+    }
+
+    private void roll() {
+        if (current != null) {
+            current.writer.terminate();
+            toBackground.add(current.writer);
+        }
+        current = next.getAndSet(null);
+        if (current == null) {
+            // The background thread has fallen behind, so we have to open the segment ourselves ...
+            current = openSegment();
+        }
+        prepareNext();
+    }
+
+    private void prepareNext() {
+        toBackground.add(PREPARE_NEXT);
+    }
+
+    /**
+     * Finish the current segment. The next {@link #write(long) write} (if any) will continue in a new segment.
+     */
+    @Override
+    public synchronized void close() {
+        if (current != null) {
+            current.writer.terminate();
+            toBackground.add(current.writer);
+            current = null;
+        }
+    }
+
+    /**
+     * Finish the current segment, wait for all segments to be written to disk, and stop the background thread.
+     */
+    @Override
+    public synchronized void stop() {
+        close();
+        closed = true;
+        toBackground.add(STOP);
+        try {
+            background.join();
+        } catch (InterruptedException e) {
+            Thread.interrupted();
+        }
+    }
+
+    private void runInBackground() {
+        while (true) {
+            Object request;
+            try {
+                request = toBackground.take();
+            } catch (InterruptedException e) {
+                Thread.interrupted();
+                continue;
+            }
+            if (request instanceof MappedFileDataWriter) {
+                MappedFileDataWriter writer = (MappedFileDataWriter) request;
+                try {
+                    writer.release();
+                } catch (RuntimeException e) {
+                    logger.error(e, "Unable to write the data segment " + writer.file());
+                }
+                retain(writer.file());
+            } else if (request == PREPARE_NEXT) {
+                if (next.get() == null) {
+                    try {
+                        Segment prepared = openSegment();
+                        if (!next.compareAndSet(null, prepared)) discard(prepared);
+                    } catch (RuntimeException e) {
+                        // The executor thread will try again when it needs the segment ...
+                        logger.error(e, "Unable to prepare the next data segment");
+                    }
+                }
+            } else if (request == STOP) {
+                // Discard any segment that was prepared but never used ...
+                Segment unused = next.getAndSet(null);
+                if (unused != null) discard(unused);
+                return;
+            }
+        }
+    }
+
+    private void retain(File file) {
+        closedFiles.addLast(file);
+        while (closedFiles.size() > retainedSegments - 2) {
+            File oldest = closedFiles.removeFirst();
+            if (!oldest.delete()) {
+                logger.warn("Unable to delete the old data segment " + oldest);
+            }
+        }
+    }
+
+    private static void discard(Segment segment) {
+        segment.writer.release();
+        segment.writer.file().delete();
+    }
+
+    private Segment openSegment() {
+        MappedFileDataWriter writer;
+        try {
+            writer = new MappedFileDataWriter(filenameGenerator.get(), segmentSizeInBytes);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        List<DataRecorderChannel> list = new ArrayList<>();
+        channels.forEach(list::add);
+        Segment segment = new Segment(writer, list.toArray(new DataRecorderChannel[list.size()]));
+
+        // Write the header with the types, widths and names of the channels ...
+        try {
+            if (segment.sampler == null) {
+                writer.writeHeader(segment.channels);
+            } else {
+                writer.writeSparseHeader(segment.channels);
+            }
+        } catch (BufferOverflowException e) {
+            // Handled below ...
+        }
+        if (writer.remaining() < segment.recordLength + Integer.BYTES) {
+            discard(segment);
+            throw new IllegalStateException("The data segments of " + segmentSizeInBytes + " bytes are too small for "
+                    + segment.channels.length + " channels");
+        }
+        return segment;
+    }
+
+    @Override
+    public String toString() {
+        return filenameGenerator + " (" + retainedSegments + " segments of " + segmentSizeInBytes + " bytes)";
+    }
+}
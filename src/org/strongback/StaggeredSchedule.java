@@ -0,0 +1,167 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import java.util.Arrays;
+
+import org.strongback.annotation.NotThreadSafe;
+
+/**
+ * A schedule that gives each {@link Executable} in a {@link Executor.RateGroup rate group} its own phase, so that the work of
+ * the less frequent groups is spread across the cycles between their runs instead of all landing on the same cycle. Each
+ * executable still runs once every period of its group, but the group's own phase is ignored.
+ * <p>
+ * Phases are assigned greedily, most expensive executable first, to the phase whose heaviest cycle currently carries the least
+ * work. The cost of each executable is the mean of its measured {@link ExecutionHistogram execution times}, so the schedule
+ * improves as the executor runs and is {@link #rebalance() rebalanced}. A new assignment is only adopted when it reduces the
+ * heaviest cycle by at least 10%, so the phases do not flip back and forth because of small changes in the measurements.
+ * <p>
+ * This class never allocates after it is constructed, and should only be used by the executor's thread.
+ */
+@NotThreadSafe
+final class StaggeredSchedule {
+
+    private final Executables.Snapshot snapshot;
+    private final int cyclesPerSchedule;
+    private final int[][] phases;
+    private final int[][] candidatePhases;
+    private final long[] load;
+    private final long[] costs;
+    private final int[] order;
+    private final int[] groupOf;
+    private final int[] itemOf;
+
+    StaggeredSchedule(Executables.Snapshot snapshot) {
+        this.snapshot = snapshot;
+        this.cyclesPerSchedule = snapshot.cyclesPerSchedule();
+        int numGroups = snapshot.groups.length;
+        int numItems = 0;
+        this.phases = new int[numGroups][];
+        this.candidatePhases = new int[numGroups][];
+        for (int g = 0; g != numGroups; ++g) {
+            phases[g] = new int[snapshot.executables[g].length];
+            candidatePhases[g] = new int[snapshot.executables[g].length];
+            numItems += snapshot.executables[g].length;
+        }
+        this.load = new long[cyclesPerSchedule];
+        this.costs = new long[numItems];
+        this.order = new int[numItems];
+        this.groupOf = new int[numItems];
+        this.itemOf = new int[numItems];
+        int k = 0;
+        for (int g = 0; g != numGroups; ++g) {
+            for (int i = 0; i != phases[g].length; ++i, ++k) {
+                groupOf[k] = g;
+                itemOf[k] = i;
+            }
+        }
+        rebalance(true);
+    }
+
+    /**
+     * Get the number of cycles after which this schedule repeats.
+     *
+     * @return the number of cycles; always positive
+     */
+    int cyclesPerSchedule() {
+        return cyclesPerSchedule;
+    }
+
+    /**
+     * Determine whether the given executable is to be run on the given cycle.
+     *
+     * @param group the index of the executable's group in the snapshot
+     * @param item the index of the executable within its group
+     * @param cycle the number of the cycle, where the first cycle is 0
+     * @return {@code true} if the executable should be run, or {@code false} otherwise
+     */
+    boolean isDue(int group, int item, long cycle) {
+        return cycle % snapshot.groups[group].periodInCycles() == phases[group][item];
+    }
+
+    /**
+     * Recompute the phases using the latest measured execution times.
+     *
+     * @return {@code true} if the phases were changed, or {@code false} if the current phases were kept
+     */
+    boolean rebalance() {
+        return rebalance(false);
+    }
+
+    private boolean rebalance(boolean force) {
+        final int numItems = costs.length;
+        for (int k = 0; k != numItems; ++k) {
+            // Use a minimum cost so that executables that have not yet been measured are still spread out ...
+            costs[k] = Math.max(1L, snapshot.times[groupOf[k]][itemOf[k]].meanInNanos());
+            order[k] = k;
+        }
+        // Sort by decreasing cost using an (allocation-free and stable) insertion sort ...
+        for (int k = 1; k < numItems; ++k) {
+            int item = order[k];
+            int j = k - 1;
+            while (j >= 0 && costs[order[j]] < costs[item]) {
+                order[j + 1] = order[j];
+                --j;
+            }
+            order[j + 1] = item;
+        }
+        // Assign each item to the phase whose heaviest cycle is lightest ...
+        Arrays.fill(load, 0L);
+        for (int k = 0; k != numItems; ++k) {
+            int item = order[k];
+            int period = snapshot.groups[groupOf[item]].periodInCycles();
+            int bestPhase = 0;
+            long bestLoad = Long.MAX_VALUE;
+            for (int phase = 0; phase < period && phase < cyclesPerSchedule; ++phase) {
+                long heaviest = heaviestCycle(phase, period);
+                if (heaviest < bestLoad) {
+                    bestLoad = heaviest;
+                    bestPhase = phase;
+                }
+            }
+            candidatePhases[groupOf[item]][itemOf[item]] = bestPhase;
+            addLoad(bestPhase, period, costs[item]);
+        }
+        long candidateHeaviest = heaviestCycle(0, 1);
+        if (!force) {
+            // Compute the heaviest cycle of the current phases using the same costs ...
+            Arrays.fill(load, 0L);
+            for (int k = 0; k != numItems; ++k) {
+                addLoad(phases[groupOf[k]][itemOf[k]], snapshot.groups[groupOf[k]].periodInCycles(), costs[k]);
+            }
+            if (candidateHeaviest * 10 > heaviestCycle(0, 1) * 9) return false;
+        }
+        for (int g = 0; g != phases.length; ++g) {
+            System.arraycopy(candidatePhases[g], 0, phases[g], 0, phases[g].length);
+        }
+        return true;
+    }
+
+    private long heaviestCycle(int phase, int period) {
+        long heaviest = 0L;
+        for (int cycle = phase; cycle < cyclesPerSchedule; cycle += period) {
+            heaviest = Math.max(heaviest, load[cycle]);
+        }
+        return heaviest;
+    }
+
+    private void addLoad(int phase, int period, long cost) {
+        for (int cycle = phase; cycle < cyclesPerSchedule; cycle += period) {
+            load[cycle] += cost;
+        }
+    }
+}
@@ -16,6 +16,9 @@
 
 package org.strongback;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -26,6 +29,7 @@ import java.util.function.Supplier;
 
 import org.strongback.AsyncEventRecorder.EventWriter;
 import org.strongback.Executor.Priority;
+import org.strongback.Executor.RateGroup;
 import org.strongback.annotation.ThreadSafe;
 import org.strongback.command.Command;
 import org.strongback.command.Scheduler;
@@ -34,6 +38,8 @@ import org.strongback.components.Clock;
 import org.strongback.components.Counter;
 import org.strongback.components.Switch;
 import org.strongback.components.ui.Gamepad;
+import org.strongback.mock.MockClock;
+import org.strongback.util.Metronome;
 
 import edu.wpi.first.wpilibj.IterativeRobot;
 
@@ -238,8 +244,9 @@ import edu.wpi.first.wpilibj.IterativeRobot;
  * }
  * </pre>
  *
- * Technically the data recorder only records integer values, but as you can see any function that returns a double can be
- * scaled to an integer value (e.g., multiplied by 1000 and cast to an integer).
+ * Any function that returns a double can be scaled to an integer value (e.g., multiplied by 1000 and cast to an integer), or
+ * recorded with full precision using {@link DataRecorder#registerDouble(String, java.util.function.DoubleSupplier)
+ * registerDouble}. Long, float and boolean values can also be recorded in their native form.
  * <p>
  * Strongback's data recorder makes it easy to record and measure what your robot is doing over time so you can visualize it and
  * help improve your robot's behavior. It does take CPU and time to make these measurements, so it's not really intended to be
@@ -299,10 +306,12 @@ public final class Strongback {
     @FunctionalInterface
     public static interface ExcessiveExecutionHandler {
         /**
-         * Notification that a cycle of Strongback's executor took longer than was prescribed in the configuration.
+         * Notification that a cycle of Strongback's executor took longer than was prescribed in the configuration, and did not
+         * finish before the next cycle was scheduled to start.
          *
-         * @param actualTimeInMillis the actual execution time in milliseconds
-         * @param desiredTimeInMillis the desired execution time in milliseconds
+         * @param actualTimeInMillis the time from when the cycle was scheduled to start until it finished, in milliseconds
+         *        (rounded up)
+         * @param desiredTimeInMillis the desired execution time in milliseconds (rounded up)
          */
         void handle(long actualTimeInMillis, long desiredTimeInMillis);
     }
@@ -385,6 +394,98 @@ public final class Strongback {
             return this;
         }
 
+        /**
+         * Enable the data recorder and write the data to a rolling series of fixed-size segment files that begin with the
+         * given prefix. For example, supplying "{@code /home/lvuser/robot}" as the prefix means that the data will be recorded
+         * in files named "{@code /home/lvuser/robot-data-<counter>.dat}", where {@code <counter>} will be 1, 2, 3, etc. Each
+         * segment file is complete on its own and has the same format as the files written by
+         * {@link #recordDataToFile(String, int)}.
+         * <p>
+         * Unlike {@link #recordDataToFile(String, int)}, the recorder never stops to allocate a new file: the next segment is
+         * created in advance, and full segments are written to disk on a background thread. The oldest segment files are
+         * deleted so that at most {@code segmentCount} segments, using at most {@code diskBudgetInBytes}, are kept.
+         * <p>
+         * <strong>Note:</strong> <em>Make sure that the user has privilege to write to the directory specified in the filename
+         * prefix.</em>
+         *
+         * @param filenamePrefix the prefix for filenames, which includes the path to the files; may not be null
+         * @param segmentSizeInBytes the size of each segment file in bytes; must be at least 1024 bytes
+         * @param segmentCount the maximum number of segment files kept on disk; must be at least 3
+         * @param diskBudgetInBytes the maximum number of bytes used by all of the segment files; must be enough for at least 3
+         *        segments
+         * @return this configurator so that methods can be chained together; never null
+         */
+        public Configurator recordDataToFile(String filenamePrefix, long segmentSizeInBytes, int segmentCount,
+                long diskBudgetInBytes) {
+            if (filenamePrefix == null) throw new IllegalArgumentException("The filename prefix may not be null");
+            if (segmentSizeInBytes < 1024) throw new IllegalArgumentException("The segment size must be at least 1024 bytes");
+            if (segmentCount < 3) throw new IllegalArgumentException("The segment count must be at least 3");
+            if (diskBudgetInBytes / 3 < segmentSizeInBytes) {
+                throw new IllegalArgumentException("The disk budget must be enough for at least 3 segments");
+            }
+            ENGINE.recordDataToFile(filenamePrefix, segmentSizeInBytes, segmentCount, diskBudgetInBytes);
+            return this;
+        }
+
+        /**
+         * Enable the data recorder and write compressed data to local files that begin with the given prefix. For example,
+         * supplying "{@code /home/lvuser/robot}" as the prefix means that the data will be recorded in files named
+         * "{@code /home/lvuser/robot-data-<counter>.dat}", where {@code <counter>} will be 1, 2, 3, etc.
+         * <p>
+         * Each channel is stored as a column of the differences between consecutive samples, and most of these take a single
+         * byte. Channels that change slowly therefore take a fraction of the space used by {@link #recordDataToFile(String)},
+         * so the files can hold much longer recordings. Use {@link CompressedDataDecoder} to read the files.
+         * <p>
+         * <strong>Note:</strong> <em>Make sure that the user has privilege to write to the directory specified in the filename
+         * prefix.</em>
+         *
+         * @param filenamePrefix the prefix for filenames, which includes the path to the files; may not be null
+         * @param fileSizeInBytes the size of each file in bytes; must be at least 64 kilobytes
+         * @return this configurator so that methods can be chained together; never null
+         * @see CompressedDataDecoder
+         */
+        public Configurator recordCompressedDataToFile(String filenamePrefix, long fileSizeInBytes) {
+            if (filenamePrefix == null) throw new IllegalArgumentException("The filename prefix may not be null");
+            if (fileSizeInBytes < 64 * 1024) throw new IllegalArgumentException("The file size must be at least 64 kilobytes");
+            ENGINE.recordCompressedDataToFile(filenamePrefix, fileSizeInBytes);
+            return this;
+        }
+
+        /**
+         * Have the data recorder only sample the values of the channels on the {@link Strongback#executor() executor} thread,
+         * into two preallocated buffers that each hold the given number of records, and write each full buffer on a background
+         * thread with the writer configured by {@link #recordDataToFile(String)} or one of the other methods. So the executor
+         * thread never opens files or waits for data to be written to disk.
+         * <p>
+         * The executor fills one buffer while the background thread writes the other. If the background thread has not
+         * finished writing when the second buffer is full, records are dropped until it has. Use
+         * {@link Strongback#dataBufferMetrics()} to see the occupancy of the buffers and the number of dropped records.
+         * <p>
+         * Only the channels registered before Strongback is started are recorded.
+         *
+         * @param recordsPerBuffer the number of records in each buffer; must be positive
+         * @return this configurator so that methods can be chained together; never null
+         * @see #writeRecordedDataDirectly()
+         */
+        public Configurator bufferRecordedData(int recordsPerBuffer) {
+            if (recordsPerBuffer <= 0) throw new IllegalArgumentException("The number of records per buffer must be positive");
+            ENGINE.bufferRecordedData(recordsPerBuffer);
+            return this;
+        }
+
+        /**
+         * Have the data recorder write the values of the channels on the {@link Strongback#executor() executor} thread.
+         * <p>
+         * This is the default.
+         *
+         * @return this configurator so that methods can be chained together; never null
+         * @see #bufferRecordedData(int)
+         */
+        public Configurator writeRecordedDataDirectly() {
+            ENGINE.bufferRecordedData(0);
+            return this;
+        }
+
         /**
          * Record data to a custom {@link DataWriter} by supplying the factory that will create the data writer.
          *
@@ -417,6 +518,43 @@ public final class Strongback {
             return this;
         }
 
+        /**
+         * Keep the timings of the {@link Strongback#executor() executor}'s most recent cycles (including the time taken by each
+         * {@link Executable}) in memory, and write them to a new CSV file whenever a cycle overruns its
+         * {@link #useExecutionPeriod(long, TimeUnit) execution period} or when {@link Strongback#dumpFlightRecorder(String)}
+         * is called. For example, supplying "{@code /home/lvuser/robot}" as the prefix means that the timings will be written
+         * to files named "{@code /home/lvuser/robot-flight-<counter>.csv}", where {@code <counter>} will be 1, 2, 3, etc., and
+         * existing files are never overwritten.
+         * <p>
+         * The memory is allocated when Strongback starts, recording never blocks or allocates, and files are written on a
+         * separate thread.
+         *
+         * @param filenamePrefix the prefix for filenames, which includes the path to the files; may not be null
+         * @param duration the amount of time for which the most recent cycles are kept; must be positive
+         * @param unit the time unit for the duration; may not be null
+         * @return this configurator so that methods can be chained together; never null
+         * @see FlightRecorder
+         */
+        public Configurator recordFlightDataToFile(String filenamePrefix, long duration, TimeUnit unit) {
+            if (filenamePrefix == null) throw new IllegalArgumentException("The filename prefix may not be null");
+            if (duration <= 0) throw new IllegalArgumentException("The flight recorder duration must be positive");
+            if (unit == null) throw new IllegalArgumentException("The time unit may not be null");
+            ENGINE.recordFlightDataToFile(filenamePrefix, unit.toNanos(duration));
+            return this;
+        }
+
+        /**
+         * Turn off the flight recorder so that it does not record anything.
+         * <p>
+         * The flight recorder is <em>disabled</em> by default.
+         *
+         * @return this configurator so that methods can be chained together; never null
+         */
+        public Configurator recordNoFlightData() {
+            ENGINE.recordFlightDataToFile(null, 0L);
+            return this;
+        }
+
         /**
          * Turn off the event recorder so that it does not record anything.
          *
@@ -480,7 +618,8 @@ public final class Strongback {
          * <p>
          * The clock that Strongback is configured to use will also affect the precision of the execution rate. This rate is
          * measured using the JVM's {@link System#nanoTime()} method and therefore may not support periods smaller than 10 or 15
-         * milliseconds.
+         * milliseconds. The period is kept with nanosecond resolution, so periods that are not a whole number of milliseconds
+         * (such as 2500 microseconds) are supported.
          *
          * @param interval the interval for calling all registered {@link Executable}s; must be positive
          * @param unit the time unit for the interval; may not be null
@@ -493,7 +632,210 @@ public final class Strongback {
             if (TimeUnit.MILLISECONDS.toNanos(1) > unit.toNanos(interval)) {
                 throw new IllegalArgumentException("The interval must be at least 1 millisecond");
             }
-            ENGINE.setExecutionPeriod(unit.toMillis(interval));
+            ENGINE.setExecutionPeriod(interval, unit);
+            return this;
+        }
+
+        /**
+         * Have Strongback's {@link Strongback#executor() executor} wait for the start of each period using a busy loop. This
+         * is the most precise way to pace the executor, but it keeps one CPU core fully occupied even when the executor has
+         * little work to do.
+         * <p>
+         * This is the default.
+         *
+         * @return this configurator so that methods can be chained together; never null
+         * @see Metronome#busy(long, TimeUnit, org.strongback.components.Clock)
+         */
+        public Configurator useBusyWaitPacing() {
+            ENGINE.useExecutorPacing(Metronome::busy, "busy wait");
+            return this;
+        }
+
+        /**
+         * Have Strongback's {@link Strongback#executor() executor} wait for the start of each period using
+         * {@link Thread#sleep(long)}. This uses very little CPU, but the executor's period will only be as precise as the
+         * operating system's sleep, which is often no better than several milliseconds.
+         *
+         * @return this configurator so that methods can be chained together; never null
+         * @see Metronome#sleeper(long, TimeUnit, org.strongback.components.Clock)
+         */
+        public Configurator useSleepPacing() {
+            ENGINE.useExecutorPacing(Metronome::sleeper, "sleep");
+            return this;
+        }
+
+        /**
+         * Have Strongback's {@link Strongback#executor() executor} wait for the start of each period using
+         * {@link java.util.concurrent.locks.LockSupport#parkNanos(long)}. This uses very little CPU and is usually more
+         * precise than {@link #useSleepPacing() sleeping}, although each cycle may still start late by the platform's
+         * wake-up latency.
+         *
+         * @return this configurator so that methods can be chained together; never null
+         * @see Metronome#parker(long, TimeUnit, org.strongback.components.Clock)
+         */
+        public Configurator useParkPacing() {
+            ENGINE.useExecutorPacing(Metronome::parker, "park");
+            return this;
+        }
+
+        /**
+         * Have Strongback's {@link Strongback#executor() executor} wait for the start of each period by
+         * {@link java.util.concurrent.locks.LockSupport#parkNanos(long) parking} the thread until the given margin before the
+         * next period, and then using a busy loop for the remainder. This gives nearly the same precision as
+         * {@link #useBusyWaitPacing() busy waiting} while leaving the CPU free for other threads for most of each period.
+         * <p>
+         * A margin of a few hundred microseconds is usually sufficient.
+         *
+         * @param spinMargin the time before each period at which the executor stops parking and starts busy waiting; may not be
+         *        negative
+         * @param unit the time unit for the margin; may not be null
+         * @return this configurator so that methods can be chained together; never null
+         * @see Metronome#hybrid(long, TimeUnit, long, TimeUnit, org.strongback.components.Clock)
+         */
+        public Configurator useHybridPacing(long spinMargin, TimeUnit unit) {
+            if (spinMargin < 0) throw new IllegalArgumentException("The spin margin may not be negative");
+            if (unit == null) throw new IllegalArgumentException("The time unit may not be null");
+            ENGINE.useExecutorPacing((period, periodUnit, clock) -> Metronome.hybrid(period, periodUnit, spinMargin, unit, clock),
+                                     "park then busy wait the last " + unit.toMicros(spinMargin) + " microseconds");
+            return this;
+        }
+
+        /**
+         * Have Strongback's {@link Strongback#executor() executor} spread the {@link Executable}s in each less frequent
+         * {@link Executor.RateGroup rate group} across the cycles between that group's runs. For example, the
+         * {@link Executor.Priority#LOW LOW} priority executables are each run every 4 cycles, but not all on the same cycle.
+         * Each executable is given its own phase based upon its measured execution time, so that every cycle carries roughly
+         * the same amount of work, and the phases are periodically adjusted as the measurements change. The phase of each
+         * {@link Executor.RateGroup rate group} is ignored.
+         * <p>
+         * Use {@link Strongback#cycleTimes()} to see how evenly the work is spread.
+         *
+         * @return this configurator so that methods can be chained together; never null
+         * @see #useAlignedScheduling()
+         */
+        public Configurator useStaggeredScheduling() {
+            ENGINE.staggerExecutables(true);
+            return this;
+        }
+
+        /**
+         * Have Strongback's {@link Strongback#executor() executor} run all of the {@link Executable}s in each
+         * {@link Executor.RateGroup rate group} on the same cycles, as determined by each group's period and phase.
+         * <p>
+         * This is the default.
+         *
+         * @return this configurator so that methods can be chained together; never null
+         * @see #useStaggeredScheduling()
+         */
+        public Configurator useAlignedScheduling() {
+            ENGINE.staggerExecutables(false);
+            return this;
+        }
+
+        /**
+         * Have Strongback's {@link Strongback#executor() executor} run all of the {@link Executable}s on its own thread, one
+         * after the other.
+         * <p>
+         * This is the default.
+         *
+         * @return this configurator so that methods can be chained together; never null
+         * @see #useParallelExecution(int)
+         */
+        public Configurator useSingleThreadedExecution() {
+            ENGINE.useExecutorThreads(1, false);
+            return this;
+        }
+
+        /**
+         * Have Strongback's {@link Strongback#executor() executor} run independent {@link Executable}s at the same time on
+         * the given number of threads, including the executor's own thread. Executables are independent when they implement
+         * {@link DependentExecutable} and do not write any resource that the other uses. All other executables (including
+         * Strongback's own scheduler, switch reactor and recorders) run on the executor's own thread as they do in
+         * single-threaded mode. Each cycle still finishes on all threads before the next cycle begins, and independent
+         * executables are kept on the same thread from one cycle to the next unless the measured execution times show that
+         * moving them would spread the work more evenly.
+         *
+         * @param threads the number of threads; must be positive, and 1 is the same as
+         *        {@link #useSingleThreadedExecution()}
+         * @return this configurator so that methods can be chained together; never null
+         * @see #useParallelExecutionCheck()
+         */
+        public Configurator useParallelExecution(int threads) {
+            if (threads < 1) throw new IllegalArgumentException("The number of threads must be positive");
+            ENGINE.useExecutorThreads(threads, false);
+            return this;
+        }
+
+        /**
+         * Have Strongback's {@link Strongback#executor() executor} check whether the {@link Executable}s can safely run in
+         * {@link #useParallelExecution(int) parallel}. The executables are divided exactly as they would be for parallel
+         * execution, but the independent groups all run on the executor's own thread in an order that changes every cycle.
+         * If every {@link DependentExecutable} declares all of the resources it uses, the robot behaves exactly as it does in
+         * single-threaded mode; any difference (for example in recorded data) means that some executable uses a resource it
+         * does not declare. Unlike parallel execution, this mode is repeatable when used with a mock clock.
+         *
+         * @return this configurator so that methods can be chained together; never null
+         * @see #useParallelExecution(int)
+         */
+        public Configurator useParallelExecutionCheck() {
+            ENGINE.useExecutorThreads(1, true);
+            return this;
+        }
+
+        /**
+         * Have Strongback's {@link Strongback#executor() executor} defer the {@link Executable}s in
+         * {@link Executor.RateGroup#isSheddable() sheddable} rate groups (such as the {@link Executor.Priority#LOW LOW}
+         * priority group) whenever more than the given budget of a cycle has already been used. A deferred execution is run on
+         * a later cycle that has time to spare, or is shed if the executable becomes due again first. Executables in other
+         * rate groups always run when due, so a cycle can still take longer than the
+         * {@link #useExecutionPeriod(long, TimeUnit) execution period}.
+         * <p>
+         * Use {@link Strongback#executionTimes()} to see how many executions of each executable were
+         * {@link ExecutionHistogram#deferredCount() deferred} and {@link ExecutionHistogram#shedCount() shed}.
+         *
+         * @param budget the time in each cycle after which sheddable executables are deferred; must be positive, and is
+         *        usually a little less than the execution period
+         * @param unit the time unit for the budget; may not be null
+         * @return this configurator so that methods can be chained together; never null
+         * @see #disableLoadShedding()
+         */
+        public Configurator useLoadShedding(long budget, TimeUnit unit) {
+            if (budget <= 0) throw new IllegalArgumentException("The load shedding budget must be positive");
+            if (unit == null) throw new IllegalArgumentException("The time unit may not be null");
+            ENGINE.useLoadShedding(unit.toNanos(budget));
+            return this;
+        }
+
+        /**
+         * Have Strongback's {@link Strongback#executor() executor} always run every due {@link Executable}, even when a cycle
+         * takes longer than the {@link #useExecutionPeriod(long, TimeUnit) execution period}.
+         * <p>
+         * This is the default.
+         *
+         * @return this configurator so that methods can be chained together; never null
+         * @see #useLoadShedding(long, TimeUnit)
+         */
+        public Configurator disableLoadShedding() {
+            ENGINE.useLoadShedding(0L);
+            return this;
+        }
+
+        /**
+         * Have Strongback use the given virtual clock as its {@link Strongback#timeSystem() time system}, and have its
+         * {@link Strongback#executor() executor} advance that clock by exactly one
+         * {@link #useExecutionPeriod(long, TimeUnit) execution period} per cycle instead of waiting. In this mode
+         * {@link Strongback#start()} does not start the executor's thread; instead {@link Strongback#runFor(long, TimeUnit)}
+         * runs the registered {@link Executable}s, the command scheduler and the switch reactor on the calling thread as fast as
+         * the CPU allows. Because nothing depends on real time, every run produces the same sequence of times, and a full match
+         * can be simulated in well under a second.
+         *
+         * @param clock the virtual clock; may be null if Strongback should use the real clock and run the executor on its own
+         *        thread (the default)
+         * @return this configurator so that methods can be chained together; never null
+         * @see Metronome#virtual(long, TimeUnit, MockClock)
+         */
+        public Configurator useVirtualTime(MockClock clock) {
+            ENGINE.useVirtualTime(clock);
             return this;
         }
 
@@ -642,13 +984,16 @@ public final class Strongback {
      * internal scheduler} are already registered with this internal Executor, and therefore all use this single thread
      * efficiently for all asynchronous processing.
      * <p>
+     * Each {@link Executable} is registered with a {@link Executor.Priority priority} or with a custom
+     * {@link Executor.RateGroup rate group} that determines on which cycles it is called. For example, with an execution period
+     * of 5 milliseconds, a rate group with a period of 4 cycles runs its {@link Executable}s at 50 Hz.
+     * <p>
      * However, care must be taken to prevent over-working the executor. Specifically, the executor must be able to perform all
      * work for all registered {@link Executable}s during the {@link Configurator#useExecutionPeriod(long, TimeUnit) configured
      * execution interval}. If too much work is added, the executor may fall behind.
      * <p>
-     * <b>Note:</b> As of Strongback 1.2, only register custom {@link Executable}s before {@link #start() starting} Strongback.
-     * Strongback will not recognize any custom {@link Executable}s registered after Strongback has been started until it is
-     * {@link #stop() stopped} and restarted.
+     * Custom {@link Executable}s can be registered and unregistered at any time, including while Strongback is running. The
+     * executor picks up such changes at the start of its next cycle.
      *
      * @return Strongback's executor; never null
      * @see Configurator#useExecutionPeriod(long, TimeUnit)
@@ -678,12 +1023,29 @@ public final class Strongback {
     }
 
     /**
-     * Get Strongback's {@link Clock time system} implementation.
+     * Get Strongback's {@link Clock time system} implementation. This is the {@link Configurator#useVirtualTime(MockClock)
+     * virtual clock} when one is being used.
      *
      * @return Strongback's time system instance; never null
      */
     public static Clock timeSystem() {
-        return CLOCK;
+        return ENGINE.getClock();
+    }
+
+    /**
+     * Run Strongback's {@link #executor() executor} synchronously on the calling thread for the given amount of
+     * {@link Configurator#useVirtualTime(MockClock) virtual time}, advancing the virtual clock by one
+     * {@link Configurator#useExecutionPeriod(long, TimeUnit) execution period} after each cycle. This returns as soon as all of
+     * the cycles have run, which is usually much less than the given amount of real time. Strongback must have been started.
+     *
+     * @param duration the amount of virtual time; may not be negative
+     * @param unit the time unit for the duration; may not be null
+     * @return the number of cycles that were run, or 0 if Strongback is not running with a virtual clock
+     */
+    public static long runFor(long duration, TimeUnit unit) {
+        if (duration < 0) throw new IllegalArgumentException("The duration may not be negative");
+        if (unit == null) throw new IllegalArgumentException("The time unit may not be null");
+        return ENGINE.runFor(unit.toNanos(duration));
     }
 
     /**
@@ -822,7 +1184,7 @@ public final class Strongback {
      * @return if it was successful.
      */
     public static boolean setExecutionPeriod(long executionPeriodInMillis) {
-    	return ENGINE.setExecutionPeriod(executionPeriodInMillis);
+    	return ENGINE.setExecutionPeriod(executionPeriodInMillis, TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -835,6 +1197,59 @@ public final class Strongback {
         return ENGINE.getExcessiveExecutionCount();
     }
 
+    /**
+     * Asynchronously write the timings of the {@link #executor() executor}'s most recent cycles to a new file, if the flight
+     * recorder has been {@link Configurator#recordFlightDataToFile(String, long, TimeUnit) enabled} and Strongback is running.
+     * This method never blocks.
+     *
+     * @param reason the reason for the dump, which is written at the top of the file; may be null
+     * @return {@code true} if a dump was requested, or {@code false} if there is no flight recorder
+     */
+    public static boolean dumpFlightRecorder(String reason) {
+        return ENGINE.dumpFlightRecorder(reason);
+    }
+
+    /**
+     * Get the histograms of the execution times of each {@link Executable} registered with Strongback's
+     * {@link #executor() executor}, including Strongback's own scheduler, switch reactor and recorders. These show which
+     * {@link Executable}s are responsible when the executor is unable to finish its work within the
+     * {@link Configurator#useExecutionPeriod(long, TimeUnit) execution period}.
+     * <p>
+     * Each histogram is also a {@link DataRecordable} that can be {@link DataRecorder#register(String, DataRecordable)
+     * registered} with the {@link #dataRecorder() data recorder}.
+     *
+     * @return an immutable snapshot of the histogram for each registered executable; never null
+     * @see #excessiveExecutionTimeCounts()
+     */
+    public static Map<Executable, ExecutionHistogram> executionTimes() {
+        return ENGINE.getExecutionTimes();
+    }
+
+    /**
+     * Get the metrics of the buffers used by the {@link #dataRecorder() data recorder} when it has been
+     * {@link Configurator#bufferRecordedData(int) configured} to write on a background thread. The metrics are kept (and
+     * reset) each time Strongback is started.
+     *
+     * @return the metrics; never null, but with a {@link DataBufferMetrics#capacity() capacity} of 0 if the data recorder is
+     *         not buffered
+     */
+    public static DataBufferMetrics dataBufferMetrics() {
+        return ENGINE.getDataBufferMetrics();
+    }
+
+    /**
+     * Get the histograms of the total time taken by each cycle of Strongback's {@link #executor() executor}, separated by the
+     * position of the cycle within the executor's schedule. The pattern of which {@link Executor.RateGroup rate groups} are
+     * due repeats every N cycles, so the first histogram covers cycles 0, N, 2N, etc., the second covers cycles 1, N+1, 2N+1,
+     * etc., and so on. Comparing the histograms shows how evenly the work is spread across the cycles, for example after
+     * {@link Configurator#useStaggeredScheduling() staggering} the executables.
+     *
+     * @return the immutable list of histograms, or an empty list if Strongback is not running; never null
+     */
+    public static List<ExecutionHistogram> cycleTimes() {
+        return ENGINE.getCycleTimes();
+    }
+
     /**
      * Determine whether Strongback is currently running.
      *
@@ -860,7 +1275,11 @@ public final class Strongback {
     protected static final class Engine {
         private static final Priority SCHEDULER_PRIORITY = Priority.HIGH;
         private static final Priority SWITCH_REACTOR_PRIORITY = Priority.MEDIUM;
-        private static final Priority DATA_RECORDER_PRIORITY = Priority.MEDIUM;
+        // Same rate as MEDIUM, but data samples may be skipped when the executor sheds load. Being a separate group, it runs
+        // after all of the MEDIUM executables (including the switch reactor) in the cycles they share ...
+        private static final RateGroup DATA_RECORDER_PRIORITY = RateGroup.every("DATA_RECORDER",
+                                                                                Priority.MEDIUM.rateGroup().periodInCycles())
+                                                                         .sheddable();
         private static final Priority EVENT_RECORDER_PRIORITY = Priority.LOW;
 
         private final AsyncSwitchReactor switchReactor = new AsyncSwitchReactor();
@@ -869,23 +1288,38 @@ public final class Strongback {
         private final AtomicLong executorDelayCounter = new AtomicLong();
         private final Executables executables = new Executables();
         private final Logger logger;
-        private final Clock clock;
+        private final Clock systemClock;
+        private volatile Clock clock;
+        private volatile MockClock virtualClock;
         private final Counter dataWriterFilenameCounter = Counter.unlimited(1);
         private final Counter eventWriterFilenameCounter = Counter.unlimited(1);
+        private final Counter flightRecorderFilenameCounter = Counter.unlimited(1);
         private volatile Scheduler scheduler;
         private volatile EventRecorder eventRecorder;
         private volatile ExcessiveExecutionHandler excessiveHandler;
-        private volatile long executionPeriodInMillis = 20;
+        private volatile long executionPeriodInNanos = TimeUnit.MILLISECONDS.toNanos(20);
         private volatile boolean recordCommands = true;
         private volatile boolean useSwitchReactor = true;
         private volatile EventWriter eventWriter;
         private volatile Supplier<Function<Iterable<DataRecorderChannel>, DataWriter>> dataWriterFactorySupplier;
         private volatile ExecutorDriver executor;
+        private volatile ExecutorDriver.MetronomeFactory metronomeFactory = Metronome::busy;
+        private volatile String pacingDescription = "busy wait";
+        private volatile boolean staggerExecutables = false;
+        private volatile int executorThreads = 1;
+        private volatile boolean checkParallelExecution = false;
+        private volatile long loadSheddingBudgetInNanos = 0L;
+        private volatile String flightRecorderFilenamePrefix;
+        private volatile long flightRecorderDurationInNanos;
+        private volatile FlightRecorder flightRecorder;
         private volatile DataRecorderDriver dataRecorderDriver;
+        private volatile int dataBufferCapacity = 0;
+        private final DataBufferMetrics dataBufferMetrics = new DataBufferMetrics();
         private volatile String eventWriterDescription = "no";
         private volatile String dataWriterDescription = "no";
 
         public Engine(Clock clock, Logger logger) {
+            this.systemClock = clock;
             this.clock = clock;
             this.logger = logger;
             handleExecutionDelays(null);
@@ -894,11 +1328,23 @@ public final class Strongback {
         public void logConfiguration() {
             logger.info("Strongback configuration:");
             logger.info("  log level = " + logger);
-            logger.info("  execution period = " + executionPeriodInMillis + " milliseconds");
+            logger.info("  execution period = " + TimeUnit.NANOSECONDS.toMicros(executionPeriodInNanos) + " microseconds");
+            logger.info("  execution pacing = " + (virtualClock != null ? "virtual time" : pacingDescription));
+            logger.info("  staggered scheduling = " + (staggerExecutables ? "yes" : "no"));
+            logger.info("  executor threads = " + executorThreads
+                    + (checkParallelExecution ? " (checking parallel execution)" : ""));
+            logger.info("  load shedding = " + (loadSheddingBudgetInNanos > 0L
+                    ? "after " + TimeUnit.NANOSECONDS.toMicros(loadSheddingBudgetInNanos) + " microseconds" : "none"));
             logger.info("  excessive execution period handler = " + excessiveHandler);
             logger.info("  checking switch states = " + (useSwitchReactor ? "yes" : "no"));
-            logger.info("  recording data = " + dataWriterDescription);
+            logger.info("  recording data = " + dataWriterDescription
+                    + (dataWriterFactorySupplier != null && dataBufferCapacity > 0
+                            ? " (buffered in 2 buffers of " + dataBufferCapacity + " records)" : ""));
             logger.info("  recording events = " + eventWriterDescription);
+            logger.info("  recording flight data = " + (flightRecorderFilenamePrefix != null
+                    ? "last " + TimeUnit.NANOSECONDS.toMillis(flightRecorderDurationInNanos) + " milliseconds to "
+                            + filenameGenerator(flightRecorderFilenamePrefix, "flight", ".csv", flightRecorderFilenameCounter)
+                    : "no"));
             if (eventWriter != null) {
                 logger.info("  recording commands as events = " + (recordCommands ? "yes" : "no"));
             }
@@ -937,12 +1383,25 @@ public final class Strongback {
             return executables;
         }
 
+        public Map<Executable, ExecutionHistogram> getExecutionTimes() {
+            return executables.executionTimes();
+        }
+
+        public List<ExecutionHistogram> getCycleTimes() {
+            ExecutorDriver executor = this.executor;
+            return executor != null ? executor.cycleTimes() : Collections.emptyList();
+        }
+
+        public DataBufferMetrics getDataBufferMetrics() {
+            return dataBufferMetrics;
+        }
+
         public long getExcessiveExecutionCount() {
             return executorDelayCounter.get();
         }
 
         public long getExecutionPeriod() {
-            return this.executionPeriodInMillis;
+            return TimeUnit.NANOSECONDS.toMillis(this.executionPeriodInNanos);
         }
 
         public boolean getRecordCommands() {
@@ -969,13 +1428,76 @@ public final class Strongback {
             return this.dataWriterFactorySupplier.get();
         }
 
-        public synchronized boolean setExecutionPeriod(long executionPeriodInMillis) {
+        public synchronized boolean setExecutionPeriod(long period, TimeUnit unit) {
+            if (isRunning()) {
+                logger.error("Strongback is running and is unable to change the execution period to " + unit.toMicros(period)
+                        + " microseconds");
+                return false;
+            }
+            this.executionPeriodInNanos = unit.toNanos(period);
+            return true;
+        }
+
+        public Clock getClock() {
+            return clock;
+        }
+
+        public synchronized boolean useVirtualTime(MockClock virtualClock) {
+            if (isRunning()) {
+                logger.error("Strongback is running and is unable to " + (virtualClock != null ? "start" : "stop")
+                        + " using virtual time");
+                return false;
+            }
+            this.virtualClock = virtualClock;
+            this.clock = virtualClock != null ? virtualClock : systemClock;
+            return true;
+        }
+
+        public synchronized long runFor(long durationInNanos) {
+            if (!isRunning() || virtualClock == null) {
+                logger.error("Strongback must be running with a virtual clock to run for a given duration");
+                return 0L;
+            }
+            return executor.runCycles(durationInNanos / executionPeriodInNanos);
+        }
+
+        public synchronized boolean useExecutorPacing(ExecutorDriver.MetronomeFactory metronomeFactory, String description) {
             if (isRunning()) {
-                logger.error("Strongback is running and is unable to change the execution period to " + executionPeriodInMillis
-                        + " milliseconds");
+                logger.error("Strongback is running and is unable to change the executor pacing to " + description);
                 return false;
             }
-            this.executionPeriodInMillis = executionPeriodInMillis;
+            this.metronomeFactory = metronomeFactory;
+            this.pacingDescription = description;
+            return true;
+        }
+
+        public synchronized boolean staggerExecutables(boolean stagger) {
+            if (isRunning()) {
+                logger.error("Strongback is running and is unable to " + (stagger ? "enable" : "disable")
+                        + " staggered scheduling");
+                return false;
+            }
+            this.staggerExecutables = stagger;
+            return true;
+        }
+
+        public synchronized boolean useExecutorThreads(int threads, boolean checkParallel) {
+            if (isRunning()) {
+                logger.error("Strongback is running and is unable to change the number of executor threads to " + threads);
+                return false;
+            }
+            this.executorThreads = threads;
+            this.checkParallelExecution = checkParallel;
+            return true;
+        }
+
+        public synchronized boolean useLoadShedding(long budgetInNanos) {
+            if (isRunning()) {
+                logger.error("Strongback is running and is unable to " + (budgetInNanos > 0L ? "enable" : "disable")
+                        + " load shedding");
+                return false;
+            }
+            this.loadSheddingBudgetInNanos = budgetInNanos;
             return true;
         }
 
@@ -1031,6 +1553,29 @@ public final class Strongback {
             return true;
         }
 
+        public synchronized boolean recordFlightDataToFile(String filenamePrefix, long durationInNanos) {
+            if (isRunning()) {
+                logger.error("Strongback is running and is unable to " + (filenamePrefix != null ? "start" : "stop")
+                        + " recording flight data");
+                return false;
+            }
+            this.flightRecorderFilenamePrefix = filenamePrefix;
+            this.flightRecorderDurationInNanos = durationInNanos;
+            if (flightRecorder != null) {
+                // The next start will create a recorder with the new configuration ...
+                flightRecorder.stop();
+                flightRecorder = null;
+            }
+            return true;
+        }
+
+        public boolean dumpFlightRecorder(String reason) {
+            FlightRecorder recorder = this.flightRecorder;
+            if (recorder == null || !isRunning()) return false;
+            recorder.dump(reason);
+            return true;
+        }
+
         public synchronized boolean recordData(Function<Iterable<DataRecorderChannel>, DataWriter> dataWriterFactory) {
             if (isRunning()) {
                 if (dataWriterFactory == null) {
@@ -1060,7 +1605,7 @@ public final class Strongback {
             Supplier<String> filenameGenerator = filenameGenerator(filenamePrefix, "data", dataWriterFilenameCounter);
             this.dataWriterFactorySupplier = () -> {
                 // Create the data writer factory ...
-                int writesPerSecond = (int) (((double) TimeUnit.SECONDS.toNanos(1)) / executionPeriodInMillis);
+                int writesPerSecond = (int) (((double) TimeUnit.SECONDS.toNanos(1)) / executionPeriodInNanos);
                 return (channels) -> {
                     return new FileDataWriter(channels, filenameGenerator, writesPerSecond, estimatedTotalNumberOfSeconds);
                 };
@@ -1069,6 +1614,49 @@ public final class Strongback {
             return true;
         }
 
+        public synchronized boolean recordDataToFile(String filenamePrefix, long segmentSizeInBytes, int segmentCount,
+                long diskBudgetInBytes) {
+            if (isRunning()) {
+                logger.error("Strongback is running and is unable to start recording data in files with prefix '"
+                        + filenamePrefix + "'");
+                return false;
+            }
+            if (filenamePrefix == null) throw new IllegalArgumentException("The filename prefix may not be null");
+            Supplier<String> filenameGenerator = filenameGenerator(filenamePrefix, "data", dataWriterFilenameCounter);
+            this.dataWriterFactorySupplier = () -> (channels) -> {
+                return new SegmentedFileDataWriter(channels, filenameGenerator, segmentSizeInBytes, segmentCount,
+                        diskBudgetInBytes, logger);
+            };
+            this.dataWriterDescription = filenameGenerator + " (up to " + segmentCount + " segments of " + segmentSizeInBytes
+                    + " bytes, at most " + diskBudgetInBytes + " bytes in total)";
+            return true;
+        }
+
+        public synchronized boolean recordCompressedDataToFile(String filenamePrefix, long fileSizeInBytes) {
+            if (isRunning()) {
+                logger.error("Strongback is running and is unable to start recording compressed data in files with prefix '"
+                        + filenamePrefix + "'");
+                return false;
+            }
+            if (filenamePrefix == null) throw new IllegalArgumentException("The filename prefix may not be null");
+            Supplier<String> filenameGenerator = filenameGenerator(filenamePrefix, "data", dataWriterFilenameCounter);
+            this.dataWriterFactorySupplier = () -> (channels) -> {
+                return new CompressedFileDataWriter(channels, filenameGenerator, fileSizeInBytes);
+            };
+            this.dataWriterDescription = filenameGenerator + " (compressed, sized at " + fileSizeInBytes + " bytes)";
+            return true;
+        }
+
+        public synchronized boolean bufferRecordedData(int recordsPerBuffer) {
+            if (isRunning()) {
+                logger.error("Strongback is running and is unable to " + (recordsPerBuffer > 0 ? "start" : "stop")
+                        + " buffering recorded data");
+                return false;
+            }
+            this.dataBufferCapacity = recordsPerBuffer;
+            return true;
+        }
+
         public synchronized boolean handleExecutionDelays(ExcessiveExecutionHandler customHandler) {
             if (isRunning()) {
                 logger.error("Strongback is running and is unable to change the handler for excessive execution periods");
@@ -1148,27 +1736,35 @@ public final class Strongback {
                     boolean listenToCommands = false;
                     if (eventWriter != null) {
                         eventRecorder = new AsyncEventRecorder(eventWriter, clock);
-                        eventRecorder.execute(CLOCK.currentTimeInMillis());
+                        eventRecorder.execute(clock.currentTimeInMillis());
                         listenToCommands = recordCommands;
                     }
 
                     // Create the scheduler that runs commands ...
                     scheduler = new Scheduler(logger, createCommandListener(eventRecorder, listenToCommands));
-                    scheduler.execute(CLOCK.currentTimeInMillis());
+                    scheduler.execute(clock.currentTimeInMillis());
                     executables.register(scheduler, SCHEDULER_PRIORITY);
 
                     if (useSwitchReactor) {
                         // Register the switch reactor ...
                         executables.register(switchReactor, SWITCH_REACTOR_PRIORITY);
-                        switchReactor.execute(CLOCK.currentTimeInMillis());
+                        switchReactor.execute(clock.currentTimeInMillis());
                     }
 
                     // Create the data recorder if needed ...
 
                     if (dataWriterFactorySupplier != null) {
-                        dataRecorderDriver = new DataRecorderDriver(dataRecorderChannels, dataWriterFactorySupplier.get());
+                        Function<Iterable<DataRecorderChannel>, DataWriter> writerFactory = dataWriterFactorySupplier.get();
+                        int capacity = dataBufferCapacity;
+                        if (capacity > 0) {
+                            // Only sample on the executor thread, and write on a background thread ...
+                            Function<Iterable<DataRecorderChannel>, DataWriter> backgroundFactory = writerFactory;
+                            writerFactory = (channels) -> new AsyncDataWriter(channels, backgroundFactory, capacity,
+                                    dataBufferMetrics, logger);
+                        }
+                        dataRecorderDriver = new DataRecorderDriver(dataRecorderChannels, writerFactory);
                         dataRecorderDriver.start();
-                        dataRecorderDriver.execute(CLOCK.currentTimeInMillis());
+                        dataRecorderDriver.execute(clock.currentTimeInMillis());
                         executables.register(dataRecorderDriver, DATA_RECORDER_PRIORITY);
                     }
 
@@ -1176,10 +1772,23 @@ public final class Strongback {
                         executables.register(eventRecorder, EVENT_RECORDER_PRIORITY);
                     }
 
-                    // Now create and start the executor to run all these services ...
-                    executor = new ExecutorDriver("Strongback Executor", executables, clock, executionPeriodInMillis, logger,
-                            excessiveHandler);
-                    executor.start();
+                    // Create the flight recorder if needed, and keep it (and its memory) for later starts ...
+                    if (flightRecorderFilenamePrefix != null && flightRecorder == null) {
+                        int capacity = (int) Math.max(1L, flightRecorderDurationInNanos / executionPeriodInNanos);
+                        flightRecorder = new FlightRecorder(capacity, filenameGenerator(flightRecorderFilenamePrefix, "flight",
+                                                                                        ".csv", flightRecorderFilenameCounter),
+                                                            logger);
+                    }
+
+                    // Now create and start the executor to run all these services. With a virtual clock, the executor only runs
+                    // when asked to ...
+                    MockClock virtualClock = this.virtualClock;
+                    ExecutorDriver.MetronomeFactory metronomeFactory = virtualClock != null
+                            ? (period, unit, clock) -> Metronome.virtual(period, unit, virtualClock) : this.metronomeFactory;
+                    executor = new ExecutorDriver("Strongback Executor", executables, clock, executionPeriodInNanos,
+                            metronomeFactory, staggerExecutables, executorThreads, checkParallelExecution,
+                            loadSheddingBudgetInNanos, flightRecorder, logger, excessiveHandler);
+                    if (virtualClock == null) executor.start();
                     return true;
                 } catch (Throwable t) {
                     logger.error(t, "Aborting Strongback startup due to error: " + t.getMessage());
@@ -1201,7 +1810,7 @@ public final class Strongback {
                 // Already running, so just kill any remaining commands ...
                 scheduler.killAll();
                 executorDelayCounter.set(0);
-                executor.start();
+                if (virtualClock == null) executor.start();
                 return true;
             } else {
                 // Not yet running, so start it ...
@@ -1299,15 +1908,22 @@ public final class Strongback {
      * @return the generator; never null
      */
     protected static Supplier<String> filenameGenerator(String filenameRoot, String type, Counter counter) {
+        return filenameGenerator(filenameRoot, type, ".dat", counter);
+    }
+
+    protected static Supplier<String> filenameGenerator(String filenameRoot, String type, String extension, Counter counter) {
         return new Supplier<String>() {
             @Override
             public String get() {
-                return filenameRoot + "-" + type + "-" + counter.get() + ".dat";
+                // Use the next number each time, as the documentation for the filename prefixes promises ...
+                int number = counter.get();
+                counter.increment();
+                return filenameRoot + "-" + type + "-" + number + extension;
             }
 
             @Override
             public String toString() {
-                return filenameRoot + "-" + type + "-<counter>.dat";
+                return filenameRoot + "-" + type + "-<counter>" + extension;
             }
         };
     }
@@ -0,0 +1,368 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.strongback.annotation.NotThreadSafe;
+
+/**
+ * A single time-ordered view of the records written by the {@link Strongback#dataRecorder() data recorder} and the events
+ * written by the {@link Strongback#eventRecorder() event recorder}, across any number of data and event files. This makes it
+ * easy to see, for example, which command started just before a spike in a motor's current.
+ * <p>
+ * Opening a timeline only reads the header of each file. A {@link #between(long, long) query} for a window of time starts each
+ * file's cursor at the window and then merges the cursors in time order. Fixed-width data files are binary searched in place,
+ * so only the records in the window are read. Compressed and sparse data files and event files have records of different
+ * lengths, so the first query with a window reads each such file once to build its sparse time index, and later queries only
+ * read the records and events near the window. When a data record and an event have the same time, the data record comes
+ * first.
+ *
+ * <pre>
+ * Timeline timeline = Timeline.open(Arrays.asList(Paths.get("robot-data-1.dat"), Paths.get("robot-event-1.dat")));
+ * Timeline.Cursor cursor = timeline.between(30000, 45000);
+ * while (cursor.next()) {
+ *     if (cursor.isEvent()) {
+ *         System.out.println(cursor.time() + " " + cursor.event().type() + " = " + cursor.event().value());
+ *     } else {
+ *         double current = cursor.record().getDouble(4);
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * <p>
+ * The timeline can also be printed from the command line:
+ *
+ * <pre>
+ * java -cp strongback.jar org.strongback.Timeline [--from &lt;millis&gt;] [--to &lt;millis&gt;] &lt;file or directory&gt;...
+ * </pre>
+ *
+ * which prints one tab-separated line for each data record ("{@code <time> data <channel>=<value> ...}") and each event
+ * ("{@code <time> event <type>=<value>}").
+ */
+@NotThreadSafe
+public final class Timeline {
+
+    /**
+     * A position within a timeline. A new cursor is positioned before its first record or event, so {@link #next()} must be
+     * called before the record or event is read.
+     */
+    public static interface Cursor {
+        /**
+         * Advance to the next data record or event.
+         *
+         * @return {@code true} if there is another record or event, or {@code false} if the end of the window was reached
+         */
+        boolean next();
+
+        /**
+         * Get the time of the current data record or event.
+         *
+         * @return the time in milliseconds
+         */
+        long time();
+
+        /**
+         * Determine whether the cursor is at an event or a data record.
+         *
+         * @return {@code true} if the cursor is at an {@link #event() event}, or {@code false} if it is at a
+         *         {@link #record() data record}
+         */
+        boolean isEvent();
+
+        /**
+         * Get the reader of the file containing the current data record, which has the names and types of the channels.
+         *
+         * @return the reader, or null if the cursor is at an event
+         */
+        DataRecordReader data();
+
+        /**
+         * Get the current data record.
+         *
+         * @return the data record, or null if the cursor is at an event
+         */
+        DataRecordReader.Cursor record();
+
+        /**
+         * Get the current event.
+         *
+         * @return the event, or null if the cursor is at a data record
+         */
+        EventRecordReader.Cursor event();
+    }
+
+    /**
+     * Open and memory-map the given data and event files. Any other files are ignored.
+     *
+     * @param files the paths to the files; may not be null
+     * @return the timeline; never null
+     * @throws IOException if a file cannot be read
+     */
+    public static Timeline open(Iterable<Path> files) throws IOException {
+        if (files == null) throw new IllegalArgumentException("The files may not be null");
+        List<DataRecordReader> data = new ArrayList<>();
+        List<EventRecordReader> events = new ArrayList<>();
+        for (Path file : files) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+                String header = header(buffer);
+                if (FileEventWriter.HEADER.equals(header)) {
+                    events.add(new EventRecordReader(buffer));
+                } else if (MappedFileDataWriter.HEADER.equals(header) || MappedFileDataWriter.SPARSE_HEADER.equals(header)
+                        || CompressedFileDataWriter.HEADER.equals(header)) {
+                    data.add(new DataRecordReader(buffer));
+                }
+            }
+        }
+        return new Timeline(data, events);
+    }
+
+    private static String header(ByteBuffer buffer) {
+        try {
+            int length = buffer.getInt(0);
+            if (length <= 0 || length > 64 || length + Integer.BYTES > buffer.limit()) return null;
+            byte[] bytes = new byte[length];
+            ByteBuffer in = buffer.duplicate();
+            in.position(Integer.BYTES);
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private final List<DataRecordReader> data;
+    private final List<EventRecordReader> events;
+
+    /**
+     * Create a timeline of the given data and event files.
+     *
+     * @param data the readers of the data files; may not be null
+     * @param events the readers of the event files; may not be null
+     */
+    public Timeline(List<DataRecordReader> data, List<EventRecordReader> events) {
+        if (data == null) throw new IllegalArgumentException("The data readers may not be null");
+        if (events == null) throw new IllegalArgumentException("The event readers may not be null");
+        this.data = Collections.unmodifiableList(new ArrayList<>(data));
+        this.events = Collections.unmodifiableList(new ArrayList<>(events));
+    }
+
+    /**
+     * Get the readers of the data files in this timeline.
+     *
+     * @return the immutable list of readers; never null
+     */
+    public List<DataRecordReader> dataFiles() {
+        return data;
+    }
+
+    /**
+     * Get the readers of the event files in this timeline.
+     *
+     * @return the immutable list of readers; never null
+     */
+    public List<EventRecordReader> eventFiles() {
+        return events;
+    }
+
+    /**
+     * Create a cursor over all of the data records and events.
+     *
+     * @return the new cursor; never null
+     */
+    public Cursor cursor() {
+        return between(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Create a cursor over the data records and events in the given window of time.
+     *
+     * @param startTimeInMillis the time of the first record or event
+     * @param endTimeInMillis the time after the last record or event
+     * @return the new cursor; never null
+     */
+    public Cursor between(long startTimeInMillis, long endTimeInMillis) {
+        return new MergedCursor(startTimeInMillis, endTimeInMillis);
+    }
+
+    /**
+     * Write one tab-separated line for each data record ("{@code <time> data <channel>=<value> ...}") and each event
+     * ("{@code <time> event <type>=<value>}") in the given window of time.
+     *
+     * @param startTimeInMillis the time of the first record or event
+     * @param endTimeInMillis the time after the last record or event
+     * @param out the writer; may not be null
+     * @throws IOException if there is a problem writing
+     */
+    public void print(long startTimeInMillis, long endTimeInMillis, Writer out) throws IOException {
+        if (out == null) throw new IllegalArgumentException("The writer may not be null");
+        StringBuilder line = new StringBuilder();
+        Cursor cursor = between(startTimeInMillis, endTimeInMillis);
+        while (cursor.next()) {
+            line.setLength(0);
+            line.append(cursor.time());
+            if (cursor.isEvent()) {
+                line.append("\tevent\t").append(cursor.event().type()).append('=').append(cursor.event().value());
+            } else {
+                line.append("\tdata");
+                DataRecordReader reader = cursor.data();
+                for (int c = 1; c != reader.channelCount(); ++c) {
+                    line.append('\t').append(reader.channelName(c)).append('=');
+                    reader.appendValue(line, cursor.record(), c);
+                }
+            }
+            line.append('\n');
+            out.append(line);
+        }
+        out.flush();
+    }
+
+    private final class MergedCursor implements Cursor {
+        private final long end;
+        private final DataRecordReader.Cursor[] records;
+        private final EventRecordReader.Cursor[] eventCursors;
+        private final boolean[] ready;
+        private int current = -1;
+
+        private MergedCursor(long start, long end) {
+            this.end = end;
+            this.records = new DataRecordReader.Cursor[data.size()];
+            this.eventCursors = new EventRecordReader.Cursor[events.size()];
+            this.ready = new boolean[records.length + eventCursors.length];
+            for (int i = 0; i != records.length; ++i) {
+                records[i] = data.get(i).cursorAt(start);
+                ready[i] = records[i].next();
+            }
+            for (int i = 0; i != eventCursors.length; ++i) {
+                eventCursors[i] = events.get(i).cursorAt(start);
+                ready[records.length + i] = eventCursors[i].next();
+            }
+        }
+
+        private long timeOf(int source) {
+            return source < records.length ? records[source].time() : eventCursors[source - records.length].time();
+        }
+
+        @Override
+        public boolean next() {
+            if (current >= 0) {
+                // Advance the source of the previous record or event ...
+                ready[current] = current < records.length ? records[current].next()
+                        : eventCursors[current - records.length].next();
+            }
+            // Find the earliest source, preferring the first of those with the same time ...
+            int earliest = -1;
+            long earliestTime = Long.MAX_VALUE;
+            for (int i = 0; i != ready.length; ++i) {
+                if (ready[i] && (earliest < 0 || timeOf(i) < earliestTime)) {
+                    earliest = i;
+                    earliestTime = timeOf(i);
+                }
+            }
+            if (earliest < 0 || earliestTime >= end) {
+                // Don't read any further in any source ...
+                Arrays.fill(ready, false);
+                current = -1;
+                return false;
+            }
+            current = earliest;
+            return true;
+        }
+
+        @Override
+        public long time() {
+            return timeOf(current);
+        }
+
+        @Override
+        public boolean isEvent() {
+            return current >= records.length;
+        }
+
+        @Override
+        public DataRecordReader data() {
+            return current >= 0 && current < records.length ? data.get(current) : null;
+        }
+
+        @Override
+        public DataRecordReader.Cursor record() {
+            return current >= 0 && current < records.length ? records[current] : null;
+        }
+
+        @Override
+        public EventRecordReader.Cursor event() {
+            return current >= records.length ? eventCursors[current - records.length] : null;
+        }
+    }
+
+    /**
+     * Print the data records and events in the given files, in time order.
+     *
+     * @param args the optional "{@code --from <millis>}" and "{@code --to <millis>}" window, followed by the data and event
+     *        files and directories containing them
+     * @throws IOException if a file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        long start = Long.MIN_VALUE;
+        long end = Long.MAX_VALUE;
+        List<Path> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                if ("--from".equals(args[i])) {
+                    start = Long.parseLong(args[++i]);
+                } else if ("--to".equals(args[i])) {
+                    end = Long.parseLong(args[++i]);
+                } else {
+                    File file = new File(args[i]);
+                    File[] children = file.isDirectory() ? file.listFiles((dir, name) -> name.endsWith(".dat")) : null;
+                    if (children != null) {
+                        Arrays.sort(children);
+                        for (File child : children) {
+                            files.add(child.toPath());
+                        }
+                    } else {
+                        files.add(file.toPath());
+                    }
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            files.clear();
+        }
+        if (files.isEmpty()) {
+            System.err.println("Usage: java org.strongback.Timeline [--from <millis>] [--to <millis>] <file or directory>...");
+            System.exit(1);
+        }
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        open(files).print(start, end, out);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Strongback
+ * Copyright 2015, Strongback and individual contributors by the @authors tag.
+ * See the COPYRIGHT.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * Licensed under the MIT License; you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://opensource.org/licenses/MIT
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.strongback.function;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Represents a supplier of {@code float}-valued results. This is the {@code float}-producing primitive specialization of
+ * {@link java.util.function.Supplier}, like {@link DoubleSupplier} is for {@code double} values.
+ * <p>This is a functional interface whose functional method is {@link #getAsFloat()}.
+ *
+ * @see DoubleSupplier
+ */
+@FunctionalInterface
+public interface FloatSupplier {
+
+    /**
+     * Gets a result.
+     *
+     * @return a result
+     */
+    public float getAsFloat();
+}
@@ -20,6 +20,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.LockSupport;
 
 import org.strongback.components.Clock;
+import org.strongback.mock.MockClock;
 
 /**
  * A class that can be used to perform an action at a regular interval. To use, set up a {@code Metronome} instance and perform
@@ -28,12 +29,14 @@ import org.strongback.components.Clock;
  * There are several implementations provided by this class, and each varies in the precision of the interval based upon the
  * supplied {@link Clock}, interval, and the technique used to pause. Among these implementations, the
  * {@link #busy(long, TimeUnit, Clock)} method produces the most accurate, precise, and consistent pause intervals down to 1
- * millisecond on most platforms (especially modern Linux and OS X).
+ * millisecond on most platforms (especially modern Linux and OS X), while the {@link #hybrid(long, TimeUnit, long, TimeUnit, Clock)}
+ * method produces nearly the same precision without keeping the thread busy for the whole interval.
+ * <p>
+ * All implementations keep their ticks aligned to the time the metronome was created. If the caller falls behind by one or
+ * more whole periods before calling {@link #pause()}, the missed ticks are dropped rather than being fired back-to-back.
  *
  * @author Randall Hauch
- * @deprecated
  */
-@Deprecated
 public interface Metronome {
 
     /**
@@ -68,6 +71,8 @@ public interface Metronome {
 
             @Override
             public boolean pause() {
+                long behind = timeSystem.currentTimeInMillis() - next;
+                if (behind >= periodInMillis) next = next + (behind / periodInMillis) * periodInMillis;
                 while (next > timeSystem.currentTimeInMillis()) {
                     try {
                         Thread.sleep(next - timeSystem.currentTimeInMillis());
@@ -110,6 +115,8 @@ public interface Metronome {
 
             @Override
             public boolean pause() {
+                long behind = timeSystem.currentTimeInNanos() - next;
+                if (behind >= periodInNanos) next = next + (behind / periodInNanos) * periodInNanos;
                 while (next > timeSystem.currentTimeInNanos()) {
                     LockSupport.parkNanos(next - timeSystem.currentTimeInNanos());
                 }
@@ -148,6 +155,8 @@ public interface Metronome {
 
             @Override
             public boolean pause() {
+                long behind = timeSystem.currentTimeInNanos() - next;
+                if (behind >= periodInNanos) next = next + (behind / periodInNanos) * periodInNanos;
                 while (next > timeSystem.currentTimeInNanos()) {
                 }
                 next = next + periodInNanos;
@@ -160,4 +169,89 @@ public interface Metronome {
             }
         };
     }
+
+    /**
+     * Create a new metronome that starts ticking immediately and that uses {@link LockSupport#parkNanos(long)} to wait until
+     * the supplied margin before the next tick, and then uses a busy loop for the remainder of the interval.
+     * <p>
+     * This combines the strengths of {@link #parker(long, TimeUnit, Clock)} and {@link #busy(long, TimeUnit, Clock)}: the
+     * thread gives up the CPU for most of the interval, and the final busy loop absorbs the wake-up latency of the timed wait
+     * so that the tick itself is nearly as precise as with {@link #busy(long, TimeUnit, Clock)}. The margin should be a little
+     * larger than the platform's typical wake-up latency; a few hundred microseconds is usually sufficient on the RoboRIO and
+     * on modern Linux systems. A margin equal to or larger than the period behaves the same as
+     * {@link #busy(long, TimeUnit, Clock)}, and a margin of zero behaves the same as {@link #parker(long, TimeUnit, Clock)}.
+     *
+     * @param period the period of time that the metronome ticks and for which {@link #pause()} waits
+     * @param unit the unit of time; may not be null
+     * @param spinMargin the time before each tick at which the metronome stops parking and starts busy waiting; may not be
+     *        negative
+     * @param marginUnit the unit of time for the margin; may not be null
+     * @param timeSystem the time system that will provide the current time; may not be null
+     * @return the new metronome; never null
+     */
+    public static Metronome hybrid(long period, TimeUnit unit, long spinMargin, TimeUnit marginUnit, Clock timeSystem) {
+        if (spinMargin < 0) throw new IllegalArgumentException("The spin margin may not be negative");
+        long periodInNanos = unit.toNanos(period);
+        long marginInNanos = marginUnit.toNanos(spinMargin);
+        return new Metronome() {
+            private long next = timeSystem.currentTimeInNanos() + periodInNanos;
+
+            @Override
+            public boolean pause() {
+                long behind = timeSystem.currentTimeInNanos() - next;
+                if (behind >= periodInNanos) next = next + (behind / periodInNanos) * periodInNanos;
+                long remaining = next - timeSystem.currentTimeInNanos();
+                while (remaining > marginInNanos) {
+                    LockSupport.parkNanos(remaining - marginInNanos);
+                    remaining = next - timeSystem.currentTimeInNanos();
+                }
+                while (next > timeSystem.currentTimeInNanos()) {
+                }
+                next = next + periodInNanos;
+                return true;
+            }
+
+            @Override
+            public String toString() {
+                return "Metronome (park then busy wait the last " + TimeUnit.NANOSECONDS.toMicros(marginInNanos) + " us of "
+                        + TimeUnit.NANOSECONDS.toMillis(periodInNanos) + " ms)";
+            }
+        };
+    }
+
+    /**
+     * Create a new metronome that starts ticking immediately and that, instead of waiting, advances the supplied
+     * {@link MockClock} to the next tick. Nothing ever waits for real time to pass, so a loop paced by this metronome runs as
+     * fast as the CPU allows while every iteration still sees the clock advance by exactly one period. This is useful for
+     * deterministic simulations and tests that run many seconds of robot time in a fraction of a second.
+     * <p>
+     * The mock clock has a resolution of one microsecond, so each tick is rounded up to the next whole microsecond; the ticks
+     * are still computed from the time this metronome was created, so the rounding never accumulates.
+     *
+     * @param period the period of time that the metronome ticks and by which {@link #pause()} advances the clock
+     * @param unit the unit of time; may not be null
+     * @param clock the virtual clock that is advanced; may not be null
+     * @return the new metronome; never null
+     */
+    public static Metronome virtual(long period, TimeUnit unit, MockClock clock) {
+        long periodInNanos = unit.toNanos(period);
+        return new Metronome() {
+            private long next = clock.currentTimeInNanos() + periodInNanos;
+
+            @Override
+            public boolean pause() {
+                long behind = clock.currentTimeInNanos() - next;
+                if (behind >= periodInNanos) next = next + (behind / periodInNanos) * periodInNanos;
+                long remaining = next - clock.currentTimeInNanos();
+                if (remaining > 0) clock.incrementByMicroseconds((remaining + 999) / 1000);
+                next = next + periodInNanos;
+                return true;
+            }
+
+            @Override
+            public String toString() {
+                return "Metronome (advance virtual clock by " + TimeUnit.NANOSECONDS.toMicros(periodInNanos) + " us)";
+            }
+        };
+    }
 }
\ No newline at end of file
@@ -108,6 +108,13 @@ public class Constants {
 	public static final Path LOG_NUMBER_FILE = Paths.get(System.getProperty("user.home"), "lognumber.txt");
 	public static final int	 WEB_PORT = 5800;			// first open port for graph/log web server
 	public static final double LOG_GRAPH_PERIOD = 0.05;	// run the graph updater every 50ms
+	public static final int LOG_QUEUE_LINES = 1024;		// log lines waiting for the writer thread before lines are dropped
+	public static final long LOG_FLUSH_PERIOD_MSEC = 100;	// flush the log files at least this often...
+	public static final long LOG_FLUSH_BYTES = 64 * 1024;	// ...or after this much has been written
+	public static final boolean LOG_BINARY_TELEMETRY = false;	// store graph values as binary, render the .csv on request (see TelemetryFile to view offline)
+	public static final long LOG_TELEMETRY_FILE_BYTES = 64 * 1024 * 1024;	// about 2 hours of 100 values at 12.5Hz per file, then the next file is started
+	public static final String FLIGHT_RECORDER_PREFIX = Paths.get(LOG_BASE_PATH, LOG_DATA_EXTENSION, "executor").toString();
+	public static final int FLIGHT_RECORDER_SECONDS = 3;	// executor timings kept in memory for dumping on overruns
 	
 	// LocationHistory
 	public static final int LOCATION_HISTORY_MEMORY_SECONDS = 5;
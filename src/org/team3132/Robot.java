@@ -1,6 +1,7 @@
 package org.team3132;
 
 import java.io.File;
+import java.util.concurrent.TimeUnit;
 
 import org.jibble.simplewebserver.SimpleWebServer;
 import org.strongback.Executor.Priority;
@@ -20,12 +21,15 @@ import org.team3132.driveRoutines.DriveRoutineTrajectory;
 import org.team3132.interfaces.DashboardInterface;
 import org.team3132.interfaces.Log;
 import org.team3132.interfaces.OIInterface;
+import org.team3132.lib.AsyncLogSink;
 import org.team3132.lib.GamepadButtonsX;
 import org.team3132.lib.LogDygraph;
+import org.team3132.lib.LogTelemetry;
 import org.team3132.lib.Position;
 import org.team3132.lib.PowerMonitor;
 import org.team3132.lib.RedundantTalonSRX;
 import org.team3132.lib.RobotConfiguration;
+import org.team3132.lib.TelemetryFile;
 import org.team3132.subsystems.Subsystems;
 
 import com.ctre.phoenix.motorcontrol.ControlMode;
@@ -90,10 +94,17 @@ public class Robot extends IterativeRobot {
 	 */
 	public void init() {
 		clock = Strongback.timeSystem();
-		log = new LogDygraph(Constants.LOG_BASE_PATH, Constants.LOG_DATA_EXTENSION, Constants.LOG_DATE_EXTENSION, Constants.LOG_NUMBER_FILE, false, clock);
+		AsyncLogSink logSink = new AsyncLogSink(Constants.LOG_QUEUE_LINES, Constants.LOG_FLUSH_PERIOD_MSEC, Constants.LOG_FLUSH_BYTES).start();
+		if (Constants.LOG_BINARY_TELEMETRY) {
+			log = new LogTelemetry(Constants.LOG_BASE_PATH, Constants.LOG_DATA_EXTENSION, Constants.LOG_DATE_EXTENSION, Constants.LOG_NUMBER_FILE, false, clock, logSink, Constants.LOG_TELEMETRY_FILE_BYTES);
+		} else {
+			log = new LogDygraph(Constants.LOG_BASE_PATH, Constants.LOG_DATA_EXTENSION, Constants.LOG_DATE_EXTENSION, Constants.LOG_NUMBER_FILE, false, clock, logSink);
+		}
     	config = new RobotConfiguration(Constants.CONFIG_FILE_PATH, log);
     	Strongback.logConfiguration();
     	Strongback.setExecutionPeriod(Constants.EXECUTOR_CYCLE_INTERVAL_MSEC);
+    	Strongback.configure().recordFlightDataToFile(Constants.FLIGHT_RECORDER_PREFIX, Constants.FLIGHT_RECORDER_SECONDS,
+    			TimeUnit.SECONDS);
 		startWebServer();
 
 		log.info("Robot initialization started");
@@ -341,7 +352,8 @@ public class Robot extends IterativeRobot {
 	private void startWebServer() {
 		File fileDir = new File(Constants.WEB_BASE_PATH);
 		try {
-			new SimpleWebServer(fileDir, Constants.WEB_PORT);
+			// Renders the graph log's .csv files from the binary telemetry files when they are requested.
+			new SimpleWebServer(fileDir, Constants.WEB_PORT, TelemetryFile.csvGenerator());
 			log.sub("WebServer started at port: " + Constants.WEB_PORT);
 		} catch (Exception e) {
 			log.sub("Failed to start webserver on directory " + fileDir.getAbsolutePath());
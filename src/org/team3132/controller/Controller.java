@@ -517,8 +517,16 @@ public class Controller implements Runnable, DashboardUpdater {
 	}
 	
 	private void logSub(String message, Object... args) {
-		String time_str = String.format("%.3f controller: ", clock.currentTime());
-		log.sub(time_str + message, args);
+		if (!log.isEnabled(Log.Category.SUB)) return;  // Don't format anything that won't be written.
+		// The time is formatted along with the message, so the message is only formatted once.
+		if (args.length == 0) {
+			log.subNum("%.3f controller: " + message, clock.currentTime());
+			return;
+		}
+		Object[] timeAndArgs = new Object[args.length + 1];
+		timeAndArgs[0] = clock.currentTime();
+		System.arraycopy(args, 0, timeAndArgs, 1, args.length);
+		log.sub("%.3f controller: " + message, timeAndArgs);
 	}
 
 	private void logErr(String message, Object... args) {
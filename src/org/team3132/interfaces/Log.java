@@ -117,6 +117,114 @@ public interface Log extends Executable {
 	 */
 	public Log ctrl(String message, Object... args);
 	
+	//################     Message categories     ################################################################################
+
+	/**
+	 * The categories of text log messages, each with the letter that marks it in the log file.
+	 */
+	public enum Category {
+		LOG('L'), DEBUG('D'), INFO('I'), WARNING('W'), ERROR('E'), CONSOLE('O'), CMD('C'), SUB('S'), CTRL('T');
+
+		public final char tag;
+
+		private Category(char tag) {
+			this.tag = tag;
+		}
+	}
+
+	/**
+	 * Turn a category of text log messages on or off while the robot is running.
+	 * Messages in a disabled category cost only a branch: they are not formatted or time stamped.
+	 * All categories are enabled to start with.
+	 * @param category the category of messages
+	 * @param enabled true to write out the messages
+	 * @return this for chaining, never null.
+	 */
+	public default Log setEnabled(Category category, boolean enabled) {
+		return this;
+	}
+
+	/**
+	 * Check if a category of messages is written out. Useful to avoid building
+	 * an expensive message that would be thrown away.
+	 * @param category the category of messages
+	 * @return true if messages in the category are written out.
+	 */
+	public default boolean isEnabled(Category category) {
+		return true;
+	}
+
+	/*
+	 * Versions of debug(), sub() and ctrl() for the common cases of one or two numbers, optionally
+	 * after a string. The arguments aren't boxed or formatted until the message is written out, which
+	 * for LogDygraph with an AsyncLogSink is on the background writer thread, and not at all if the
+	 * category is disabled. Longs are passed to the format as Long and doubles as Double, so use %d
+	 * for the long versions and %f (or %s) for the double versions. An int or char argument widens
+	 * to a long or double, so use the Object... methods for %c, or when the types are mixed.
+	 * They have their own names so that a call like debug("%d %d", a, b) can't silently pick
+	 * one of these instead of debug(String, Object...).
+	 */
+
+	public default Log debugNum(String message, long a) {
+		return isEnabled(Category.DEBUG) ? debug(message, (Object) a) : this;
+	}
+
+	public default Log debugNum(String message, double a) {
+		return isEnabled(Category.DEBUG) ? debug(message, (Object) a) : this;
+	}
+
+	public default Log debugNum(String message, double a, double b) {
+		return isEnabled(Category.DEBUG) ? debug(message, (Object) a, (Object) b) : this;
+	}
+
+	public default Log debugNum(String message, String text, long a) {
+		return isEnabled(Category.DEBUG) ? debug(message, (Object) text, (Object) a) : this;
+	}
+
+	public default Log debugNum(String message, String text, double a) {
+		return isEnabled(Category.DEBUG) ? debug(message, (Object) text, (Object) a) : this;
+	}
+
+	public default Log subNum(String message, long a) {
+		return isEnabled(Category.SUB) ? sub(message, (Object) a) : this;
+	}
+
+	public default Log subNum(String message, double a) {
+		return isEnabled(Category.SUB) ? sub(message, (Object) a) : this;
+	}
+
+	public default Log subNum(String message, double a, double b) {
+		return isEnabled(Category.SUB) ? sub(message, (Object) a, (Object) b) : this;
+	}
+
+	public default Log subNum(String message, String text, long a) {
+		return isEnabled(Category.SUB) ? sub(message, (Object) text, (Object) a) : this;
+	}
+
+	public default Log subNum(String message, String text, double a) {
+		return isEnabled(Category.SUB) ? sub(message, (Object) text, (Object) a) : this;
+	}
+
+	public default Log ctrlNum(String message, long a) {
+		return isEnabled(Category.CTRL) ? ctrl(message, (Object) a) : this;
+	}
+
+	public default Log ctrlNum(String message, double a) {
+		return isEnabled(Category.CTRL) ? ctrl(message, (Object) a) : this;
+	}
+
+	public default Log ctrlNum(String message, double a, double b) {
+		return isEnabled(Category.CTRL) ? ctrl(message, (Object) a, (Object) b) : this;
+	}
+
+	public default Log ctrlNum(String message, String text, long a) {
+		return isEnabled(Category.CTRL) ? ctrl(message, (Object) text, (Object) a) : this;
+	}
+
+	public default Log ctrlNum(String message, String text, double a) {
+		return isEnabled(Category.CTRL) ? ctrl(message, (Object) text, (Object) a) : this;
+	}
+
 	//################     Log data collection methods     ################################################################################
 
 	/**
@@ -172,11 +280,46 @@ public interface Log extends Executable {
 		return doRegister(local, () -> (double)(sample.isTriggered()?1:0), format, args);
 	}
 	
+	/**
+	 * Register a slowly changing data stream, eg a temperature, that only needs to be sampled every periodMsec.
+	 * The last sampled value is repeated in the log until the next sample, so this saves the time (and
+	 * often the CAN traffic) of reading the value every time the log is written.
+	 * @param periodMsec how often to sample the value, or 0 to sample it every time.
+	 * @param sample An object that returns a double value when called
+	 * @param format a VarArgs string which evaluates to the name of the data stream
+	 * @param args Any arguments required for the format varargs
+	 * @return the log itself to allow chaining of the register methods.
+	 */
+	public default Log register(boolean local, long periodMsec, DoubleSupplier sample, String format, Object... args) {
+		return doRegister(local, periodMsec, sample, format, args);
+	}
+
+	/**
+	 * Register a slowly changing data stream that only needs to be sampled every periodMsec.
+	 * The last sampled value is repeated in the log until the next sample.
+	 * @param periodMsec how often to sample the value, or 0 to sample it every time.
+	 * @param sample An object that returns an integer value when called
+	 * @param format a VarArgs string which evaluates to the name of the data stream
+	 * @param args Any arguments required for the format varargs
+	 * @return the log itself to allow chaining of the register methods.
+	 */
+	public default Log register(boolean local, long periodMsec, IntSupplier sample, String format, Object... args) {
+		return doRegister(local, periodMsec, () -> (double)sample.getAsInt(), format, args);
+	}
+	
 	/*
 	 * Register the actual data stream. In preference one of the register() methods should be used
 	 */
 	public Log doRegister(boolean local, DoubleSupplier sample, String format, Object... args);
 	
+	/*
+	 * Register the actual data stream to be sampled every periodMsec. Logs that don't support sampling
+	 * periods sample it every time.
+	 */
+	public default Log doRegister(boolean local, long periodMsec, DoubleSupplier sample, String format, Object... args) {
+		return doRegister(local, sample, format, args);
+	}
+	
 	/**
 	 * Tells the logging subsystem that all registration events has occurred.
 	 * Registration must be completed before we can start writing out logging records as the first record
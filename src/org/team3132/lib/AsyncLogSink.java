@@ -0,0 +1,361 @@
+package org.team3132.lib;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes log lines to their files on a single background thread, so that the
+ * executor, controller and vision threads never block on the USB flash drive.
+ * 
+ * Lines are copied into a bounded, lock-free ring of reused character buffers
+ * which any number of threads can add to. If the ring is full the line is dropped
+ * and counted rather than making the caller wait. The writer thread drains the ring
+ * and group-commits the flushes: the files are flushed every flushPeriodMsec or after
+ * flushBytes characters, whichever comes first, or when flush() is called.
+ * 
+ * Messages from debugNum(), subNum() and ctrlNum() in Log are queued
+ * with their format and raw arguments, and are only formatted on the writer thread.
+ * 
+ * A LogFileWriter created without a sink writes and flushes synchronously, which
+ * is what the tests use.
+ */
+public class AsyncLogSink {
+
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+	private static final int INITIAL_LINE_LENGTH = 128;
+
+	private final int mask;
+	private final AtomicLongArray sequences;
+	private final LogFileWriter[] targets;
+	private final char[][] lines;
+	private final int[] lengths;
+	private final boolean[] closes;
+	// Deferred messages, which have a format.
+	private final String[] formats;
+	private final double[] times;
+	private final char[] tags;
+	private final String[] texts;
+	private final boolean[] doubles;
+	private final int[] counts;
+	private final long[] firsts;
+	private final long[] seconds;
+	private final AtomicLong tail = new AtomicLong();
+	private volatile long head = 0;  // Only changed by the writer thread, or under the lock when there isn't one.
+	private final AtomicLong dropped = new AtomicLong();
+	private volatile long written = 0;
+	private volatile long flushes = 0;
+	private volatile boolean flushRequested = false;
+	private volatile boolean running = false;
+	private final long flushPeriodNanos;
+	private final long flushBytes;
+	// Only used by the writer thread, or under the lock when there isn't one.
+	private final ArrayList<LogFileWriter> dirty = new ArrayList<>();
+	private long unflushedBytes = 0;
+	private long lastFlush = 0;
+	private Thread thread;
+
+	/**
+	 * @param capacity the maximum number of lines waiting to be written. Rounded up to a power of two.
+	 * @param flushPeriodMsec the longest time to wait before flushing written lines to the files.
+	 * @param flushBytes the number of characters written before the files are flushed regardless of the time.
+	 */
+	public AsyncLogSink(int capacity, long flushPeriodMsec, long flushBytes) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		mask = size - 1;
+		sequences = new AtomicLongArray(size);
+		targets = new LogFileWriter[size];
+		lines = new char[size][];
+		lengths = new int[size];
+		closes = new boolean[size];
+		formats = new String[size];
+		times = new double[size];
+		tags = new char[size];
+		texts = new String[size];
+		doubles = new boolean[size];
+		counts = new int[size];
+		firsts = new long[size];
+		seconds = new long[size];
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+			lines[i] = new char[INITIAL_LINE_LENGTH];
+		}
+		this.flushPeriodNanos = TimeUnit.MILLISECONDS.toNanos(flushPeriodMsec);
+		this.flushBytes = flushBytes;
+	}
+
+	/**
+	 * Start the writer thread.
+	 * @return this for chaining.
+	 */
+	public synchronized AsyncLogSink start() {
+		if (thread == null) {
+			running = true;
+			thread = new Thread(this::run, "Log Writer");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		return this;
+	}
+
+	/**
+	 * Write out and flush everything queued and then stop the writer thread.
+	 */
+	public synchronized void stop() {
+		if (thread == null) return;
+		running = false;
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+	}
+
+	/**
+	 * Queue a string to be written to the file. Can be called from any thread.
+	 * @return false if the queue was full and the string was dropped.
+	 */
+	public boolean add(LogFileWriter target, String contents) {
+		int length = contents.length();
+		long position = claim();
+		if (position < 0) return false;
+		int index = (int) position & mask;
+		contents.getChars(0, length, lineFor(index, length), 0);
+		publish(position, index, target, length, false);
+		return true;
+	}
+
+	/**
+	 * Queue part of a character buffer to be written to the file. The characters are
+	 * copied, so the buffer can be reused straight away. Can be called from any thread.
+	 * @return false if the queue was full and the characters were dropped.
+	 */
+	public boolean add(LogFileWriter target, char[] contents, int offset, int length) {
+		long position = claim();
+		if (position < 0) return false;
+		int index = (int) position & mask;
+		System.arraycopy(contents, offset, lineFor(index, length), 0, length);
+		publish(position, index, target, length, false);
+		return true;
+	}
+
+	/**
+	 * Queue a message to be formatted and written to the file by the writer thread,
+	 * which saves the caller from boxing and formatting the arguments.
+	 * The arguments are the optional text followed by count numbers, which
+	 * are the raw bits of doubles if doubles is true, otherwise longs.
+	 * @return false if the queue was full and the message was dropped.
+	 */
+	public boolean add(LogFileWriter target, double time, char tag, String format, String text, boolean doubles, int count, long a, long b) {
+		long position = claim();
+		if (position < 0) return false;
+		int index = (int) position & mask;
+		formats[index] = format;
+		times[index] = time;
+		tags[index] = tag;
+		texts[index] = text;
+		this.doubles[index] = doubles;
+		counts[index] = count;
+		firsts[index] = a;
+		seconds[index] = b;
+		publish(position, index, target, 0, false);
+		return true;
+	}
+
+	/**
+	 * Box the arguments of a deferred message for String.format().
+	 */
+	static Object[] arguments(String text, boolean doubles, int count, long a, long b) {
+		Object[] args = new Object[(text == null ? 0 : 1) + count];
+		int n = 0;
+		if (text != null) {
+			args[n++] = text;
+		}
+		if (count > 0) {
+			args[n++] = doubles ? (Object) Double.longBitsToDouble(a) : (Object) a;
+		}
+		if (count > 1) {
+			args[n++] = doubles ? (Object) Double.longBitsToDouble(b) : (Object) b;
+		}
+		return args;
+	}
+
+	/**
+	 * Queue closing the file after everything already queued for it has been written.
+	 * Unlike lines this is never dropped, so waits for space if the queue is full.
+	 * If the writer thread isn't running the queue is written out and the file is
+	 * closed on the caller's thread instead, as nothing else would ever do it.
+	 */
+	public void close(LogFileWriter target) {
+		long position;
+		while ((position = claim()) < 0) {
+			dropped.decrementAndGet();  // claim() counted it as dropped.
+			if (!running) drainIfStopped();  // Nothing else will ever make space.
+			Thread.yield();
+		}
+		publish(position, (int) position & mask, target, 0, true);
+		if (!running) drainIfStopped();
+	}
+
+	/**
+	 * Ask the writer thread to flush all the files now rather than waiting.
+	 */
+	public void flush() {
+		flushRequested = true;
+		Thread current = thread;
+		if (current != null) {
+			LockSupport.unpark(current);
+		}
+	}
+
+	/**
+	 * The number of lines waiting to be written.
+	 */
+	public long getQueueDepth() {
+		return tail.get() - head;
+	}
+
+	/**
+	 * The number of lines dropped because the queue was full.
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * The number of lines written to the files.
+	 */
+	public long getWrittenCount() {
+		return written;
+	}
+
+	/**
+	 * The number of times the files have been flushed.
+	 */
+	public long getFlushCount() {
+		return flushes;
+	}
+
+	private long claim() {
+		long position = tail.get();
+		while (true) {
+			long available = sequences.get((int) position & mask) - position;
+			if (available == 0) {
+				if (tail.compareAndSet(position, position + 1)) return position;
+				position = tail.get();
+			} else if (available < 0) {
+				// The writer hasn't yet written the line queued a full lap ago.
+				dropped.incrementAndGet();
+				return -1;
+			} else {
+				// Another thread claimed this position.
+				position = tail.get();
+			}
+		}
+	}
+
+	private char[] lineFor(int index, int length) {
+		if (lines[index].length < length) {
+			// Only happens until the buffers have grown to fit the longest lines.
+			lines[index] = new char[Math.max(length, lines[index].length * 2)];
+		}
+		return lines[index];
+	}
+
+	private void publish(long position, int index, LogFileWriter target, int length, boolean close) {
+		targets[index] = target;
+		lengths[index] = length;
+		closes[index] = close;
+		sequences.set(index, position + 1);
+	}
+
+	private void run() {
+		lastFlush = System.nanoTime();
+		while (running) {
+			boolean flushNow = flushRequested;
+			if (flushNow) {
+				flushRequested = false;
+			}
+			boolean wroteAny = drain();
+			long now = System.nanoTime();
+			if (flushNow || unflushedBytes >= flushBytes || (!dirty.isEmpty() && now - lastFlush >= flushPeriodNanos)) {
+				flushDirty();
+				lastFlush = now;
+			}
+			if (!wroteAny) {
+				LockSupport.parkNanos(IDLE_PARK_NANOS);
+			}
+		}
+		// Don't lose anything on the way out.
+		drain();
+		flushDirty();
+	}
+
+	private boolean drain() {
+		boolean wroteAny = false;
+		long position = head;
+		while (true) {
+			int index = (int) position & mask;
+			if (sequences.get(index) != position + 1) break;  // Empty, or the next line is still being copied in.
+			LogFileWriter target = targets[index];
+			try {
+				if (closes[index]) {
+					target.closeNow();
+					dirty.remove(target);
+				} else {
+					int length = lengths[index];
+					if (formats[index] != null) {
+						String message = LogDygraph.formatMessage(times[index], tags[index], formats[index],
+								arguments(texts[index], doubles[index], counts[index], firsts[index], seconds[index]));
+						target.append(message);
+						length = message.length();
+					} else {
+						target.append(lines[index], 0, length);
+					}
+					if (!target.dirty) {
+						target.dirty = true;
+						dirty.add(target);
+					}
+					unflushedBytes += length;
+					written++;
+				}
+			} catch (Exception e) {
+				// nothing to do. If we can't write to the log file it's not a disaster.
+			}
+			targets[index] = null;
+			formats[index] = null;
+			texts[index] = null;
+			sequences.set(index, position + mask + 1);
+			head = ++position;
+			wroteAny = true;
+		}
+		return wroteAny;
+	}
+
+	/**
+	 * Write out, flush and close everything queued on the caller's thread, but
+	 * only if there is no writer thread. Holding the lock means the writer
+	 * thread can't be started, or be part way through stopping, meanwhile.
+	 */
+	private synchronized void drainIfStopped() {
+		if (thread != null) return;  // The writer thread will get to it.
+		drain();
+		flushDirty();
+	}
+
+	private void flushDirty() {
+		for (int i = 0; i < dirty.size(); i++) {
+			LogFileWriter target = dirty.get(i);
+			target.dirty = false;
+			target.flushNow();
+		}
+		dirty.clear();
+		unflushedBytes = 0;
+		flushes++;
+	}
+}
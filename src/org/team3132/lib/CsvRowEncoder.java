@@ -0,0 +1,155 @@
+package org.team3132.lib;
+
+/**
+ * Builds rows of comma separated numbers in a reused character buffer, so that
+ * writing a row of the graph log every cycle doesn't create any garbage.
+ * 
+ * Values are written with a fixed maximum number of decimal places and without
+ * trailing zeros, eg 12.5 rather than 12.500000 or 12.5000000001, which also keeps
+ * the CSV files small. This avoids Double.toString() and String.format(), which
+ * both create several temporary objects for every value.
+ * 
+ * Usage:
+ * <pre>
+ *   encoder.startRow(time);
+ *   for (...) encoder.addValue(value);
+ *   encoder.endRow();
+ *   writer.write(encoder.chars(), 0, encoder.length());
+ * </pre>
+ */
+public class CsvRowEncoder {
+
+	private static final int TIME_DECIMAL_PLACES = 3;  // Dygraph only uses milliseconds.
+	private static final long[] POWERS_OF_TEN = {
+			1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L };
+	// The largest value that can be scaled into a long without overflowing.
+	private static final double MAX_SCALED = 1e18;
+
+	private final int decimalPlaces;
+	private char[] row = new char[256];
+	private int length = 0;
+	private final char[] digits = new char[20];
+
+	/**
+	 * @param decimalPlaces the maximum number of decimal places for each value, between 0 and 9.
+	 */
+	public CsvRowEncoder(int decimalPlaces) {
+		if (decimalPlaces < 0 || decimalPlaces >= POWERS_OF_TEN.length) {
+			throw new IllegalArgumentException("The number of decimal places must be between 0 and " + (POWERS_OF_TEN.length - 1));
+		}
+		this.decimalPlaces = decimalPlaces;
+	}
+
+	/**
+	 * Start a new row with the time in seconds, always with three decimal places.
+	 * @param time the time in seconds.
+	 * @return this for chaining.
+	 */
+	public CsvRowEncoder startRow(double time) {
+		length = 0;
+		appendDouble(time, TIME_DECIMAL_PLACES, false);
+		return this;
+	}
+
+	/**
+	 * Append a comma and the value to the current row.
+	 * @param value the value to add.
+	 * @return this for chaining.
+	 */
+	public CsvRowEncoder addValue(double value) {
+		ensureCapacity(1);
+		row[length++] = ',';
+		appendDouble(value, decimalPlaces, true);
+		return this;
+	}
+
+	/**
+	 * Terminate the current row with a new line.
+	 * @return this for chaining.
+	 */
+	public CsvRowEncoder endRow() {
+		ensureCapacity(1);
+		row[length++] = '\n';
+		return this;
+	}
+
+	/**
+	 * The characters of the current row. Only the first length() characters are valid,
+	 * and they are only valid until the next row is started.
+	 */
+	public char[] chars() {
+		return row;
+	}
+
+	/**
+	 * The number of characters in the current row.
+	 */
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public String toString() {
+		return new String(row, 0, length);
+	}
+
+	private void appendDouble(double value, int places, boolean trimZeros) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			appendString(Double.isNaN(value) ? "NaN" : value > 0 ? "Infinity" : "-Infinity");
+			return;
+		}
+		long scale = POWERS_OF_TEN[places];
+		double magnitude = Math.abs(value) * scale;
+		if (magnitude >= MAX_SCALED) {
+			// Far too big to be a sensible reading, but still write it out.
+			appendString(Double.toString(value));
+			return;
+		}
+		long scaled = Math.round(magnitude);
+		ensureCapacity(digits.length + places + 2);
+		if (value < 0 && scaled != 0) {
+			row[length++] = '-';  // Don't write out -0.
+		}
+		long whole = scaled / scale;
+		long fraction = scaled % scale;
+		// Write the digits of the whole part backwards and then copy them out in order.
+		int n = 0;
+		do {
+			digits[n++] = (char) ('0' + whole % 10);
+			whole /= 10;
+		} while (whole != 0);
+		while (n > 0) {
+			row[length++] = digits[--n];
+		}
+		if (trimZeros) {
+			while (places > 0 && fraction % 10 == 0) {
+				fraction /= 10;
+				places--;
+			}
+		}
+		if (places == 0) {
+			return;
+		}
+		row[length++] = '.';
+		for (int i = places - 1; i >= 0; i--) {
+			row[length + i] = (char) ('0' + fraction % 10);
+			fraction /= 10;
+		}
+		length += places;
+	}
+
+	private void appendString(String str) {
+		ensureCapacity(str.length());
+		str.getChars(0, str.length(), row, length);
+		length += str.length();
+	}
+
+	private void ensureCapacity(int extra) {
+		if (length + extra > row.length) {
+			// Only happens while the first few rows are written.
+			char[] bigger = new char[Math.max(row.length * 2, length + extra)];
+			System.arraycopy(row, 0, bigger, 0, length);
+			row = bigger;
+		}
+	}
+}
@@ -32,7 +32,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.IllegalFormatException;
+import java.util.function.DoubleConsumer;
 import java.util.function.DoubleSupplier;
 
 import org.strongback.Executable;
@@ -49,6 +52,8 @@ import org.team3132.interfaces.Log;
 
 public class LogDygraph implements Log, Executable {
 	
+	private static final int CSV_DECIMAL_PLACES = 4;  // Plenty for graphing and keeps the .csv file small.
+	
 	private enum GraphLogState {
 		INVALID,				// File has not yet been created
 		CREATED,				// File has been created, but we are waiting for all logging classes to be created
@@ -61,10 +66,22 @@ public class LogDygraph implements Log, Executable {
 	private class LogGraphElement {
 		public String name;
 		public DoubleSupplier sample;
+		public long periodMsec;		// 0 to sample every time.
+		public long nextSampleMsec = Long.MIN_VALUE;
+		public double lastValue;	// Repeated until the next sample is due.
 		
-		public LogGraphElement(DoubleSupplier sample, String name, Object... args) {
+		public LogGraphElement(DoubleSupplier sample, long periodMsec, String name, Object... args) {
 			this.name = String.format(name, args);
 			this.sample = sample;
+			this.periodMsec = periodMsec;
+		}
+		
+		public double getValue(long timeInMillis) {
+			if (timeInMillis >= nextSampleMsec) {
+				lastValue = sample.getAsDouble();
+				nextSampleMsec = periodMsec > 0 ? timeInMillis + periodMsec : Long.MIN_VALUE;
+			}
+			return lastValue;
 		}
 	}
 	
@@ -86,8 +103,29 @@ public class LogDygraph implements Log, Executable {
 	private boolean createdDateFiles;
 	private Clock clock;
 	private boolean onlyLocal = false;	// only log locally defined elements.
+	private volatile int enabledCategories = ~0;	// bit per Log.Category, all enabled to start with.
+	private final AsyncLogSink sink;	// null when writing synchronously.
+	private final CsvRowEncoder csvRow = new CsvRowEncoder(CSV_DECIMAL_PLACES);  // Reused for every row.
+	private final DoubleConsumer csvValue = value -> csvRow.addValue(value);  // Created once to avoid garbage.
 
 	public LogDygraph(String basePath, String dataDir, String dateDir, Path logInstancePath, boolean onlyLocal, Clock clock) {
+		this(basePath, dataDir, dateDir, logInstancePath, onlyLocal, clock, null);
+	}
+
+	/**
+	 * Log to files that are written on the sink's background thread, so callers never wait
+	 * for the USB flash drive. The sink's queue depth and dropped lines are added to the graph log.
+	 * @param sink the sink that writes the files, or null to write them synchronously.
+	 */
+	public LogDygraph(String basePath, String dataDir, String dateDir, Path logInstancePath, boolean onlyLocal, Clock clock, AsyncLogSink sink) {
+		this(basePath, dataDir, dateDir, logInstancePath, onlyLocal, clock, sink, true);
+	}
+
+	/**
+	 * For subclasses that store the graph values some other way.
+	 * @param writeCsv false to not create the data .csv file.
+	 */
+	protected LogDygraph(String basePath, String dataDir, String dateDir, Path logInstancePath, boolean onlyLocal, Clock clock, AsyncLogSink sink, boolean writeCsv) {
 		this.basePath = basePath;
 		this.dataDir = dataDir;
 		this.dateDir = dateDir;
@@ -95,6 +133,7 @@ public class LogDygraph implements Log, Executable {
 		this.clock = clock;		
 		this.logGraphElements = new ArrayList<LogGraphElement>();
 		this.onlyLocal = onlyLocal;
+		this.sink = sink;
 		createdDateFiles = false;
 		
 		try {
@@ -105,14 +144,20 @@ public class LogDygraph implements Log, Executable {
 			logFileNumber = getNextLogFileNumber();  // Different number each start.
 			
 			// Open all files. Also creates Latest symlink.
-			csvWriter = new LogFileWriter("data", logFileNumber, "csv", basePath, dataDir);
-			logWriter = new LogFileWriter("log", logFileNumber, "txt", basePath, dataDir);
-			graphWriter = new LogFileWriter("graph", logFileNumber, "html", basePath, dataDir);
-			chartWriter = new LogFileWriter("chart", logFileNumber, "html", basePath, dataDir);
-			locationWriter = new LogFileWriter("location", logFileNumber, "html", basePath, dataDir);
+			if (writeCsv) {
+				csvWriter = new LogFileWriter("data", logFileNumber, "csv", basePath, dataDir, sink);
+			}
+			logWriter = new LogFileWriter("log", logFileNumber, "txt", basePath, dataDir, sink);
+			graphWriter = new LogFileWriter("graph", logFileNumber, "html", basePath, dataDir, sink);
+			chartWriter = new LogFileWriter("chart", logFileNumber, "html", basePath, dataDir, sink);
+			locationWriter = new LogFileWriter("location", logFileNumber, "html", basePath, dataDir, sink);
 			
 			// Everything was successfully created, we're good to go.
 			graphLogState = GraphLogState.CREATED;
+			if (sink != null) {
+				doRegister(true, () -> sink.getQueueDepth(), "Log/QueueDepth");
+				doRegister(true, () -> sink.getDroppedCount(), "Log/DroppedLines");
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 			System.out.printf("Failed to create log files in %s: %s\n", basePath, e.getMessage());
@@ -130,7 +175,9 @@ public class LogDygraph implements Log, Executable {
 		String timestampStr = new SimpleDateFormat("yyyyMMdd_HH:mm:ss.SSS").format(timestamp.getTime());
 		try {
 			// Create links based on the timestamp.
-			csvWriter.createSymbolicLink(dateDir, timestampStr);
+			if (csvWriter != null) {
+				csvWriter.createSymbolicLink(dateDir, timestampStr);
+			}
 			logWriter.createSymbolicLink(dateDir, timestampStr);
 			graphWriter.createSymbolicLink(dateDir, timestampStr);
 			chartWriter.createSymbolicLink(dateDir, timestampStr);
@@ -138,7 +185,9 @@ public class LogDygraph implements Log, Executable {
 			// And on event name, match type, match number, replay number, alliance and position.
 			// These details should be available at the same time now that the drivers station is
 			// able to talk to the robot.
-			csvWriter.createSymbolicLink(dateDir, matchDescription);
+			if (csvWriter != null) {
+				csvWriter.createSymbolicLink(dateDir, matchDescription);
+			}
 			logWriter.createSymbolicLink(dateDir, matchDescription);
 			graphWriter.createSymbolicLink(dateDir, matchDescription);
 			chartWriter.createSymbolicLink(dateDir, matchDescription);
@@ -295,12 +344,57 @@ public class LogDygraph implements Log, Executable {
 		writeMessageToFile(logWriter, message);
 	}
 	
+	@Override
+	public synchronized Log setEnabled(Category category, boolean enabled) {
+		if (enabled) {
+			enabledCategories |= 1 << category.ordinal();
+		} else {
+			enabledCategories &= ~(1 << category.ordinal());
+		}
+		return this;
+	}
+
+	@Override
+	public boolean isEnabled(Category category) {
+		return (enabledCategories & (1 << category.ordinal())) != 0;
+	}
+	
+	/**
+	 * Format a line of the .TXT log file, eg "12.345,D message".
+	 * If the arguments don't match the format, the format and the arguments are written
+	 * as they are, so the message isn't lost on the writer thread.
+	 */
+	static String formatMessage(double time, char tag, String message, Object... args) {
+		String prefix = timeToLogString(time) + "," + tag + " ";
+		try {
+			return String.format(prefix + message + "\n", args);
+		} catch (IllegalFormatException e) {
+			return prefix + message + " " + Arrays.toString(args) + "\n";
+		}
+	}
+	
+	/**
+	 * Queue the message to be formatted by the sink's thread if there is one, or else format and
+	 * write it now. The numbers are the raw bits of doubles if doubles is true.
+	 */
+	private Log deferred(Category category, String message, String text, boolean doubles, int count, long a, long b) {
+		if (!isEnabled(category)) return this;
+		double time = getCurrentTime();
+		if (sink == null || logWriter == null) {
+			writeLogMessage(formatMessage(time, category.tag, message, AsyncLogSink.arguments(text, doubles, count, a, b)));
+			return this;
+		}
+		sink.add(logWriter, time, category.tag, message, text, doubles, count, a, b);
+		return this;
+	}
+	
 	/**
 	 * Logs to the external logger only.  Generic log messages
 	 * @param message Message to Log
 	 * @param args arguments to the message format string
 	 */
 	public Log logMessage(String message, Object... args) {
+		if (!isEnabled(Category.LOG)) return this;
 		String date = timeToLogString(getCurrentTime());
 		message = String.format(date + ",L " + message + "\n", args);
 		writeLogMessage(message);
@@ -313,6 +407,7 @@ public class LogDygraph implements Log, Executable {
 	 * @param args arguments to the message format string
 	 */
 	public Log debug(String message, Object... args) {
+		if (!isEnabled(Category.DEBUG)) return this;
 		String date = timeToLogString(getCurrentTime());
 		message = String.format(date + ",D " + message + "\n", args); 
 		// Don't print it to the console.
@@ -326,6 +421,7 @@ public class LogDygraph implements Log, Executable {
 	 * @param args arguments to the message format string
 	 */
 	public Log info(String message, Object... args) {
+		if (!isEnabled(Category.INFO)) return this;
 		String date = timeToLogString(getCurrentTime());
 		message = String.format(date + ",I " + message + "\n", args); 
 		// Print to the console.
@@ -340,6 +436,7 @@ public class LogDygraph implements Log, Executable {
 	 * @param args arguments to the message format string
 	 */
 	public Log warning(String message, Object... args) {
+		if (!isEnabled(Category.WARNING)) return this;
 		String date = timeToLogString(getCurrentTime());
 		message = String.format(date + ",W " + message + "\n", args); 
 		// Print to the console.
@@ -354,6 +451,7 @@ public class LogDygraph implements Log, Executable {
 	 * @param args arguments to the message format string
 	 */
 	public Log error(String message, Object... args) {
+		if (!isEnabled(Category.ERROR)) return this;
 		String date = timeToLogString(getCurrentTime());
 		message = String.format(date + ",E " + message + "\n", args); 
 		// Print to the console.
@@ -391,6 +489,7 @@ public class LogDygraph implements Log, Executable {
 	 * @param args arguments to the message format string
 	 */
 	public Log console(String message, Object... args) {
+		if (!isEnabled(Category.CONSOLE)) return this;
 		String date = timeToLogString(getCurrentTime());
 		message = String.format(date + ",O " + message + "\n", args); 
 		// Print to the console.
@@ -405,6 +504,7 @@ public class LogDygraph implements Log, Executable {
 	 * @param args arguments to the message format string
 	 */
 	public Log cmd(String message, Object... args) {
+		if (!isEnabled(Category.CMD)) return this;
 		String date = timeToLogString(getCurrentTime());
 		message = String.format(date + ",C " + message + "\n", args); 
 		writeLogMessage(message);
@@ -417,6 +517,7 @@ public class LogDygraph implements Log, Executable {
 	 * @param args arguments to the message format string
 	 */
 	public Log sub(String message, Object... args) {
+		if (!isEnabled(Category.SUB)) return this;
 		String date = timeToLogString(getCurrentTime());
 		message = String.format(date + ",S " + message + "\n", args); 
 		// Print to the console.
@@ -431,6 +532,7 @@ public class LogDygraph implements Log, Executable {
 	 * @param args arguments to the message format string
 	 */
 	public Log ctrl(String message, Object... args) {
+		if (!isEnabled(Category.CTRL)) return this;
 		String date = timeToLogString(getCurrentTime());
 		message = String.format(date + ",T " + message + "\n", args); 
 		// Print to the console.
@@ -439,10 +541,94 @@ public class LogDygraph implements Log, Executable {
 		return this;
 	}
 	
+	/*
+	 * Versions of debug(), sub() and ctrl() that don't box or format their arguments on the caller's thread.
+	 */
+	
+	@Override
+	public Log debugNum(String message, long a) {
+		return deferred(Category.DEBUG, message, null, false, 1, a, 0);
+	}
+
+	@Override
+	public Log debugNum(String message, double a) {
+		return deferred(Category.DEBUG, message, null, true, 1, Double.doubleToRawLongBits(a), 0);
+	}
+
+	@Override
+	public Log debugNum(String message, double a, double b) {
+		return deferred(Category.DEBUG, message, null, true, 2, Double.doubleToRawLongBits(a), Double.doubleToRawLongBits(b));
+	}
+
+	@Override
+	public Log debugNum(String message, String text, long a) {
+		return deferred(Category.DEBUG, message, text, false, 1, a, 0);
+	}
+
+	@Override
+	public Log debugNum(String message, String text, double a) {
+		return deferred(Category.DEBUG, message, text, true, 1, Double.doubleToRawLongBits(a), 0);
+	}
+	
+	@Override
+	public Log subNum(String message, long a) {
+		return deferred(Category.SUB, message, null, false, 1, a, 0);
+	}
+
+	@Override
+	public Log subNum(String message, double a) {
+		return deferred(Category.SUB, message, null, true, 1, Double.doubleToRawLongBits(a), 0);
+	}
+
+	@Override
+	public Log subNum(String message, double a, double b) {
+		return deferred(Category.SUB, message, null, true, 2, Double.doubleToRawLongBits(a), Double.doubleToRawLongBits(b));
+	}
+
+	@Override
+	public Log subNum(String message, String text, long a) {
+		return deferred(Category.SUB, message, text, false, 1, a, 0);
+	}
+
+	@Override
+	public Log subNum(String message, String text, double a) {
+		return deferred(Category.SUB, message, text, true, 1, Double.doubleToRawLongBits(a), 0);
+	}
+	
+	@Override
+	public Log ctrlNum(String message, long a) {
+		return deferred(Category.CTRL, message, null, false, 1, a, 0);
+	}
+
+	@Override
+	public Log ctrlNum(String message, double a) {
+		return deferred(Category.CTRL, message, null, true, 1, Double.doubleToRawLongBits(a), 0);
+	}
+
+	@Override
+	public Log ctrlNum(String message, double a, double b) {
+		return deferred(Category.CTRL, message, null, true, 2, Double.doubleToRawLongBits(a), Double.doubleToRawLongBits(b));
+	}
+
+	@Override
+	public Log ctrlNum(String message, String text, long a) {
+		return deferred(Category.CTRL, message, text, false, 1, a, 0);
+	}
+
+	@Override
+	public Log ctrlNum(String message, String text, double a) {
+		return deferred(Category.CTRL, message, text, true, 1, Double.doubleToRawLongBits(a), 0);
+	}
+	
 	//################     Graphing file methods     ################################################################################
 
 	@Override
 	public Log doRegister(boolean local, DoubleSupplier sample, String format, Object... args) {
+		return doRegister(local, 0, sample, format, args);
+	}
+	
+	@Override
+	public Log doRegister(boolean local, long periodMsec, DoubleSupplier sample, String format, Object... args) {
 		if (onlyLocal && !local) {
 			return this;
 		}
@@ -459,7 +645,7 @@ public class LogDygraph implements Log, Executable {
 				e.printStackTrace();
 			}
 		} else {
-			logGraphElements.add(new LogGraphElement(sample, String.format(format, args)));
+			logGraphElements.add(new LogGraphElement(sample, periodMsec, String.format(format, args)));
 		}
 		return this;
 	}
@@ -484,14 +670,61 @@ public class LogDygraph implements Log, Executable {
 	}
 	
 	public String getGraphValues() {
-		String value = timeToLogString(getCurrentTime());
+		return encodeGraphValues((long) (getCurrentTime() * 1000)).toString();
+	}
+	
+	/**
+	 * Sample all the registered elements that are due into the reused row encoder without creating
+	 * any garbage. Elements that aren't due repeat their last value.
+	 */
+	private CsvRowEncoder encodeGraphValues(long timeInMillis) {
+		csvRow.startRow(getCurrentTime());
+		sampleGraphValues(timeInMillis, csvValue);
+		return csvRow.endRow();
+	}
+	
+	/**
+	 * Pass the value of each registered element to the consumer in the same order as the headers,
+	 * sampling the elements that are due.
+	 */
+	protected void sampleGraphValues(long timeInMillis, DoubleConsumer values) {
+		for (int i = 0; i < logGraphElements.size(); i++) {
+			LogGraphElement e = logGraphElements.get(i);  // Avoid creating an iterator.
+			if (e.name != null) {
+				values.accept(e.getValue(timeInMillis));
+			}
+		}
+	}
+	
+	/**
+	 * The number of values in each row of graph values.
+	 */
+	protected int getGraphElementCount() {
+		int count = 0;
 		for (LogGraphElement e: logGraphElements) {
 			if (e.name != null) {
-				value = value + "," + e.sample.getAsDouble();
+				count++;
 			}
 		}
-		value = value + "\n";
-		return value;
+		return count;
+	}
+	
+	/**
+	 * Called once all the elements have registered, before the first row of graph values.
+	 * @param csvColumns the headers, starting with "date".
+	 */
+	protected void startGraphValues(String csvColumns) {
+		initCSVFile(csvColumns);
+	}
+	
+	/**
+	 * Called periodically to sample and write out a row of graph values.
+	 */
+	protected void writeGraphValues(long timeInMillis) {
+		CsvRowEncoder row = encodeGraphValues(timeInMillis);
+		if (csvWriter != null) {
+			csvWriter.write(row.chars(), 0, row.length());
+		}
 	}
 		
 	//################     Support file methods     ################################################################################
@@ -499,7 +732,7 @@ public class LogDygraph implements Log, Executable {
 	 * These are support methods for the class. They provide useful
 	 * functionality but we separate them here for ease of reading above.
 	 */
-	private String timeToLogString(double time) {
+	private static String timeToLogString(double time) {
 		/*
 		 * Create the timestamp for this message. We use the robot time, so each
 		 * log entry is time stamped for when it happened during the match.
@@ -509,11 +742,11 @@ public class LogDygraph implements Log, Executable {
 		return String.format("%.3f", time);
 	}
 
-	private Path getDataPath() {
+	protected Path getDataPath() {
 		return Paths.get(basePath, dataDir);
 	}
 
-	private Path getDatePath() {
+	protected Path getDatePath() {
 		return Paths.get(basePath, dateDir);
 	}
 
@@ -549,7 +782,15 @@ public class LogDygraph implements Log, Executable {
 		return logFileNumber;
 	}
 	
-	private double getCurrentTime()
+	protected long getLogFileNumber() {
+		return logFileNumber;
+	}
+
+	protected String getMatchDescription() {
+		return matchDescription;
+	}
+
+	protected double getCurrentTime()
 	{
 		return clock.currentTime();
 	}
@@ -577,12 +818,12 @@ public class LogDygraph implements Log, Executable {
 			String csvColumns = getGraphHeaders();
 			initGraphFile(csvColumns);
 			initChartFile(csvColumns);
-			initCSVFile(csvColumns);
+			startGraphValues(csvColumns);
 			initLocationPlotFile();
 			graphLogState = GraphLogState.ACTIVE;
 		}
 		if (graphLogState == GraphLogState.ACTIVE) {
-			writeMessageToFile(csvWriter, getGraphValues());
+			writeGraphValues(timeInMillis);
 			if (!createdDateFiles) {
 				Calendar now = Calendar.getInstance();
 				/*
@@ -599,7 +840,9 @@ public class LogDygraph implements Log, Executable {
 
 	@Override
 	public Log flush() {
-		csvWriter.flush();
+		if (csvWriter != null) {
+			csvWriter.flush();
+		}
 		logWriter.flush();
 		graphWriter.flush();
 		chartWriter.flush();
@@ -11,6 +11,9 @@ import java.nio.file.Paths;
  * normally on the USB flash drive. 
  *
  * 'Latest' symlink created to point to this file.
+ *
+ * If an AsyncLogSink is given then writes, flushes and closes are queued and done
+ * on the sink's thread, otherwise they are done straight away on the caller's thread.
  */
 
 public class LogFileWriter {
@@ -20,6 +23,8 @@ public class LogFileWriter {
 	private final String basePath; // All logs are below this directory
 	private Path filePath = null;
 	private BufferedWriter writer = null;
+	private final AsyncLogSink sink;  // null when writing synchronously.
+	boolean dirty = false;  // Written to but not flushed. Only used by the sink's thread.
 
 	/**
 	 * Write free form data to a file and create symbolic links to it. Used for csv and graphing files.
@@ -39,7 +44,17 @@ public class LogFileWriter {
 	 * @throws IOException 
 	 */
 	public LogFileWriter(String name, long filenum, String extn, String basePath, String dataDir) throws IOException {
+		this(name, filenum, extn, basePath, dataDir, null);
+	}
+
+	/**
+	 * Write free form data to a file on the sink's background thread. See above.
+	 * 
+	 * @param sink the sink that writes to the file, or null to write synchronously.
+	 */
+	public LogFileWriter(String name, long filenum, String extn, String basePath, String dataDir, AsyncLogSink sink) throws IOException {
 		this.name = name;
+		this.sink = sink;
 		this.extn = extn;
 		this.basePath = basePath;
 		// The absolute path to the data file so we can write to the file.
@@ -105,6 +120,10 @@ public class LogFileWriter {
 
 	public void write(String contents) {
 		if (writer == null) return; // File logging not enabled.
+		if (sink != null) {
+			sink.add(this, contents);
+			return;
+		}
 		try {
 			writer.write(contents);
 			writer.flush();
@@ -113,7 +132,54 @@ public class LogFileWriter {
 		}
 	}
 	
+	/**
+	 * Write part of a character buffer without creating a String.
+	 * @param contents the characters to write.
+	 * @param offset the index of the first character to write.
+	 * @param length the number of characters to write.
+	 */
+	public void write(char[] contents, int offset, int length) {
+		if (writer == null) return; // File logging not enabled.
+		if (sink != null) {
+			sink.add(this, contents, offset, length);
+			return;
+		}
+		try {
+			writer.write(contents, offset, length);
+			writer.flush();
+		} catch (Exception e) {
+			// nothing to do. If we can't write to the log file it's not a disaster.
+		}
+	}
+	
 	public void flush() {
+		if (sink != null) {
+			sink.flush();
+			return;
+		}
+		flushNow();
+	}
+	
+	public void close() {
+		if (sink != null) {
+			sink.close(this);
+			return;
+		}
+		closeNow();
+	}
+
+	/*
+	 * The methods that actually touch the file, either on the caller's thread or the sink's thread.
+	 */
+	void append(char[] contents, int offset, int length) throws IOException {
+		writer.write(contents, offset, length);
+	}
+
+	void append(String contents) throws IOException {
+		writer.write(contents);
+	}
+
+	void flushNow() {
 		try {
 			writer.flush();
 		} catch (IOException e) {
@@ -121,7 +187,7 @@ public class LogFileWriter {
 		}
 	}
 	
-	public void close() {
+	void closeNow() {
 		try {
 			writer.close();
 		} catch (IOException e) {
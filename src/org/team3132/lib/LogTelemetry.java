@@ -0,0 +1,119 @@
+package org.team3132.lib;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.function.DoubleConsumer;
+
+import org.strongback.components.Clock;
+import org.team3132.interfaces.Log;
+
+/**
+ * A LogDygraph that stores the graph values as binary doubles in a memory-mapped
+ * TelemetryFile instead of formatting them into the data .csv file every cycle.
+ * 
+ * The text log and the .html files are the same as LogDygraph's. The data .csv file
+ * that the .html files load is rendered from the binary file by the web server when
+ * it is requested, using the headers and match description in the sidecar file.
+ */
+public class LogTelemetry extends LogDygraph {
+
+	private final String basePath;
+	private final String dateDir;
+	private final long maxBytes;
+	private final Path binaryPath;
+	private final Path csvPath;	// Never written, but linked to and rendered on request.
+	private TelemetryFile telemetry;
+	private int part = 1;	// Which of the binary files is being written, see TelemetryFile.partFile().
+	private int values;
+	private final DoubleConsumer telemetryValue = value -> telemetry.addValue(value);  // Created once to avoid garbage.
+
+	/**
+	 * @param maxBytes the largest size of each binary file. Rows go into a new file once it is full.
+	 */
+	public LogTelemetry(String basePath, String dataDir, String dateDir, Path logInstancePath, boolean onlyLocal, Clock clock, AsyncLogSink sink, long maxBytes) {
+		super(basePath, dataDir, dateDir, logInstancePath, onlyLocal, clock, sink, false);
+		this.basePath = basePath;
+		this.dateDir = dateDir;
+		this.maxBytes = maxBytes;
+		String name = String.format("data_%05d", getLogFileNumber());
+		binaryPath = getDataPath().resolve(name + TelemetryFile.BINARY_EXTENSION);
+		csvPath = getDataPath().resolve(name + ".csv");
+		createCsvLink("Latest");
+	}
+
+	@Override
+	public void createDateFiles(Calendar timestamp) {
+		super.createDateFiles(timestamp);
+		createCsvLink(Paths.get(dateDir, new SimpleDateFormat("yyyyMMdd_HH:mm:ss.SSS").format(timestamp.getTime())).toString());
+		createCsvLink(Paths.get(dateDir, getMatchDescription()).toString());
+	}
+
+	/**
+	 * The same links that LogFileWriter creates for the .csv file. They dangle until
+	 * the web server renders the .csv file on request.
+	 */
+	private void createCsvLink(String prefix) {
+		Path symlinkPath = Paths.get(basePath, String.format("%s_data.csv", prefix));
+		try {
+			Files.createDirectories(symlinkPath.getParent());
+			Files.deleteIfExists(symlinkPath);
+			Files.createSymbolicLink(symlinkPath, LogFileWriter.createRelativePath(symlinkPath, csvPath));
+		} catch (Exception e) {
+			System.out.printf("Failed to create symbolic link: Are we on windows?\n");
+		}
+	}
+
+	@Override
+	protected void startGraphValues(String csvColumns) {
+		values = getGraphElementCount();
+		try {
+			telemetry = TelemetryFile.create(binaryPath, values, maxBytes);
+			TelemetryFile.writeMetadata(binaryPath, csvColumns, getMatchDescription());
+		} catch (IOException e) {
+			exception("Failed to create telemetry file " + binaryPath, e);
+			telemetry = null;
+		}
+	}
+
+	@Override
+	protected void writeGraphValues(long timeInMillis) {
+		if (telemetry == null) return;
+		if (!telemetry.startRow(getCurrentTime())) {
+			if (!telemetry.isFull() || !rollOver() || !telemetry.startRow(getCurrentTime())) return;
+		}
+		sampleGraphValues(timeInMillis, telemetryValue);
+		telemetry.endRow();
+	}
+
+	/**
+	 * Close the full binary file and carry on in the next part, which renderCsv() appends
+	 * to the same .csv file.
+	 * @return false if the next part couldn't be created, in which case no more rows are stored.
+	 */
+	private boolean rollOver() {
+		telemetry.close();
+		Path next = TelemetryFile.partFile(binaryPath, ++part);
+		try {
+			telemetry = TelemetryFile.create(next, values, maxBytes);
+			info("Telemetry file is full, continuing in %s", next);
+			return true;
+		} catch (IOException e) {
+			exception("Failed to create telemetry file " + next, e);
+			telemetry = null;
+			return false;
+		}
+	}
+
+	@Override
+	public Log flush() {
+		super.flush();
+		if (telemetry != null) {
+			telemetry.force();
+		}
+		return this;
+	}
+}
@@ -17,6 +17,8 @@ public class PowerMonitor implements DashboardUpdater {		// no interface, as thi
 	 * I believe that sampling too fast is what is causing the CAN bus timeouts.
 	 */
 	
+	private static final long SLOW_SAMPLE_PERIOD_MSEC = 1000;	// for values that change slowly, eg temperature.
+	
 	PowerDistributionPanel pdp;
 	
 	public PowerMonitor (PowerDistributionPanel pdp, int[] channelsToMonitor, boolean enabled, Log log) {
@@ -25,10 +27,10 @@ public class PowerMonitor implements DashboardUpdater {		// no interface, as thi
 		if (!enabled) {
 			return;
 		}
-		log.register(false, (() -> { return pdp.getTotalEnergy(); } ),	"%s/totalEnergy", name)
+		log.register(false, SLOW_SAMPLE_PERIOD_MSEC, (() -> { return pdp.getTotalEnergy(); } ),	"%s/totalEnergy", name)
 			.register(false, (() -> { return pdp.getTotalPower(); } ),		"%s/totalPower", name)
 			.register(false, (() -> { return pdp.getTotalCurrent(); } ),	"%s/totalCurrent", name)
-			.register(false, (() -> { return pdp.getTemperature(); } ),	"%s/temperature", name)
+			.register(false, SLOW_SAMPLE_PERIOD_MSEC, (() -> { return pdp.getTemperature(); } ),	"%s/temperature", name)
 			.register(false, (() -> { return pdp.getVoltage(); } ),		"%s/inputVoltage", name);
 		for (int i = 0; i < channelsToMonitor.length; i++) {
 			final int channel = channelsToMonitor[i];
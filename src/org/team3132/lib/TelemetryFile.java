@@ -0,0 +1,349 @@
+package org.team3132.lib;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jibble.simplewebserver.FileGenerator;
+
+/**
+ * Stores rows of graph values as packed binary doubles in a memory-mapped file,
+ * which is much cheaper than formatting them as text every cycle.
+ * 
+ * The files live next to where the .csv file would be:
+ * <pre>
+ *    data/data_00012.bin    the rows: a header of the magic number, the number of
+ *                           columns (including the time) and the number of rows,
+ *                           then each row as doubles, time first.
+ *    data/data_00012.meta   the csv headers and match description as properties.
+ *    data/data_00012.2.bin  the rows after data_00012.bin filled up, and so on.
+ * </pre>
+ * 
+ * The file grows a chunk at a time as rows are added, and is cut back to the rows
+ * actually written when it is closed.
+ * 
+ * The web server asks renderCsv() for data/data_00012.csv when it doesn't exist on
+ * disk, so the graph and chart pages work as if it had been written all along.
+ * To look at the logs offline, eg with python -m SimpleHTTPServer, render the .csv
+ * files first with:
+ * <pre>
+ *    java -cp robot.jar org.team3132.lib.TelemetryFile data
+ * </pre>
+ */
+public class TelemetryFile {
+
+	public static final String BINARY_EXTENSION = ".bin";
+	public static final String METADATA_EXTENSION = ".meta";
+	private static final String CSV_EXTENSION = ".csv";
+	private static final int MAGIC = 0x33313332;  // "3132"
+	private static final int HEADER_BYTES = 16;
+	private static final int ROW_COUNT_OFFSET = 8;
+	private static final int CHUNK_BYTES = 1024 * 1024;  // How much the file grows by at a time.
+	private static final int CSV_DECIMAL_PLACES = 4;  // The same as LogDygraph's .csv files.
+	// The files being written by this process, so renderCsv() can read their row counts safely.
+	private static final ConcurrentMap<Path, TelemetryFile> writing = new ConcurrentHashMap<>();
+
+	private final Path file;
+	private final FileChannel channel;
+	private final MappedByteBuffer header;
+	private final int columns;
+	private final long maxRows;
+	private final long rowsPerChunk;
+	private MappedByteBuffer chunk;  // The rows from chunkStart onwards.
+	private long chunkStart = 0;
+	private long rows = 0;
+	private volatile long publishedRows = 0;  // Written after each row, so reading it makes the row visible.
+	private int rowStart = -1;  // Position in the chunk of the row being written, or -1.
+
+	/**
+	 * Create a new file that can hold as many rows as fit in maxBytes.
+	 * @param file the .bin file to create.
+	 * @param values the number of values in each row, not counting the time.
+	 * @param maxBytes the largest the file is allowed to grow to.
+	 */
+	public static TelemetryFile create(Path file, int values, long maxBytes) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			return new TelemetryFile(file, channel, values + 1, maxBytes);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private TelemetryFile(Path file, FileChannel channel, int columns, long maxBytes) throws IOException {
+		this.file = file.toAbsolutePath().normalize();
+		this.channel = channel;
+		this.columns = columns;
+		this.maxRows = Math.max(0, (maxBytes - HEADER_BYTES) / rowBytes(columns));
+		this.rowsPerChunk = Math.max(1, CHUNK_BYTES / rowBytes(columns));
+		header = channel.map(MapMode.READ_WRITE, 0, HEADER_BYTES);
+		header.putInt(0, MAGIC);
+		header.putInt(4, columns);
+		header.putLong(ROW_COUNT_OFFSET, 0);
+		writing.put(this.file, this);
+	}
+
+	/**
+	 * Start a new row.
+	 * @param time the time in seconds.
+	 * @return false if the file is full or can't grow, in which case the row is ignored.
+	 */
+	public boolean startRow(double time) {
+		if (isFull()) return false;
+		if (chunk == null || rows - chunkStart >= rowsPerChunk) {
+			// Grow the file by the next chunk.
+			long start = chunk == null ? 0 : chunkStart + rowsPerChunk;
+			try {
+				chunk = channel.map(MapMode.READ_WRITE, HEADER_BYTES + start * rowBytes(columns),
+						Math.min(rowsPerChunk, maxRows - start) * rowBytes(columns));
+			} catch (IOException e) {
+				return false;
+			}
+			chunkStart = start;
+		}
+		rowStart = chunk.position();
+		chunk.putDouble(time);
+		return true;
+	}
+
+	/**
+	 * Add the next value to the row. Ignored if the row wasn't started.
+	 */
+	public void addValue(double value) {
+		if (rowStart < 0 || chunk.position() - rowStart >= rowBytes(columns)) return;
+		chunk.putDouble(value);
+	}
+
+	/**
+	 * Finish the row. Any missing values are NaN. Readers only see complete rows.
+	 */
+	public void endRow() {
+		if (rowStart < 0) return;
+		while (chunk.position() - rowStart < rowBytes(columns)) {
+			chunk.putDouble(Double.NaN);
+		}
+		rowStart = -1;
+		rows++;
+		// The volatile write orders the row before the new count for renderCsv() in this process.
+		publishedRows = rows;
+		header.putLong(ROW_COUNT_OFFSET, rows);
+	}
+
+	public long getRowCount() {
+		return rows;
+	}
+
+	/**
+	 * Check if the file has reached its maximum size, or has been closed.
+	 */
+	public boolean isFull() {
+		return rows >= maxRows || !channel.isOpen();
+	}
+
+	/**
+	 * Write the changes out to the flash drive.
+	 */
+	public void force() {
+		if (chunk != null) {
+			chunk.force();
+		}
+		header.force();
+	}
+
+	/**
+	 * Write out the rows, cut the file back to the rows written and close it.
+	 * The file can't be added to after this.
+	 */
+	public void close() {
+		if (!channel.isOpen()) return;
+		force();
+		chunk = null;
+		rowStart = -1;
+		writing.remove(file, this);
+		try {
+			channel.truncate(HEADER_BYTES + rows * rowBytes(columns));
+		} catch (IOException e) {
+			// Leaving the unused end of the last chunk isn't a problem.
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// Nothing more to write.
+		}
+	}
+
+	/**
+	 * Write the sidecar file with the csv headers and the match description.
+	 */
+	public static void writeMetadata(Path binaryFile, String csvColumns, String matchDescription) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("columns", csvColumns);
+		if (matchDescription != null) {
+			properties.setProperty("match", matchDescription);
+		}
+		try (Writer writer = Files.newBufferedWriter(withExtension(binaryFile, METADATA_EXTENSION))) {
+			properties.store(writer, "Telemetry for " + binaryFile.getFileName());
+		}
+	}
+
+	/**
+	 * Read the sidecar file of the given .bin file.
+	 */
+	public static Properties readMetadata(Path binaryFile) throws IOException {
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(withExtension(binaryFile, METADATA_EXTENSION))) {
+			properties.load(reader);
+		}
+		return properties;
+	}
+
+	/**
+	 * Check if the requested .csv file can be rendered from a .bin file.
+	 * @param requested the .csv file, or a symbolic link to where it would be.
+	 */
+	public static boolean canRenderCsv(File requested) {
+		Path binary = binaryFileFor(requested);
+		return binary != null && Files.exists(binary) && Files.exists(withExtension(binary, METADATA_EXTENSION));
+	}
+
+	/**
+	 * Write the rows recorded so far as the .csv file that LogDygraph would have written.
+	 * @param requested the .csv file, or a symbolic link to where it would be.
+	 */
+	public static void renderCsv(File requested, OutputStream out) throws IOException {
+		Path binary = binaryFileFor(requested);
+		if (binary == null) {
+			throw new IOException("Not a telemetry csv file: " + requested);
+		}
+		String headers = readMetadata(binary).getProperty("columns", "date");
+		BufferedOutputStream csv = new BufferedOutputStream(out);
+		writeAscii(csv, headers);
+		csv.write('\n');
+		CsvRowEncoder row = new CsvRowEncoder(CSV_DECIMAL_PLACES);
+		for (int part = 1; Files.exists(partFile(binary, part)); part++) {
+			renderRows(partFile(binary, part), row, csv);
+		}
+		csv.flush();
+	}
+
+	private static void renderRows(Path binary, CsvRowEncoder row, OutputStream csv) throws IOException {
+		// Read the count first. If this process is writing the file, the volatile read
+		// makes sure the rows it counts have been written.
+		TelemetryFile writer = writing.get(binary.toAbsolutePath().normalize());
+		long published = writer != null ? writer.publishedRows : -1;
+		ByteBuffer in;
+		try (FileChannel channel = FileChannel.open(binary, StandardOpenOption.READ)) {
+			in = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (in.remaining() < HEADER_BYTES || in.getInt(0) != MAGIC) {
+			throw new IOException("Not a telemetry file: " + binary);
+		}
+		int columns = in.getInt(4);
+		long rows = published >= 0 ? published : in.getLong(ROW_COUNT_OFFSET);
+		in.position(HEADER_BYTES);
+		for (long r = 0; r < rows && in.remaining() >= rowBytes(columns); r++) {
+			row.startRow(in.getDouble());
+			for (int c = 1; c < columns; c++) {
+				row.addValue(in.getDouble());
+			}
+			row.endRow();
+			char[] chars = row.chars();
+			for (int i = 0; i < row.length(); i++) {
+				csv.write(chars[i]);  // Only digits and punctuation.
+			}
+		}
+	}
+
+	/**
+	 * The file that holds the rows after the first file and the parts before this one
+	 * filled up, eg data_00012.2.bin. Part 1 is the first file itself.
+	 */
+	public static Path partFile(Path binaryFile, int part) {
+		return part == 1 ? binaryFile : withExtension(binaryFile, "." + part + BINARY_EXTENSION);
+	}
+
+	/**
+	 * Render the .csv files for .bin files copied off the robot, so they can be viewed
+	 * without the robot's web server.
+	 * @param args the .bin files, or directories to render all the .bin files in.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: java org.team3132.lib.TelemetryFile <.bin file or directory>...");
+			System.exit(1);
+		}
+		for (String arg : args) {
+			File file = new File(arg);
+			File[] children = file.isDirectory() ? file.listFiles((dir, name) -> name.endsWith(BINARY_EXTENSION)) : null;
+			for (File binary : children != null ? children : new File[] { file }) {
+				File csv = withExtension(binary.toPath(), CSV_EXTENSION).toFile();
+				if (!canRenderCsv(csv) || csv.exists()) continue;  // Later parts, or already rendered.
+				try (OutputStream out = Files.newOutputStream(csv.toPath())) {
+					renderCsv(csv, out);
+				}
+				System.out.println("Wrote " + csv);
+			}
+		}
+	}
+
+	/**
+	 * Lets the web server render .csv files from .bin files on request.
+	 */
+	public static FileGenerator csvGenerator() {
+		return new FileGenerator() {
+			@Override
+			public boolean canGenerate(File file) {
+				return canRenderCsv(file);
+			}
+
+			@Override
+			public void generate(File file, OutputStream out) throws IOException {
+				renderCsv(file, out);
+			}
+		};
+	}
+
+	private static void writeAscii(OutputStream out, String str) throws IOException {
+		out.write(str.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static Path binaryFileFor(File requested) {
+		Path path = requested.toPath();
+		try {
+			if (Files.isSymbolicLink(path)) {
+				// eg Latest_data.csv -> data/data_00012.csv, which doesn't exist.
+				path = path.getParent().resolve(Files.readSymbolicLink(path)).normalize();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+		if (!path.getFileName().toString().endsWith(CSV_EXTENSION)) return null;
+		return withExtension(path, BINARY_EXTENSION);
+	}
+
+	private static int rowBytes(int columns) {
+		return columns * Double.BYTES;
+	}
+
+	private static Path withExtension(Path path, String extension) {
+		String name = path.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		return path.resolveSibling((dot < 0 ? name : name.substring(0, dot)) + extension);
+	}
+}
@@ -0,0 +1,47 @@
+package org.strongback;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.strongback.components.Counter;
+
+/**
+ * Helpers for the tests that check the contents of data and event files.
+ */
+final class RecordingFiles {
+
+	private RecordingFiles() {
+	}
+
+	/**
+	 * Create an event writer whose files are named "robot-event-N.dat" in the given directory.
+	 */
+	static FileEventWriter eventWriter(File dir, long fileSize, int dictionarySize) {
+		return new FileEventWriter(Strongback.filenameGenerator(new File(dir, "robot").getPath(), "event", Counter.unlimited(1)),
+				fileSize, dictionarySize);
+	}
+
+	/**
+	 * Read a string that was written as the number of its UTF-8 bytes followed by the bytes.
+	 */
+	static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * The number of bytes used in a memory-mapped file, whose unused remainder is all zeros.
+	 */
+	static long usedBytes(File file) throws IOException {
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		int end = bytes.length;
+		while (end > 0 && bytes[end - 1] == 0) {
+			--end;
+		}
+		return end;
+	}
+}
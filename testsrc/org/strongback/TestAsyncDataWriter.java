@@ -0,0 +1,176 @@
+package org.strongback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Check that the buffered data writer writes the sampled values on its background thread, and drops and counts records when
+ * both buffers are full.
+ */
+public class TestAsyncDataWriter {
+
+	private static final int CAPACITY = 4;
+
+	private int[] cycle;
+	private DataRecorderChannels channels;
+	private DataBufferMetrics metrics;
+	private List<Long> times;
+	private List<Integer> values;
+	private List<String> threads;
+	private int[] closes;
+	private CountDownLatch blocked;
+
+	@Before
+	public void beforeEach() {
+		cycle = new int[1];
+		channels = new DataRecorderChannels();
+		channels.register("Count", () -> cycle[0]);
+		metrics = new DataBufferMetrics();
+		times = new ArrayList<>();
+		values = new ArrayList<>();
+		threads = new ArrayList<>();
+		closes = new int[1];
+		blocked = new CountDownLatch(1);
+	}
+
+	private DataWriter recordingWriter(Iterable<DataRecorderChannel> channels) {
+		IntSupplier count = channels.iterator().next().getSupplier();
+		return new DataWriter() {
+			@Override
+			public void write(long time) {
+				try {
+					blocked.await();
+				} catch (InterruptedException e) {
+					Thread.interrupted();
+				}
+				times.add(time);
+				values.add(count.getAsInt());
+				threads.add(Thread.currentThread().getName());
+			}
+
+			@Override
+			public void close() {
+				++closes[0];
+			}
+		};
+	}
+
+	private void write(AsyncDataWriter writer, int time) {
+		cycle[0] = time * 10;
+		writer.write(time);
+	}
+
+	@Test
+	public void shouldDropRecordsWhenBothBuffersAreFull() throws InterruptedException {
+		AsyncDataWriter writer = new AsyncDataWriter(channels, this::recordingWriter, CAPACITY, metrics,
+				Logger.noOp());
+		assertEquals(CAPACITY, metrics.capacity());
+
+		// Fill the first buffer, which the background thread starts (but cannot finish) writing ...
+		for (int t = 0; t != CAPACITY; ++t) {
+			write(writer, t);
+		}
+		// Fill the second buffer, and then overflow ...
+		for (int t = CAPACITY; t != 2 * CAPACITY + 3; ++t) {
+			write(writer, t);
+		}
+		assertEquals(3, metrics.droppedCount());
+		assertEquals(CAPACITY, metrics.occupancy());
+		assertEquals(CAPACITY, metrics.peakOccupancy());
+
+		// Let the background thread finish, and wait for the first buffer to be available again ...
+		blocked.countDown();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (metrics.buffersWritten() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		assertEquals(1, metrics.buffersWritten());
+		write(writer, 20);
+		assertEquals(1, metrics.occupancy());
+		writer.stop();
+
+		assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 20L), times);
+		assertEquals(Arrays.asList(0, 10, 20, 30, 40, 50, 60, 70, 200), values);
+		assertTrue(threads.stream().allMatch("Strongback Data Buffer Writer"::equals));
+		assertEquals(9, metrics.writtenCount());
+		assertEquals(0, metrics.backlog());
+		assertEquals(1, closes[0]);
+	}
+
+	@Test
+	public void shouldCloseWriterAfterFlush() throws InterruptedException {
+		blocked.countDown();
+		AsyncDataWriter writer = new AsyncDataWriter(channels, this::recordingWriter, CAPACITY, metrics,
+				Logger.noOp());
+		write(writer, 0);
+		writer.close();
+		write(writer, 1);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (closes[0] == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		// The partial buffer was written and the writer closed, without waiting for the buffer to fill ...
+		assertEquals(1, closes[0]);
+		assertEquals(Arrays.asList(0L, 1L), times);
+		writer.stop();
+		assertEquals(2, closes[0]);
+		assertEquals(0, metrics.droppedCount());
+	}
+
+	@Test
+	public void shouldAbandonBackgroundThreadThatDoesNotFinishWhenStopped() {
+		List<String> errors = new ArrayList<>();
+		Logger logger = new Logger() {
+			@Override
+			public void error(Throwable t) {
+				errors.add(t.toString());
+			}
+
+			@Override
+			public void error(Throwable t, String message) {
+				errors.add(message);
+			}
+
+			@Override
+			public void error(String message) {
+				errors.add(message);
+			}
+
+			@Override
+			public void warn(String message) {
+			}
+
+			@Override
+			public void info(String message) {
+			}
+
+			@Override
+			public void debug(String message) {
+			}
+
+			@Override
+			public void trace(String message) {
+			}
+		};
+		// The background writer stays blocked, as if the disk had stopped responding ...
+		AsyncDataWriter writer = new AsyncDataWriter(channels, this::recordingWriter, CAPACITY, metrics, logger, 100);
+		write(writer, 0);
+		long start = System.currentTimeMillis();
+		writer.stop();
+		long elapsed = System.currentTimeMillis() - start;
+		assertTrue("stopped after " + elapsed + " ms", elapsed < 5000);
+		assertEquals(1, errors.size());
+		assertTrue(errors.get(0), errors.get(0).contains("abandoned"));
+		blocked.countDown();
+	}
+}
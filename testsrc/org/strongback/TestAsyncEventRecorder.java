@@ -0,0 +1,156 @@
+package org.strongback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.strongback.AsyncEventRecorder.EventType;
+import org.strongback.AsyncEventRecorder.EventWriter;
+import org.strongback.mock.MockClock;
+
+/**
+ * Check that the event recorder writes events in order through its ring of event slots, and counts the events dropped when
+ * the ring is full.
+ */
+public class TestAsyncEventRecorder {
+
+	private MockClock clock;
+	private long start;
+	private List<String> written;
+	private Map<Integer, String> typeNames;
+
+	@Before
+	public void beforeEach() {
+		clock = new MockClock();
+		start = clock.currentTimeInMillis();
+		written = new ArrayList<>();
+		typeNames = new HashMap<>();
+	}
+
+	private final EventWriter writer = new EventWriter() {
+		@Override
+		public void recordEventType(long timeInMillis, EventType newType) {
+			typeNames.put(newType.typeNumber(), newType.typeName());
+			written.add("type " + newType.typeName());
+		}
+
+		@Override
+		public void recordEvent(long timeInMillis, int eventType, String value) {
+			written.add((timeInMillis - start) + " " + typeNames.get(eventType) + "=" + value);
+		}
+
+		@Override
+		public void recordEvent(long timeInMillis, int eventType, int value) {
+			written.add((timeInMillis - start) + " " + typeNames.get(eventType) + "=" + value);
+		}
+
+		@Override
+		public void close() {
+		}
+	};
+
+	@Test
+	public void shouldWriteTypesBeforeTheirFirstEvents() {
+		AsyncEventRecorder recorder = new AsyncEventRecorder(writer, clock, 8);
+		recorder.record("Mode", "auto");
+		clock.incrementByMilliseconds(20);
+		recorder.record("Lift", 3);
+		recorder.record("Mode", "teleop");
+		recorder.record("Intake", true);
+		assertEquals(0, written.size());
+		recorder.execute(clock.currentTimeInMillis());
+		assertEquals(Arrays.asList("type Mode", "0 Mode=auto", "type Lift", "20 Lift=3", "20 Mode=teleop", "type Intake",
+				"20 Intake=1"), written);
+	}
+
+	@Test
+	public void shouldCountEventsDroppedWhenTheRingIsFull() {
+		AsyncEventRecorder recorder = new AsyncEventRecorder(writer, clock, 4);
+		for (int i = 0; i != 6; ++i) {
+			recorder.record("Count", i);
+		}
+		assertEquals(2, recorder.droppedCount());
+		recorder.execute(clock.currentTimeInMillis());
+		assertEquals(Arrays.asList("type Count", "0 Count=0", "0 Count=1", "0 Count=2", "0 Count=3",
+				"type " + AsyncEventRecorder.DROPPED_EVENT_TYPE, "0 " + AsyncEventRecorder.DROPPED_EVENT_TYPE + "=2"), written);
+
+		// The slots are reused on each lap around the ring ...
+		written.clear();
+		for (int lap = 0; lap != 3; ++lap) {
+			for (int i = 0; i != 4; ++i) {
+				recorder.record("Count", lap * 4 + i);
+			}
+			recorder.execute(clock.currentTimeInMillis());
+		}
+		assertEquals(12, written.size());
+		assertEquals("0 Count=11", written.get(11));
+		assertEquals(2, recorder.droppedCount());
+	}
+
+	@Test
+	public void shouldWriteEveryEventFromManyThreadsInOrderOrCountIt() throws InterruptedException {
+		int threads = 4;
+		int events = 20000;
+		int[] last = new int[threads];
+		int[] count = new int[1];
+		Arrays.fill(last, -1);
+		AsyncEventRecorder recorder = new AsyncEventRecorder(new EventWriter() {
+			@Override
+			public void recordEventType(long timeInMillis, EventType newType) {
+			}
+
+			@Override
+			public void recordEvent(long timeInMillis, int eventType, String value) {
+				// Each producer's events must be written in the order they were recorded ...
+				String[] parts = value.split(":");
+				int producer = Integer.parseInt(parts[0]);
+				int sequence = Integer.parseInt(parts[1]);
+				assertTrue(sequence > last[producer]);
+				last[producer] = sequence;
+				++count[0];
+			}
+
+			@Override
+			public void recordEvent(long timeInMillis, int eventType, int value) {
+			}
+
+			@Override
+			public void close() {
+			}
+		}, clock, 256);
+		String[][] values = new String[threads][events];
+		for (int t = 0; t != threads; ++t) {
+			for (int i = 0; i != events; ++i) {
+				values[t][i] = t + ":" + i;
+			}
+		}
+		List<Thread> producers = new ArrayList<>();
+		for (int t = 0; t != threads; ++t) {
+			String[] mine = values[t];
+			Thread producer = new Thread(() -> {
+				for (String value : mine) {
+					recorder.record("Event", value);
+				}
+			});
+			producers.add(producer);
+			producer.start();
+		}
+		boolean running = true;
+		while (running) {
+			running = false;
+			for (Thread producer : producers) {
+				running |= producer.isAlive();
+			}
+			recorder.execute(clock.currentTimeInMillis());
+		}
+		recorder.execute(clock.currentTimeInMillis());
+		assertEquals((long) threads * events, count[0] + recorder.droppedCount());
+	}
+}
@@ -0,0 +1,156 @@
+package org.strongback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.strongback.components.Counter;
+
+/**
+ * Check that compressed data files decode to the recorded values, and that slowly changing channels compress well.
+ */
+public class TestCompressedDataFormat {
+
+	private static final int RECORDS = 3000;
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void shouldDecodeRecordedValues() throws IOException {
+		int[] cycle = new int[1];
+		DataRecorderChannels channels = new DataRecorderChannels();
+		channels.register("Encoder", () -> 1000000 + 3 * cycle[0]);
+		channels.registerLong("Counter", () -> -5L * cycle[0]);
+		channels.registerFloat("Current", () -> 12.5f);
+		channels.registerDouble("Heading", () -> 90.0 + (cycle[0] / 100) * 0.5);
+		channels.registerBoolean("Solenoid", () -> cycle[0] % 1000 < 500);
+		CompressedFileDataWriter writer = new CompressedFileDataWriter(channels,
+				Strongback.filenameGenerator(new File(folder.getRoot(), "robot").getPath(), "data", Counter.unlimited(1)), 1024 * 1024);
+		for (int i = 0; i != RECORDS; ++i) {
+			cycle[0] = i;
+			writer.write(20L * i);
+		}
+		writer.close();
+
+		File file = new File(folder.getRoot(), "robot-data-1.dat");
+		CompressedDataDecoder decoder = CompressedDataDecoder.open(file.toPath());
+		assertEquals(6, decoder.channelCount());
+		assertEquals("Time", decoder.channelName(0));
+		assertEquals("Heading", decoder.channelName(4));
+		assertEquals(DataRecorderChannel.Type.DOUBLE, decoder.channelType(4));
+		for (int i = 0; i != RECORDS; ++i) {
+			assertTrue(decoder.next());
+			assertEquals(20L * i, decoder.getLong(0));
+			assertEquals(1000000 + 3 * i, decoder.getLong(1));
+			assertEquals(-5L * i, decoder.getLong(2));
+			assertEquals(12.5, decoder.getDouble(3), 0.0);
+			assertEquals(90.0 + (i / 100) * 0.5, decoder.getDouble(4), 0.0);
+			assertEquals(i % 1000 < 500, decoder.getBoolean(5));
+		}
+		assertFalse(decoder.next());
+
+		// Compare the space used by the blocks with the fixed-width records (4+4+8+4+8+1 bytes per record) ...
+		DataRecorderChannel[] array = new DataRecorderChannel[5];
+		int n = 0;
+		for (DataRecorderChannel channel : channels) {
+			array[n++] = channel;
+		}
+		long fixedWidth = (long) RECORDS * MappedFileDataWriter.recordLength(array);
+		long compressed = RecordingFiles.usedBytes(file);
+		assertTrue("compressed to " + compressed + " bytes from " + fixedWidth, compressed * 5 <= fixedWidth);
+	}
+
+	@Test
+	public void shouldFillSmallFilesWithManyChannels() throws IOException {
+		// The worst case for a whole block of 100 channels is over 250 KB, but the actual blocks are much smaller ...
+		int[] cycle = new int[1];
+		DataRecorderChannels channels = new DataRecorderChannels();
+		for (int c = 0; c != 100; ++c) {
+			final int channel = c;
+			channels.register("Channel" + c, () -> (cycle[0] / 8) * channel);
+		}
+		int fileSize = 64 * 1024;
+		CompressedFileDataWriter writer = new CompressedFileDataWriter(channels,
+				Strongback.filenameGenerator(new File(folder.getRoot(), "robot").getPath(), "data", Counter.unlimited(1)), fileSize);
+		for (int i = 0; i != RECORDS; ++i) {
+			cycle[0] = i;
+			writer.write(20L * i);
+		}
+		writer.close();
+
+		assertEquals(RECORDS, decodeAll(101, (decoder, i) -> {
+			assertEquals(20L * i, decoder.getLong(0));
+			assertEquals((i / 8) * 99, decoder.getLong(100));
+		}));
+		// Only the last file should have much unused space ...
+		File[] files = folder.getRoot().listFiles();
+		assertTrue("only " + files.length + " files", files.length > 1);
+		for (int n = 1; n < files.length; ++n) {
+			long used = RecordingFiles.usedBytes(new File(folder.getRoot(), "robot-data-" + n + ".dat"));
+			assertTrue("file " + n + " used " + used + " bytes", used > fileSize * 3 / 4);
+		}
+	}
+
+	@Test
+	public void shouldFinishBlocksEarlyWhenTheyMightNotFitInAFile() throws IOException {
+		// Values that change by a lot every time take several bytes each, so a whole block can't fit in one small file ...
+		int[] cycle = new int[1];
+		DataRecorderChannels channels = new DataRecorderChannels();
+		channels.registerLong("Big", () -> cycle[0] * 0x0123456789ABL);
+		channels.registerDouble("Wave", () -> Math.sin(cycle[0]));
+		CompressedFileDataWriter writer = new CompressedFileDataWriter(channels,
+				Strongback.filenameGenerator(new File(folder.getRoot(), "robot").getPath(), "data", Counter.unlimited(1)), 2048);
+		for (int i = 0; i != RECORDS; ++i) {
+			cycle[0] = i;
+			writer.write(20L * i);
+		}
+		writer.close();
+
+		assertEquals(RECORDS, decodeAll(3, (decoder, i) -> {
+			assertEquals(20L * i, decoder.getLong(0));
+			assertEquals(i * 0x0123456789ABL, decoder.getLong(1));
+			assertEquals(Math.sin(i), decoder.getDouble(2), 0.0);
+		}));
+	}
+
+	@Test
+	public void shouldRejectFilesTooSmallForOneRecord() {
+		// The header fits, but one record of 100 channels might not ...
+		DataRecorderChannels channels = new DataRecorderChannels();
+		for (int c = 0; c != 100; ++c) {
+			channels.register("Channel" + c, () -> 0);
+		}
+		CompressedFileDataWriter writer = new CompressedFileDataWriter(channels,
+				Strongback.filenameGenerator(new File(folder.getRoot(), "robot").getPath(), "data", Counter.unlimited(1)), 3000);
+		try {
+			writer.write(0L);
+			fail("Wrote to a file too small for one record");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	private interface RecordCheck {
+		void check(CompressedDataDecoder decoder, int record);
+	}
+
+	private int decodeAll(int channelCount, RecordCheck check) throws IOException {
+		int records = 0;
+		for (int n = 1; new File(folder.getRoot(), "robot-data-" + n + ".dat").exists(); ++n) {
+			CompressedDataDecoder decoder = CompressedDataDecoder.open(new File(folder.getRoot(), "robot-data-" + n + ".dat").toPath());
+			assertEquals(channelCount, decoder.channelCount());
+			while (decoder.next()) {
+				check.check(decoder, records++);
+			}
+		}
+		return records;
+	}
+}
@@ -0,0 +1,71 @@
+package org.strongback;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.strongback.components.Counter;
+
+/**
+ * Check that recording data does not allocate any memory once the data file is open.
+ */
+public class TestDataRecordAllocation {
+
+	private static final int RECORDS = 20000;
+	private static final int PASSES = 5;
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void shouldNotAllocateWhenWritingRecords() {
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		int[] cycle = new int[1];
+		DataRecorderChannels channels = new DataRecorderChannels();
+		channels.register("Encoder", () -> cycle[0]);
+		channels.registerLong("Counter", () -> cycle[0] * 3L);
+		channels.registerFloat("Current", () -> cycle[0] * 0.5f);
+		channels.registerDouble("Heading", () -> cycle[0] * 0.25);
+		channels.registerBoolean("Solenoid", () -> cycle[0] % 2 == 0);
+		FileDataWriter writer = new FileDataWriter(channels,
+				Strongback.filenameGenerator(new File(folder.getRoot(), "robot").getPath(), "data", Counter.unlimited(1)), 50,
+				(PASSES + 1) * RECORDS / 50 + 1);
+
+		// Warm up, so that the code is compiled ...
+		int time = 0;
+		for (int i = 0; i != RECORDS; ++i) {
+			cycle[0] = i;
+			writer.write(time++);
+		}
+		long threadId = Thread.currentThread().getId();
+		threads.getThreadAllocatedBytes(threadId);
+		// Measure what reading the counter costs around a loop that doesn't write, so that only the writes are counted ...
+		long start = threads.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i != RECORDS; ++i) {
+			cycle[0] = i;
+		}
+		long overhead = threads.getThreadAllocatedBytes(threadId) - start;
+		// The JIT can still allocate a few bytes now and then (e.g., when it deoptimizes a method), so look for a whole pass
+		// that allocates nothing rather than failing on the first pass. Writes that allocate do so in every pass ...
+		long allocated = Long.MAX_VALUE;
+		for (int pass = 0; pass != PASSES && allocated > overhead; ++pass) {
+			long before = threads.getThreadAllocatedBytes(threadId);
+			for (int i = 0; i != RECORDS; ++i) {
+				cycle[0] = i;
+				writer.write(time++);
+			}
+			allocated = threads.getThreadAllocatedBytes(threadId) - before;
+		}
+		writer.close();
+		assertTrue("allocated " + (allocated - overhead) + " bytes for " + RECORDS + " records", allocated <= overhead);
+	}
+}
@@ -0,0 +1,202 @@
+package org.strongback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.function.Supplier;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.strongback.components.Counter;
+
+/**
+ * Check that both fixed-width and compressed data files can be read from any time and exported.
+ */
+public class TestDataRecordReader {
+
+	private static final int RECORDS = 2000;
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	private DataRecorderChannels channels;
+	private int[] cycle;
+
+	@Before
+	public void beforeEach() throws IOException {
+		cycle = new int[1];
+		channels = new DataRecorderChannels();
+		channels.register("Count", () -> cycle[0]);
+		channels.registerDouble("Half", () -> cycle[0] / 2.0);
+		channels.registerBoolean("Even", () -> cycle[0] % 2 == 0);
+		channels.registerLong("Position", () -> cycle[0] * 3_000_000_000L);
+		channels.registerFloat("Current", () -> cycle[0] * 0.25f);
+	}
+
+	@Test
+	public void shouldReadFixedWidthRecords() throws IOException {
+		record(new FileDataWriter(channels, filenames(), 50, RECORDS / 50 + 1));
+		DataRecordReader reader = DataRecordReader.open(new File(folder.getRoot(), "robot-data-1.dat").toPath());
+		assertFalse(reader.isCompressed());
+		assertRecording(reader);
+	}
+
+	@Test
+	public void shouldFindTheEndOfAnUnterminatedFile() throws IOException {
+		// The writer is left open, as if the robot lost power, so the rest of the file is zeros ...
+		DataWriter writer = new FileDataWriter(channels, filenames(), 50, RECORDS / 50 + 1);
+		for (int i = 0; i != 100; ++i) {
+			cycle[0] = i;
+			writer.write(1000 + 20 * i);
+		}
+		DataRecordReader reader = DataRecordReader.open(new File(folder.getRoot(), "robot-data-1.dat").toPath());
+		assertEquals(100, reader.recordCount());
+		DataRecordReader.Cursor cursor = reader.cursorAt(1990);
+		assertTrue(cursor.next());
+		assertEquals(2000, cursor.time());
+		assertEquals(50, cursor.getLong(1));
+		cursor = reader.cursorAt(2980);
+		assertTrue(cursor.next());
+		assertEquals(2980, cursor.time());
+		assertFalse(cursor.next());
+		writer.close();
+	}
+
+	@Test
+	public void shouldReadCompressedRecords() throws IOException {
+		record(new CompressedFileDataWriter(channels, filenames(), 1024 * 1024));
+		DataRecordReader reader = DataRecordReader.open(new File(folder.getRoot(), "robot-data-1.dat").toPath());
+		assertTrue(reader.isCompressed());
+		assertRecording(reader);
+	}
+
+	@Test
+	public void shouldStartAtTheFirstOfSeveralFixedWidthRecordsWithTheSameTime() throws IOException {
+		recordDuplicates(new FileDataWriter(channels, filenames(), 50, RECORDS / 50 + 1));
+		assertStartsAtTheFirstDuplicate(DataRecordReader.open(new File(folder.getRoot(), "robot-data-1.dat").toPath()));
+	}
+
+	@Test
+	public void shouldStartAtTheFirstOfSeveralSparseRecordsWithTheSameTime() throws IOException {
+		channels.register("Mode", () -> cycle[0] / 100, RecordingPolicy.onChange());
+		recordDuplicates(new FileDataWriter(channels, filenames(), 50, RECORDS / 50 + 1));
+		DataRecordReader reader = DataRecordReader.open(new File(folder.getRoot(), "robot-data-1.dat").toPath());
+		assertStartsAtTheFirstDuplicate(reader);
+		DataRecordReader.Cursor cursor = reader.cursorAt(1500);
+		assertTrue(cursor.next());
+		assertEquals(2, cursor.getLong(6));
+	}
+
+	@Test
+	public void shouldStartAtTheFirstOfSeveralCompressedRecordsWithTheSameTime() throws IOException {
+		recordDuplicates(new CompressedFileDataWriter(channels, filenames(), 1024 * 1024));
+		assertStartsAtTheFirstDuplicate(DataRecordReader.open(new File(folder.getRoot(), "robot-data-1.dat").toPath()));
+	}
+
+	@Test
+	public void shouldExportTheSignOfNegativeTimesForDygraph() throws IOException {
+		// Times before the start of the match, including those less than a second before ...
+		long[] times = { -1980, -999, -20, 5, 1001 };
+		DataWriter writer = new FileDataWriter(channels, filenames(), 50, 1);
+		for (int i = 0; i != times.length; ++i) {
+			cycle[0] = i;
+			writer.write(times[i]);
+		}
+		writer.close();
+		DataRecordReader reader = DataRecordReader.open(new File(folder.getRoot(), "robot-data-1.dat").toPath());
+		StringWriter dygraph = new StringWriter();
+		reader.exportDygraph(-2000, 2000, dygraph);
+		assertEquals("date,Count,Half,Even,Position,Current\n-1.980,0,0.0,1,0,0.0\n-0.999,1,0.5,0,3000000000,0.25\n"
+				+ "-0.020,2,1.0,1,6000000000,0.5\n0.005,3,1.5,0,9000000000,0.75\n1.001,4,2.0,1,12000000000,1.0\n",
+				dygraph.toString());
+	}
+
+	private void recordDuplicates(DataWriter writer) {
+		// Each group of 10 records has the same time, so records 250 to 259 all have the time of the index entry at 256 ...
+		for (int i = 0; i != RECORDS; ++i) {
+			cycle[0] = i;
+			writer.write(1000 + 20 * (i / 10));
+		}
+		writer.close();
+	}
+
+	private void assertStartsAtTheFirstDuplicate(DataRecordReader reader) throws IOException {
+		assertEquals(RECORDS, reader.recordCount());
+		for (long time : new long[] { 1490, 1500 }) {
+			DataRecordReader.Cursor cursor = reader.cursorAt(time);
+			for (int i = 250; i != 260; ++i) {
+				assertTrue(cursor.next());
+				assertEquals(1500, cursor.time());
+				assertEquals(i, cursor.getLong(1));
+			}
+			assertTrue(cursor.next());
+			assertEquals(1520, cursor.time());
+			assertEquals(260, cursor.getLong(1));
+		}
+		// Records 0 to 9 have the first time, which is also the time of the first index entry ...
+		DataRecordReader.Cursor cursor = reader.cursorAt(1000);
+		assertTrue(cursor.next());
+		assertEquals(0, cursor.getLong(1));
+	}
+
+	private Supplier<String> filenames() {
+		return Strongback.filenameGenerator(new File(folder.getRoot(), "robot").getPath(), "data", Counter.unlimited(1));
+	}
+
+	private void record(DataWriter writer) {
+		// Records are 20 ms apart, starting at 1 second ...
+		for (int i = 0; i != RECORDS; ++i) {
+			cycle[0] = i;
+			writer.write(1000 + 20 * i);
+		}
+		writer.close();
+	}
+
+	private void assertRecording(DataRecordReader reader) throws IOException {
+		assertEquals(RECORDS, reader.recordCount());
+		assertEquals(6, reader.channelCount());
+		assertEquals("Half", reader.channelName(2));
+		assertEquals(DataRecorderChannel.Type.BOOLEAN, reader.channelType(3));
+		assertEquals(DataRecorderChannel.Type.LONG, reader.channelType(4));
+		assertEquals(DataRecorderChannel.Type.FLOAT, reader.channelType(5));
+
+		// Read all records ...
+		DataRecordReader.Cursor cursor = reader.cursor();
+		for (int i = 0; i != RECORDS; ++i) {
+			assertTrue(cursor.next());
+			assertEquals(1000 + 20 * i, cursor.time());
+			assertEquals(i, cursor.getLong(1));
+			assertEquals(i / 2.0, cursor.getDouble(2), 0.0);
+			assertEquals(i % 2 == 0, cursor.getBoolean(3));
+			assertEquals(i * 3_000_000_000L, cursor.getLong(4));
+			assertEquals(i * 0.25, cursor.getDouble(5), 0.0);
+		}
+		assertFalse(cursor.next());
+
+		// Start part way through, between records and on a record ...
+		cursor = reader.cursorAt(31010);
+		assertTrue(cursor.next());
+		assertEquals(31020, cursor.time());
+		assertEquals(1501, cursor.getLong(1));
+		cursor = reader.cursorAt(1000);
+		assertTrue(cursor.next());
+		assertEquals(1000, cursor.time());
+		cursor = reader.cursorAt(100000);
+		assertFalse(cursor.next());
+
+		// Export a window ...
+		StringWriter csv = new StringWriter();
+		reader.exportCsv(2000, 2060, csv);
+		assertEquals("Time,Count,Half,Even,Position,Current\n2000,50,25.0,1,150000000000,12.5\n"
+				+ "2020,51,25.5,0,153000000000,12.75\n2040,52,26.0,1,156000000000,13.0\n", csv.toString());
+		StringWriter dygraph = new StringWriter();
+		reader.exportDygraph(2000, 2021, dygraph);
+		assertEquals("date,Count,Half,Even,Position,Current\n2.000,50,25.0,1,150000000000,12.5\n"
+				+ "2.020,51,25.5,0,153000000000,12.75\n", dygraph.toString());
+	}
+}
@@ -0,0 +1,47 @@
+package org.strongback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Check that the execution time histogram reports percentiles within its bucket precision.
+ */
+public class TestExecutionHistogram {
+
+	@Test
+	public void emptyHistogramReportsZero() {
+		ExecutionHistogram histogram = new ExecutionHistogram("empty");
+		assertEquals(0, histogram.count());
+		assertEquals(0, histogram.p50InNanos());
+		assertEquals(0, histogram.p99InNanos());
+		assertEquals(0, histogram.maxInNanos());
+	}
+
+	@Test
+	public void bucketsCoverEveryValue() {
+		// Each value must land in a bucket whose upper bound is at least the value and within 1/8th of it.
+		for (long value = 0; value < 1_000_000; value += 7) {
+			long upper = ExecutionHistogram.upperBoundOf(ExecutionHistogram.bucketFor(value));
+			assertTrue("upper bound " + upper + " below " + value, upper >= value);
+			assertTrue("upper bound " + upper + " too far above " + value, upper - value <= value / 8);
+		}
+	}
+
+	@Test
+	public void reportsPercentilesAndMax() {
+		ExecutionHistogram histogram = new ExecutionHistogram("test");
+		// 1000 executions: 989 take 100us, 10 take 2ms and one takes 15ms.
+		for (int i = 0; i != 989; ++i) histogram.record(100_000);
+		for (int i = 0; i != 10; ++i) histogram.record(2_000_000);
+		histogram.record(15_000_000);
+		assertEquals(1000, histogram.count());
+		assertEquals(100_000, histogram.p50InNanos(), 100_000 / 8);
+		assertEquals(2_000_000, histogram.p99InNanos(), 2_000_000 / 8);
+		assertEquals(15_000_000, histogram.maxInNanos());
+		histogram.reset();
+		assertEquals(0, histogram.count());
+		assertEquals(0, histogram.maxInNanos());
+	}
+}
@@ -0,0 +1,186 @@
+package org.strongback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.strongback.Executor.Priority;
+import org.strongback.Executor.RateGroup;
+import org.strongback.mock.MockClock;
+
+/**
+ * Check how executables are grouped by {@link RateGroup}, and on which cycles each group is due.
+ */
+public class TestExecutor {
+
+	@After
+	public void afterEach() {
+		Strongback.stop();
+		Strongback.executor().unregisterAll();
+		Strongback.configure().useVirtualTime(null);
+	}
+
+	private static List<String> groupNames(Executables.Snapshot snapshot) {
+		List<String> names = new ArrayList<>();
+		for (RateGroup group : snapshot.groups) {
+			names.add(group.name());
+		}
+		return names;
+	}
+
+	@Test
+	public void groupsAreOrderedByPeriodAndThenByFirstUse() {
+		Executables executables = new Executables();
+		Executable logging = time -> {};
+		Executable drive = time -> {};
+		Executable odometry = time -> {};
+		Executable vision = time -> {};
+		executables.register(logging, RateGroup.every("Logging", 20, 2));
+		executables.register(drive, RateGroup.every("Drive", 4));
+		executables.register(odometry, RateGroup.every("Odometry", 1));
+		executables.register(vision, RateGroup.every("Vision", 4));
+		Executables.Snapshot snapshot = executables.snapshot();
+		assertEquals(Arrays.asList("HIGH", "Odometry", "MEDIUM", "LOW", "Drive", "Vision", "Logging"), groupNames(snapshot));
+		assertEquals(4, snapshot.size);
+		assertEquals(1, snapshot.offsets[4]);
+		assertEquals(3, snapshot.offsets[6]);
+
+		// Executables keep the order they were registered in within a group, and move to the end of a new group ...
+		Executable other = time -> {};
+		executables.register(other, RateGroup.every("Drive", 4));
+		assertTrue(executables.register(odometry, RateGroup.every("Drive", 4)));
+		snapshot = executables.snapshot();
+		assertEquals(0, snapshot.executables[1].length);
+		assertEquals(Arrays.asList(drive, other, odometry), Arrays.asList(snapshot.executables[4]));
+		assertFalse(executables.register(odometry, RateGroup.every("Drive", 4)));
+	}
+
+	@SuppressWarnings("deprecation")
+	@Test
+	public void priorityAccessorsListTheExecutablesOfEachPriority() {
+		Executables executables = new Executables();
+		Executable high = time -> {};
+		Executable low = time -> {};
+		executables.register(high, Priority.HIGH);
+		executables.register(low, Priority.LOW);
+		executables.register(time -> {}, RateGroup.every("Drive", 4));
+		assertEquals(Arrays.asList(high), executables.highPriorityExecutables());
+		assertEquals(0, executables.mediumPriorityExecutables().size());
+		assertEquals(Arrays.asList(low), executables.lowPriorityExecutables());
+	}
+
+	@Test
+	public void phaseIsReducedModuloThePeriod() {
+		RateGroup group = RateGroup.every("Logging", 4, 6);
+		assertEquals(2, group.phaseInCycles());
+		assertEquals(3, RateGroup.every("Logging", 4, -1).phaseInCycles());
+		assertEquals(group, RateGroup.every("Logging", 4, 2));
+		for (long cycle = 0; cycle != 12; ++cycle) {
+			assertEquals(cycle % 4 == 2, group.isDue(cycle));
+		}
+		assertEquals("Logging (every 4 cycles + 2)", group.toString());
+	}
+
+	@Test
+	public void conflictingDefinitionsOfAGroupAreRejected() {
+		Executables executables = new Executables();
+		Executable drive = time -> {};
+		Executable other = time -> {};
+		executables.register(drive, RateGroup.every("Drive", 4));
+		for (RateGroup conflicting : Arrays.asList(RateGroup.every("Drive", 2), RateGroup.every("Drive", 4, 1),
+				RateGroup.every("HIGH", 2))) {
+			try {
+				executables.register(other, conflicting);
+				fail("Registered with " + conflicting);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		// Nothing was changed ...
+		assertEquals(1, executables.snapshot().size);
+		try {
+			RateGroup.every("Drive", 0);
+			fail("Created a group with no period");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void groupsRunOnlyOnTheirDueCycles() {
+		MockClock clock = new MockClock();
+		Strongback.configure().useVirtualTime(clock).useExecutionPeriod(10, TimeUnit.MILLISECONDS);
+		List<Long> high = new ArrayList<>();
+		List<Long> slow = new ArrayList<>();
+		List<Long> low = new ArrayList<>();
+		Strongback.executor().register(high::add, Priority.HIGH);
+		Strongback.executor().register(slow::add, RateGroup.every("Slow", 3, 1));
+		Strongback.executor().register(low::add, Priority.LOW);
+		Strongback.start();
+		assertEquals(12, Strongback.runFor(120, TimeUnit.MILLISECONDS));
+
+		// HIGH runs on every cycle, so gives the time of cycle 0 ...
+		assertEquals(12, high.size());
+		long start = high.get(0);
+		assertEquals(Arrays.asList(1L, 4L, 7L, 10L), cycles(slow, start, 10));
+		assertEquals(Arrays.asList(0L, 4L, 8L), cycles(low, start, 10));
+	}
+
+	@Test
+	public void changesDuringACycleTakeEffectOnTheNextCycle() {
+		MockClock clock = new MockClock();
+		Strongback.configure().useVirtualTime(clock).useExecutionPeriod(10, TimeUnit.MILLISECONDS);
+		List<Long> first = new ArrayList<>();
+		List<Long> added = new ArrayList<>();
+		List<Long> removed = new ArrayList<>();
+		Executable addedTask = added::add;
+		Executable removedTask = removed::add;
+		Strongback.executor().register(time -> {
+			first.add(time);
+			if (first.size() == 1) {
+				Strongback.executor().register(addedTask, Priority.HIGH);
+				Strongback.executor().unregister(removedTask);
+			}
+		}, Priority.HIGH);
+		Strongback.executor().register(removedTask, Priority.HIGH);
+		Strongback.start();
+		assertEquals(3, Strongback.runFor(30, TimeUnit.MILLISECONDS));
+
+		// The cycle keeps running the executables it started with ...
+		assertEquals(3, first.size());
+		assertEquals(Arrays.asList(first.get(0)), removed);
+		assertEquals(Arrays.asList(first.get(1), first.get(2)), added);
+	}
+
+	private static List<Long> cycles(List<Long> times, long start, long periodInMillis) {
+		List<Long> cycles = new ArrayList<>();
+		for (long time : times) {
+			cycles.add((time - start) / periodInMillis);
+		}
+		return cycles;
+	}
+
+	@Test
+	public void rateGroupsThatDifferOnlyInSheddabilityAreTheSame() {
+		assertEquals(Priority.LOW.rateGroup(), RateGroup.every("LOW", 4));
+		assertEquals(RateGroup.every("Drive", 4), RateGroup.every("Drive", 4).sheddable());
+
+		// The executor keeps the sheddability of the group it was given first ...
+		Executables executables = new Executables();
+		Executable task = time -> {};
+		assertTrue(executables.register(task, RateGroup.every("LOW", 4)));
+		assertFalse(executables.register(task, Priority.LOW));
+		Executables.Snapshot snapshot = executables.snapshot();
+		assertEquals(3, snapshot.groups.length);
+		assertTrue(snapshot.groups[2].isSheddable());
+		assertEquals(1, snapshot.executables[2].length);
+	}
+}
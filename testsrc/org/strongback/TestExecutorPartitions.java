@@ -0,0 +1,158 @@
+package org.strongback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.strongback.Executor.Priority;
+
+/**
+ * Check that executables are only partitioned apart when they do not share a written resource.
+ */
+public class TestExecutorPartitions {
+
+	private final Object drive = new Object();
+	private final Object location = new Object();
+	private final Object lift = new Object();
+
+	@Test
+	public void sharedWritesAreJoinedAndReadsAreNot() {
+		Executables executables = new Executables();
+		List<String> ran = Collections.synchronizedList(new ArrayList<>());
+		executables.register(executable("location", ran, Arrays.asList(drive), Arrays.asList(location)), Priority.HIGH);
+		executables.register(executable("drive", ran, Arrays.asList(location), Arrays.asList(drive)), Priority.HIGH);
+		executables.register(executable("lift", ran, null, Arrays.asList(lift)), Priority.HIGH);
+		executables.register(executable("dashboard", ran, Arrays.asList(lift), null), Priority.HIGH);
+		executables.register(time -> ran.add("log"), Priority.HIGH);
+
+		ExecutorPartitions partitions = new ExecutorPartitions(executables.snapshot(), null, null, 2);
+		// {location, drive}, {lift, dashboard}, {log}
+		assertEquals(3, partitions.partitionCount());
+		// The undeclared executable always runs on the executor's own thread ...
+		assertEquals(0, partitions.workerOf(2));
+		assertNotEquals(partitions.workerOf(0), partitions.workerOf(1));
+
+		// Order is preserved within a partition, whatever order the partitions run in ...
+		for (long cycle = 0; cycle != 4; ++cycle) {
+			ran.clear();
+			partitions.runInVaryingOrder(cycle, (executable, times, index) -> {
+				executable.execute(0);
+				return true;
+			});
+			assertEquals(5, ran.size());
+			assertEquals(true, ran.indexOf("location") < ran.indexOf("drive"));
+			assertEquals(true, ran.indexOf("lift") < ran.indexOf("dashboard"));
+		}
+	}
+
+	@Test
+	public void onlyDueExecutablesRun() {
+		Executables executables = new Executables();
+		List<String> ran = new ArrayList<>();
+		executables.register(executable("high", ran, null, Arrays.asList(drive)), Priority.HIGH);
+		executables.register(executable("low", ran, null, Arrays.asList(lift)), Priority.LOW);
+		ExecutorPartitions partitions = new ExecutorPartitions(executables.snapshot(), null, null, 1);
+		for (long cycle = 0; cycle != 8; ++cycle) {
+			partitions.run(0, cycle, (executable, times, index) -> {
+				executable.execute(0);
+				return true;
+			});
+		}
+		assertEquals(8, Collections.frequency(ran, "high"));
+		assertEquals(2, Collections.frequency(ran, "low"));
+	}
+
+	@Test
+	public void workersRunEachDueExecutableOncePerCycle() {
+		Executables executables = new Executables();
+		int[] counts = new int[4];
+		Set<Thread> threads = Collections.synchronizedSet(new HashSet<>());
+		Object[] resources = { drive, location, lift };
+		for (int i = 0; i != 3; ++i) {
+			final int index = i;
+			executables.register(DependentExecutable.of(time -> {
+				++counts[index];
+				threads.add(Thread.currentThread());
+			}, null, Arrays.asList(resources[i])), Priority.HIGH);
+		}
+		executables.register(time -> ++counts[3], Priority.LOW);
+
+		ExecutorPartitions partitions = new ExecutorPartitions(executables.snapshot(), null, null, 3);
+		ExecutorWorkers workers = new ExecutorWorkers("test", 3, Thread.NORM_PRIORITY + 1);
+		try {
+			for (long cycle = 0; cycle != 100; ++cycle) {
+				assertEquals(true, workers.runCycle(partitions, cycle, (executable, times, index) -> {
+					executable.execute(0);
+					return true;
+				}));
+				// The barrier means every count is up to date as soon as the cycle returns ...
+				for (int i = 0; i != 3; ++i) {
+					assertEquals(cycle + 1, counts[i]);
+				}
+				assertEquals(cycle / 4 + 1, counts[3]);
+			}
+		} finally {
+			workers.stop();
+		}
+		// Each partition kept to its own thread, and the workers have the requested priority ...
+		assertEquals(3, threads.size());
+		assertEquals(true, threads.contains(Thread.currentThread()));
+		for (Thread thread : threads) {
+			if (thread != Thread.currentThread()) {
+				assertEquals(Thread.NORM_PRIORITY + 1, thread.getPriority());
+				assertEquals(true, thread.getName().startsWith("test-"));
+			}
+		}
+	}
+
+	@Test
+	public void workerFailuresAreReportedToTheExecutorThread() {
+		Executables executables = new Executables();
+		int[] counts = new int[3];
+		Object[] resources = { drive, location, lift };
+		for (int i = 0; i != 3; ++i) {
+			final int index = i;
+			executables.register(DependentExecutable.of(time -> ++counts[index], null, Arrays.asList(resources[i])),
+					Priority.HIGH);
+		}
+
+		ExecutorPartitions partitions = new ExecutorPartitions(executables.snapshot(), null, null, 3);
+		ExecutorWorkers workers = new ExecutorWorkers("test", 3, Thread.NORM_PRIORITY);
+		Thread executor = Thread.currentThread();
+		IllegalStateException failure = new IllegalStateException("failed on a worker");
+		try {
+			for (long cycle = 0; cycle != 10; ++cycle) {
+				final boolean failing = cycle == 3;
+				try {
+					workers.runCycle(partitions, cycle, (executable, times, index) -> {
+						executable.execute(0);
+						if (failing && Thread.currentThread() != executor) throw failure;
+						return true;
+					});
+					assertEquals(false, failing);
+				} catch (IllegalStateException e) {
+					assertEquals(true, failing);
+					assertSame(failure, e.getCause());
+				}
+				// Every worker finished the cycle, including the one that failed, and is still running the later cycles ...
+				for (int i = 0; i != 3; ++i) {
+					assertEquals(cycle + 1, counts[i]);
+				}
+			}
+		} finally {
+			workers.stop();
+		}
+	}
+
+	private static DependentExecutable executable(String name, List<String> ran, List<Object> reads, List<Object> writes) {
+		return DependentExecutable.of(time -> ran.add(name), reads, writes);
+	}
+}
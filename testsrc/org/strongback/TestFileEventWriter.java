@@ -0,0 +1,165 @@
+package org.strongback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.strongback.AsyncEventRecorder.EventType;
+
+/**
+ * Check that repeated string values are written once per file and then referenced by their dictionary id.
+ */
+public class TestFileEventWriter {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void shouldWriteRepeatedStringsOnce() throws IOException {
+		FileEventWriter writer = RecordingFiles.eventWriter(folder.getRoot(), 64 * 1024, 16);
+		EventType type = new EventType("Command", 1);
+		writer.recordEventType(1, type);
+		String[] names = { "org.team3132.commands.DriveToPosition", "org.team3132.commands.LiftToHeight",
+				"org.team3132.commands.IntakeCube" };
+		for (int i = 0; i != 300; ++i) {
+			writer.recordEvent(10 + i, type.typeNumber(), names[i % names.length]);
+		}
+		writer.recordEvent(400, type.typeNumber(), 7);
+		writer.close();
+
+		List<String> events = read(new File(folder.getRoot(), "robot-event-1.dat"));
+		assertEquals(302, events.size());
+		assertEquals("1 type Command", events.get(0));
+		assertEquals("10 Command=org.team3132.commands.DriveToPosition", events.get(1));
+		assertEquals("309 Command=org.team3132.commands.IntakeCube", events.get(300));
+		assertEquals("400 Command=7", events.get(301));
+		// Each reference takes 14 bytes, rather than 17 bytes plus the string ...
+		long used = RecordingFiles.usedBytes(new File(folder.getRoot(), "robot-event-1.dat"));
+		assertTrue("used " + used + " bytes", used < 300 * 15);
+	}
+
+	@Test
+	public void shouldEvictLeastRecentlyUsedStringsAndRestartDictionaryInEachFile() throws IOException {
+		FileEventWriter writer = RecordingFiles.eventWriter(folder.getRoot(), 1024, 2);
+		EventType type = new EventType("State", 1);
+		writer.recordEventType(1, type);
+		List<String> expected = new ArrayList<>();
+		expected.add("1 type State");
+		String[] states = { "idle", "lifting", "idle", "ejecting", "lifting", "idle" };
+		for (int i = 0; i != 120; ++i) {
+			String state = states[i % states.length];
+			writer.recordEvent(i, type.typeNumber(), state);
+			expected.add(i + " State=" + state);
+		}
+		writer.close();
+
+		// Each new file repeats the type definitions ...
+		List<String> events = new ArrayList<>();
+		File[] files = folder.getRoot().listFiles();
+		assertTrue(files.length > 1);
+		for (int n = 1; n <= files.length; ++n) {
+			List<String> fileEvents = read(new File(folder.getRoot(), "robot-event-" + n + ".dat"));
+			assertEquals("1 type State", fileEvents.get(0));
+			events.addAll(n == 1 ? fileEvents : fileEvents.subList(1, fileEvents.size()));
+		}
+		assertEquals(expected, events);
+	}
+
+	@Test
+	public void shouldRepeatLongTypeDefinitionsInSmallFilesOrFailClearly() throws IOException {
+		// Each new file starts with 27 bytes of header and 67 bytes for each of these types ...
+		FileEventWriter writer = RecordingFiles.eventWriter(folder.getRoot(), 200, 2);
+		EventType first = new EventType(name('a'), 1);
+		EventType second = new EventType(name('b'), 2);
+		writer.recordEventType(1, first);
+		writer.recordEventType(2, second);
+		// ... which leaves room in each file for only one of these records ...
+		for (int i = 0; i != 10; ++i) {
+			writer.recordEvent(10 + i, first.typeNumber(), i);
+		}
+		// ... but not for this 62-byte record, even in a new file ...
+		try {
+			writer.recordEvent(20, second.typeNumber(), "a string that is too long for the file");
+			fail("Wrote a record that does not fit in a new file");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		writer.close();
+
+		File[] files = folder.getRoot().listFiles();
+		assertEquals(10, files.length);
+		for (int n = 1; n <= files.length; ++n) {
+			List<String> events = read(new File(folder.getRoot(), "robot-event-" + n + ".dat"));
+			assertEquals(3, events.size());
+			assertEquals("1 type " + first.typeName(), events.get(0));
+			assertEquals("2 type " + second.typeName(), events.get(1));
+		}
+	}
+
+	private static String name(char c) {
+		char[] chars = new char[50];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+
+	private static List<String> read(File file) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		assertEquals(FileEventWriter.HEADER, RecordingFiles.readString(buffer));
+		Map<Integer, String> types = new HashMap<>();
+		Map<Integer, String> dictionary = new HashMap<>();
+		List<String> events = new ArrayList<>();
+		while (buffer.remaining() >= Long.BYTES + Integer.BYTES + 1) {
+			long time = buffer.getLong();
+			int typeNumber = buffer.getInt();
+			if (time < 0 || typeNumber == 0) break;
+			byte kind = buffer.get();
+			String value;
+			switch (kind) {
+				case FileEventWriter.TYPE_DEFINITION:
+					types.put(typeNumber, RecordingFiles.readString(buffer));
+					events.add(time + " type " + types.get(typeNumber));
+					continue;
+				case FileEventWriter.INT_TYPE:
+					value = Integer.toString(buffer.getInt());
+					break;
+				case FileEventWriter.STRING_DEFINITION:
+					int id = readVarint(buffer);
+					dictionary.put(id, RecordingFiles.readString(buffer));
+					value = dictionary.get(id);
+					break;
+				case FileEventWriter.STRING_REFERENCE:
+					value = dictionary.get(readVarint(buffer));
+					break;
+				default:
+					throw new AssertionError("unexpected kind " + kind);
+			}
+			events.add(time + " " + types.get(typeNumber) + "=" + value);
+		}
+		return events;
+	}
+
+	private static int readVarint(ByteBuffer buffer) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+}
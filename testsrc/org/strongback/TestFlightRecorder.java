@@ -0,0 +1,180 @@
+package org.strongback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.strongback.Executor.Priority;
+import org.strongback.components.Counter;
+
+/**
+ * Check the format of flight recorder dumps, and that dumps taken while the executor is recording only contain whole cycles.
+ */
+public class TestFlightRecorder {
+
+	private static class First implements Executable {
+		@Override
+		public void execute(long timeInMillis) {
+		}
+	}
+
+	private static class Second implements Executable {
+		@Override
+		public void execute(long timeInMillis) {
+		}
+	}
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	private BlockingQueue<String> messages;
+	private FlightRecorder recorder;
+
+	@Before
+	public void beforeEach() throws IOException {
+		messages = new LinkedBlockingQueue<>();
+	}
+
+	@After
+	public void afterEach() {
+		if (recorder != null) recorder.stop();
+	}
+
+	private FlightRecorder recorder(int capacityInCycles) {
+		Logger logger = new Logger() {
+			@Override
+			public void error(Throwable t) {
+				messages.add("error: " + t);
+			}
+
+			@Override
+			public void error(Throwable t, String message) {
+				messages.add("error: " + message + ": " + t);
+			}
+
+			@Override
+			public void error(String message) {
+				messages.add("error: " + message);
+			}
+
+			@Override
+			public void warn(String message) {
+			}
+
+			@Override
+			public void info(String message) {
+				messages.add(message);
+			}
+
+			@Override
+			public void debug(String message) {
+			}
+
+			@Override
+			public void trace(String message) {
+			}
+		};
+		recorder = new FlightRecorder(capacityInCycles,
+				Strongback.filenameGenerator(new File(folder.getRoot(), "robot").getPath(), "flight", ".csv", Counter.unlimited(1)), logger);
+		return recorder;
+	}
+
+	private void awaitDump() throws InterruptedException {
+		String message = messages.poll(10, TimeUnit.SECONDS);
+		assertTrue("The dump was not written", message != null);
+		assertTrue(message, message.startsWith("Wrote "));
+	}
+
+	@Test
+	public void shouldDumpTheMostRecentCyclesWhenACycleOverruns() throws IOException, InterruptedException {
+		Executables executables = new Executables();
+		executables.register(new First(), Priority.HIGH);
+		executables.register(new Second(), Priority.LOW);
+		Executables.Snapshot snapshot = executables.snapshot();
+		recorder(4);
+		// Cycles are 5 ms apart, and only the last one overruns ...
+		for (int n = 0; n != 6; ++n) {
+			recorder.startCycle(snapshot, n, 1000000000L + n * 5000000L);
+			recorder.recordItem(0, (100 + n) * 1000L);
+			if (n % 4 == 0) recorder.recordItem(1, 2000L);
+			recorder.endCycle((1000 + n) * 1000L, n == 5);
+		}
+		awaitDump();
+		File[] files = folder.getRoot().listFiles();
+		assertEquals(1, files.length);
+		String expected = "# cycle 5 overran\n"
+				+ "Cycle,Start (ms),Duration (us),Overrun,First,Second\n"
+				+ "2,0,1002,0,102,\n"
+				+ "3,5,1003,0,103,\n"
+				+ "4,10,1004,0,104,2\n"
+				+ "5,15,1005,1,105,\n";
+		assertEquals(expected, new String(Files.readAllBytes(files[0].toPath()), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void shouldOnlyDumpWholeCyclesWhileRecording() throws IOException, InterruptedException {
+		Executables executables = new Executables();
+		for (int i = 0; i != 3; ++i) {
+			executables.register(new First(), Priority.HIGH);
+		}
+		Executables.Snapshot snapshot = executables.snapshot();
+		recorder(16);
+		// Every value in a cycle is derived from the cycle number, so a torn copy would show up as a mismatch ...
+		Thread writer = new Thread(() -> {
+			for (long n = 0; !Thread.currentThread().isInterrupted(); ++n) {
+				recorder.startCycle(snapshot, n, n * 1000000L);
+				for (int i = 0; i != snapshot.size; ++i) {
+					recorder.recordItem(i, n * 1000L);
+				}
+				recorder.endCycle(n * 1000L, false);
+			}
+		});
+		writer.start();
+		try {
+			for (int i = 0; i != 100; ++i) {
+				recorder.dump("dump " + i);
+				awaitDump();
+			}
+		} finally {
+			writer.interrupt();
+			writer.join();
+		}
+		File[] files = folder.getRoot().listFiles();
+		assertEquals(100, files.length);
+		int rows = 0;
+		for (File file : files) {
+			List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+			assertTrue(lines.get(0).startsWith("# dump "));
+			long firstCycle = -1L;
+			long lastCycle = -1L;
+			for (String line : lines.subList(2, lines.size())) {
+				String[] values = line.split(",", -1);
+				assertEquals(line, 4 + snapshot.size, values.length);
+				long cycle = Long.parseLong(values[0]);
+				if (firstCycle < 0L) firstCycle = cycle;
+				assertTrue(line, cycle > lastCycle);
+				assertEquals(line, cycle - firstCycle, Long.parseLong(values[1]));
+				assertEquals(line, cycle, Long.parseLong(values[2]));
+				assertEquals(line, "0", values[3]);
+				for (int i = 0; i != snapshot.size; ++i) {
+					assertEquals(line, cycle, Long.parseLong(values[4 + i]));
+				}
+				lastCycle = cycle;
+				++rows;
+			}
+		}
+		assertTrue(rows > 0);
+	}
+}
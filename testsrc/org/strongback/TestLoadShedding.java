@@ -0,0 +1,67 @@
+package org.strongback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.strongback.Executor.Priority;
+import org.strongback.mock.MockClock;
+
+/**
+ * Check that only sheddable executables are deferred, and that deferred executions are shed when next due.
+ */
+public class TestLoadShedding {
+
+	private static final long BUDGET = TimeUnit.MILLISECONDS.toNanos(4);
+
+	@Test
+	public void deferredExecutionRunsWhenThereIsTime() {
+		MockClock clock = new MockClock();
+		Executables executables = new Executables();
+		executables.register(time -> {}, Priority.HIGH);
+		executables.register(time -> {}, Priority.LOW);
+		Executables.Snapshot snapshot = executables.snapshot();
+		int high = 0, low = 2;
+		ExecutionHistogram lowTimes = snapshot.times[low][0];
+		LoadShedding shedding = new LoadShedding(snapshot, clock, BUDGET);
+
+		// Cycle 0 runs out of time: HIGH still runs but LOW is deferred ...
+		shedding.startCycle(clock.currentTimeInNanos());
+		clock.incrementByMilliseconds(5);
+		assertTrue(shedding.admit(high, 0, true));
+		assertFalse(shedding.admit(low, 0, true));
+		assertEquals(1, lowTimes.deferredCount());
+
+		// Cycle 1 has time to spare, so the deferred LOW execution runs even though it isn't due ...
+		shedding.startCycle(clock.currentTimeInNanos());
+		assertTrue(shedding.admit(low, 0, false));
+
+		// Cycle 2 has nothing left to run ...
+		shedding.startCycle(clock.currentTimeInNanos());
+		assertFalse(shedding.admit(low, 0, false));
+		assertEquals(0, lowTimes.shedCount());
+	}
+
+	@Test
+	public void deferredExecutionIsShedWhenDueAgain() {
+		MockClock clock = new MockClock();
+		Executables executables = new Executables();
+		executables.register(time -> {}, Priority.LOW);
+		Executables.Snapshot snapshot = executables.snapshot();
+		int low = 2;
+		ExecutionHistogram lowTimes = snapshot.times[low][0];
+		LoadShedding shedding = new LoadShedding(snapshot, clock, BUDGET);
+
+		// Every cycle runs out of time ...
+		for (int cycle = 0; cycle != 8; ++cycle) {
+			shedding.startCycle(clock.currentTimeInNanos());
+			clock.incrementByMilliseconds(5);
+			assertFalse(shedding.admit(low, 0, cycle % 4 == 0));
+		}
+		assertEquals(2, lowTimes.deferredCount());
+		assertEquals(1, lowTimes.shedCount());
+	}
+}
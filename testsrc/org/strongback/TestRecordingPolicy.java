@@ -0,0 +1,94 @@
+package org.strongback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.strongback.components.Counter;
+
+/**
+ * Check that channels are only read and recorded as their policies allow, and that the sparse records read back correctly.
+ */
+public class TestRecordingPolicy {
+
+	private static final int RECORDS = 2000;
+
+	@Test
+	public void shouldRecordOnlyChanges() {
+		RecordingPolicy policy = RecordingPolicy.onChange();
+		assertFalse(policy.isDense());
+		assertTrue(policy.shouldRecord(0, 5, 5.0, 0, 0.0, Long.MIN_VALUE));
+		assertFalse(policy.shouldRecord(20, 5, 5.0, 5, 5.0, 0));
+		assertTrue(policy.shouldRecord(40, 6, 6.0, 5, 5.0, 0));
+	}
+
+	@Test
+	public void shouldRecordBeyondDeadbandOrAfterInterval() {
+		RecordingPolicy policy = RecordingPolicy.onChange(0.5, 1, TimeUnit.SECONDS);
+		assertFalse(policy.shouldRecord(100, 0, 10.4, 0, 10.0, 0));
+		assertTrue(policy.shouldRecord(100, 0, 10.6, 0, 10.0, 0));
+		assertTrue(policy.shouldRecord(1000, 0, 10.0, 0, 10.0, 0));
+	}
+
+	@Test
+	public void shouldReadAndRecordSparseChannels() throws IOException {
+		int[] cycle = new int[1];
+		int[] polls = new int[1];
+		DataRecorderChannels channels = new DataRecorderChannels();
+		channels.register("Count", () -> cycle[0]);
+		channels.register("Mode", () -> cycle[0] / 100, RecordingPolicy.onChange());
+		channels.registerDouble("Heading", () -> cycle[0] * 0.1, RecordingPolicy.onChange(1.0, 1, TimeUnit.SECONDS));
+		channels.registerDouble("Pressure", () -> {
+			++polls[0];
+			return 60.0;
+		}, RecordingPolicy.always().pollingEvery(100, TimeUnit.MILLISECONDS));
+		// Only this test writes a file ...
+		TemporaryFolder folder = new TemporaryFolder();
+		folder.create();
+		try {
+			FileDataWriter writer = new FileDataWriter(channels,
+					Strongback.filenameGenerator(new File(folder.getRoot(), "robot").getPath(), "data", Counter.unlimited(1)), 50, RECORDS / 50 + 1);
+			// Records are 20 ms apart ...
+			for (int i = 0; i != RECORDS; ++i) {
+				cycle[0] = i;
+				writer.write(20 * i);
+			}
+			writer.close();
+			assertEquals(RECORDS / 5, polls[0]);
+
+			File file = new File(folder.getRoot(), "robot-data-1.dat");
+			DataRecordReader reader = DataRecordReader.open(file.toPath());
+			assertEquals(RECORDS, reader.recordCount());
+			DataRecordReader.Cursor cursor = reader.cursor();
+			for (int i = 0; i != RECORDS; ++i) {
+				assertTrue(cursor.next());
+				assertEquals(20 * i, cursor.time());
+				assertEquals(i, cursor.getLong(1));
+				assertEquals(i / 100, cursor.getLong(2));
+				assertTrue(Math.abs(cursor.getDouble(3) - i * 0.1) <= 1.0);
+				assertEquals(60.0, cursor.getDouble(4), 0.0);
+			}
+			assertFalse(cursor.next());
+
+			// Start part way through, where the sparse channels were last recorded before the nearest index entry ...
+			cursor = reader.cursorAt(20 * 1234);
+			assertTrue(cursor.next());
+			assertEquals(1234, cursor.getLong(1));
+			assertEquals(12, cursor.getLong(2));
+			assertEquals(60.0, cursor.getDouble(4), 0.0);
+
+			// Compare the space used with dense records (4+4+4+8+8 bytes per record) ...
+			long dense = 28L * RECORDS;
+			long used = RecordingFiles.usedBytes(file);
+			assertTrue("recorded " + used + " bytes rather than " + dense, used * 2 <= dense);
+		} finally {
+			folder.delete();
+		}
+	}
+}
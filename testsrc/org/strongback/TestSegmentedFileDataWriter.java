@@ -0,0 +1,104 @@
+package org.strongback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.function.Supplier;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.strongback.components.Counter;
+
+/**
+ * Check that the segmented data writer rolls through its segments and only keeps the newest ones on disk.
+ */
+public class TestSegmentedFileDataWriter {
+
+	private static final int SEGMENT_SIZE = 1024;
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void shouldRollSegmentsAndDeleteTheOldest() throws IOException {
+		DataRecorderChannels channels = new DataRecorderChannels();
+		int[] value = new int[1];
+		channels.register("Value", () -> value[0]);
+		channels.registerDouble("Scaled", () -> 2.5 * value[0]);
+		channels.registerLong("Position", () -> value[0] * 3_000_000_000L);
+		channels.registerFloat("Current", () -> value[0] * 0.25f);
+		channels.registerBoolean("Even", () -> value[0] % 2 == 0);
+		Supplier<String> filenames = Strongback.filenameGenerator(new File(folder.getRoot(), "robot").getPath(), "data",
+				Counter.unlimited(1));
+		SegmentedFileDataWriter writer = new SegmentedFileDataWriter(channels, filenames, SEGMENT_SIZE, 4,
+				100 * SEGMENT_SIZE, Logger.noOp());
+		assertEquals(4, writer.retainedSegments());
+
+		// Each record is 29 bytes, so this needs many segments ...
+		for (int i = 0; i != 2000; ++i) {
+			value[0] = i;
+			writer.write(i);
+		}
+		writer.stop();
+
+		// Only the newest completed segments are kept ...
+		File[] files = folder.getRoot().listFiles();
+		assertEquals(2, files.length);
+		assertFalse(new File(folder.getRoot(), "robot-data-1.dat").exists());
+
+		// ... and the newest one ends with the last record followed by the terminator ...
+		File newest = counterOf(files[0]) > counterOf(files[1]) ? files[0] : files[1];
+		assertEquals(SEGMENT_SIZE, newest.length());
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(newest.toPath()));
+		assertEquals(MappedFileDataWriter.HEADER, RecordingFiles.readString(buffer));
+		assertEquals(6, buffer.getInt());
+		assertEquals(Integer.BYTES, buffer.getInt());
+		assertEquals('I', buffer.getInt());
+		assertEquals(Integer.BYTES, buffer.getInt());
+		assertEquals('I', buffer.getInt());
+		assertEquals(Double.BYTES, buffer.getInt());
+		assertEquals('D', buffer.getInt());
+		assertEquals(Long.BYTES, buffer.getInt());
+		assertEquals('J', buffer.getInt());
+		assertEquals(Float.BYTES, buffer.getInt());
+		assertEquals('F', buffer.getInt());
+		assertEquals(1, buffer.getInt());
+		assertEquals('Z', buffer.getInt());
+		assertEquals("Time", RecordingFiles.readString(buffer));
+		assertEquals("Value", RecordingFiles.readString(buffer));
+		assertEquals("Scaled", RecordingFiles.readString(buffer));
+		assertEquals("Position", RecordingFiles.readString(buffer));
+		assertEquals("Current", RecordingFiles.readString(buffer));
+		assertEquals("Even", RecordingFiles.readString(buffer));
+		int lastRecord = -1;
+		boolean terminated = false;
+		int position = buffer.position();
+		while (position + Integer.BYTES <= SEGMENT_SIZE) {
+			int time = buffer.getInt(position);
+			if (time == 0xFFFFFFFF) {
+				terminated = true;
+				break;
+			}
+			assertEquals(time, buffer.getInt(position + Integer.BYTES));
+			assertEquals(2.5 * time, buffer.getDouble(position + 8), 0.0);
+			assertEquals(time * 3_000_000_000L, buffer.getLong(position + 16));
+			assertEquals(time * 0.25f, buffer.getFloat(position + 24), 0.0f);
+			assertEquals(time % 2 == 0 ? 1 : 0, buffer.get(position + 28));
+			lastRecord = time;
+			position += 29;
+		}
+		assertTrue(terminated);
+		assertEquals(1999, lastRecord);
+	}
+
+	private static int counterOf(File file) {
+		String name = file.getName();
+		return Integer.parseInt(name.substring("robot-data-".length(), name.length() - ".dat".length()));
+	}
+}
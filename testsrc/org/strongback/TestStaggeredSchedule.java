@@ -0,0 +1,172 @@
+package org.strongback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.strongback.Executor.Priority;
+import org.strongback.Executor.RateGroup;
+import org.strongback.mock.MockClock;
+
+/**
+ * Check how a {@link StaggeredSchedule} assigns phases from the measured execution times, and that it spreads the work of
+ * the executor's cycles.
+ */
+public class TestStaggeredSchedule {
+
+	private static final int MEDIUM = 1;
+	private static final int LOW = 2;
+
+	@After
+	public void afterEach() {
+		Strongback.stop();
+		Strongback.executor().unregisterAll();
+		Strongback.configure().useVirtualTime(null).useAlignedScheduling();
+	}
+
+	private static Executable task() {
+		// A new instance every time, unlike a lambda that captures nothing ...
+		return new Executable() {
+			@Override
+			public void execute(long timeInMillis) {
+			}
+		};
+	}
+
+	private static int phaseOf(StaggeredSchedule schedule, Executables.Snapshot snapshot, int group, int item) {
+		int phase = -1;
+		for (int cycle = 0; cycle != snapshot.groups[group].periodInCycles(); ++cycle) {
+			if (schedule.isDue(group, item, cycle)) {
+				assertEquals(-1, phase);
+				phase = cycle;
+			}
+		}
+		return phase;
+	}
+
+	@Test
+	public void mostExpensiveExecutablesGetTheLightestPhasesFirst() {
+		Executables executables = new Executables();
+		for (int i = 0; i != 5; ++i) {
+			executables.register(task(), Priority.LOW);
+		}
+		executables.register(task(), Priority.HIGH);
+		Executables.Snapshot snapshot = executables.snapshot();
+		long[] costs = { 1000, 8000, 2000, 4000, 500 };
+		for (int i = 0; i != costs.length; ++i) {
+			snapshot.times[LOW][i].record(costs[i]);
+		}
+		snapshot.times[0][0].record(3000);
+
+		StaggeredSchedule schedule = new StaggeredSchedule(snapshot);
+		assertEquals(4, schedule.cyclesPerSchedule());
+		// 8000 -> 0, 4000 -> 1, 2000 -> 2, 1000 -> 3, and then 500 joins 1000 on the lightest cycle ...
+		assertEquals(3, phaseOf(schedule, snapshot, LOW, 0));
+		assertEquals(0, phaseOf(schedule, snapshot, LOW, 1));
+		assertEquals(2, phaseOf(schedule, snapshot, LOW, 2));
+		assertEquals(1, phaseOf(schedule, snapshot, LOW, 3));
+		assertEquals(3, phaseOf(schedule, snapshot, LOW, 4));
+		// The HIGH executable runs every cycle ...
+		for (int cycle = 0; cycle != 4; ++cycle) {
+			assertTrue(schedule.isDue(0, 0, cycle));
+		}
+	}
+
+	@Test
+	public void phasesOnlyChangeWhenTheHeaviestCycleIsReducedByTenPercent() {
+		Executables executables = new Executables();
+		for (int i = 0; i != 3; ++i) {
+			executables.register(task(), Priority.MEDIUM);
+		}
+		Executables.Snapshot snapshot = executables.snapshot();
+		ExecutionHistogram[] times = snapshot.times[MEDIUM];
+		times[0].record(10000);
+		times[1].record(6000);
+		times[2].record(5000);
+		// Cycle 0 has {0} = 10000 and cycle 1 has {1, 2} = 11000 ...
+		StaggeredSchedule schedule = new StaggeredSchedule(snapshot);
+		assertEquals(0, phaseOf(schedule, snapshot, MEDIUM, 0));
+		assertEquals(1, phaseOf(schedule, snapshot, MEDIUM, 1));
+		assertEquals(1, phaseOf(schedule, snapshot, MEDIUM, 2));
+
+		// The means are now 5500, 6000 and 5000. Moving to {1} = 6000 and {0, 2} = 10500 only improves on 11000 by 4.5% ...
+		times[0].record(1000);
+		times[1].record(6000);
+		times[2].record(5000);
+		assertFalse(schedule.rebalance());
+		assertEquals(0, phaseOf(schedule, snapshot, MEDIUM, 0));
+		assertEquals(1, phaseOf(schedule, snapshot, MEDIUM, 1));
+
+		// The means are now 2200, 6000 and 5000. Moving to {1} = 6000 and {0, 2} = 7200 is a real improvement ...
+		times[0].record(0);
+		times[0].record(0);
+		times[0].record(0);
+		assertTrue(schedule.rebalance());
+		assertEquals(1, phaseOf(schedule, snapshot, MEDIUM, 0));
+		assertEquals(0, phaseOf(schedule, snapshot, MEDIUM, 1));
+		assertEquals(1, phaseOf(schedule, snapshot, MEDIUM, 2));
+	}
+
+	@Test
+	public void longSchedulesFallBackToTheLargestPeriod() {
+		Executables executables = new Executables();
+		executables.register(task(), RateGroup.every("Seven", 7));
+		executables.register(task(), RateGroup.every("Ten", 10));
+		// The LCM of 7 and 10 is 70, which is more than 64 cycles ...
+		Executables.Snapshot snapshot = executables.snapshot();
+		assertEquals(10, snapshot.cyclesPerSchedule());
+		assertEquals(10, new StaggeredSchedule(snapshot).cyclesPerSchedule());
+
+		// Periods longer than 64 cycles are limited to 64, and their phases must fall within the schedule ...
+		executables.register(task(), RateGroup.every("Hundred", 100));
+		snapshot = executables.snapshot();
+		assertEquals(64, snapshot.cyclesPerSchedule());
+		StaggeredSchedule schedule = new StaggeredSchedule(snapshot);
+		for (int g = 0; g != snapshot.groups.length; ++g) {
+			for (int i = 0; i != snapshot.executables[g].length; ++i) {
+				int period = snapshot.groups[g].periodInCycles();
+				int runs = 0;
+				for (int cycle = 0; cycle != 200; ++cycle) {
+					if (schedule.isDue(g, i, cycle)) ++runs;
+				}
+				assertEquals(snapshot.groups[g].name(), (199 + period - phaseOf(schedule, snapshot, g, i)) / period, runs);
+				assertTrue(phaseOf(schedule, snapshot, g, i) < 64);
+			}
+		}
+
+		// A schedule within the limit is the LCM ...
+		executables.unregisterAll();
+		executables.register(task(), RateGroup.every("Four", 4));
+		executables.register(task(), RateGroup.every("Six", 6));
+		assertEquals(12, executables.snapshot().cyclesPerSchedule());
+	}
+
+	@Test
+	public void staggeringSpreadsTheWorkAcrossTheCycleTimes() {
+		MockClock clock = new MockClock();
+		Strongback.configure().useVirtualTime(clock).useExecutionPeriod(10, TimeUnit.MILLISECONDS).useStaggeredScheduling();
+		// Four LOW executables that each take 2 ms would all run on the same cycle if they were aligned ...
+		for (int i = 0; i != 4; ++i) {
+			Strongback.executor().register(time -> clock.incrementByMilliseconds(2), Priority.LOW);
+		}
+		Strongback.start();
+		assertEquals(40, Strongback.runFor(400, TimeUnit.MILLISECONDS));
+
+		// The costs haven't been measured yet, so no cycle has more than 2 of the executables (Strongback's own MEDIUM
+		// switch reactor is counted too) ...
+		List<ExecutionHistogram> cycleTimes = Strongback.cycleTimes();
+		assertEquals(4, cycleTimes.size());
+		long total = 0L;
+		for (ExecutionHistogram cycle : cycleTimes) {
+			assertEquals(cycle.getName(), 10, cycle.count());
+			assertTrue(cycle.getName(), cycle.maxInNanos() <= TimeUnit.MILLISECONDS.toNanos(4));
+			total += cycle.meanInNanos();
+		}
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(8), total);
+	}
+}
@@ -0,0 +1,150 @@
+package org.strongback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.strongback.AsyncEventRecorder.EventType;
+import org.strongback.components.Counter;
+
+/**
+ * Check that data records and events from separate files are merged in time order, and that windows start at the right place.
+ */
+public class TestTimeline {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private List<Path> files() {
+		List<Path> paths = new ArrayList<>();
+		for (File file : folder.getRoot().listFiles()) {
+			paths.add(file.toPath());
+		}
+		return paths;
+	}
+
+	@Test
+	public void shouldMergeDataAndEventsInTimeOrder() throws IOException {
+		// Records are 20 ms apart, starting at 1 second ...
+		int[] cycle = new int[1];
+		DataRecorderChannels channels = new DataRecorderChannels();
+		channels.register("Count", () -> cycle[0]);
+		channels.registerDouble("Half", () -> cycle[0] / 2.0);
+		DataWriter data = new FileDataWriter(channels,
+				Strongback.filenameGenerator(new File(folder.getRoot(), "robot").getPath(), "data", Counter.unlimited(1)), 50, 100);
+		for (int i = 0; i != 1000; ++i) {
+			cycle[0] = i;
+			data.write(1000 + 20 * i);
+		}
+		data.close();
+
+		// Events every 50 ms, starting at 1.010 seconds ...
+		FileEventWriter events = RecordingFiles.eventWriter(folder.getRoot(), 1024 * 1024, 16);
+		EventType command = new EventType("Command", 1);
+		EventType speed = new EventType("Speed", 2);
+		events.recordEventType(1, command);
+		events.recordEventType(2, speed);
+		for (int i = 0; i != 400; ++i) {
+			if (i % 2 == 0) {
+				events.recordEvent(1010 + 50 * i, command.typeNumber(), "Drive" + (i % 10));
+			} else {
+				events.recordEvent(1010 + 50 * i, speed.typeNumber(), i);
+			}
+		}
+		events.close();
+
+		Timeline timeline = Timeline.open(files());
+		assertEquals(1, timeline.dataFiles().size());
+		assertEquals(1, timeline.eventFiles().size());
+
+		// Every record and event, in order ...
+		Timeline.Cursor cursor = timeline.cursor();
+		long last = Long.MIN_VALUE;
+		int records = 0;
+		int count = 0;
+		while (cursor.next()) {
+			assertTrue(cursor.time() >= last);
+			last = cursor.time();
+			if (cursor.isEvent()) {
+				assertNull(cursor.record());
+				++count;
+			} else {
+				assertEquals(last, cursor.record().time());
+				++records;
+			}
+		}
+		assertEquals(1000, records);
+		assertEquals(400, count);
+
+		// A window well into both files, where an event and a record have the same time ...
+		StringWriter out = new StringWriter();
+		timeline.print(15040, 15070, out);
+		assertEquals("15040\tdata\tCount=702\tHalf=351.0\n" //
+				+ "15060\tdata\tCount=703\tHalf=351.5\n" //
+				+ "15060\tevent\tSpeed=281\n", out.toString());
+		cursor = timeline.between(15010, 15011);
+		assertTrue(cursor.next());
+		assertTrue(cursor.isEvent());
+		assertEquals("Command", cursor.event().type());
+		assertEquals("Drive0", cursor.event().value());
+		assertFalse(cursor.next());
+	}
+
+	@Test
+	public void shouldStartEventCursorsWithTheDictionaryInEffect() throws IOException {
+		// A small dictionary means ids are reused many times before and after each index entry ...
+		FileEventWriter events = RecordingFiles.eventWriter(folder.getRoot(), 1024 * 1024, 3);
+		EventType state = new EventType("State", 1);
+		events.recordEventType(1, state);
+		for (int i = 0; i != 2000; ++i) {
+			events.recordEvent(10 + i, state.typeNumber(), "S" + ((i * 7) % 5));
+		}
+		events.close();
+
+		EventRecordReader reader = EventRecordReader.open(new File(folder.getRoot(), "robot-event-1.dat").toPath());
+		assertEquals(2000, reader.eventCount());
+		for (long time : new long[] { 10, 266, 777, 1500, 2009 }) {
+			EventRecordReader.Cursor cursor = reader.cursorAt(time);
+			for (long t = time; t != 2010; ++t) {
+				assertTrue(cursor.next());
+				assertEquals(t, cursor.time());
+				assertEquals("S" + (((t - 10) * 7) % 5), cursor.stringValue());
+			}
+			assertFalse(cursor.next());
+		}
+		assertFalse(reader.cursorAt(5000).next());
+	}
+
+	@Test
+	public void shouldStartEventCursorsAtTheFirstOfSeveralEventsWithTheSameTime() throws IOException {
+		// Each group of 10 events has the same time, so events 250 to 259 all have the time of the index entry at 256 ...
+		FileEventWriter events = RecordingFiles.eventWriter(folder.getRoot(), 1024 * 1024, 16);
+		EventType state = new EventType("State", 1);
+		events.recordEventType(1, state);
+		for (int i = 0; i != 2000; ++i) {
+			events.recordEvent(10 + i / 10, state.typeNumber(), "S" + i);
+		}
+		events.close();
+
+		EventRecordReader reader = EventRecordReader.open(new File(folder.getRoot(), "robot-event-1.dat").toPath());
+		for (long time : new long[] { 34, 35 }) {
+			EventRecordReader.Cursor cursor = reader.cursorAt(time);
+			for (int i = (int) (time - 10) * 10; i != 261; ++i) {
+				assertTrue(cursor.next());
+				assertEquals(10 + i / 10, cursor.time());
+				assertEquals("S" + i, cursor.stringValue());
+			}
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package org.strongback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.strongback.Executor.Priority;
+import org.strongback.command.Command;
+import org.strongback.mock.MockClock;
+
+/**
+ * Check that Strongback's executor can simulate a whole match against a virtual clock.
+ */
+public class TestVirtualTime {
+
+	@After
+	public void afterEach() {
+		Strongback.stop();
+		Strongback.executor().unregisterAll();
+		Strongback.configure().useVirtualTime(null).reportExcessiveExecutionTimes(null);
+	}
+
+	@Test
+	public void simulateMatchFasterThanRealTime() {
+		MockClock clock = new MockClock();
+		Strongback.configure().useVirtualTime(clock).useExecutionPeriod(20, TimeUnit.MILLISECONDS);
+		List<Long> lowTimes = new ArrayList<>();
+		int[] highCount = new int[1];
+		Strongback.executor().register(time -> ++highCount[0], Priority.HIGH);
+		Strongback.executor().register(lowTimes::add, Priority.LOW);
+		Strongback.start();
+		long startInMillis = clock.currentTimeInMillis();
+		// A command that times out after 2 seconds of virtual time ...
+		long[] commandEnded = new long[1];
+		Strongback.submit(new Command(2.0) {
+			@Override
+			public boolean execute() {
+				return false;
+			}
+
+			@Override
+			public void end() {
+				commandEnded[0] = clock.currentTimeInMillis();
+			}
+		});
+
+		long realStart = System.nanoTime();
+		assertEquals(150 * 50, Strongback.runFor(150, TimeUnit.SECONDS));
+		long realMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - realStart);
+
+		assertTrue("took " + realMillis + " ms", realMillis < 5000);
+		assertEquals(startInMillis + 150_000, clock.currentTimeInMillis());
+		assertEquals(150 * 50, highCount[0]);
+		// The LOW group runs every 4th cycle, and always sees exactly 80 ms pass ...
+		assertEquals(150 * 50 / 4, lowTimes.size());
+		for (int i = 1; i != lowTimes.size(); ++i) {
+			assertEquals(80L, lowTimes.get(i) - lowTimes.get(i - 1));
+		}
+		assertTrue("ended at " + commandEnded[0], commandEnded[0] >= startInMillis + 2000);
+		assertTrue("ended at " + commandEnded[0], commandEnded[0] <= startInMillis + 2040);
+	}
+
+	@Test
+	public void overrunsDoNotMoveTheDeadlinesOfLaterCycles() {
+		MockClock clock = new MockClock();
+		List<Long> delays = new ArrayList<>();
+		Strongback.configure().useVirtualTime(clock).useExecutionPeriod(10, TimeUnit.MILLISECONDS)
+				.reportExcessiveExecutionTimes((actual, desired) -> delays.add(actual));
+		// Cycle N takes durations[N] milliseconds of virtual time ...
+		long[] durations = { 0, 2, 0, 25, 0, 12, 3, 9, 0, 0 };
+		List<Long> startTimes = new ArrayList<>();
+		Strongback.executor().register(time -> {
+			long duration = durations[startTimes.size()];
+			startTimes.add(clock.currentTimeInMillis());
+			if (duration > 0) clock.incrementByMilliseconds(duration);
+		}, Priority.HIGH);
+		Strongback.start();
+		long epoch = clock.currentTimeInMillis();
+
+		assertEquals(10, Strongback.runFor(100, TimeUnit.MILLISECONDS));
+
+		// Cycle 3 overruns into tick 5, so tick 4 is dropped and the next cycle starts late but must still finish by the end
+		// of tick 5. Cycle 5 overruns into tick 6 and cycle 6 finishes on time, after which every cycle is back on the grid ...
+		long[] expected = { 0, 10, 20, 30, 55, 60, 72, 80, 90, 100 };
+		assertEquals(expected.length, startTimes.size());
+		for (int i = 0; i != expected.length; ++i) {
+			assertEquals("cycle " + i, epoch + expected[i], (long) startTimes.get(i));
+		}
+		// Each overrun is measured from the cycle's own tick, not from the start of the previous cycle ...
+		assertEquals(2, delays.size());
+		assertEquals(25L, (long) delays.get(0));
+		assertEquals(12L, (long) delays.get(1));
+	}
+
+	@Test
+	public void lowerRateGroupsStayOnTheTickGridAfterAnOverrun() {
+		MockClock clock = new MockClock();
+		Strongback.configure().useVirtualTime(clock).useExecutionPeriod(10, TimeUnit.MILLISECONDS)
+				.reportExcessiveExecutionTimes((actual, desired) -> {});
+		// The HIGH executable overruns into tick 3 on its second run, so tick 2 is dropped ...
+		int[] highCount = new int[1];
+		Strongback.executor().register(time -> {
+			if (++highCount[0] == 2) clock.incrementByMilliseconds(25);
+		}, Priority.HIGH);
+		List<Long> lowTimes = new ArrayList<>();
+		Strongback.executor().register(lowTimes::add, Priority.LOW);
+		Strongback.start();
+		long epoch = clock.currentTimeInMillis();
+
+		Strongback.runFor(200, TimeUnit.MILLISECONDS);
+
+		// ... but the LOW group still runs on every 4th tick rather than every 4th cycle that was run ...
+		assertEquals(6, lowTimes.size());
+		for (int i = 0; i != lowTimes.size(); ++i) {
+			assertEquals("run " + i, epoch + 40 * i, (long) lowTimes.get(i));
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package org.strongback.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.strongback.components.Clock;
+import org.strongback.mock.MockClock;
+
+/**
+ * Check the pacing of the metronomes against a mock clock.
+ */
+public class TestMetronome {
+
+	private static final long PERIOD_IN_MICROS = 1000;
+	private static final long STEP_IN_MICROS = 50;
+
+	/**
+	 * A clock that advances the mock clock by a fixed step every time it is read, as if each read took that long. A metronome
+	 * that waits on this clock sees time pass without anything waiting for real time.
+	 */
+	private static Clock stepping(MockClock clock, long stepInMicros) {
+		return () -> clock.incrementByMicroseconds(stepInMicros).currentTimeInMicros();
+	}
+
+	/**
+	 * Pause the given number of times and check that every tick is released within one clock step after its deadline.
+	 */
+	private static void assertTicksOnGrid(Metronome metronome, MockClock clock, long startInMicros, int ticks) {
+		for (int i = 1; i <= ticks; ++i) {
+			assertTrue(metronome.pause());
+			long deadline = startInMicros + i * PERIOD_IN_MICROS;
+			long now = clock.currentTimeInMicros();
+			assertTrue("tick " + i + " released at " + now + " before " + deadline, now >= deadline);
+			assertTrue("tick " + i + " released at " + now + " after " + deadline, now <= deadline + STEP_IN_MICROS);
+		}
+	}
+
+	@Test
+	public void hybridShouldReleaseEachTickOnItsDeadline() {
+		MockClock clock = new MockClock();
+		Metronome metronome = Metronome.hybrid(PERIOD_IN_MICROS, TimeUnit.MICROSECONDS, 300, TimeUnit.MICROSECONDS,
+				stepping(clock, STEP_IN_MICROS));
+		long start = clock.currentTimeInMicros();
+		assertTicksOnGrid(metronome, clock, start, 20);
+	}
+
+	@Test
+	public void hybridShouldBehaveLikeBusyWhenTheMarginCoversThePeriod() {
+		MockClock clock = new MockClock();
+		Metronome metronome = Metronome.hybrid(PERIOD_IN_MICROS, TimeUnit.MICROSECONDS, PERIOD_IN_MICROS,
+				TimeUnit.MICROSECONDS, stepping(clock, STEP_IN_MICROS));
+		long start = clock.currentTimeInMicros();
+		assertTicksOnGrid(metronome, clock, start, 20);
+	}
+
+	@Test
+	public void hybridShouldBehaveLikeParkerWithNoMargin() {
+		MockClock clock = new MockClock();
+		Metronome metronome = Metronome.hybrid(PERIOD_IN_MICROS, TimeUnit.MICROSECONDS, 0, TimeUnit.MICROSECONDS,
+				stepping(clock, STEP_IN_MICROS));
+		long start = clock.currentTimeInMicros();
+		assertTicksOnGrid(metronome, clock, start, 20);
+	}
+
+	@Test
+	public void hybridShouldRejectANegativeMargin() {
+		try {
+			Metronome.hybrid(PERIOD_IN_MICROS, TimeUnit.MICROSECONDS, -1, TimeUnit.MICROSECONDS, new MockClock());
+			fail("Created a metronome with a negative margin");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void busyShouldDropTicksMissedDuringAnOverrun() {
+		MockClock clock = new MockClock();
+		Metronome metronome = Metronome.busy(PERIOD_IN_MICROS, TimeUnit.MICROSECONDS, stepping(clock, STEP_IN_MICROS));
+		long start = clock.currentTimeInMicros();
+		assertTicksOnGrid(metronome, clock, start, 2);
+		// Overrun by three and a half periods. Only the latest missed tick is released, after just two reads of the clock ...
+		clock.incrementByMicroseconds(3 * PERIOD_IN_MICROS + PERIOD_IN_MICROS / 2);
+		long late = clock.currentTimeInMicros();
+		assertTrue(metronome.pause());
+		assertTrue("released at " + clock.currentTimeInMicros(), clock.currentTimeInMicros() <= late + 2 * STEP_IN_MICROS);
+		// ... and the one after that waits for its place on the original grid rather than firing back-to-back.
+		assertTrue(metronome.pause());
+		long now = clock.currentTimeInMicros();
+		assertTrue("released at " + now, now >= start + 6 * PERIOD_IN_MICROS);
+		assertTrue("released at " + now, now <= start + 6 * PERIOD_IN_MICROS + STEP_IN_MICROS);
+	}
+
+	@Test
+	public void virtualShouldDropTicksMissedDuringAnOverrunAndStayOnTheGrid() {
+		MockClock clock = new MockClock();
+		Metronome metronome = Metronome.virtual(10, TimeUnit.MILLISECONDS, clock);
+		long start = clock.currentTimeInMillis();
+		metronome.pause();
+		assertEquals(start + 10, clock.currentTimeInMillis());
+		clock.incrementByMilliseconds(25);
+		// The tick due at 30 ms is late and released immediately; the one due at 20 ms is dropped ...
+		metronome.pause();
+		assertEquals(start + 35, clock.currentTimeInMillis());
+		// ... and the next tick is back on the original grid.
+		metronome.pause();
+		assertEquals(start + 40, clock.currentTimeInMillis());
+		metronome.pause();
+		assertEquals(start + 50, clock.currentTimeInMillis());
+	}
+
+	@Test
+	public void virtualShouldRoundSubMicrosecondPeriodsWithoutDrifting() {
+		MockClock clock = new MockClock();
+		Metronome metronome = Metronome.virtual(1500, TimeUnit.NANOSECONDS, clock);
+		long start = clock.currentTimeInMicros();
+		for (int i = 0; i != 1000; ++i) {
+			metronome.pause();
+		}
+		assertEquals(start + 1500, clock.currentTimeInMicros());
+	}
+}
@@ -2,10 +2,31 @@ package org.team3132;
 
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
+import org.strongback.TestAsyncDataWriter;
+import org.strongback.TestAsyncEventRecorder;
+import org.strongback.TestCompressedDataFormat;
+import org.strongback.TestDataRecordAllocation;
+import org.strongback.TestDataRecordReader;
+import org.strongback.TestExecutionHistogram;
+import org.strongback.TestExecutor;
+import org.strongback.TestExecutorPartitions;
+import org.strongback.TestFileEventWriter;
+import org.strongback.TestFlightRecorder;
+import org.strongback.TestLoadShedding;
+import org.strongback.TestRecordingPolicy;
+import org.strongback.TestSegmentedFileDataWriter;
+import org.strongback.TestStaggeredSchedule;
+import org.strongback.TestTimeline;
+import org.strongback.TestVirtualTime;
 import org.strongback.command.TestCommandGroup;
+import org.strongback.util.TestMetronome;
 import org.team3132.controller.TestController;
 import org.team3132.lib.RobotConfigurationTest;
+import org.team3132.lib.TestAsyncLogSink;
+import org.team3132.lib.TestCsvRowEncoder;
+import org.team3132.lib.TestLogDygraph;
 import org.team3132.lib.TestLogFileWriter;
+import org.team3132.lib.TestLogTelemetry;
 import org.team3132.lib.TestMovementSimulator;
 import org.team3132.lib.TestRedundantTalonSRX;
 import org.team3132.subsystems.TestDrivebase;
@@ -18,9 +39,30 @@ import org.team3132.subsystems.TestVision;
 
 @Suite.SuiteClasses({
 		TestCommandGroup.class,
+		TestAsyncDataWriter.class,
+		TestAsyncEventRecorder.class,
+		TestCompressedDataFormat.class,
+		TestDataRecordAllocation.class,
+		TestDataRecordReader.class,
+		TestExecutionHistogram.class,
+		TestExecutor.class,
+		TestExecutorPartitions.class,
+		TestFileEventWriter.class,
+		TestFlightRecorder.class,
+		TestLoadShedding.class,
+		TestRecordingPolicy.class,
+		TestSegmentedFileDataWriter.class,
+		TestStaggeredSchedule.class,
+		TestTimeline.class,
+		TestVirtualTime.class,
+		TestMetronome.class,
 		TestController.class,
         RobotConfigurationTest.class,
+        TestAsyncLogSink.class,
+        TestCsvRowEncoder.class,
+        TestLogDygraph.class,
         TestLogFileWriter.class,
+        TestLogTelemetry.class,
         TestMovementSimulator.class,
         TestRedundantTalonSRX.class,
         TestDrivebase.class,
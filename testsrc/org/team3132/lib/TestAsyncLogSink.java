@@ -0,0 +1,162 @@
+package org.team3132.lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.strongback.components.Clock;
+import org.team3132.interfaces.Log;
+
+public class TestAsyncLogSink {
+	protected Path tempDir;
+
+	@Before
+	public void setUp() throws IOException {
+		tempDir = Files.createTempDirectory("TestAsyncLogSink");
+	}
+
+	/**
+	 * Check lines from several threads are all written, in order for each thread.
+	 */
+	@Test
+	public void testWritesFromManyThreads() throws Exception {
+		AsyncLogSink sink = new AsyncLogSink(64, 100, 64 * 1024).start();
+		LogFileWriter writer = new LogFileWriter("name", 0, "txt", tempDir.toString(), "data", sink);
+		Thread[] threads = new Thread[3];
+		for (int t = 0; t < threads.length; t++) {
+			final int id = t;
+			threads[t] = new Thread(() -> {
+				char[] row = new char[16];
+				for (int i = 0; i < 500; i++) {
+					String line = id + "," + i + "\n";
+					if (i % 2 == 0) {
+						line.getChars(0, line.length(), row, 0);
+						while (!sink.add(writer, row, 0, line.length())) Thread.yield();
+					} else {
+						while (!sink.add(writer, line)) Thread.yield();
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		writer.close();
+		sink.stop();
+		assertEquals(0, sink.getQueueDepth());
+		assertEquals(1500, sink.getWrittenCount());
+
+		List<String> lines = Files.readAllLines(Paths.get(tempDir.toString(), "data", "name_00000.txt"));
+		assertEquals(1500, lines.size());
+		int[] next = new int[threads.length];
+		for (String line : lines) {
+			String[] fields = line.split(",");
+			int id = Integer.parseInt(fields[0]);
+			assertEquals(next[id]++, Integer.parseInt(fields[1]));
+		}
+	}
+
+	/**
+	 * Check lines are dropped and counted rather than blocking when the writer can't keep up.
+	 */
+	@Test
+	public void testDropsWhenFull() throws IOException {
+		AsyncLogSink sink = new AsyncLogSink(4, 100, 64 * 1024);  // Not started, so nothing is written.
+		LogFileWriter writer = new LogFileWriter("name", 1, "txt", tempDir.toString(), "data", sink);
+		for (int i = 0; i < 4; i++) {
+			assertTrue(sink.add(writer, "line\n"));
+		}
+		assertFalse(sink.add(writer, "line\n"));
+		writer.write("line\n");
+		assertEquals(4, sink.getQueueDepth());
+		assertEquals(2, sink.getDroppedCount());
+
+		// Starting drains the queue, and stopping flushes it.
+		sink.start();
+		sink.stop();
+		assertEquals(0, sink.getQueueDepth());
+		assertEquals(4, Files.readAllLines(Paths.get(tempDir.toString(), "data", "name_00001.txt")).size());
+	}
+
+	/**
+	 * Check closing a file without a writer thread writes out the queue and closes it
+	 * straight away, even when the queue is full.
+	 */
+	@Test
+	public void testCloseWithoutWriterThread() throws IOException {
+		AsyncLogSink sink = new AsyncLogSink(2, 100, 64 * 1024);  // Never started.
+		LogFileWriter full = new LogFileWriter("name", 2, "txt", tempDir.toString(), "data", sink);
+		full.write("first\n");
+		full.write("second\n");
+		assertEquals(2, sink.getQueueDepth());
+		full.close();
+		assertEquals(0, sink.getQueueDepth());
+		assertEquals(0, sink.getDroppedCount());
+		assertEquals(2, Files.readAllLines(Paths.get(tempDir.toString(), "data", "name_00002.txt")).size());
+
+		sink.start();
+		sink.stop();
+		LogFileWriter stopped = new LogFileWriter("name", 3, "txt", tempDir.toString(), "data", sink);
+		stopped.write("after stopping\n");
+		stopped.close();
+		assertEquals(0, sink.getQueueDepth());
+		assertEquals(1, Files.readAllLines(Paths.get(tempDir.toString(), "data", "name_00003.txt")).size());
+	}
+
+	/**
+	 * Check deferred messages are formatted on the writer thread, and disabled categories are skipped.
+	 */
+	@Test
+	public void testDeferredMessages() throws IOException {
+		Clock clock = () -> 12345600;  // 12.3456 seconds.
+		AsyncLogSink sink = new AsyncLogSink(64, 100, 64 * 1024);  // Not started, so messages stay queued.
+		LogDygraph log = new LogDygraph(tempDir.toString(), "data", "date", tempDir.resolve("lognumber.txt"), true, clock, sink);
+		log.subNum("%s: position %.1f", "lift", 3.25).debugNum("count %d", 7).ctrlNum("speeds %.1f,%.1f", 0.5, -1.0);
+		log.setEnabled(Log.Category.DEBUG, false);
+		log.debugNum("skipped %d", 8).debug("skipped %s", "too");
+		assertFalse(log.isEnabled(Log.Category.DEBUG));
+		assertTrue(log.isEnabled(Log.Category.SUB));
+		assertEquals(3, sink.getQueueDepth());
+
+		sink.start();
+		sink.stop();
+		List<String> lines = Files.readAllLines(Paths.get(tempDir.toString(), "data", "log_00001.txt"));
+		assertEquals(3, lines.size());
+		assertEquals("12.346,S lift: position 3.3", lines.get(0));
+		assertEquals("12.346,D count 7", lines.get(1));
+		assertEquals("12.346,T speeds 0.5,-1.0", lines.get(2));
+	}
+
+	/**
+	 * Check int and char arguments are formatted by the Object... methods, and that a deferred
+	 * message whose arguments don't match its format is written out rather than lost.
+	 */
+	@Test
+	public void testIntArguments() throws IOException {
+		Clock clock = () -> 12345600;  // 12.3456 seconds.
+		AsyncLogSink sink = new AsyncLogSink(64, 100, 64 * 1024);
+		LogDygraph log = new LogDygraph(tempDir.toString(), "data", "date", tempDir.resolve("lognumber.txt"), true, clock, sink);
+		int a = 3, b = 4;
+		char c = 'x';
+		log.debug("%d %d", a, b).sub("%c", c).ctrl("%d", a).debugNum("%d", a).debugNum("bad %d", 2.5);
+
+		sink.start();
+		sink.stop();
+		List<String> lines = Files.readAllLines(Paths.get(tempDir.toString(), "data", "log_00001.txt"));
+		assertEquals(5, lines.size());
+		assertEquals("12.346,D 3 4", lines.get(0));
+		assertEquals("12.346,S x", lines.get(1));
+		assertEquals("12.346,T 3", lines.get(2));
+		assertEquals("12.346,D 3", lines.get(3));
+		assertEquals("12.346,D bad %d [2.5]", lines.get(4));
+	}
+}
@@ -0,0 +1,38 @@
+package org.team3132.lib;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TestCsvRowEncoder {
+
+	/**
+	 * Check values are written with at most the requested decimal places and no trailing zeros.
+	 */
+	@Test
+	public void testFormatting() {
+		CsvRowEncoder encoder = new CsvRowEncoder(4);
+		encoder.startRow(12.3456).addValue(0).addValue(1).addValue(-2.5).addValue(0.12345678).addValue(-0.00001)
+				.addValue(123456789.0001).addValue(0.0009).addValue(Double.NaN).endRow();
+		assertEquals("12.346,0,1,-2.5,0.1235,0,123456789.0001,0.0009,NaN\n", encoder.toString());
+		// Rows are reused.
+		encoder.startRow(0).addValue(0.99999).endRow();
+		assertEquals("0.000,1\n", encoder.toString());
+	}
+
+	/**
+	 * Check the row grows to fit lots of values.
+	 */
+	@Test
+	public void testLongRow() {
+		CsvRowEncoder encoder = new CsvRowEncoder(2);
+		StringBuilder expected = new StringBuilder("1.000");
+		encoder.startRow(1);
+		for (int i = 0; i < 200; i++) {
+			encoder.addValue(i * 1000 + 0.25 * (i % 4));
+			expected.append(',').append(i * 1000).append(i % 4 == 0 ? "" : i % 4 == 1 ? ".25" : i % 4 == 2 ? ".5" : ".75");
+		}
+		encoder.endRow();
+		assertEquals(expected.append('\n').toString(), encoder.toString());
+	}
+}
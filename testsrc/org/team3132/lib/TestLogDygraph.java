@@ -0,0 +1,50 @@
+package org.team3132.lib;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.strongback.components.Clock;
+
+public class TestLogDygraph {
+	protected Path tempDir;
+
+	@Before
+	public void setUp() throws IOException {
+		tempDir = Files.createTempDirectory("TestLogDygraph");
+	}
+
+	/**
+	 * Check elements with a sample period are only read when due, and repeat their last value in between.
+	 */
+	@Test
+	public void testSamplePeriods() throws IOException {
+		long[] now = new long[1];
+		Clock clock = () -> now[0] * 1000;
+		LogDygraph log = new LogDygraph(tempDir.toString(), "data", "date", tempDir.resolve("lognumber.txt"), true, clock);
+		int[] fastReads = new int[1];
+		int[] slowReads = new int[1];
+		log.register(true, () -> (double) ++fastReads[0], "Fast")
+			.register(true, 100, () -> (double) ++slowReads[0], "Slow");
+		log.logCompletedElements("test");
+		for (now[0] = 0; now[0] < 250; now[0] += 50) {
+			log.execute(now[0]);
+		}
+		assertEquals(5, fastReads[0]);
+		assertEquals(3, slowReads[0]);
+
+		List<String> lines = Files.readAllLines(Paths.get(tempDir.toString(), "data", "data_00001.csv"));
+		assertEquals("date,Fast,Slow", lines.get(0));
+		assertEquals("0.000,1,1", lines.get(1));
+		assertEquals("0.050,2,1", lines.get(2));
+		assertEquals("0.100,3,2", lines.get(3));
+		assertEquals("0.150,4,2", lines.get(4));
+		assertEquals("0.200,5,3", lines.get(5));
+	}
+}
@@ -0,0 +1,124 @@
+package org.team3132.lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.strongback.components.Clock;
+
+public class TestLogTelemetry {
+	protected Path tempDir;
+
+	@Before
+	public void setUp() throws IOException {
+		tempDir = Files.createTempDirectory("TestLogTelemetry");
+	}
+
+	/**
+	 * Check the graph values are stored in binary and rendered as the .csv file LogDygraph would write.
+	 */
+	@Test
+	public void testRenderCsv() throws IOException {
+		long[] now = new long[1];
+		Clock clock = () -> now[0] * 1000;
+		LogTelemetry log = new LogTelemetry(tempDir.toString(), "data", "date", tempDir.resolve("lognumber.txt"), true, clock, null, 1024 * 1024);
+		log.register(true, () -> now[0] / 10.0, "Position")
+			.register(true, 100, () -> (double) -now[0], "Slow");
+		log.logCompletedElements("Qualification_12");
+		for (now[0] = 0; now[0] < 200; now[0] += 50) {
+			log.execute(now[0]);
+		}
+
+		File csv = Paths.get(tempDir.toString(), "data", "data_00001.csv").toFile();
+		assertFalse(csv.exists());
+		assertTrue(Files.exists(Paths.get(tempDir.toString(), "data", "data_00001.bin")));
+		assertEquals("Qualification_12", TelemetryFile.readMetadata(Paths.get(tempDir.toString(), "data", "data_00001.bin")).getProperty("match"));
+		String expected = "date,Position,Slow\n0.000,0,0\n0.050,5,0\n0.100,10,-100\n0.150,15,-100\n";
+		assertTrue(TelemetryFile.canRenderCsv(csv));
+		assertEquals(expected, render(csv));
+		// Through the Latest link, which dangles until the .csv file is rendered.
+		File latest = Paths.get(tempDir.toString(), "Latest_data.csv").toFile();
+		assertTrue(TelemetryFile.canRenderCsv(latest));
+		assertEquals(expected, render(latest));
+		assertFalse(TelemetryFile.canRenderCsv(Paths.get(tempDir.toString(), "data", "data_00002.csv").toFile()));
+	}
+
+	/**
+	 * Check rows are no longer stored once the file is full.
+	 */
+	@Test
+	public void testFull() throws IOException {
+		Path file = tempDir.resolve("data_00007.bin");
+		TelemetryFile telemetry = TelemetryFile.create(file, 2, 16 + 2 * 3 * 8);
+		for (int i = 0; i < 3; i++) {
+			if (telemetry.startRow(i)) {
+				telemetry.addValue(i);
+				telemetry.endRow();
+			}
+		}
+		assertEquals(2, telemetry.getRowCount());
+		TelemetryFile.writeMetadata(file, "date,A,B", null);
+		assertEquals("date,A,B\n0.000,0,NaN\n1.000,1,NaN\n", render(tempDir.resolve("data_00007.csv").toFile()));
+	}
+
+	/**
+	 * Check the log carries on in a new file when the first is full, and the .csv has all the rows.
+	 */
+	@Test
+	public void testRollOver() throws IOException {
+		long[] now = new long[1];
+		Clock clock = () -> now[0] * 1000;
+		// Room for two rows of time and one value per file.
+		LogTelemetry log = new LogTelemetry(tempDir.toString(), "data", "date", tempDir.resolve("lognumber.txt"), true, clock, null, 16 + 2 * 2 * 8);
+		log.register(true, () -> now[0] / 10.0, "Position");
+		log.logCompletedElements("Practice_1");
+		for (now[0] = 0; now[0] < 250; now[0] += 50) {
+			log.execute(now[0]);
+		}
+
+		Path first = Paths.get(tempDir.toString(), "data", "data_00001.bin");
+		assertEquals(16 + 2 * 2 * 8, Files.size(first));
+		assertEquals(16 + 2 * 2 * 8, Files.size(TelemetryFile.partFile(first, 2)));
+		assertTrue(Files.exists(Paths.get(tempDir.toString(), "data", "data_00001.3.bin")));
+		assertEquals("date,Position\n0.000,0\n0.050,5\n0.100,10\n0.150,15\n0.200,20\n",
+				render(Paths.get(tempDir.toString(), "data", "data_00001.csv").toFile()));
+	}
+
+	/**
+	 * Check the file only grows as rows are added, and is cut back to the rows when closed.
+	 */
+	@Test
+	public void testGrowAndTruncate() throws IOException {
+		Path file = tempDir.resolve("data_00008.bin");
+		TelemetryFile telemetry = TelemetryFile.create(file, 2, 64 * 1024 * 1024);
+		for (int i = 0; i < 2; i++) {
+			assertTrue(telemetry.startRow(i));
+			telemetry.addValue(i);
+			telemetry.addValue(-i);
+			telemetry.endRow();
+		}
+		telemetry.force();
+		assertTrue(Files.size(file) <= 16 + 1024 * 1024);
+		telemetry.close();
+		assertEquals(16 + 2 * 3 * 8, Files.size(file));
+		assertTrue(telemetry.isFull());
+		assertFalse(telemetry.startRow(2));
+		TelemetryFile.writeMetadata(file, "date,A,B", null);
+		assertEquals("date,A,B\n0.000,0,0\n1.000,1,-1\n", render(tempDir.resolve("data_00008.csv").toFile()));
+	}
+
+	private static String render(File csv) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TelemetryFile.renderCsv(csv, out);
+		return out.toString("UTF-8");
+	}
+}